@@ -36,6 +36,8 @@ import com.offbynull.actors.core.gateways.direct.DirectGateway;
 import com.offbynull.actors.core.gateways.log.LogGateway;
 import com.offbynull.actors.core.gateways.timer.TimerGateway;
 import com.offbynull.actors.core.shuttle.Shuttle;
+import com.offbynull.actors.core.shuttles.simple.Bus;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -59,7 +61,10 @@ public final class ActorSystem implements AutoCloseable {
             List<Supplier<Gateway>> gatewayFactories,
             String runnerName,
             int runnerCores,
-            Checkpointer runnerCheckpointer) {
+            Checkpointer runnerCheckpointer,
+            Supplier<Bus> runnerBusFactory,
+            boolean runnerWorkStealing,
+            int runnerQuantum) {
         ActorRunner runner = null;
 
         gateways = new HashMap<>();
@@ -83,7 +88,9 @@ public final class ActorSystem implements AutoCloseable {
                 }
             }
         
-            runner = ActorRunner.create(runnerName, runnerCores, runnerCheckpointer);
+            runner = runnerWorkStealing
+                    ? ActorRunner.createWorkStealing(runnerName, runnerCores, runnerCheckpointer, runnerQuantum)
+                    : ActorRunner.create(runnerName, runnerCores, runnerCheckpointer, runnerBusFactory, runnerQuantum);
 
             for (Gateway gateway : gateways.values()) {
                 bindGatewayToOthers(gateway, gateways.values(), runner);
@@ -241,6 +248,9 @@ public final class ActorSystem implements AutoCloseable {
         private String runnerName;
         private int runnerCores;
         private Checkpointer runnerCheckpointer;
+        private Supplier<Bus> runnerBusFactory;
+        private boolean runnerWorkStealing;
+        private int runnerQuantum;
         
         private Builder() {
             actors = new LinkedHashMap<>();
@@ -248,6 +258,8 @@ public final class ActorSystem implements AutoCloseable {
             runnerName = DEFAULT_RUNNER;
             runnerCores = Runtime.getRuntime().availableProcessors();
             runnerCheckpointer = new NullCheckpointer();
+            runnerBusFactory = LockingBus::new;
+            runnerQuantum = 64;
         }
         
         /**
@@ -352,13 +364,47 @@ public final class ActorSystem implements AutoCloseable {
             return this;
         }
         
+        /**
+         * Factory for the buses that the runner's threads read incoming messages from. Defaults to {@code LockingBus::new}.
+         * @param busFactory bus factory
+         * @return this builder
+         */
+        public Builder withRunnerBusFactory(Supplier<Bus> busFactory) {
+            this.runnerBusFactory = busFactory;
+            return this;
+        }
+        
+        /**
+         * Whether or not the runner should use work-stealing to execute actors. Defaults to {@code false}. If enabled, the bus factory set
+         * via {@link #withRunnerBusFactory(java.util.function.Supplier) } is ignored.
+         * @param workStealing {@code true} to use work-stealing, {@code false} to pin each actor to a thread
+         * @return this builder
+         * @see ActorRunner#createWorkStealing(java.lang.String, int, com.offbynull.actors.core.checkpoint.Checkpointer)
+         */
+        public Builder withRunnerWorkStealing(boolean workStealing) {
+            this.runnerWorkStealing = workStealing;
+            return this;
+        }
+        
+        /**
+         * Maximum number of messages an actor processes in one go before other actors waiting on the same thread get a turn. Defaults
+         * to {@code 64}.
+         * @param quantum messages per actor per turn
+         * @return this builder
+         */
+        public Builder withRunnerQuantum(int quantum) {
+            this.runnerQuantum = quantum;
+            return this;
+        }
+        
         /**
          * Build the actor system.
          * @return new actor system
          * @throws RuntimeException on bad build parameters
          */
         public ActorSystem build() {
-            return new ActorSystem(actors, gatewayFactories, runnerName, runnerCores, runnerCheckpointer);
+            return new ActorSystem(actors, gatewayFactories, runnerName, runnerCores, runnerCheckpointer, runnerBusFactory,
+                    runnerWorkStealing, runnerQuantum);
         }
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.actor;
+
+import com.offbynull.actors.core.shuttle.Shuttle;
+import com.offbynull.coroutines.user.Coroutine;
+import java.util.Map;
+
+// Something that ActorRunner hands actors to for execution. Implementations must guarantee that an individual actor is never run by more
+// than one thread at the same time -- SourceContext isn't thread-safe.
+interface ActorExecutor {
+
+    // signals close, but doesn't wait for execution to stop... use join for that
+    void close();
+
+    void join() throws InterruptedException;
+
+    Shuttle getIncomingShuttle();
+
+    void addActor(String id, Coroutine coroutine, Object... primingMessages);
+
+    void removeActor(String id);
+
+    void addOutgoingShuttle(Shuttle shuttle);
+
+    void removeOutgoingShuttle(String prefix);
+
+    // adds the number of items waiting for each actor to depths (id -> count), actors with nothing waiting may be left out
+    void collectQueueDepths(Map<String, Integer> depths);
+}
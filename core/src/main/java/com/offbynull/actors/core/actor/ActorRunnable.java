@@ -19,6 +19,7 @@ package com.offbynull.actors.core.actor;
 import com.offbynull.actors.core.context.BatchedCreateActorCommand;
 import com.offbynull.actors.core.context.SourceContext;
 import com.offbynull.actors.core.context.BatchedOutgoingMessage;
+import com.offbynull.actors.core.context.BatchedScheduledMessage;
 import com.offbynull.actors.core.context.Context.CheckpointRestoreLogic;
 import static com.offbynull.actors.core.context.Context.SuspendFlag.RELEASE;
 import com.offbynull.actors.core.shuttle.Shuttle;
@@ -29,11 +30,17 @@ import com.offbynull.actors.core.shuttle.Address;
 import com.offbynull.actors.core.shuttles.simple.Bus;
 import com.offbynull.actors.core.shuttles.simple.SimpleShuttle;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,19 +56,43 @@ final class ActorRunnable implements Runnable {
     private final Runnable failHandler;
     private final ActorRunner owner;
     private final Checkpointer checkpointer;
+    private final int quantum;
+    private final int index; // index of this thread within the owning runner
+    private final long idleTimeoutNanos; // -1 if actors aren't passivated for being idle
+    private final int maxResidentActors;
+    private final boolean passivating;
+    
+    private final Map<String, Mailbox> mailboxes; // id -> mailbox, concurrent so that queue depths can be read from other threads
+
+    // Scratch buffers reused for every message processed, only ever touched by the thread running this runnable
+    private final ArrayList<BatchedOutgoingMessage> outsBuffer = new ArrayList<>();
+    private final ArrayList<BatchedCreateActorCommand> newRootsBuffer = new ArrayList<>();
+    private final ArrayList<BatchedScheduledMessage> schedulesBuffer = new ArrayList<>();
+
+    // Timers set by actors on this thread through Context.schedule(), ordered by deadline. Only ever touched by the thread running this
+    // runnable -- the bus pull timeout is what wakes the thread up when the next one is due, so they never go through another thread.
+    private final PriorityQueue<ScheduledMessage> scheduledMessages = new PriorityQueue<>();
+    private final Map<String, TimerGroup> timerGroups = new HashMap<>(); // id -> timers set by the actor's current incarnation
+    private long nextScheduleSequence;
 
     ActorRunnable(
             String prefix,
             Bus bus,
             Runnable failHandler,
             ActorRunner owner,
-            Checkpointer checkpointer) {
+            Checkpointer checkpointer,
+            int quantum,
+            int index,
+            PassivationPolicy passivationPolicy) {
         Validate.notNull(prefix);
         Validate.notNull(bus);
         Validate.notNull(failHandler);
         Validate.notNull(owner);
         Validate.notNull(checkpointer);
+        Validate.notNull(passivationPolicy);
         Validate.notEmpty(prefix);
+        Validate.isTrue(quantum > 0);
+        Validate.isTrue(index >= 0);
 
         this.prefix = prefix;
         this.bus = bus;
@@ -69,33 +100,100 @@ final class ActorRunnable implements Runnable {
         this.failHandler = failHandler;
         this.owner = owner;
         this.checkpointer = checkpointer;
+        this.quantum = quantum;
+        this.index = index;
+        this.idleTimeoutNanos = passivationPolicy.getIdleTimeout() == null ? -1L : passivationPolicy.getIdleTimeout().toNanos();
+        this.maxResidentActors = passivationPolicy.getMaxResidentActors();
+        this.passivating = passivationPolicy.isEnabled();
+        this.mailboxes = new ConcurrentHashMap<>();
     }
 
     @Override
     public void run() {
         try {
             Map<String, Shuttle> outgoingShuttles = new HashMap<>(); // prefix -> shuttle
-            Map<String, LoadedActor> actors = new HashMap<>(); // id -> actor
+            Map<String, LoadedActor> actors = new LinkedHashMap<>(16, 0.75f, true); // id -> actor, least recently used first
+            ArrayDeque<Mailbox> ready = new ArrayDeque<>(); // mailboxes with items waiting, in the order they'll get their next turn
+            List<Message> outgoingMessages = new ArrayList<>(); // outgoing messages destined for destinations not in here, reused
 
             while (true) {
-                List<Object> incomingObjects = bus.pull();
-                List<Message> outgoingMessages = new LinkedList<>(); // outgoing messages destined for destinations not in here
+                // If there's already work waiting, only pick up what's on the bus right now rather than blocking for more. If actors are
+                // being passivated for being idle, don't block for longer than it takes for the least recently used actor to go idle. If
+                // timers are pending, don't block for longer than it takes for the next one to come due.
+                long wait = -1L; // -1 means block until something shows up
+                if (!ready.isEmpty()) {
+                    wait = 0L;
+                } else {
+                    long now = System.nanoTime();
+                    if (idleTimeoutNanos != -1L && !actors.isEmpty()) {
+                        LoadedActor eldest = actors.values().iterator().next();
+                        wait = Math.max(eldest.lastActiveTime + idleTimeoutNanos - now, 0L);
+                    }
+                    if (!scheduledMessages.isEmpty()) {
+                        long timerWait = Math.max(scheduledMessages.peek().deadline - now, 0L);
+                        wait = wait == -1L ? timerWait : Math.min(wait, timerWait);
+                    }
+                }
+
+                List<Object> incomingObjects;
+                if (wait == -1L) {
+                    incomingObjects = bus.pull();
+                } else {
+                    incomingObjects = bus.pull(wait, TimeUnit.NANOSECONDS);
+                }
 
+                // Sort incoming objects in to per-actor mailboxes. Actor management goes through the mailbox as well so that it stays
+                // ordered with respect to the messages going to that actor.
                 for (Object incomingObject : incomingObjects) {
                     if (incomingObject instanceof Message) {
-                        Message incomingMessage = (Message) incomingObject;
-                        
-                        Object msg = incomingMessage.getMessage();
-                        Address src = incomingMessage.getSourceAddress();
-                        Address dst = incomingMessage.getDestinationAddress();
-
-                        processNormalMessage(msg, src, dst, actors, outgoingMessages);
+                        Address dst = ((Message) incomingObject).getDestinationAddress();
+                        Validate.isTrue(dst.size() >= 2); // sanity check
+                        enqueue(dst.getElement(1), incomingObject, ready);
+                    } else if (incomingObject instanceof AddActor) {
+                        enqueue(((AddActor) incomingObject).getId(), incomingObject, ready);
+                    } else if (incomingObject instanceof RemoveActor) {
+                        enqueue(((RemoveActor) incomingObject).getId(), incomingObject, ready);
                     } else {
                         processManagementMessage(incomingObject, actors, outgoingMessages, outgoingShuttles);
                     }
                 }
 
-                sendOutgoingMessages(outgoingMessages, outgoingShuttles);
+                // Move timers that have come due in to their actor's mailbox. If the actor has been passivated in the meantime, this is
+                // what brings it back.
+                enqueueScheduledMessages(ready);
+
+                // Give each actor with waiting items one turn of at most quantum items, round-robin
+                int turns = ready.size();
+                for (int i = 0; i < turns; i++) {
+                    Mailbox mailbox = ready.poll();
+                    for (int j = 0; j < quantum && !mailbox.items.isEmpty(); j++) {
+                        Object item = mailbox.poll();
+                        if (item instanceof Message) {
+                            Message incomingMessage = (Message) item;
+
+                            Object msg = incomingMessage.getMessage();
+                            Address src = incomingMessage.getSourceAddress();
+                            Address dst = incomingMessage.getDestinationAddress();
+
+                            processNormalMessage(msg, src, dst, actors, outgoingMessages);
+                        } else if (item instanceof TimedMessage) {
+                            processTimedMessage((TimedMessage) item, mailbox.id, actors, outgoingMessages);
+                        } else {
+                            processManagementMessage(item, actors, outgoingMessages, outgoingShuttles);
+                        }
+                    }
+                    
+                    if (mailbox.items.isEmpty()) {
+                        mailboxes.remove(mailbox.id);
+                    } else {
+                        ready.add(mailbox);
+                    }
+                }
+
+                sendOutgoingMessages(outgoingMessages, outgoingShuttles, ready);
+                outgoingMessages.clear();
+
+                passivateActors(actors);
             }
         } catch (InterruptedException ie) {
             LOG.debug("Actor thread interrupted");
@@ -121,6 +219,53 @@ final class ActorRunnable implements Runnable {
         }
     }
 
+    private void enqueueScheduledMessages(ArrayDeque<Mailbox> ready) {
+        if (scheduledMessages.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        ScheduledMessage scheduledMessage;
+        while ((scheduledMessage = scheduledMessages.peek()) != null && scheduledMessage.deadline - now <= 0L) {
+            scheduledMessages.poll();
+            TimedMessage timedMessage = scheduledMessage.timedMessage;
+            enqueue(timedMessage.getMessage().getDestinationAddress().getElement(1), timedMessage, ready);
+        }
+    }
+
+    private void processTimedMessage(TimedMessage timedMessage, String id, Map<String, LoadedActor> actors,
+            List<Message> outgoingMessages) {
+        TimerGroup group = timedMessage.getGroup();
+        if (group.remove()) {
+            timerGroups.remove(id, group); // no-op if cancelled, it's already been removed
+        }
+
+        if (group.isCancelled()) {
+            LOG.debug("Dropping timer set by previous incarnation of {}: {}", id, timedMessage);
+            return;
+        }
+
+        Message message = timedMessage.getMessage();
+        processNormalMessage(message.getMessage(), message.getSourceAddress(), message.getDestinationAddress(), actors, outgoingMessages);
+    }
+
+    private void cancelTimers(String id) {
+        TimerGroup group = timerGroups.remove(id);
+        if (group != null) {
+            group.cancel();
+        }
+    }
+
+    private void enqueue(String id, Object item, ArrayDeque<Mailbox> ready) {
+        Mailbox mailbox = mailboxes.get(id);
+        if (mailbox == null) {
+            mailbox = new Mailbox(id);
+            mailboxes.put(id, mailbox);
+            ready.add(mailbox);
+        }
+        mailbox.add(item);
+    }
+
     private void processManagementMessage(Object msg, Map<String, LoadedActor> actors, List<Message> outgoingMessages,
             Map<String, Shuttle> outgoingShuttles) {
         LOG.debug("Processing management message: {}" , msg);
@@ -136,18 +281,23 @@ final class ActorRunnable implements Runnable {
             LoadedActor existingActor = actors.putIfAbsent(aam.getId(), new LoadedActor(ctx));
             
             Validate.isTrue(existingActor == null); // unable to add a actor with id that already exists
+            cancelTimers(aam.getId()); // new incarnation -- nothing left behind by a previous actor with this id should reach it
             
-            List<Message> initialMessages = new LinkedList<>();
+            // Feed priming messages in right away rather than sending them around again. Anything else already waiting in the actor's
+            // mailbox would otherwise get processed before them, and before the actor had a chance to set its rules.
             for (Object primingMessage : aam.getPrimingMessages()) {
-                Address dstAddr = Address.of(prefix, aam.getId());
-                Message initialMessage = new Message(dstAddr, dstAddr, primingMessage);
-                initialMessages.add(initialMessage);
+                processNormalMessage(primingMessage, self, self, actors, outgoingMessages);
             }
-            outgoingMessages.addAll(initialMessages);
         } else if (msg instanceof RemoveActor) {
             RemoveActor ram = (RemoveActor) msg;
+            cancelTimers(ram.getId());
             LoadedActor existingActor = actors.remove(ram.getId());
             
+            if (existingActor == null && passivating) {
+                // The actor may have been passivated, in which case it only exists in the checkpoint
+                checkpointer.delete(Address.of(prefix, ram.getId()));
+                return;
+            }
             Validate.isTrue(existingActor != null); // unable to remove a actor that doesnt exist
         } else if (msg instanceof AddShuttle) {
             AddShuttle asm = (AddShuttle) msg;
@@ -173,12 +323,12 @@ final class ActorRunnable implements Runnable {
         String dstActorId = dst.getElement(1);
         Validate.isTrue(dstPrefix.equals(prefix)); // sanity check
         
-        Address actorAddr = Address.of(dstPrefix, dstActorId);
-
         LoadedActor loadedActor = actors.get(dstActorId);
         SourceContext ctx;
+        Address actorAddr;
         if (loadedActor == null) {
-            LOG.warn("Actor not found in memory for {} (dst={} msg={})", actorAddr, dst, msg);
+            actorAddr = Address.of(dstPrefix, dstActorId);
+            LOG.debug("Actor not found in memory for {} (dst={} msg={})", actorAddr, dst, msg);
             ctx = checkpointer.restore(actorAddr);
             
             if (ctx == null) {
@@ -186,48 +336,46 @@ final class ActorRunnable implements Runnable {
                 return;
             } else {
                 LOG.debug("Actor found in checkpoint: id={}", actorAddr);
-                actors.put(dstActorId, new LoadedActor(ctx));
+                loadedActor = new LoadedActor(ctx);
+                actors.put(dstActorId, loadedActor);
                 
-                // Get restore logic to perform
+                // Get restore logic to perform -- passivated actors don't have any
                 CheckpointRestoreLogic restoreLogic = ctx.checkpoint();
                 
                 // Reset restored context state
                 ctx.copyAndClearOutgoingMessages();
+                ctx.copyAndClearScheduledMessages();
                 ctx.checkpoint(null);
                 ctx.mode(RELEASE);
                 
                 // Perform restore logic
-                restoreLogic.perform(ctx);
+                if (restoreLogic != null) {
+                    restoreLogic.perform(ctx);
+                }
             }
         } else {
             ctx = loadedActor.context;
+            actorAddr = ctx.self(); // avoid creating a new address for actors that are already loaded
         }
+        loadedActor.lastActiveTime = System.nanoTime();
         
         boolean shutdown = SourceContext.fire(ctx, src, dst, Instant.now(), msg);
-        if (shutdown) {
-            LOG.debug("Actor shut down {} -- removing from memory and removing from checkpoint", actorAddr);
-            checkpointer.delete(actorAddr);
-            actors.remove(dstActorId);
-        } else {
-            if (ctx.checkpoint() != null) {
-                LOG.debug("Actor requests checkpoint {} -- removing from memory and adding to checkpoint", actorAddr);
-                checkpointer.save(ctx);
-                actors.remove(dstActorId);
-            }
-        }
 
         // Queue up new actors
-        List<BatchedCreateActorCommand> batchedCreateActorCommands = ctx.copyAndClearNewRoots();
-        for (BatchedCreateActorCommand batchedCreateActorCommand : batchedCreateActorCommands) {
+        ctx.drainNewRoots(newRootsBuffer);
+        for (int i = 0; i < newRootsBuffer.size(); i++) {
+            BatchedCreateActorCommand batchedCreateActorCommand = newRootsBuffer.get(i);
             owner.addActor(
                     batchedCreateActorCommand.getId(),
                     batchedCreateActorCommand.getActor(),
                     batchedCreateActorCommand.getPrimingMessages());
         }
+        newRootsBuffer.clear();
 
         // Queue up outgoing messages
-        List<BatchedOutgoingMessage> batchedOutgoingMessages = ctx.copyAndClearOutgoingMessages();
-        for (BatchedOutgoingMessage batchedOutgoingMessage : batchedOutgoingMessages) {
+        ctx.drainOutgoingMessages(outsBuffer);
+        for (int i = 0; i < outsBuffer.size(); i++) {
+            BatchedOutgoingMessage batchedOutgoingMessage = outsBuffer.get(i);
             Message outgoingMessage = new Message(
                     batchedOutgoingMessage.getSource(),
                     batchedOutgoingMessage.getDestination(),
@@ -235,25 +383,141 @@ final class ActorRunnable implements Runnable {
 
             outgoingMessages.add(outgoingMessage);
         }
+        outsBuffer.clear();
+
+        // Queue up timers -- these stay on this thread, the actor is always mapped back here when they come due
+        ctx.drainScheduledMessages(schedulesBuffer);
+        if (!schedulesBuffer.isEmpty()) {
+            long now = System.nanoTime();
+            TimerGroup group = timerGroups.computeIfAbsent(dstActorId, k -> new TimerGroup());
+            for (int i = 0; i < schedulesBuffer.size(); i++) {
+                BatchedScheduledMessage batchedScheduledMessage = schedulesBuffer.get(i);
+                Message message = new Message(
+                        batchedScheduledMessage.getSource(),
+                        batchedScheduledMessage.getDestination(),
+                        batchedScheduledMessage.getMessage());
+                long delayNanos = TimeUnit.MILLISECONDS.toNanos(batchedScheduledMessage.getDelay()); // saturates at Long.MAX_VALUE
+                long deadline = now + Math.min(delayNanos, Long.MAX_VALUE / 2L); // cap so that the subtraction checks can't overflow
+                group.add();
+                scheduledMessages.add(new ScheduledMessage(deadline, nextScheduleSequence++, new TimedMessage(group, message)));
+            }
+            schedulesBuffer.clear();
+        }
+
+        // Checkpoint/delete only once the context has been drained -- the checkpointer may serialize it on another thread, so it must not
+        // be touched after it's handed over
+        if (shutdown) {
+            LOG.debug("Actor shut down {} -- removing from memory and removing from checkpoint", actorAddr);
+            checkpointer.delete(actorAddr);
+            actors.remove(dstActorId);
+            cancelTimers(dstActorId);
+        } else {
+            if (ctx.checkpoint() != null) {
+                LOG.debug("Actor requests checkpoint {} -- removing from memory and adding to checkpoint", actorAddr);
+                checkpointer.save(ctx);
+                actors.remove(dstActorId);
+            }
+        }
     }
 
-    private void sendOutgoingMessages(List<Message> outgoingMessages, Map<String, Shuttle> outgoingShuttles) {
-        // Group outgoing messages by prefix
-        Map<String, List<Message>> outgoingMap = new HashMap<>();
-        for (Message outgoingMessage : outgoingMessages) {
+    private void passivateActors(Map<String, LoadedActor> actors) {
+        if (idleTimeoutNanos == -1L && actors.size() <= maxResidentActors) {
+            return;
+        }
+
+        // Actors are ordered least recently used first, so stop at the first actor that's neither idle nor over the budget. Actors with
+        // messages waiting are about to run again, so they're skipped rather than being written out only to be immediately read back in.
+        long now = System.nanoTime();
+        int excess = actors.size() - maxResidentActors;
+        String refusedId = null;
+        Iterator<Entry<String, LoadedActor>> it = actors.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry<String, LoadedActor> entry = it.next();
+            LoadedActor loadedActor = entry.getValue();
+            boolean idle = idleTimeoutNanos != -1L && now - loadedActor.lastActiveTime >= idleTimeoutNanos;
+            if (!idle && excess <= 0) {
+                break;
+            }
+
+            if (mailboxes.containsKey(entry.getKey())) {
+                continue;
+            }
+
+            LOG.debug("Passivating actor {} (idle={})", loadedActor.context.self(), idle);
+            if (checkpointer.save(loadedActor.context)) {
+                it.remove();
+                excess--;
+            } else {
+                // Checkpointer refused the actor, so keep it in memory and don't try again until it goes idle again. If it refused this
+                // one, it'll likely refuse the rest as well.
+                loadedActor.lastActiveTime = now;
+                refusedId = entry.getKey();
+                break;
+            }
+        }
+
+        // Move the refused actor to the most recently used end once iteration is done (get() on an access-ordered map is a modification)
+        if (refusedId != null) {
+            actors.get(refusedId);
+        }
+    }
+
+    private void sendOutgoingMessages(List<Message> outgoingMessages, Map<String, Shuttle> outgoingShuttles,
+            ArrayDeque<Mailbox> ready) {
+        // Group outgoing messages by prefix -- except for messages to actors in this runner, which skip the runner's shuttle. Those go
+        // straight in to the mailbox if the actor is on this thread, or straight to the owning thread otherwise.
+        //
+        // The maps are only created if there's something to put in them -- many turns produce no outgoing messages, or only messages to
+        // actors on this same thread.
+        Map<String, List<Message>> outgoingMap = null;
+        Map<Integer, List<Message>> siblingMap = null;
+        for (int i = 0; i < outgoingMessages.size(); i++) {
+            Message outgoingMessage = outgoingMessages.get(i);
             Address outDst = outgoingMessage.getDestinationAddress();
             String outDstPrefix = outDst.getElement(0);
+            
+            if (outDstPrefix.equals(prefix)) {
+                if (outDst.size() < 2) {
+                    LOG.error("Error mapping message to thread: {}", outgoingMessage);
+                    continue;
+                }
+
+                String outDstId = outDst.getElement(1);
+                int outDstIndex = owner.mapIdToIndex(outDstId);
+                if (outDstIndex == index) {
+                    enqueue(outDstId, outgoingMessage, ready);
+                } else {
+                    if (siblingMap == null) {
+                        siblingMap = new HashMap<>();
+                    }
+                    siblingMap.computeIfAbsent(outDstIndex, k -> new ArrayList<>()).add(outgoingMessage);
+                }
+                continue;
+            }
 
+            if (outgoingMap == null) {
+                outgoingMap = new HashMap<>();
+            }
             List<Message> batchedMessages = outgoingMap.get(outDstPrefix);
             if (batchedMessages == null) {
-                batchedMessages = new LinkedList<>();
+                batchedMessages = new ArrayList<>();
                 outgoingMap.put(outDstPrefix, batchedMessages);
             }
 
             batchedMessages.add(outgoingMessage);
         }
 
+        // Send messages for other threads in this runner
+        if (siblingMap != null) {
+            for (Entry<Integer, List<Message>> entry : siblingMap.entrySet()) {
+                owner.getExecutor(entry.getKey()).getIncomingShuttle().send(entry.getValue());
+            }
+        }
+
         // Send outgoing messaged by prefix
+        if (outgoingMap == null) {
+            return;
+        }
         for (Entry<String, List<Message>> entry : outgoingMap.entrySet()) {
             Shuttle shuttle = outgoingShuttles.get(entry.getKey());
             if (shuttle != null) {
@@ -264,6 +528,16 @@ final class ActorRunnable implements Runnable {
         }
     }
 
+    void collectQueueDepths(Map<String, Integer> depths) {
+        Validate.notNull(depths);
+        for (Mailbox mailbox : mailboxes.values()) {
+            int depth = mailbox.depth;
+            if (depth > 0) {
+                depths.merge(mailbox.id, depth, Integer::sum);
+            }
+        }
+    }
+
     String getPrefix() {
         return prefix;
     }
@@ -300,8 +574,52 @@ final class ActorRunnable implements Runnable {
         bus.add(rsm);
     }
     
+    private static final class Mailbox {
+        private final String id;
+        private final ArrayDeque<Object> items;
+        private volatile int depth; // only written by the owning thread, read by anyone
+
+        Mailbox(String id) {
+            this.id = id;
+            this.items = new ArrayDeque<>();
+        }
+
+        void add(Object item) {
+            items.add(item);
+            depth = items.size();
+        }
+
+        Object poll() {
+            Object item = items.poll();
+            depth = items.size();
+            return item;
+        }
+    }
+    
+    private static final class ScheduledMessage implements Comparable<ScheduledMessage> {
+        private final long deadline; // System.nanoTime() based
+        private final long sequence; // keeps timers due at the same time in the order they were set
+        private final TimedMessage timedMessage;
+
+        ScheduledMessage(long deadline, long sequence, TimedMessage timedMessage) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.timedMessage = timedMessage;
+        }
+
+        @Override
+        public int compareTo(ScheduledMessage o) {
+            int ret = Long.compare(deadline - o.deadline, 0L); // nanoTime values can only be compared by their difference
+            if (ret != 0) {
+                return ret;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+    
     private static final class LoadedActor {
         private final SourceContext context;
+        private long lastActiveTime = System.nanoTime(); // last time this actor processed a message
 
         public LoadedActor(SourceContext context) {
             Validate.notNull(context);
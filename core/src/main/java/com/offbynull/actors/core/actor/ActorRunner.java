@@ -21,9 +21,16 @@ import com.offbynull.coroutines.user.Coroutine;
 import com.offbynull.actors.core.shuttle.Address;
 import com.offbynull.actors.core.shuttle.Message;
 import com.offbynull.actors.core.shuttle.Shuttle;
+import com.offbynull.actors.core.shuttles.simple.BoundedBus;
+import com.offbynull.actors.core.shuttles.simple.Bus;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
+import com.offbynull.actors.core.shuttles.simple.OverflowPolicy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import org.apache.commons.io.Charsets;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
@@ -67,9 +74,11 @@ import com.offbynull.actors.core.checkpoint.Checkpointer;
 public final class ActorRunner implements AutoCloseable {
     
     private static final Logger LOG = LoggerFactory.getLogger(ActorRunner.class);
+
+    private static final int DEFAULT_QUANTUM = 64;
     
     private final String prefix;
-    private final ActorThread[] threads;
+    private final ActorExecutor[] executors;
     private final RunnerShuttle shuttle;
 
     /**
@@ -97,7 +106,8 @@ public final class ActorRunner implements AutoCloseable {
     }
 
     /**
-     * Create an {@link ActorRunner} instance.
+     * Create an {@link ActorRunner} instance. Equivalent to calling
+     * {@code ActorRunner.create(prefix, threadCount, checkpointer, LockingBus::new)}.
      * @param prefix address prefix to use for actors that get added to this runner
      * @param threadCount number of threads to use for this runner
      * @param checkpointer checkpointer
@@ -106,37 +116,95 @@ public final class ActorRunner implements AutoCloseable {
      * @return new actor runner
      */
     public static ActorRunner create(String prefix, int threadCount, Checkpointer checkpointer) {
+        return ActorRunner.create(prefix, threadCount, checkpointer, LockingBus::new);
+    }
+
+    /**
+     * Create an {@link ActorRunner} instance. Equivalent to calling
+     * {@code ActorRunner.create(prefix, threadCount, checkpointer, busFactory, 64)}.
+     * @param prefix address prefix to use for actors that get added to this runner
+     * @param threadCount number of threads to use for this runner
+     * @param checkpointer checkpointer
+     * @param busFactory factory that creates the bus each thread reads its incoming messages from
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code threadCount < 1}, or if {@code busFactory} creates a {@link BoundedBus} that uses
+     * {@link OverflowPolicy#BLOCK}
+     * @return new actor runner
+     */
+    public static ActorRunner create(String prefix, int threadCount, Checkpointer checkpointer, Supplier<Bus> busFactory) {
+        return ActorRunner.create(prefix, threadCount, checkpointer, busFactory, DEFAULT_QUANTUM);
+    }
+
+    /**
+     * Create an {@link ActorRunner} instance.
+     * <p>
+     * Each thread in the runner reads its incoming messages from its own {@link Bus}, and only that thread ever reads from it. As such,
+     * a single-reader implementation such as {@link com.offbynull.actors.core.shuttles.simple.LockFreeBus} is safe to use here. A
+     * {@link BoundedBus} that uses {@link OverflowPolicy#BLOCK} is not allowed -- runner threads write to each other's buses, so blocking
+     * writers can deadlock.
+     * <p>
+     * Each thread keeps a separate mailbox for every actor that has messages waiting and gives those actors turns in round-robin order.
+     * An actor processes at most {@code quantum} messages per turn, so a chatty sender can't starve the other actors on its thread.
+     * @param prefix address prefix to use for actors that get added to this runner
+     * @param threadCount number of threads to use for this runner
+     * @param checkpointer checkpointer
+     * @param busFactory factory that creates the bus each thread reads its incoming messages from
+     * @param quantum maximum number of messages an actor processes before the next actor on the same thread gets a turn
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code threadCount < 1 || quantum < 1}, or if {@code busFactory} creates a {@link BoundedBus}
+     * that uses {@link OverflowPolicy#BLOCK}
+     * @return new actor runner
+     */
+    public static ActorRunner create(String prefix, int threadCount, Checkpointer checkpointer, Supplier<Bus> busFactory,
+            int quantum) {
+        return ActorRunner.create(prefix, threadCount, checkpointer, busFactory, quantum, PassivationPolicy.disabled());
+    }
+
+    /**
+     * Create an {@link ActorRunner} instance that automatically checkpoints and removes actors from memory based on
+     * {@code passivationPolicy}. Passivated actors are restored from {@code checkpointer} the next time a message arrives for them.
+     * <p>
+     * See {@link #create(java.lang.String, int, com.offbynull.actors.core.checkpoint.Checkpointer, java.util.function.Supplier, int) }
+     * for details on the other parameters.
+     * @param prefix address prefix to use for actors that get added to this runner
+     * @param threadCount number of threads to use for this runner
+     * @param checkpointer checkpointer
+     * @param busFactory factory that creates the bus each thread reads its incoming messages from
+     * @param quantum maximum number of messages an actor processes before the next actor on the same thread gets a turn
+     * @param passivationPolicy policy that decides when actors get passivated (applied to each thread separately)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code threadCount < 1 || quantum < 1}, or if {@code busFactory} creates a {@link BoundedBus}
+     * that uses {@link OverflowPolicy#BLOCK}
+     * @return new actor runner
+     */
+    public static ActorRunner create(String prefix, int threadCount, Checkpointer checkpointer, Supplier<Bus> busFactory,
+            int quantum, PassivationPolicy passivationPolicy) {
         Validate.notNull(prefix);
         Validate.notNull(checkpointer);
+        Validate.notNull(busFactory);
+        Validate.notNull(passivationPolicy);
         Validate.isTrue(threadCount > 0);
+        Validate.isTrue(quantum > 0);
 
         ActorRunner ret = new ActorRunner(prefix, threadCount);
-        
-        // Handler to call if any of the threads encounter a problem while they're running. If any thread encounters a critical error, then
-        // all threads must be shut down!
-        Runnable criticalFailureHandler = () -> {
-            LOG.error("Critical failure handler invoked! Signalling all threads to close.");
-            
-            for (ActorThread thread : ret.threads) {
-                // Wrap in try catch just to be safe... we want to make sure close is called on every thread.
-                try {
-                    thread.close();
-                } catch (RuntimeException e) {
-                    LOG.error("Error signalling thread to close", e);
-                }
-            }
-        };
+        Runnable criticalFailureHandler = ret.createCriticalFailureHandler();
         
         // Start threads
         try {
             for (int i = 0; i < threadCount; i++) {
-                ret.threads[i] = ActorThread.create(prefix, ret.shuttle, criticalFailureHandler, ret, checkpointer);
+                Bus bus = busFactory.get();
+                if (bus instanceof BoundedBus && ((BoundedBus) bus).getOverflowPolicy() == OverflowPolicy.BLOCK) {
+                    bus.close();
+                    throw new IllegalArgumentException("Blocking bus not allowed: runner threads write to each other's buses");
+                }
+                ret.executors[i] = ActorThread.create(prefix, ret.shuttle, criticalFailureHandler, ret, checkpointer, bus, quantum, i,
+                        passivationPolicy);
             }
         } catch (RuntimeException e) {
             // A problem happened while creating new threads... shut down any threads that were created.
-            for (ActorThread thread : ret.threads) {
-                if (thread != null) {
-                    thread.close(); // Signal shutdown, but don't wait until thread actually stops before returning
+            for (ActorExecutor executor : ret.executors) {
+                if (executor != null) {
+                    executor.close(); // Signal shutdown, but don't wait until thread actually stops before returning
                 }
             }
             
@@ -145,15 +213,95 @@ public final class ActorRunner implements AutoCloseable {
         
         return ret;
     }
-    
-    private ActorRunner(String prefix, int threadCount) {
+
+    /**
+     * Create an {@link ActorRunner} instance that uses work-stealing to execute actors. Equivalent to calling
+     * {@code ActorRunner.createWorkStealing(prefix, threadCount, new NullCheckpointer())}.
+     * @param prefix address prefix to use for actors that get added to this runner
+     * @param threadCount number of threads to use for this runner
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code threadCount < 1}
+     * @return new actor runner
+     */
+    public static ActorRunner createWorkStealing(String prefix, int threadCount) {
+        return ActorRunner.createWorkStealing(prefix, threadCount, new NullCheckpointer());
+    }
+
+    /**
+     * Create an {@link ActorRunner} instance that uses work-stealing to execute actors. Equivalent to calling
+     * {@code ActorRunner.createWorkStealing(prefix, threadCount, checkpointer, 64)}.
+     * @param prefix address prefix to use for actors that get added to this runner
+     * @param threadCount number of threads to use for this runner
+     * @param checkpointer checkpointer
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code threadCount < 1}
+     * @return new actor runner
+     */
+    public static ActorRunner createWorkStealing(String prefix, int threadCount, Checkpointer checkpointer) {
+        return ActorRunner.createWorkStealing(prefix, threadCount, checkpointer, DEFAULT_QUANTUM);
+    }
+
+    /**
+     * Create an {@link ActorRunner} instance that uses work-stealing to execute actors.
+     * <p>
+     * Runners created via {@link #create(java.lang.String, int, com.offbynull.actors.core.checkpoint.Checkpointer) } pin each actor to
+     * one thread based on a hash of its id. If a handful of busy actors end up on the same thread, that thread backs up while the others
+     * sit idle. Runners created via this method instead give each actor its own mailbox and run actors with waiting messages on whatever
+     * thread is free. Each actor is still only ever executed by one thread at a time.
+     * @param prefix address prefix to use for actors that get added to this runner
+     * @param threadCount number of threads to use for this runner
+     * @param checkpointer checkpointer
+     * @param quantum maximum number of messages an actor processes before giving up its thread to other actors
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code threadCount < 1 || quantum < 1}
+     * @return new actor runner
+     */
+    public static ActorRunner createWorkStealing(String prefix, int threadCount, Checkpointer checkpointer, int quantum) {
         Validate.notNull(prefix);
+        Validate.notNull(checkpointer);
         Validate.isTrue(threadCount > 0);
+        Validate.isTrue(quantum > 0);
+
+        // A single executor backs the runner, so RunnerShuttle routes every message to it
+        ActorRunner ret = new ActorRunner(prefix, 1);
+        Runnable criticalFailureHandler = ret.createCriticalFailureHandler();
+        ret.executors[0] = new WorkStealingExecutor(
+                prefix,
+                threadCount,
+                quantum,
+                ret.shuttle,
+                criticalFailureHandler,
+                ret,
+                checkpointer);
+
+        return ret;
+    }
+    
+    private ActorRunner(String prefix, int executorCount) {
+        Validate.notNull(prefix);
+        Validate.isTrue(executorCount > 0);
         
         this.prefix = prefix;
-        this.threads = new ActorThread[threadCount];
+        this.executors = new ActorExecutor[executorCount];
         this.shuttle = new RunnerShuttle();
     }
+
+    private Runnable createCriticalFailureHandler() {
+        // Handler to call if any of the threads encounter a problem while they're running. If any thread encounters a critical error, then
+        // all threads must be shut down!
+        return () -> {
+            LOG.error("Critical failure handler invoked! Signalling all threads to close.");
+            
+            for (ActorExecutor executor : executors) {
+                // Wrap in try catch just to be safe... we want to make sure close is called on every thread.
+                try {
+                    executor.close();
+                } catch (RuntimeException e) {
+                    LOG.error("Error signalling thread to close", e);
+                }
+            }
+        };
+    }
     
     /**
      * Shuts down this runner. Blocks until the internal threads that execute actors terminate before returning.
@@ -162,13 +310,13 @@ public final class ActorRunner implements AutoCloseable {
     @Override
     public void close() throws InterruptedException {
         // Signal threads to close
-        for (ActorThread thread : threads) {
-            thread.close();
+        for (ActorExecutor executor : executors) {
+            executor.close();
         }
         
         // Wait until threads are closed, throws interrupted exception
-        for (ActorThread thread : threads) {
-            thread.join();
+        for (ActorExecutor executor : executors) {
+            executor.join();
         }
     }
 
@@ -177,11 +325,25 @@ public final class ActorRunner implements AutoCloseable {
      * @throws InterruptedException if interrupted while waiting
      */
     public void join() throws InterruptedException {
-        for (ActorThread thread : threads) {
-            thread.join();
+        for (ActorExecutor executor : executors) {
+            executor.join();
         }
     }
     
+    /**
+     * Get the number of messages waiting to be processed by each actor in this runner. Use this to find actors that are hogging threads.
+     * <p>
+     * The returned map is a snapshot -- it isn't updated as messages get processed. Actors that have nothing waiting aren't included.
+     * @return actor id to number of messages waiting
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        for (ActorExecutor executor : executors) {
+            executor.collectQueueDepths(depths);
+        }
+        return depths;
+    }
+    
     /**
      * Get the shuttle used to receive messages.
      * @return shuttle for incoming messages to this runner
@@ -203,7 +365,7 @@ public final class ActorRunner implements AutoCloseable {
      * @throws NullPointerException if any argument is {@code null} or contains {@code null}
      */
     public void addActor(String id, Coroutine actor, Object... primingMessages) {
-        mapIdToActorThread(id).addActor(id, actor, primingMessages);
+        mapIdToExecutor(id).addActor(id, actor, primingMessages);
     }
 
     /**
@@ -218,7 +380,7 @@ public final class ActorRunner implements AutoCloseable {
      * @throws NullPointerException if any argument is {@code null}
      */
     public void removeActor(String id) {
-        mapIdToActorThread(id).removeActor(id);
+        mapIdToExecutor(id).removeActor(id);
     }
 
     /**
@@ -235,8 +397,8 @@ public final class ActorRunner implements AutoCloseable {
      * @throws NullPointerException if any argument is {@code null}
      */
     public void addOutgoingShuttle(Shuttle shuttle) {
-        for (ActorThread thread : threads) {
-            thread.addOutgoingShuttle(shuttle);
+        for (ActorExecutor executor : executors) {
+            executor.addOutgoingShuttle(shuttle);
         }
     }
 
@@ -253,19 +415,23 @@ public final class ActorRunner implements AutoCloseable {
      * @throws NullPointerException if any argument is {@code null}
      */
     public void removeOutgoingShuttle(String prefix) {
-        for (ActorThread thread : threads) {
-            thread.removeOutgoingShuttle(prefix);
+        for (ActorExecutor executor : executors) {
+            executor.removeOutgoingShuttle(prefix);
         }
     }
     
-    private ActorThread mapIdToActorThread(String id) {
+    private ActorExecutor mapIdToExecutor(String id) {
         int idx = mapIdToIndex(id);
-        return threads[idx];
+        return executors[idx];
+    }
+
+    ActorExecutor getExecutor(int idx) {
+        return executors[idx];
     }
 
-    private int mapIdToIndex(String id) {
+    int mapIdToIndex(String id) {
         // hash may be negative, so modding hash value may return negative value... so make sure to get absolute value
-        return Math.abs(fnv1a32Hash(id) % threads.length);
+        return Math.abs(fnv1a32Hash(id) % executors.length);
     }
     
     // http://programmers.stackexchange.com/questions/49550/which-hashing-algorithm-is-best-for-uniqueness-and-speed
@@ -275,9 +441,27 @@ public final class ActorRunner implements AutoCloseable {
         final long fnvPrime = 116777619L;
         final long fnvOffsetBasis = 2166136261L;
         
+        long hash = fnvOffsetBasis;
+        
+        // Fast path: ids are almost always ASCII, in which case each char is its own UTF-8 byte and there's no need to encode in to a new
+        // byte array
+        boolean ascii = true;
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            if (ch >= 0x80) {
+                ascii = false;
+                break;
+            }
+            hash ^= (long) ch;
+            hash *= fnvPrime;
+        }
+        if (ascii) {
+            return (int) (hash & 0xFFFFFFFFL);
+        }
+        
         byte[] data = str.getBytes(Charsets.UTF_8);
         
-        long hash = fnvOffsetBasis;
+        hash = fnvOffsetBasis;
         for (byte b : data) {
             hash ^= (long) (b & 0xFF); // FROM WIKIPEDIA: In the above pseudocode, all variables are unsigned integers. All variables,
                                        // except for byte_of_data, have the same number of bits as the FNV hash. The variable, byte_of_data,
@@ -302,12 +486,10 @@ public final class ActorRunner implements AutoCloseable {
             Validate.noNullElements(messages);
 
 
-            List<Message>[] threadMessagesList = new List[threads.length];
-            for (int i = 0; i < threads.length; i++) {
-                threadMessagesList[i] = new ArrayList<>(messages.size());
-            }
-            
-            messages.stream().forEach(x -> {
+            // Lists are only created for threads that actually have messages going to them -- a batch (e.g. a set of timers that expired
+            // together) is often much larger than the number of threads, but only touches a handful of them
+            List<Message>[] threadMessagesList = new List[executors.length];
+            for (Message x : messages) {
                 try {
                     Address dst = x.getDestinationAddress();
                     String dstPrefix = dst.getElement(0);
@@ -316,20 +498,25 @@ public final class ActorRunner implements AutoCloseable {
                     String id = dst.getElement(1);
                     int idx = mapIdToIndex(id);
 
-                    threadMessagesList[idx].add(x);
+                    List<Message> threadMessages = threadMessagesList[idx];
+                    if (threadMessages == null) {
+                        threadMessages = new ArrayList<>();
+                        threadMessagesList[idx] = threadMessages;
+                    }
+                    threadMessages.add(x);
                 } catch (Exception e) {
                     LOG.error("Error mapping message to thread: " + x, e);
                 }
-            });
+            }
 
-            for (int i = 0; i < threads.length; i++) {
+            for (int i = 0; i < executors.length; i++) {
                 List<Message> threadMessages = threadMessagesList[i];
-                if (threadMessages.isEmpty()) {
+                if (threadMessages == null) {
                     continue;
                 }
                 
                 LOG.debug("Shuttling {} messages to thread {}", threadMessages.size(), i);
-                threads[i].getIncomingShuttle().send(threadMessages);
+                executors[i].getIncomingShuttle().send(threadMessages);
             }
         }
     }
@@ -19,12 +19,13 @@ package com.offbynull.actors.core.actor;
 import com.offbynull.coroutines.user.Coroutine;
 import com.offbynull.actors.core.shuttle.Shuttle;
 import com.offbynull.actors.core.shuttles.simple.Bus;
+import java.util.Map;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.offbynull.actors.core.checkpoint.Checkpointer;
 
-final class ActorThread {
+final class ActorThread implements ActorExecutor {
     private static final Logger LOG = LoggerFactory.getLogger(ActorThread.class);
     
     private final Thread thread;
@@ -47,16 +48,21 @@ final class ActorThread {
             Shuttle selfShuttle,
             Runnable failureHandler,
             ActorRunner owner,
-            Checkpointer checkpointer) {
+            Checkpointer checkpointer,
+            Bus bus,
+            int quantum,
+            int index,
+            PassivationPolicy passivationPolicy) {
         Validate.notNull(prefix);
         Validate.notNull(selfShuttle);
         Validate.notNull(failureHandler);
         Validate.notNull(owner);
         Validate.notNull(checkpointer);
+        Validate.notNull(bus);
+        Validate.notNull(passivationPolicy);
         
         // create runnable
-        Bus bus = new Bus();
-        ActorRunnable runnable = new ActorRunnable(prefix, bus, failureHandler, owner, checkpointer);
+        ActorRunnable runnable = new ActorRunnable(prefix, bus, failureHandler, owner, checkpointer, quantum, index, passivationPolicy);
 
         // add in our own shuttle as well so we can send msgs to ourselves
         bus.add(new AddShuttle(selfShuttle));
@@ -72,6 +78,7 @@ final class ActorThread {
     }
 
     // singals close, but doesn't wait for the the thread to die... use join for that
+    @Override
     public void close() {
         try {
             bus.close();
@@ -86,14 +93,17 @@ final class ActorThread {
         }
     }
 
+    @Override
     public void join() throws InterruptedException {
         thread.join();
     }
     
+    @Override
     public Shuttle getIncomingShuttle() {
         return runnable.getIncomingShuttle();
     }
 
+    @Override
     public void addActor(String id, Coroutine coroutine, Object... primingMessages) {
         Validate.notNull(id);
         Validate.notNull(coroutine);
@@ -102,19 +112,28 @@ final class ActorThread {
         runnable.addActor(id, coroutine, primingMessages);
     }
 
+    @Override
     public void removeActor(String id) {
         Validate.notNull(id);
         runnable.removeActor(id);
     }
 
+    @Override
     public void addOutgoingShuttle(Shuttle shuttle) {
         Validate.notNull(shuttle);
         runnable.addOutgoingShuttle(shuttle);
     }
 
+    @Override
     public void removeOutgoingShuttle(String prefix) {
         Validate.notNull(prefix);
         runnable.removeOutgoingShuttle(prefix);
     }
+
+    @Override
+    public void collectQueueDepths(Map<String, Integer> depths) {
+        Validate.notNull(depths);
+        runnable.collectQueueDepths(depths);
+    }
     
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.actor;
+
+import java.time.Duration;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Policy that decides when an {@link ActorRunner} automatically checkpoints actors and removes them from memory (passivation).
+ * <p>
+ * Without a passivation policy, actors only leave memory when they explicitly request a checkpoint. With one, each of the runner's
+ * threads passivates the actors it holds that...
+ * <ul>
+ * <li>haven't processed a message in at least {@link #getIdleTimeout() } (if set), and</li>
+ * <li>are the least recently used once the thread is holding more than {@link #getMaxResidentActors() } actors (if set).</li>
+ * </ul>
+ * Passivated actors are saved through the runner's {@link com.offbynull.actors.core.checkpoint.Checkpointer} and transparently restored
+ * the next time a message arrives for them. No restore logic is run for passivated actors -- they resume exactly where they left off. If
+ * the checkpointer refuses to save an actor, that actor stays in memory.
+ * <p>
+ * Actors being passivated must be serializable by the checkpointer, just as they would need to be for explicit checkpointing.
+ * <p>
+ * This class is immutable.
+ * @author Kasra Faghihi
+ */
+public final class PassivationPolicy {
+
+    private static final PassivationPolicy DISABLED = new PassivationPolicy(null, Integer.MAX_VALUE);
+
+    private final Duration idleTimeout;
+    private final int maxResidentActors;
+
+    /**
+     * Get a policy that never passivates actors.
+     * @return policy that never passivates
+     */
+    public static PassivationPolicy disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Get a policy that passivates actors that have been idle for some amount of time. Equivalent to calling
+     * {@code PassivationPolicy.create(idleTimeout, Integer.MAX_VALUE)}.
+     * @param idleTimeout amount of time an actor can go without processing a message before it gets passivated
+     * @return new passivation policy
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code idleTimeout} isn't positive
+     */
+    public static PassivationPolicy idle(Duration idleTimeout) {
+        return create(idleTimeout, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get a policy that passivates the least recently used actors whenever a thread holds more than some number of actors in memory.
+     * @param maxResidentActors maximum number of actors each thread keeps in memory
+     * @return new passivation policy
+     * @throws IllegalArgumentException if {@code maxResidentActors < 1}
+     */
+    public static PassivationPolicy budget(int maxResidentActors) {
+        Validate.isTrue(maxResidentActors > 0);
+        return new PassivationPolicy(null, maxResidentActors);
+    }
+
+    /**
+     * Get a policy that passivates both actors that have been idle for some amount of time and the least recently used actors whenever a
+     * thread holds more than some number of actors in memory.
+     * @param idleTimeout amount of time an actor can go without processing a message before it gets passivated
+     * @param maxResidentActors maximum number of actors each thread keeps in memory ({@link Integer#MAX_VALUE} for no limit)
+     * @return new passivation policy
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code idleTimeout} isn't positive, or if {@code maxResidentActors < 1}
+     */
+    public static PassivationPolicy create(Duration idleTimeout, int maxResidentActors) {
+        Validate.notNull(idleTimeout);
+        Validate.isTrue(!idleTimeout.isNegative() && !idleTimeout.isZero());
+        Validate.isTrue(maxResidentActors > 0);
+        return new PassivationPolicy(idleTimeout, maxResidentActors);
+    }
+
+    private PassivationPolicy(Duration idleTimeout, int maxResidentActors) {
+        this.idleTimeout = idleTimeout;
+        this.maxResidentActors = maxResidentActors;
+    }
+
+    /**
+     * Get the amount of time an actor can go without processing a message before it gets passivated.
+     * @return idle timeout, or {@code null} if actors aren't passivated for being idle
+     */
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Get the maximum number of actors each thread keeps in memory.
+     * @return maximum number of resident actors per thread, or {@link Integer#MAX_VALUE} if there's no limit
+     */
+    public int getMaxResidentActors() {
+        return maxResidentActors;
+    }
+
+    boolean isEnabled() {
+        return idleTimeout != null || maxResidentActors != Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "PassivationPolicy{" + "idleTimeout=" + idleTimeout + ", maxResidentActors=" + maxResidentActors + '}';
+    }
+}
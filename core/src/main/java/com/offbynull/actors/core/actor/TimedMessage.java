@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.actor;
+
+import com.offbynull.actors.core.shuttle.Message;
+import org.apache.commons.lang3.Validate;
+
+// A timer that's come due, on its way through the actor's mailbox. Only delivered if its group hasn't been cancelled by the time the
+// actor gets to it.
+final class TimedMessage {
+    private final TimerGroup group;
+    private final Message message;
+
+    public TimedMessage(TimerGroup group, Message message) {
+        Validate.notNull(group);
+        Validate.notNull(message);
+        this.group = group;
+        this.message = message;
+    }
+
+    public TimerGroup getGroup() {
+        return group;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "TimedMessage{" + "message=" + message + '}';
+    }
+}
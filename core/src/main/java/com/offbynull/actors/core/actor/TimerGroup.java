@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.actor;
+
+// Timers set through Context.schedule() by a single incarnation of an actor -- from the time it's added until it's removed or shuts down.
+// Passivating and restoring the actor doesn't start a new incarnation, so its timers carry on. Once the incarnation ends the group gets
+// cancelled, and any of its timers that come due afterwards are dropped rather than restoring an actor that no longer exists or being
+// delivered to a new actor that was added with the same id.
+//
+// Only ever touched by whichever thread is running the actor.
+final class TimerGroup {
+    private boolean cancelled;
+    private int pending;
+
+    void add() {
+        pending++;
+    }
+
+    // returns true if there are no timers left in this group
+    boolean remove() {
+        pending--;
+        return pending == 0;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.actor;
+
+import com.offbynull.actors.core.checkpoint.Checkpointer;
+import com.offbynull.actors.core.context.BatchedCreateActorCommand;
+import com.offbynull.actors.core.context.BatchedOutgoingMessage;
+import com.offbynull.actors.core.context.BatchedScheduledMessage;
+import com.offbynull.actors.core.context.Context.CheckpointRestoreLogic;
+import static com.offbynull.actors.core.context.Context.SuspendFlag.RELEASE;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.shuttle.Address;
+import com.offbynull.actors.core.shuttle.Message;
+import com.offbynull.actors.core.shuttle.Shuttle;
+import com.offbynull.coroutines.user.Coroutine;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Executes actors on a work-stealing pool rather than pinning each actor to a thread. Every actor gets its own mailbox (a cell), and a
+// cell is submitted to the pool whenever it goes from having nothing to do to having messages waiting. A cell is only ever submitted
+// once at a time, which is what keeps each actor single-threaded. Once a cell has processed a batch of messages, it resubmits itself to
+// the back of the pool's queue if more are waiting so that a busy actor can't hog a worker.
+//
+// Actors don't have a thread of their own here, so timers set through Context.schedule() are held by a single scheduler thread that
+// delivers them straight in to the actor's cell when they come due. The cell drops them if the actor that set them has since been removed
+// or shut down (see TimerGroup).
+final class WorkStealingExecutor implements ActorExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkStealingExecutor.class);
+
+    private final String prefix;
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService scheduler;
+    private final Runnable failHandler;
+    private final ActorRunner owner;
+    private final Checkpointer checkpointer;
+    private final int quantum;
+
+    private final ConcurrentHashMap<String, ActorCell> cells; // id -> cell
+    private final ConcurrentHashMap<String, TimerGroup> timerGroups; // id -> timers set by the actor's current incarnation -- an entry is
+                                                                      // only ever touched by the thread running that actor's cell
+    private final ConcurrentHashMap<String, Shuttle> outgoingShuttles; // prefix -> shuttle
+    private final Shuttle incomingShuttle;
+    private final AtomicBoolean closed;
+
+    WorkStealingExecutor(
+            String prefix,
+            int threadCount,
+            int quantum,
+            Shuttle selfShuttle,
+            Runnable failHandler,
+            ActorRunner owner,
+            Checkpointer checkpointer) {
+        Validate.notNull(prefix);
+        Validate.notNull(selfShuttle);
+        Validate.notNull(failHandler);
+        Validate.notNull(owner);
+        Validate.notNull(checkpointer);
+        Validate.notEmpty(prefix);
+        Validate.isTrue(threadCount > 0);
+        Validate.isTrue(quantum > 0);
+
+        this.prefix = prefix;
+        this.failHandler = failHandler;
+        this.owner = owner;
+        this.checkpointer = checkpointer;
+        this.quantum = quantum;
+
+        this.cells = new ConcurrentHashMap<>();
+        this.timerGroups = new ConcurrentHashMap<>();
+        this.outgoingShuttles = new ConcurrentHashMap<>();
+        this.incomingShuttle = new CellShuttle();
+        this.closed = new AtomicBoolean();
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.pool = new ForkJoinPool(
+                threadCount,
+                p -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    thread.setDaemon(true);
+                    thread.setName(WorkStealingExecutor.class.getSimpleName() + "-" + threadCounter.getAndIncrement());
+                    return thread;
+                },
+                null,
+                true); // async mode -- FIFO for tasks that are never joined, which is what cells are
+
+        ScheduledThreadPoolExecutor scheduledPool = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, WorkStealingExecutor.class.getSimpleName() + "-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduledPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler = scheduledPool;
+
+        // add in our own shuttle as well so we can send msgs to ourselves
+        outgoingShuttles.put(selfShuttle.getPrefix(), selfShuttle);
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            scheduler.shutdownNow();
+        } catch (RuntimeException e) {
+            LOG.error("Error shutting down scheduler", e);
+        }
+
+        try {
+            pool.shutdownNow();
+        } catch (RuntimeException e) {
+            LOG.error("Error shutting down pool", e);
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        while (!pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS)) {
+            // keep waiting
+        }
+    }
+
+    @Override
+    public Shuttle getIncomingShuttle() {
+        return incomingShuttle;
+    }
+
+    @Override
+    public void addActor(String id, Coroutine coroutine, Object... primingMessages) {
+        Validate.notNull(id);
+        Validate.notNull(coroutine);
+        Validate.notNull(primingMessages);
+        Validate.noNullElements(primingMessages);
+        deliver(id, new AddActor(id, coroutine, primingMessages));
+    }
+
+    @Override
+    public void removeActor(String id) {
+        Validate.notNull(id);
+        deliver(id, new RemoveActor(id));
+    }
+
+    @Override
+    public void collectQueueDepths(Map<String, Integer> depths) {
+        Validate.notNull(depths);
+        for (ActorCell cell : cells.values()) {
+            int depth = cell.depth.get();
+            if (depth > 0) {
+                depths.merge(cell.id, depth, Integer::sum);
+            }
+        }
+    }
+
+    @Override
+    public void addOutgoingShuttle(Shuttle shuttle) {
+        Validate.notNull(shuttle);
+        Validate.notNull(shuttle.getPrefix()); // sanity check
+        Shuttle existingShuttle = outgoingShuttles.putIfAbsent(shuttle.getPrefix(), shuttle);
+        if (existingShuttle != null) {
+            // unable to add a prefix for a shuttle that already exists
+            LOG.error("Shuttle with prefix already exists: {}", shuttle.getPrefix());
+            fail();
+        }
+    }
+
+    @Override
+    public void removeOutgoingShuttle(String prefix) {
+        Validate.notNull(prefix);
+        Shuttle existingShuttle = outgoingShuttles.remove(prefix);
+        if (existingShuttle == null) {
+            // unable to remove a shuttle prefix that doesnt exist
+            LOG.error("Shuttle with prefix doesn't exist: {}", prefix);
+            fail();
+        }
+    }
+
+    private void fail() {
+        // Invoke critical failure handler
+        try {
+            failHandler.run();
+        } catch (RuntimeException innerRe) {
+            LOG.error("Handler failed", innerRe);
+        }
+    }
+
+    private void deliver(String id, Object item) {
+        if (closed.get()) {
+            LOG.debug("Item incoming to closed executor: {}", item);
+            return;
+        }
+
+        // Enqueue inside compute() so that a cell that's in the middle of retiring itself either sees this item (and stays) or is gone
+        // from the map (and a new cell gets created)
+        ActorCell cell = cells.compute(id, (k, existing) -> {
+            ActorCell ret = existing == null ? new ActorCell(k) : existing;
+            ret.mailbox.add(item);
+            ret.depth.incrementAndGet();
+            return ret;
+        });
+
+        cell.schedule();
+    }
+
+    private final class CellShuttle implements Shuttle {
+
+        @Override
+        public String getPrefix() {
+            return prefix;
+        }
+
+        @Override
+        public void send(Collection<Message> messages) {
+            Validate.notNull(messages);
+            Validate.noNullElements(messages);
+
+            for (Message message : messages) {
+                try {
+                    Address dst = message.getDestinationAddress();
+                    Validate.isTrue(dst.size() >= 2); // sanity check
+                    Validate.isTrue(dst.getElement(0).equals(prefix)); // sanity check
+
+                    deliver(dst.getElement(1), message);
+                } catch (RuntimeException e) {
+                    LOG.error("Error delivering message: " + message, e);
+                }
+            }
+        }
+    }
+
+    private final class ActorCell implements Runnable {
+        private final String id;
+        private final Address self;
+        private final Queue<Object> mailbox;
+        private final AtomicBoolean scheduled;
+        private final AtomicInteger depth;
+        private SourceContext context; // only ever touched by the thread currently running this cell
+
+        ActorCell(String id) {
+            this.id = id;
+            this.self = Address.of(prefix, id);
+            this.mailbox = new ConcurrentLinkedQueue<>();
+            this.scheduled = new AtomicBoolean();
+            this.depth = new AtomicInteger();
+        }
+
+        void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                pool.execute(this);
+            } catch (RejectedExecutionException ree) {
+                LOG.debug("Pool rejected cell {} -- executor closed", self);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<Message> outgoingMessages = new ArrayList<>();
+
+                Object item;
+                int processed = 0;
+                while (processed < quantum && (item = mailbox.poll()) != null) {
+                    depth.decrementAndGet();
+                    if (item instanceof Message) {
+                        Message incomingMessage = (Message) item;
+                        processNormalMessage(
+                                incomingMessage.getMessage(),
+                                incomingMessage.getSourceAddress(),
+                                incomingMessage.getDestinationAddress(),
+                                outgoingMessages);
+                    } else if (item instanceof TimedMessage) {
+                        processTimedMessage((TimedMessage) item, outgoingMessages);
+                    } else {
+                        processManagementMessage(item, outgoingMessages);
+                    }
+                    processed++;
+                }
+
+                sendOutgoingMessages(outgoingMessages);
+
+                // If the actor isn't in memory and there's nothing waiting, remove the cell so it doesn't hang around forever
+                if (context == null && mailbox.isEmpty()) {
+                    boolean[] retired = new boolean[1];
+                    cells.computeIfPresent(id, (k, existing) -> {
+                        if (existing == this && mailbox.isEmpty()) {
+                            retired[0] = true;
+                            return null;
+                        }
+                        return existing;
+                    });
+                    if (retired[0]) {
+                        return; // leave scheduled flag set -- nothing can reach this cell anymore
+                    }
+                }
+
+                scheduled.set(false);
+                if (!mailbox.isEmpty()) {
+                    schedule();
+                }
+            } catch (RuntimeException re) {
+                LOG.error("Internal error encountered", re);
+                fail();
+            }
+        }
+
+        private void processManagementMessage(Object msg, List<Message> outgoingMessages) {
+            LOG.debug("Processing management message: {}" , msg);
+            if (msg instanceof AddActor) {
+                AddActor aam = (AddActor) msg;
+                Validate.isTrue(context == null); // unable to add a actor with id that already exists
+
+                CoroutineRunner actorRunner = new CoroutineRunner(aam.getActor());
+                SourceContext ctx = new SourceContext(actorRunner, self);
+                actorRunner.setContext(ctx.toNormalContext());
+                context = ctx;
+                cancelTimers(); // new incarnation -- nothing left behind by a previous actor with this id should reach it
+
+                // Feed priming messages in right away -- going back through deliver() would put them behind anything already waiting
+                for (Object primingMessage : aam.getPrimingMessages()) {
+                    processNormalMessage(primingMessage, self, self, outgoingMessages);
+                }
+            } else if (msg instanceof RemoveActor) {
+                cancelTimers();
+                Validate.isTrue(context != null); // unable to remove a actor that doesnt exist
+                context = null;
+            } else {
+                LOG.warn("No handler for management message: {}", msg);
+            }
+        }
+
+        private void processTimedMessage(TimedMessage timedMessage, List<Message> outgoingMessages) {
+            TimerGroup group = timedMessage.getGroup();
+            if (group.remove()) {
+                timerGroups.remove(id, group); // no-op if cancelled, it's already been removed
+            }
+
+            if (group.isCancelled()) {
+                LOG.debug("Dropping timer set by previous incarnation of {}: {}", self, timedMessage);
+                return;
+            }
+
+            Message message = timedMessage.getMessage();
+            processNormalMessage(message.getMessage(), message.getSourceAddress(), message.getDestinationAddress(), outgoingMessages);
+        }
+
+        private void cancelTimers() {
+            TimerGroup group = timerGroups.remove(id);
+            if (group != null) {
+                group.cancel();
+            }
+        }
+
+        private void processNormalMessage(Object msg, Address src, Address dst, List<Message> outgoingMessages) {
+            SourceContext ctx = context;
+            if (ctx == null) {
+                LOG.warn("Actor not found in memory for {} (dst={} msg={})", self, dst, msg);
+                ctx = checkpointer.restore(self);
+
+                if (ctx == null) {
+                    LOG.warn("Actor not found in checkpoint for {}", self);
+                    return;
+                }
+
+                LOG.debug("Actor found in checkpoint: id={}", self);
+                context = ctx;
+
+                // Get restore logic to perform -- passivated actors don't have any
+                CheckpointRestoreLogic restoreLogic = ctx.checkpoint();
+
+                // Reset restored context state
+                ctx.copyAndClearOutgoingMessages();
+                ctx.copyAndClearScheduledMessages();
+                ctx.checkpoint(null);
+                ctx.mode(RELEASE);
+
+                // Perform restore logic
+                if (restoreLogic != null) {
+                    restoreLogic.perform(ctx);
+                }
+            }
+
+            boolean shutdown = SourceContext.fire(ctx, src, dst, Instant.now(), msg);
+
+            // Queue up new actors
+            List<BatchedCreateActorCommand> batchedCreateActorCommands = new ArrayList<>();
+            ctx.drainNewRoots(batchedCreateActorCommands);
+            for (BatchedCreateActorCommand batchedCreateActorCommand : batchedCreateActorCommands) {
+                owner.addActor(
+                        batchedCreateActorCommand.getId(),
+                        batchedCreateActorCommand.getActor(),
+                        batchedCreateActorCommand.getPrimingMessages());
+            }
+
+            // Queue up outgoing messages
+            List<BatchedOutgoingMessage> batchedOutgoingMessages = new ArrayList<>();
+            ctx.drainOutgoingMessages(batchedOutgoingMessages);
+            for (BatchedOutgoingMessage batchedOutgoingMessage : batchedOutgoingMessages) {
+                outgoingMessages.add(new Message(
+                        batchedOutgoingMessage.getSource(),
+                        batchedOutgoingMessage.getDestination(),
+                        batchedOutgoingMessage.getMessage()));
+            }
+
+            // Queue up timers
+            List<BatchedScheduledMessage> batchedScheduledMessages = new ArrayList<>();
+            ctx.drainScheduledMessages(batchedScheduledMessages);
+            if (!batchedScheduledMessages.isEmpty()) {
+                TimerGroup group = timerGroups.computeIfAbsent(id, k -> new TimerGroup());
+                for (BatchedScheduledMessage batchedScheduledMessage : batchedScheduledMessages) {
+                    TimedMessage timedMessage = new TimedMessage(group, new Message(
+                            batchedScheduledMessage.getSource(),
+                            batchedScheduledMessage.getDestination(),
+                            batchedScheduledMessage.getMessage()));
+                    group.add();
+                    try {
+                        scheduler.schedule(() -> deliver(id, timedMessage), batchedScheduledMessage.getDelay(), TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException ree) {
+                        group.remove();
+                        LOG.debug("Scheduler rejected timer {} -- executor closed", timedMessage);
+                    }
+                }
+            }
+
+            // Checkpoint/delete only once the context has been drained -- the checkpointer may serialize it on another thread
+            if (shutdown) {
+                LOG.debug("Actor shut down {} -- removing from memory and removing from checkpoint", self);
+                checkpointer.delete(self);
+                context = null;
+                cancelTimers();
+            } else if (ctx.checkpoint() != null) {
+                LOG.debug("Actor requests checkpoint {} -- removing from memory and adding to checkpoint", self);
+                checkpointer.save(ctx);
+                context = null;
+            }
+        }
+
+        private void sendOutgoingMessages(List<Message> outgoingMessages) {
+            if (outgoingMessages.isEmpty()) {
+                return;
+            }
+
+            // Group outgoing messages by prefix -- messages to actors in this runner skip the runner's shuttle and go straight to the cell
+            Map<String, List<Message>> outgoingMap = new HashMap<>();
+            for (Message outgoingMessage : outgoingMessages) {
+                Address outDst = outgoingMessage.getDestinationAddress();
+                String outDstPrefix = outDst.getElement(0);
+                if (outDstPrefix.equals(prefix)) {
+                    if (outDst.size() < 2) {
+                        LOG.error("Error delivering message: {}", outgoingMessage);
+                    } else {
+                        deliver(outDst.getElement(1), outgoingMessage);
+                    }
+                    continue;
+                }
+                outgoingMap.computeIfAbsent(outDstPrefix, k -> new ArrayList<>()).add(outgoingMessage);
+            }
+
+            // Send outgoing messaged by prefix
+            for (Entry<String, List<Message>> entry : outgoingMap.entrySet()) {
+                Shuttle shuttle = outgoingShuttles.get(entry.getKey());
+                if (shuttle != null) {
+                    shuttle.send(entry.getValue());
+                }
+            }
+        }
+    }
+}
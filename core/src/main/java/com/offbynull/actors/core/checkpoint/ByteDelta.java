@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.checkpoint;
+
+import java.io.ByteArrayOutputStream;
+import org.apache.commons.lang3.Validate;
+
+// Binary diff between a base image and a newer version of it. The newer version is encoded as a sequence of ops that either copy a run of
+// bytes out of the base or insert literal bytes. Each op starts with a varint of (length << 1 | type), followed by a varint offset in to
+// the base for copies or the literal bytes themselves for inserts.
+//
+// Matches are found rsync-style: the base is indexed by a rolling hash of each BLOCK_SIZE-aligned block, and the new version is scanned
+// with the same rolling hash one byte at a time. Once a block matches, the match is stretched in both directions. Serialized contexts
+// tend to keep their layout between checkpoints, so a handful of changed fields turns in to a handful of short inserts between long copies.
+final class ByteDelta {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int HASH_MULTIPLIER = 31;
+    private static final int HASH_POWER; // HASH_MULTIPLIER ^ (BLOCK_SIZE - 1)
+    static {
+        int power = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            power *= HASH_MULTIPLIER;
+        }
+        HASH_POWER = power;
+    }
+
+    private static final int COPY = 0;
+    private static final int INSERT = 1;
+
+    private ByteDelta() {
+        // do nothing
+    }
+
+    static byte[] diff(byte[] base, byte[] data) {
+        Validate.notNull(base);
+        Validate.notNull(data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        if (base.length < BLOCK_SIZE || data.length < BLOCK_SIZE) {
+            writeInsert(out, data, 0, data.length);
+            return out.toByteArray();
+        }
+
+        // Index base blocks -- open addressing, slots hold offset + 1 so that 0 means empty, first block with a given hash wins
+        int blockCount = base.length / BLOCK_SIZE;
+        int tableSize = Integer.highestOneBit(blockCount * 2 - 1) << 1;
+        int mask = tableSize - 1;
+        int[] table = new int[tableSize];
+        for (int i = 0; i < blockCount; i++) {
+            int offset = i * BLOCK_SIZE;
+            int slot = spread(hash(base, offset)) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = offset + 1;
+        }
+
+        // Scan data
+        int literalStart = 0;
+        int pos = 0;
+        int h = hash(data, 0);
+        while (true) {
+            int matchOffset = find(table, mask, h, base, data, pos);
+            if (matchOffset != -1) {
+                // Stretch backwards in to the pending literal, then forwards as far as it goes
+                int start = pos;
+                int baseStart = matchOffset;
+                while (start > literalStart && baseStart > 0 && base[baseStart - 1] == data[start - 1]) {
+                    start--;
+                    baseStart--;
+                }
+                int end = pos + BLOCK_SIZE;
+                int baseEnd = matchOffset + BLOCK_SIZE;
+                while (end < data.length && baseEnd < base.length && base[baseEnd] == data[end]) {
+                    end++;
+                    baseEnd++;
+                }
+
+                writeInsert(out, data, literalStart, start - literalStart);
+                writeCopy(out, baseStart, end - start);
+                literalStart = end;
+                pos = end;
+
+                if (pos + BLOCK_SIZE > data.length) {
+                    break;
+                }
+                h = hash(data, pos);
+            } else {
+                if (pos + BLOCK_SIZE >= data.length) {
+                    break;
+                }
+                h = (h - data[pos] * HASH_POWER) * HASH_MULTIPLIER + data[pos + BLOCK_SIZE];
+                pos++;
+            }
+        }
+        writeInsert(out, data, literalStart, data.length - literalStart);
+
+        return out.toByteArray();
+    }
+
+    static byte[] apply(byte[] base, byte[] delta, int deltaOffset, int dataLength) {
+        Validate.notNull(base);
+        Validate.notNull(delta);
+        Validate.isTrue(deltaOffset >= 0 && deltaOffset <= delta.length);
+        Validate.isTrue(dataLength >= 0);
+
+        byte[] data = new byte[dataLength];
+        int dataPos = 0;
+        int[] deltaPos = new int[] {deltaOffset};
+        while (deltaPos[0] < delta.length) {
+            int header = readVarint(delta, deltaPos);
+            int type = header & 1;
+            int len = header >>> 1;
+            Validate.isTrue(len <= dataLength - dataPos, "Delta exceeds expected length");
+            if (type == COPY) {
+                int baseOffset = readVarint(delta, deltaPos);
+                Validate.isTrue(baseOffset >= 0 && len <= base.length - baseOffset, "Delta copy out of range of base");
+                System.arraycopy(base, baseOffset, data, dataPos, len);
+            } else {
+                Validate.isTrue(len <= delta.length - deltaPos[0], "Delta insert truncated");
+                System.arraycopy(delta, deltaPos[0], data, dataPos, len);
+                deltaPos[0] += len;
+            }
+            dataPos += len;
+        }
+        Validate.isTrue(dataPos == dataLength, "Delta shorter than expected length");
+
+        return data;
+    }
+
+    private static int find(int[] table, int mask, int h, byte[] base, byte[] data, int pos) {
+        int slot = spread(h) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int offset = entry - 1;
+            if (regionMatches(base, offset, data, pos)) {
+                return offset;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static boolean regionMatches(byte[] base, int baseOffset, byte[] data, int dataOffset) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            if (base[baseOffset + i] != data[dataOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] buffer, int offset) {
+        int h = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            h = h * HASH_MULTIPLIER + buffer[offset + i];
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h * 0x9E3779B9;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data, int offset, int len) {
+        if (len == 0) {
+            return;
+        }
+        writeVarint(out, (len << 1) | INSERT);
+        out.write(data, offset, len);
+    }
+
+    private static void writeCopy(ByteArrayOutputStream out, int baseOffset, int len) {
+        writeVarint(out, (len << 1) | COPY);
+        writeVarint(out, baseOffset);
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarint(byte[] buffer, int[] pos) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            Validate.isTrue(pos[0] < buffer.length, "Varint truncated");
+            int b = buffer[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+}
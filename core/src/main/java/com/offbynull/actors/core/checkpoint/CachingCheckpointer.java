@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.checkpoint;
+
+import com.offbynull.actors.core.context.Serializer;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.shuttle.Address;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Checkpointer} decorator that keeps recently saved actors in memory.
+ * <p>
+ * Saved actors are serialized on the calling thread and their serialized form is kept in a least-recently-used cache bounded by a byte
+ * budget. Restoring an actor that's in the cache unserializes it from memory rather than going to the wrapped checkpointer. Saves are
+ * written to the wrapped checkpointer in the background (write-behind) -- if an actor is saved again before its previous save has been
+ * written, only the latest one gets written. Cached actors that have been restored are also marked as restored in the wrapped checkpointer
+ * in the background, so that the wrapped checkpointer ends up in the same state it would've been in without the cache.
+ * <p>
+ * Entries that haven't been written to the wrapped checkpointer yet are never evicted, so the cache can temporarily go over budget if the
+ * wrapped checkpointer falls behind. Deletes and restores that miss the cache go to the wrapped checkpointer directly.
+ * <p>
+ * The context passed in to {@link #save(com.offbynull.actors.core.context.SourceContext) } is handed as-is to the wrapped checkpointer on
+ * a background thread, so the caller must not touch it afterwards. It's handed over along with its serialized form, so if the wrapped
+ * checkpointer was created with the same {@link Serializer} instance it won't have to serialize it again. Closing this checkpointer
+ * flushes all pending writes and closes the wrapped checkpointer.
+ * @author Kasra Faghihi
+ */
+public final class CachingCheckpointer implements Checkpointer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingCheckpointer.class);
+    
+    private static final Address STOP = Address.EMPTY; // tells the writer to stop (actors never have an empty address)
+    
+    private static final int ADDRESS_LOCK_COUNT = 64;
+
+    private final Checkpointer delegate;
+    private final Serializer serializer;
+    private final long maxBytes;
+    private final Object[] addressLocks; // striped by address, held while calling in to the wrapped checkpointer for an address -- acquire
+                                         // before this object's monitor
+    private final BlockingQueue<Address> writeQueue;
+    private final Thread writer;
+
+    // All fields below are guarded by this object's monitor
+    private final LinkedHashMap<Address, CacheEntry> cache; // access-ordered, eldest = least recently used
+    private long cachedBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private boolean closed;
+
+    /**
+     * Create a {@link CachingCheckpointer} object.
+     *
+     * @param delegate checkpointer to wrap
+     * @param serializer serializer used to keep cached actors in memory
+     * @param maxBytes maximum number of bytes of serialized actors to keep in memory
+     * @return new instance of {@link CachingCheckpointer}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code maxBytes < 0}
+     */
+    public static CachingCheckpointer create(Checkpointer delegate, Serializer serializer, long maxBytes) {
+        CachingCheckpointer checkpointer = new CachingCheckpointer(delegate, serializer, maxBytes);
+        checkpointer.writer.start();
+        return checkpointer;
+    }
+
+    private CachingCheckpointer(Checkpointer delegate, Serializer serializer, long maxBytes) {
+        Validate.notNull(delegate);
+        Validate.notNull(serializer);
+        Validate.isTrue(maxBytes >= 0L);
+        
+        this.delegate = delegate;
+        this.serializer = serializer;
+        this.maxBytes = maxBytes;
+        this.addressLocks = new Object[ADDRESS_LOCK_COUNT];
+        for (int i = 0; i < addressLocks.length; i++) {
+            addressLocks[i] = new Object();
+        }
+        this.writeQueue = new LinkedBlockingQueue<>();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        
+        this.writer = new Thread(this::writeLoop);
+        this.writer.setDaemon(true);
+        this.writer.setName(getClass().getSimpleName() + "-writer");
+    }
+
+    @Override
+    public boolean save(SourceContext ctx) {
+        Validate.notNull(ctx);
+        Validate.isTrue(ctx.isRoot());
+
+        return put(ctx, serializer.serialize(ctx));
+    }
+
+    @Override
+    public boolean save(SourceContext ctx, Serializer serializer, byte[] data) {
+        Validate.notNull(ctx);
+        Validate.notNull(serializer);
+        Validate.notNull(data);
+        Validate.isTrue(ctx.isRoot());
+
+        return put(ctx, serializer == this.serializer ? data : this.serializer.serialize(ctx));
+    }
+
+    private boolean put(SourceContext ctx, byte[] data) {
+        Address address = ctx.self();
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            
+            CacheEntry entry = cache.get(address);
+            if (entry == null) {
+                entry = new CacheEntry();
+                cache.put(address, entry);
+            } else {
+                cachedBytes -= entry.data.length;
+            }
+            entry.data = data;
+            entry.ctx = ctx;
+            entry.restored = false;
+            entry.delegateHasLatest = false;
+            entry.delegateRestored = false;
+            cachedBytes += data.length;
+            
+            queueWrite(address, entry);
+            evict();
+        }
+
+        return true;
+    }
+
+    @Override
+    public SourceContext restore(Address address) {
+        Validate.notNull(address);
+
+        byte[] data = restoreFromCache(address);
+        if (data == null) {
+            // Not in cache. Hold the address's lock so that the writer can't be in the middle of writing this address out, and check again
+            // in case something showed up in the meantime.
+            synchronized (lockFor(address)) {
+                data = restoreFromCache(address);
+                if (data == null) {
+                    synchronized (this) {
+                        if (closed || cache.containsKey(address)) {
+                            return null; // in cache but already restored
+                        }
+                        missCount++;
+                    }
+                    return delegate.restore(address);
+                }
+            }
+        }
+
+        try {
+            SourceContext ctx = serializer.unserialize(data);
+            Validate.isTrue(ctx.isRoot());
+            return ctx;
+        } catch (IllegalArgumentException iae) {
+            LOG.error("Unable to unserialize cached {}", address, iae);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean markRestored(Address address) {
+        Validate.notNull(address);
+
+        if (restoreFromCache(address) != null) {
+            return true;
+        }
+
+        synchronized (lockFor(address)) {
+            if (restoreFromCache(address) != null) {
+                return true;
+            }
+            synchronized (this) {
+                if (closed || cache.containsKey(address)) {
+                    return false; // in cache but already restored
+                }
+                missCount++;
+            }
+            return delegate.markRestored(address);
+        }
+    }
+
+    private synchronized byte[] restoreFromCache(Address address) {
+        if (closed) {
+            return null;
+        }
+        
+        CacheEntry entry = cache.get(address);
+        if (entry == null || entry.restored) {
+            return null;
+        }
+        
+        hitCount++;
+        entry.restored = true;
+        queueWrite(address, entry);
+        return entry.data;
+    }
+
+    @Override
+    public void delete(Address address) {
+        Validate.notNull(address);
+
+        synchronized (lockFor(address)) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                CacheEntry entry = cache.remove(address);
+                if (entry != null) {
+                    cachedBytes -= entry.data.length;
+                }
+            }
+            delegate.delete(address);
+        }
+    }
+
+    /**
+     * Get the number of restores served from the cache.
+     * @return cache hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get the number of restores that went to the wrapped checkpointer.
+     * @return cache miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Get the number of entries evicted to stay within the byte budget.
+     * @return eviction count
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Get the number of bytes of serialized actors currently held in memory.
+     * @return cached byte count
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    @Override
+    public void close() throws Exception {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        
+        writeQueue.add(STOP);
+        writer.join();
+        delegate.close();
+    }
+
+    private Object lockFor(Address address) {
+        return addressLocks[(address.hashCode() & 0x7FFFFFFF) % addressLocks.length];
+    }
+
+    // must be called while holding this object's monitor
+    private void queueWrite(Address address, CacheEntry entry) {
+        if (!entry.queued) {
+            entry.queued = true;
+            writeQueue.add(address);
+        }
+    }
+
+    // must be called while holding this object's monitor
+    private void evict() {
+        Iterator<CacheEntry> it = cache.values().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            CacheEntry entry = it.next();
+            if (entry.isSynced()) {
+                it.remove();
+                cachedBytes -= entry.data.length;
+                evictionCount++;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Address address;
+            try {
+                address = writeQueue.take();
+            } catch (InterruptedException ie) {
+                LOG.error("Writer interrupted -- pending writes will be lost");
+                return;
+            }
+            
+            // close() queues STOP after it stops accepting saves, so everything before it gets written out
+            if (address == STOP) {
+                return;
+            }
+            
+            try {
+                write(address);
+            } catch (RuntimeException re) {
+                LOG.error("Unable to write {}", address, re);
+            }
+        }
+    }
+    
+    private void write(Address address) {
+        synchronized (lockFor(address)) {
+            SourceContext ctx;
+            byte[] data;
+            boolean restored;
+            CacheEntry entry;
+            synchronized (this) {
+                entry = cache.get(address);
+                if (entry == null) {
+                    return; // deleted
+                }
+                entry.queued = false;
+                ctx = entry.delegateHasLatest ? null : entry.ctx;
+                data = entry.data;
+                restored = entry.restored && !entry.delegateRestored;
+            }
+            
+            // Nothing else can change the delegate's view of this address while its lock is held, but the entry itself can be updated by
+            // save()/restore() in the meantime -- those requeue it, so it's fine to just write out what was grabbed above.
+            boolean saved = false;
+            if (ctx != null) {
+                saved = delegate.save(ctx, serializer, data);
+                if (!saved) {
+                    // Entry stays unsynced, so it won't be evicted -- it'll be retried if it gets saved/restored again
+                    LOG.error("Wrapped checkpointer failed to save {}", address);
+                    return;
+                }
+            }
+            if (restored) {
+                delegate.markRestored(address);
+            }
+            
+            synchronized (this) {
+                if (cache.get(address) != entry) {
+                    return;
+                }
+                if (saved && entry.ctx == ctx) {
+                    entry.delegateHasLatest = true;
+                    entry.ctx = null; // no longer needed, data is enough to restore from
+                }
+                if (restored && entry.restored && entry.delegateHasLatest) {
+                    entry.delegateRestored = true;
+                }
+                if (entry.restored && entry.isSynced()) {
+                    // Actor is back in memory and the wrapped checkpointer knows it -- nothing left to serve from the cache
+                    cache.remove(address);
+                    cachedBytes -= entry.data.length;
+                } else {
+                    evict();
+                }
+            }
+        }
+    }
+
+    private static final class CacheEntry {
+        private byte[] data;
+        private SourceContext ctx;         // context to write to the wrapped checkpointer, null once written
+        private boolean restored;          // restored from this cache (or after being written, from the wrapped checkpointer)
+        private boolean delegateHasLatest; // wrapped checkpointer has this save
+        private boolean delegateRestored;  // wrapped checkpointer has this save marked as restored
+        private boolean queued;            // waiting in the write queue
+
+        boolean isSynced() {
+            return delegateHasLatest && restored == delegateRestored;
+        }
+    }
+}
@@ -16,8 +16,10 @@
  */
 package com.offbynull.actors.core.checkpoint;
 
+import com.offbynull.actors.core.context.Serializer;
 import com.offbynull.actors.core.context.SourceContext;
 import com.offbynull.actors.core.shuttle.Address;
+import org.apache.commons.lang3.Validate;
 
 /**
  * Checkpoints and restores actors.
@@ -41,6 +43,26 @@ public interface Checkpointer extends AutoCloseable {
      */
     boolean save(SourceContext ctx);
 
+    /**
+     * Checkpoint actor that's already been serialized. Same as {@link #save(com.offbynull.actors.core.context.SourceContext) }, except
+     * that implementations may write {@code data} as-is rather than serializing {@code ctx} again if {@code serializer} is the same
+     * serializer they were created with.
+     * <p>
+     * The default implementation ignores {@code serializer} and {@code data}.
+     * @param ctx context to save
+     * @param serializer serializer that produced {@code data}
+     * @param data {@code ctx} serialized using {@code serializer}
+     * @return {@code true} if successfully checkpointed, {@code false} if couldn't be checkpointed for whatever reason (e.g. external
+     * storage is down)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code ctx} is not for a root actor
+     */
+    default boolean save(SourceContext ctx, Serializer serializer, byte[] data) {
+        Validate.notNull(serializer);
+        Validate.notNull(data);
+        return save(ctx);
+    }
+
     /**
      * Restore checkpointed actor.
      * <p>
@@ -52,6 +74,20 @@ public interface Checkpointer extends AutoCloseable {
      */
     SourceContext restore(Address address);
 
+    /**
+     * Mark checkpointed actor as restored without loading it. Same as calling {@link #restore(com.offbynull.actors.core.shuttle.Address) }
+     * and throwing away the result, except that implementations may skip reading and unserializing the checkpointed data.
+     * <p>
+     * The default implementation calls {@link #restore(com.offbynull.actors.core.shuttle.Address) }.
+     * @param address address of actor to mark as restored
+     * @return {@code true} if a loadable checkpoint was marked as restored, {@code false} if no such address was checkpointed / if there
+     * was a problem accessing checkpoint
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    default boolean markRestored(Address address) {
+        return restore(address) != null;
+    }
+
     /**
      * Delete checkpointed actor.
      * @param address address of actor to restore
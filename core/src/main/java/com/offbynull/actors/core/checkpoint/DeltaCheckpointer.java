@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.checkpoint;
+
+import com.offbynull.actors.core.context.Serializer;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.shuttle.Address;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves and restores actors via the filesystem, writing only what changed since an earlier checkpoint.
+ * <p>
+ * Each actor has a base image (a full serialized copy of the actor from some earlier checkpoint) and a checkpoint file. Rather than
+ * rewriting the full serialized actor every time, a checkpoint normally only writes a compact binary diff against the base image. Actors
+ * that are large but only change a little between checkpoints (e.g. a counter being incremented) end up writing a few dozen bytes per
+ * checkpoint instead of their full size.
+ * <p>
+ * Diffs are always against the base image rather than against the previous checkpoint, so restoring never needs more than the base image
+ * and one diff. As an actor drifts further away from its base image, its diffs get larger. Once a diff grows past a fraction of the full
+ * serialized size of the actor ({@code rebaseThreshold}), that checkpoint is written in full and becomes the new base image.
+ * <p>
+ * Restoring applies the diff to the base image to get back the exact bytes produced by the serializer, so the restored context is the
+ * same as it would have been had the full checkpoint been written. A checksum of the full bytes is stored with each diff and verified on
+ * restore.
+ * <p>
+ * Note that the actor still gets fully serialized on every checkpoint -- this class reduces the amount written, not the amount serialized.
+ *
+ * @author Kasra Faghihi
+ */
+public final class DeltaCheckpointer implements Checkpointer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeltaCheckpointer.class);
+
+    /**
+     * Default fraction of an actor's full serialized size that a diff can grow to before the actor is rebased.
+     */
+    public static final double DEFAULT_REBASE_THRESHOLD = 0.25;
+
+    private static final byte FULL = 0;
+    private static final byte DIFF = 1;
+
+    // URLEncoder never outputs ~, so this can't collide with the filename of another address
+    private static final String TEMP_SUFFIX = "~tmp";
+
+    private final Path savedDirectory;
+    private final Path restoredDirectory;
+    private final Path baseDirectory;
+    private final Serializer serializer;
+    private final double rebaseThreshold;
+
+    // base images read while restoring, kept until the actor is next saved so they don't have to be read again to diff against
+    private final Map<Address, Base> restoredBases;
+
+    /**
+     * Create a {@link DeltaCheckpointer} object that restores running/active actors from their previous checkpoint state. Equivalent
+     * to calling {@code create(serializer, directory, true)}.
+     *
+     * @param serializer serializer to use for saving/restoring actors
+     * @param directory storage directory for serialized actors
+     * @return new instance of {@link DeltaCheckpointer}
+     * @throws IOException if problems restoring running/active actors
+     */
+    public static DeltaCheckpointer create(Serializer serializer, Path directory) throws IOException {
+        return create(serializer, directory, true);
+    }
+
+    /**
+     * Create a {@link DeltaCheckpointer} object. Equivalent to calling
+     * {@code create(serializer, directory, restoreRunning, DEFAULT_REBASE_THRESHOLD)}.
+     *
+     * @param serializer serializer to use for saving/restoring actors
+     * @param directory storage directory for serialized actors
+     * @param restoreRunning restores running/active actors from their previous checkpoint state as well as checkpointed actors if
+     * {@code true}, restores only saved actors only if {@code false}
+     * @return new instance of {@link DeltaCheckpointer}
+     * @throws IOException if problems restoring running/active actors
+     */
+    public static DeltaCheckpointer create(Serializer serializer, Path directory, boolean restoreRunning) throws IOException {
+        return create(serializer, directory, restoreRunning, DEFAULT_REBASE_THRESHOLD);
+    }
+
+    /**
+     * Create a {@link DeltaCheckpointer} object.
+     *
+     * @param serializer serializer to use for saving/restoring actors
+     * @param directory storage directory for serialized actors
+     * @param restoreRunning restores running/active actors from their previous checkpoint state as well as checkpointed actors if
+     * {@code true}, restores only saved actors only if {@code false}
+     * @param rebaseThreshold fraction of an actor's full serialized size that a diff can grow to before the full serialized actor is
+     * written and used as the new base image ({@code 0.0} writes every checkpoint in full)
+     * @return new instance of {@link DeltaCheckpointer}
+     * @throws IOException if problems restoring running/active actors
+     * @throws IllegalArgumentException if {@code rebaseThreshold} is negative or not a number
+     */
+    public static DeltaCheckpointer create(Serializer serializer, Path directory, boolean restoreRunning, double rebaseThreshold)
+            throws IOException {
+        Validate.notNull(serializer);
+        Validate.notNull(directory);
+        Validate.isTrue(rebaseThreshold >= 0.0); // false for NaN
+
+        Path savedDirectory = directory.resolve("saved");
+        Path restoredDirectory = directory.resolve("restored");
+        Path baseDirectory = directory.resolve("base");
+        try {
+            Files.createDirectories(savedDirectory);
+            Files.createDirectories(restoredDirectory);
+            Files.createDirectories(baseDirectory);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException(ioe);
+        }
+        
+        if (restoreRunning) {
+            Files.walk(restoredDirectory, 1)
+                    .filter(p -> Files.isRegularFile(p))
+                    .forEach(p -> {
+                        try {
+                            Files.move(p, savedDirectory.resolve(p.getFileName()));
+                        } catch (IOException ioe) {
+                            LOG.warn("Failed to restore {} ({})", p, ioe);
+                        }
+                    });
+        }
+
+        return new DeltaCheckpointer(serializer, savedDirectory, restoredDirectory, baseDirectory, rebaseThreshold);
+    }
+
+    private DeltaCheckpointer(Serializer serializer, Path savedDirectory, Path restoredDirectory, Path baseDirectory,
+            double rebaseThreshold) {
+        Validate.notNull(serializer);
+        Validate.notNull(savedDirectory);
+        Validate.notNull(restoredDirectory);
+        Validate.notNull(baseDirectory);
+        this.serializer = serializer;
+        this.savedDirectory = savedDirectory;
+        this.restoredDirectory = restoredDirectory;
+        this.baseDirectory = baseDirectory;
+        this.rebaseThreshold = rebaseThreshold;
+        this.restoredBases = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public boolean save(SourceContext ctx) {
+        Validate.notNull(ctx);
+        Validate.isTrue(ctx.isRoot());
+
+        return write(ctx.self(), serializer.serialize(ctx));
+    }
+
+    @Override
+    public boolean save(SourceContext ctx, Serializer serializer, byte[] data) {
+        Validate.notNull(ctx);
+        Validate.notNull(serializer);
+        Validate.notNull(data);
+        Validate.isTrue(ctx.isRoot());
+
+        return write(ctx.self(), serializer == this.serializer ? data : this.serializer.serialize(ctx));
+    }
+
+    private boolean write(Address address, byte[] data) {
+        String filename;
+        try {
+            filename = URLEncoder.encode(address.toString(), "UTF-8");
+        } catch (UnsupportedEncodingException use) {
+            LOG.error("Unable to encode filename {}", address, use);
+            return false;
+        }
+
+        Path basePath = baseDirectory.resolve(filename);
+        Base base = restoredBases.remove(address);
+        if (base == null) {
+            base = readBase(basePath);
+        }
+
+        // Write a diff against the current base image if it's small enough, otherwise write the whole thing and rebase
+        byte[] record = null;
+        if (base != null) {
+            byte[] diff = ByteDelta.diff(base.data, data);
+            if (diff.length <= data.length * rebaseThreshold) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(diff.length + 32);
+                out.write(DIFF);
+                writeLong(out, base.generation);
+                writeInt(out, checksum(data));
+                ByteDelta.writeVarint(out, data.length);
+                out.write(diff, 0, diff.length);
+                record = out.toByteArray();
+            }
+        }
+
+        Path filepath = savedDirectory.resolve(filename);
+        if (record != null) {
+            return writeAtomically(filepath, record);
+        }
+
+        // Write the full image as the checkpoint first, and only then replace the base image. The full checkpoint doesn't depend on the
+        // base, so the actor can be restored no matter where a crash happens.
+        byte[] full = new byte[1 + data.length];
+        full[0] = FULL;
+        System.arraycopy(data, 0, full, 1, data.length);
+        if (!writeAtomically(filepath, full)) {
+            return false;
+        }
+
+        long generation = base == null ? 0L : base.generation + 1L;
+        ByteBuffer baseRecord = ByteBuffer.allocate(8 + data.length);
+        baseRecord.putLong(generation);
+        baseRecord.put(data);
+        if (!writeAtomically(basePath, baseRecord.array())) {
+            LOG.warn("Unable to rebase {}, continuing to diff against previous base", address);
+        }
+
+        return true;
+    }
+
+    @Override
+    public SourceContext restore(Address address) {
+        Validate.notNull(address);
+        
+        String filename;
+        try {
+            filename = URLEncoder.encode(address.toString(), "UTF-8");
+        } catch (UnsupportedEncodingException use) {
+            LOG.error("Unable to encode filename {}", address, use);
+            return null;
+        }
+
+        Path savedFilepath = savedDirectory.resolve(filename);
+        Path restoredFilepath = restoredDirectory.resolve(filename);
+        byte[] record;
+        try {
+            record = Files.readAllBytes(savedFilepath);
+        } catch (IOException ioe) {
+            LOG.error("Unable to read file {}", savedFilepath, ioe);
+            return null;
+        }
+
+        byte[] data;
+        Base base = null;
+        try {
+            Validate.isTrue(record.length > 0, "Empty checkpoint");
+            if (record[0] == FULL) {
+                data = new byte[record.length - 1];
+                System.arraycopy(record, 1, data, 0, data.length);
+            } else if (record[0] == DIFF) {
+                Validate.isTrue(record.length >= 13, "Truncated checkpoint");
+                ByteBuffer header = ByteBuffer.wrap(record);
+                header.get();
+                long generation = header.getLong();
+                int expectedChecksum = header.getInt();
+                int[] pos = new int[] {header.position()};
+                int length = ByteDelta.readVarint(record, pos);
+
+                base = readBase(baseDirectory.resolve(filename));
+                Validate.isTrue(base != null && base.generation == generation, "Base image missing or of wrong generation");
+                data = ByteDelta.apply(base.data, record, pos[0], length);
+                Validate.isTrue(checksum(data) == expectedChecksum, "Checksum mismatch");
+            } else {
+                throw new IllegalArgumentException("Unrecognized checkpoint type " + record[0]);
+            }
+        } catch (IllegalArgumentException iae) {
+            LOG.error("Unable to rebuild checkpoint from file {}", savedFilepath, iae);
+            return null;
+        }
+
+        SourceContext ctx;
+        try {
+            ctx = serializer.unserialize(data);
+        } catch (IllegalArgumentException iae) {
+            LOG.error("Unable to unserialize file {}", savedFilepath, iae);
+            return null;
+        }
+
+        if (!ctx.isRoot()) {
+            LOG.error("Context is not root {}", savedFilepath);
+            return null;
+        }
+
+        try {
+            Files.move(savedFilepath, restoredFilepath, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            LOG.error("Unable to move file {} to {}", savedFilepath, restoredFilepath, ioe);
+            return null;
+        }
+
+        if (base != null) {
+            restoredBases.put(address, base);
+        }
+
+        return ctx;
+    }
+
+    @Override
+    public boolean markRestored(Address address) {
+        Validate.notNull(address);
+        
+        String filename;
+        try {
+            filename = URLEncoder.encode(address.toString(), "UTF-8");
+        } catch (UnsupportedEncodingException use) {
+            LOG.error("Unable to encode filename {}", address, use);
+            return false;
+        }
+
+        // Nothing is read here, so nothing goes in to restoredBases -- the next save reads the base image from disk
+        Path savedFilepath = savedDirectory.resolve(filename);
+        Path restoredFilepath = restoredDirectory.resolve(filename);
+        try {
+            Files.move(savedFilepath, restoredFilepath, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (NoSuchFileException nsfe) {
+            return false;
+        } catch (IOException ioe) {
+            LOG.error("Unable to move file {} to {}", savedFilepath, restoredFilepath, ioe);
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public void delete(Address address) {
+        Validate.notNull(address);
+        
+        String filename;
+        try {
+            filename = URLEncoder.encode(address.toString(), "UTF-8");
+        } catch (UnsupportedEncodingException use) {
+            LOG.error("Unable to encode filename {}", address, use);
+            return;
+        }
+
+        restoredBases.remove(address);
+        deleteIfExists(savedDirectory.resolve(filename));
+        deleteIfExists(restoredDirectory.resolve(filename));
+        deleteIfExists(baseDirectory.resolve(filename));
+    }
+    
+    @Override
+    public void close() {
+        // do nothing
+    }
+
+    private Base readBase(Path basePath) {
+        byte[] record;
+        try {
+            record = Files.readAllBytes(basePath);
+        } catch (NoSuchFileException nsfe) {
+            return null; // do nothing -- this is an expected case
+        } catch (IOException ioe) {
+            LOG.error("Unable to read file {}", basePath, ioe);
+            return null;
+        }
+
+        if (record.length < 8) {
+            LOG.error("Truncated base image {}", basePath);
+            return null;
+        }
+
+        long generation = ByteBuffer.wrap(record).getLong();
+        byte[] data = new byte[record.length - 8];
+        System.arraycopy(record, 8, data, 0, data.length);
+        return new Base(generation, data);
+    }
+
+    private static boolean writeAtomically(Path filepath, byte[] data) {
+        Path tempPath = filepath.resolveSibling(filepath.getFileName() + TEMP_SUFFIX);
+        try {
+            Files.write(tempPath, data);
+            Files.move(tempPath, filepath, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            LOG.error("Unable to write file {}", filepath, ioe);
+            return false;
+        }
+        return true;
+    }
+
+    private static void deleteIfExists(Path path) {
+        try {
+            Files.delete(path);
+        } catch (NoSuchFileException nsfe) {
+            // do nothing -- this is an expected case
+        } catch (IOException ioe) {
+            LOG.error("Unable to delete file {} ({})", path, ioe);
+        }
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        writeInt(out, (int) (value >>> 32));
+        writeInt(out, (int) value);
+    }
+
+    private static final class Base {
+        private final long generation;
+        private final byte[] data;
+
+        Base(long generation, byte[] data) {
+            this.generation = generation;
+            this.data = data;
+        }
+    }
+}
@@ -109,9 +109,20 @@ public final class FileSystemCheckpointer implements Checkpointer {
         Validate.notNull(ctx);
         Validate.isTrue(ctx.isRoot());
 
-        Address address = ctx.self();
-        byte[] data = serializer.serialize(ctx);
+        return write(ctx.self(), serializer.serialize(ctx));
+    }
 
+    @Override
+    public boolean save(SourceContext ctx, Serializer serializer, byte[] data) {
+        Validate.notNull(ctx);
+        Validate.notNull(serializer);
+        Validate.notNull(data);
+        Validate.isTrue(ctx.isRoot());
+
+        return write(ctx.self(), serializer == this.serializer ? data : this.serializer.serialize(ctx));
+    }
+
+    private boolean write(Address address, byte[] data) {
         String filename;
         try {
             filename = URLEncoder.encode(address.toString(), "UTF-8");
@@ -176,6 +187,32 @@ public final class FileSystemCheckpointer implements Checkpointer {
         return ctx;
     }
 
+    @Override
+    public boolean markRestored(Address address) {
+        Validate.notNull(address);
+        
+        String filename;
+        try {
+            filename = URLEncoder.encode(address.toString(), "UTF-8");
+        } catch (UnsupportedEncodingException use) {
+            LOG.error("Unable to encode filename {}", address, use);
+            return false;
+        }
+
+        Path savedFilepath = savedDirectory.resolve(filename);
+        Path restoredFilepath = restoredDirectory.resolve(filename);
+        try {
+            Files.move(savedFilepath, restoredFilepath, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (NoSuchFileException nsfe) {
+            return false;
+        } catch (IOException ioe) {
+            LOG.error("Unable to move file {} to {}", savedFilepath, restoredFilepath, ioe);
+            return false;
+        }
+
+        return true;
+    }
+
     @Override
     public void delete(Address address) {
         Validate.notNull(address);
@@ -0,0 +1,856 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.checkpoint;
+
+import com.offbynull.actors.core.context.Serializer;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.shuttle.Address;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves and restores actors by appending them to a log made up of segment files.
+ * <p>
+ * Unlike {@link FileSystemCheckpointer}, which writes one file per actor, every operation here is a single append to the active segment
+ * file. Which record holds the latest state of each actor is tracked in an in-memory index. Once the active segment grows past a size
+ * limit, a new one is started. When too much of the sealed segments is made up of superseded records, a background thread copies the
+ * live records out of the oldest segment and deletes it.
+ * <p>
+ * On startup, the index is rebuilt by replaying the segments in order. Records are checksummed -- a torn record at the end of a segment
+ * (e.g. from a crash mid-write) is truncated away.
+ * <p>
+ * Restored actors are marked as such rather than removed, same as {@link FileSystemCheckpointer} moving them to its {@code restored}
+ * directory, so that running actors can be brought back after a crash.
+ * <p>
+ * Optionally, saves can be made asynchronous. In this mode, {@link #save(com.offbynull.actors.core.context.SourceContext) } returns
+ * right away and the context is serialized by a pool of worker threads. Serialized contexts are handed to a single writer thread, which
+ * appends whatever has piled up as one batch (dropping any that have been superseded by a later save/delete of the same actor) and then
+ * issues a single {@link FileChannel#force(boolean) } for the batch. Until a save has been written, a restore of that actor is served
+ * from the pending serialized copy instead of from disk. The caller must not touch a context after passing it to {@code save()}.
+ * @author Kasra Faghihi
+ */
+public final class LogStructuredCheckpointer implements Checkpointer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogStructuredCheckpointer.class);
+
+    /**
+     * Default size a segment can grow to before a new segment is started.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024L * 1024L;
+    
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final double COMPACTION_THRESHOLD = 0.5; // compact when less than this much of the sealed segments is live
+    
+    private static final int HEADER_SIZE = 8; // int length (of body) + int crc (of body)
+    private static final int MAX_BODY_SIZE = Integer.MAX_VALUE - HEADER_SIZE;
+
+    private static final byte TYPE_SAVE = 0;          // actor saved (body contains data)
+    private static final byte TYPE_SAVE_RESTORED = 1; // actor saved but already restored (body contains data) -- written by compaction
+    private static final byte TYPE_RESTORE = 2;       // previously saved actor marked as restored
+    private static final byte TYPE_DELETE = 3;        // actor deleted
+    
+    private static final PendingSave STOP = new PendingSave(Address.EMPTY, -1L); // tells the async writer to stop
+
+    private final Serializer serializer;
+    private final Path directory;
+    private final long segmentSize;
+    private final ExecutorService compactor;
+    private final ExecutorService serializerPool; // null if synchronous
+    private final BlockingQueue<PendingSave> writeQueue; // null if synchronous
+    private final Thread writer; // null if synchronous
+
+    // All fields below are guarded by this object's monitor
+    private final Map<Address, Location> index;
+    private final Map<Address, PendingSave> pending; // saves that haven't been written yet (async only)
+    private final TreeMap<Long, Segment> segments; // id -> segment (includes active)
+    private Segment active;
+    private long nextVersion;
+    private boolean compacting;
+    private boolean closed;
+
+    /**
+     * Create a {@link LogStructuredCheckpointer} object that restores running/active actors from their previous checkpoint state.
+     * Equivalent to calling {@code create(serializer, directory, true, DEFAULT_SEGMENT_SIZE)}.
+     *
+     * @param serializer serializer to use for saving/restoring actors
+     * @param directory storage directory for segment files
+     * @return new instance of {@link LogStructuredCheckpointer}
+     * @throws IOException if problems replaying segment files
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static LogStructuredCheckpointer create(Serializer serializer, Path directory) throws IOException {
+        return create(serializer, directory, true, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create a {@link LogStructuredCheckpointer} object.
+     *
+     * @param serializer serializer to use for saving/restoring actors
+     * @param directory storage directory for segment files
+     * @param restoreRunning restores running/active actors from their previous checkpoint state as well as checkpointed actors if
+     * {@code true}, restores only saved actors only if {@code false}
+     * @param segmentSize size a segment can grow to before a new segment is started
+     * @return new instance of {@link LogStructuredCheckpointer}
+     * @throws IOException if problems replaying segment files
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code segmentSize <= 0}
+     */
+    public static LogStructuredCheckpointer create(Serializer serializer, Path directory, boolean restoreRunning, long segmentSize)
+            throws IOException {
+        return create(serializer, directory, restoreRunning, segmentSize, 0);
+    }
+
+    /**
+     * Create a {@link LogStructuredCheckpointer} object.
+     *
+     * @param serializer serializer to use for saving/restoring actors
+     * @param directory storage directory for segment files
+     * @param restoreRunning restores running/active actors from their previous checkpoint state as well as checkpointed actors if
+     * {@code true}, restores only saved actors only if {@code false}
+     * @param segmentSize size a segment can grow to before a new segment is started
+     * @param serializerThreads number of threads to serialize saves on, or {@code 0} to save synchronously on the calling thread
+     * @return new instance of {@link LogStructuredCheckpointer}
+     * @throws IOException if problems replaying segment files
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code segmentSize <= 0} or {@code serializerThreads < 0}
+     */
+    public static LogStructuredCheckpointer create(Serializer serializer, Path directory, boolean restoreRunning, long segmentSize,
+            int serializerThreads) throws IOException {
+        Validate.notNull(serializer);
+        Validate.notNull(directory);
+        Validate.isTrue(segmentSize > 0L);
+        Validate.isTrue(serializerThreads >= 0);
+
+        Files.createDirectories(directory);
+
+        LogStructuredCheckpointer checkpointer = new LogStructuredCheckpointer(serializer, directory, segmentSize, serializerThreads);
+        try {
+            checkpointer.recover(restoreRunning);
+        } catch (IOException | RuntimeException e) {
+            checkpointer.close();
+            throw e;
+        }
+        if (checkpointer.writer != null) {
+            checkpointer.writer.start();
+        }
+        return checkpointer;
+    }
+
+    private LogStructuredCheckpointer(Serializer serializer, Path directory, long segmentSize, int serializerThreads) {
+        this.serializer = serializer;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.index = new HashMap<>();
+        this.pending = new HashMap<>();
+        this.segments = new TreeMap<>();
+        
+        String name = getClass().getSimpleName() + "-" + directory;
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            thread.setName(name + "-compactor");
+            return thread;
+        });
+        
+        if (serializerThreads == 0) {
+            this.serializerPool = null;
+            this.writeQueue = null;
+            this.writer = null;
+        } else {
+            AtomicInteger threadCounter = new AtomicInteger();
+            this.serializerPool = Executors.newFixedThreadPool(serializerThreads, r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                thread.setName(name + "-serializer-" + threadCounter.getAndIncrement());
+                return thread;
+            });
+            this.writeQueue = new LinkedBlockingQueue<>();
+            this.writer = new Thread(this::writeLoop);
+            this.writer.setDaemon(true);
+            this.writer.setName(name + "-writer");
+        }
+    }
+
+    @Override
+    public boolean save(SourceContext ctx) {
+        Validate.notNull(ctx);
+        Validate.isTrue(ctx.isRoot());
+
+        Address address = ctx.self();
+        
+        if (serializerPool != null) {
+            return saveAsync(address, ctx);
+        }
+        
+        return appendSave(address, serializer.serialize(ctx));
+    }
+
+    @Override
+    public boolean save(SourceContext ctx, Serializer serializer, byte[] data) {
+        Validate.notNull(ctx);
+        Validate.notNull(serializer);
+        Validate.notNull(data);
+        Validate.isTrue(ctx.isRoot());
+
+        if (serializer != this.serializer) {
+            return save(ctx);
+        }
+
+        Address address = ctx.self();
+        
+        if (serializerPool == null) {
+            return appendSave(address, data);
+        }
+
+        // Already serialized, so skip the serializer pool and hand it straight to the writer. Queued while holding the lock so that it
+        // can't end up behind the STOP that close() queues.
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            PendingSave pendingSave = new PendingSave(address, nextVersion++);
+            pendingSave.data.complete(data);
+            pending.put(address, pendingSave);
+            writeQueue.add(pendingSave);
+        }
+
+        return true;
+    }
+
+    private boolean appendSave(Address address, byte[] data) {
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            try {
+                Location location = append(TYPE_SAVE, address, data, nextVersion++);
+                replace(address, location);
+            } catch (IOException ioe) {
+                LOG.error("Unable to append save of {}", address, ioe);
+                return false;
+            } catch (RuntimeException re) { // e.g. address or data too large for a record
+                LOG.error("Unable to append save of {}", address, re);
+                return false;
+            }
+        }
+
+        return true;
+    }
+    
+    private boolean saveAsync(Address address, SourceContext ctx) {
+        PendingSave pendingSave;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            pendingSave = new PendingSave(address, nextVersion++);
+            pending.put(address, pendingSave);
+        }
+        
+        try {
+            serializerPool.execute(() -> serializeAndQueue(pendingSave, ctx));
+        } catch (RejectedExecutionException ree) {
+            synchronized (this) {
+                pending.remove(address, pendingSave);
+            }
+            return false;
+        }
+        
+        return true;
+    }
+    
+    private void serializeAndQueue(PendingSave pendingSave, SourceContext ctx) {
+        byte[] data;
+        try {
+            data = serializer.serialize(ctx);
+        } catch (RuntimeException re) {
+            LOG.error("Unable to serialize {}", pendingSave.address, re);
+            synchronized (this) {
+                pending.remove(pendingSave.address, pendingSave);
+            }
+            pendingSave.data.completeExceptionally(re);
+            return;
+        }
+        
+        pendingSave.data.complete(data);
+        writeQueue.add(pendingSave);
+    }
+    
+    private void writeLoop() {
+        List<PendingSave> batch = new ArrayList<>();
+        Set<Segment> written = new HashSet<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(writeQueue.take());
+            } catch (InterruptedException ie) {
+                LOG.error("Writer interrupted -- pending saves will be lost");
+                return;
+            }
+            writeQueue.drainTo(batch);
+            
+            synchronized (this) {
+                for (PendingSave pendingSave : batch) {
+                    // close() queues STOP once serializers have finished, so everything before it gets written out
+                    if (pendingSave == STOP) {
+                        running = false;
+                        continue;
+                    }
+                    
+                    // Skip if superseded by a newer save / deleted while waiting in the queue
+                    if (pending.get(pendingSave.address) != pendingSave) {
+                        continue;
+                    }
+                    pending.remove(pendingSave.address);
+                    
+                    byte type = pendingSave.restored ? TYPE_SAVE_RESTORED : TYPE_SAVE;
+                    try {
+                        Location location = append(type, pendingSave.address, pendingSave.data.getNow(null), pendingSave.version);
+                        location.restored = pendingSave.restored;
+                        replace(pendingSave.address, location);
+                        written.add(location.segment);
+                    } catch (IOException ioe) {
+                        LOG.error("Unable to append save of {}", pendingSave.address, ioe);
+                    } catch (RuntimeException re) { // e.g. address or data too large for a record -- don't let it kill the writer
+                        LOG.error("Unable to append save of {}", pendingSave.address, re);
+                    }
+                }
+            }
+            
+            // One sync for the entire batch
+            for (Segment segment : written) {
+                try {
+                    segment.channel.force(false);
+                } catch (IOException ioe) {
+                    // may have been compacted away / closed in the meantime
+                    LOG.debug("Unable to sync segment {}", segment.path, ioe);
+                }
+            }
+            
+            batch.clear();
+            written.clear();
+        }
+    }
+
+    @Override
+    public SourceContext restore(Address address) {
+        Validate.notNull(address);
+
+        long version;
+        PendingSave pendingSave;
+        byte[] data = null;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            pendingSave = pending.get(address); // pending saves are newer than whatever is in the index
+            if (pendingSave != null) {
+                if (pendingSave.restored) {
+                    return null;
+                }
+                version = pendingSave.version;
+            } else {
+                Location location = index.get(address);
+                if (location == null || location.restored) {
+                    return null;
+                }
+                version = location.version;
+                try {
+                    data = read(location);
+                } catch (IOException ioe) {
+                    LOG.error("Unable to read {} from segment {}", address, location.segment.id, ioe);
+                    return null;
+                }
+            }
+        }
+        
+        if (pendingSave != null) {
+            try {
+                data = pendingSave.data.get(); // blocks if it's still being serialized
+            } catch (ExecutionException ee) {
+                return null; // already logged by the serializer
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        SourceContext ctx;
+        try {
+            ctx = serializer.unserialize(data);
+        } catch (IllegalArgumentException iae) {
+            LOG.error("Unable to unserialize {}", address, iae);
+            return null;
+        }
+
+        if (!ctx.isRoot()) {
+            LOG.error("Context is not root {}", address);
+            return null;
+        }
+
+        synchronized (this) {
+            // Someone else may have restored/saved/deleted this address while it was being unserialized. Compaction or the async writer
+            // may have moved it, but a move keeps the version.
+            if (closed) {
+                return null;
+            }
+            PendingSave currentPendingSave = pending.get(address);
+            if (currentPendingSave != null) {
+                if (currentPendingSave.version != version || currentPendingSave.restored) {
+                    return null;
+                }
+                currentPendingSave.restored = true; // writer will write it out as already restored
+            } else {
+                Location current = index.get(address);
+                if (current == null || current.version != version || current.restored) {
+                    return null;
+                }
+                try {
+                    append(TYPE_RESTORE, address, null, -1L);
+                } catch (IOException ioe) {
+                    LOG.error("Unable to append restore of {}", address, ioe);
+                    return null;
+                }
+                current.restored = true;
+            }
+        }
+
+        return ctx;
+    }
+
+    @Override
+    public boolean markRestored(Address address) {
+        Validate.notNull(address);
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            PendingSave pendingSave = pending.get(address);
+            if (pendingSave != null) {
+                if (pendingSave.restored) {
+                    return false;
+                }
+                pendingSave.restored = true; // writer will write it out as already restored
+            } else {
+                Location location = index.get(address);
+                if (location == null || location.restored) {
+                    return false;
+                }
+                try {
+                    append(TYPE_RESTORE, address, null, -1L);
+                } catch (IOException ioe) {
+                    LOG.error("Unable to append restore of {}", address, ioe);
+                    return false;
+                }
+                location.restored = true;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void delete(Address address) {
+        Validate.notNull(address);
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            pending.remove(address);
+            if (!index.containsKey(address)) {
+                return;
+            }
+            try {
+                append(TYPE_DELETE, address, null, -1L);
+            } catch (IOException ioe) {
+                LOG.error("Unable to append delete of {}", address, ioe);
+                return;
+            }
+            replace(address, null);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        try {
+            // Let outstanding async saves finish serializing, then have the writer drain them out before shutting down
+            if (serializerPool != null) {
+                serializerPool.shutdown();
+                serializerPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                if (writer.isAlive()) {
+                    writeQueue.add(STOP);
+                    writer.join();
+                }
+            }
+            
+            compactor.shutdownNow();
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                try {
+                    segment.channel.close();
+                } catch (IOException ioe) {
+                    LOG.warn("Unable to close segment {}", segment.path, ioe);
+                }
+            }
+            segments.clear();
+            index.clear();
+            pending.clear();
+        }
+    }
+
+    private void recover(boolean restoreRunning) throws IOException {
+        TreeMap<Long, Path> paths = new TreeMap<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(p -> {
+                        String name = p.getFileName().toString();
+                        try {
+                            paths.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), p);
+                        } catch (NumberFormatException nfe) {
+                            LOG.warn("Ignoring unrecognized file {}", p);
+                        }
+                    });
+        }
+
+        synchronized (this) {
+            for (Entry<Long, Path> e : paths.entrySet()) {
+                Segment segment = new Segment(e.getKey(), e.getValue(), FileChannel.open(e.getValue(), READ, WRITE));
+                segments.put(segment.id, segment);
+                replay(segment);
+            }
+
+            if (restoreRunning) {
+                index.values().forEach(l -> l.restored = false);
+            }
+
+            long nextId = segments.isEmpty() ? 0L : segments.lastKey() + 1L;
+            openActive(nextId);
+        }
+    }
+
+    private void replay(Segment segment) throws IOException {
+        long size = segment.channel.size();
+        long position = 0L;
+        try (InputStream is = Files.newInputStream(segment.path);
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(is))) {
+            CRC32 crc = new CRC32();
+            while (position < size) {
+                byte[] body;
+                try {
+                    int length = dis.readInt();
+                    int checksum = dis.readInt();
+                    if (length <= 0 || length > size - position - HEADER_SIZE) {
+                        throw new EOFException();
+                    }
+                    body = new byte[length];
+                    dis.readFully(body);
+                    crc.reset();
+                    crc.update(body);
+                    if ((int) crc.getValue() != checksum) {
+                        throw new EOFException();
+                    }
+                } catch (EOFException eofe) {
+                    LOG.warn("Truncating segment {} at {} (torn or corrupt record)", segment.path, position);
+                    segment.channel.truncate(position);
+                    break;
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+                byte type = buffer.get();
+                byte[] addressBytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(addressBytes);
+                Address address = Address.fromString(new String(addressBytes, StandardCharsets.US_ASCII));
+
+                int recordSize = HEADER_SIZE + body.length;
+                segment.size += recordSize;
+                switch (type) {
+                    case TYPE_SAVE:
+                    case TYPE_SAVE_RESTORED: {
+                        Location location = new Location(segment, position, recordSize, HEADER_SIZE + buffer.position(), nextVersion++);
+                        location.restored = type == TYPE_SAVE_RESTORED;
+                        replace(address, location);
+                        break;
+                    }
+                    case TYPE_RESTORE: {
+                        Location location = index.get(address);
+                        if (location != null) {
+                            location.restored = true;
+                        }
+                        break;
+                    }
+                    case TYPE_DELETE:
+                        replace(address, null);
+                        break;
+                    default:
+                        throw new IOException("Unrecognized record type " + type + " in " + segment.path);
+                }
+                position += recordSize;
+            }
+        }
+    }
+
+    // must be called while holding this object's monitor
+    private Location append(byte type, Address address, byte[] data, long version) throws IOException {
+        if (active.size >= segmentSize) {
+            rollOver();
+        }
+
+        byte[] addressBytes = address.toString().getBytes(StandardCharsets.US_ASCII);
+        Validate.isTrue(addressBytes.length <= 0xFFFF, "Address too long");
+        int dataLength = data == null ? 0 : data.length;
+        long bodyLength = 1L + 2L + addressBytes.length + dataLength;
+        Validate.isTrue(bodyLength <= MAX_BODY_SIZE, "Data too large");
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (int) bodyLength);
+        buffer.position(HEADER_SIZE);
+        buffer.put(type);
+        buffer.putShort((short) addressBytes.length);
+        buffer.put(addressBytes);
+        int dataOffset = buffer.position();
+        if (data != null) {
+            buffer.put(data);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, (int) bodyLength);
+        buffer.putInt(0, (int) bodyLength);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+
+        long position = active.size;
+        try {
+            while (buffer.hasRemaining()) {
+                active.channel.write(buffer, position + buffer.position());
+            }
+        } catch (IOException ioe) {
+            // Chop off whatever was partially written so that the next append doesn't end up after a torn record
+            active.channel.truncate(position);
+            throw ioe;
+        }
+        active.size += buffer.limit();
+
+        return new Location(active, position, buffer.limit(), dataOffset, version);
+    }
+
+    // must be called while holding this object's monitor
+    private byte[] read(Location location) throws IOException {
+        int dataLength = location.length - location.dataOffset;
+        ByteBuffer buffer = ByteBuffer.allocate(dataLength);
+        long position = location.position + location.dataOffset;
+        while (buffer.hasRemaining()) {
+            int read = location.segment.channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new EOFException();
+            }
+        }
+        return buffer.array();
+    }
+
+    // must be called while holding this object's monitor
+    private void replace(Address address, Location location) {
+        Location old = location == null ? index.remove(address) : index.put(address, location);
+        if (old != null) {
+            old.segment.liveSize -= old.length;
+        }
+        if (location != null) {
+            location.segment.liveSize += location.length;
+        }
+    }
+
+    // must be called while holding this object's monitor
+    private void rollOver() throws IOException {
+        openActive(active.id + 1L);
+
+        long sealedSize = 0L;
+        long sealedLiveSize = 0L;
+        for (Segment segment : segments.headMap(active.id).values()) {
+            sealedSize += segment.size;
+            sealedLiveSize += segment.liveSize;
+        }
+        
+        if (!compacting && sealedLiveSize < sealedSize * COMPACTION_THRESHOLD) {
+            compacting = true;
+            compactor.execute(this::compact);
+        }
+    }
+
+    // must be called while holding this object's monitor
+    private void openActive(long id) throws IOException {
+        Path path = directory.resolve(id + SEGMENT_SUFFIX);
+        active = new Segment(id, path, FileChannel.open(path, CREATE_NEW, READ, WRITE));
+        segments.put(id, active);
+    }
+
+    private void compact() {
+        try {
+            while (true) {
+                Segment oldest;
+                synchronized (this) {
+                    long sealedSize = 0L;
+                    long sealedLiveSize = 0L;
+                    for (Segment segment : segments.headMap(active.id).values()) {
+                        sealedSize += segment.size;
+                        sealedLiveSize += segment.liveSize;
+                    }
+                    if (closed || sealedSize == 0L || sealedLiveSize >= sealedSize * COMPACTION_THRESHOLD) {
+                        compacting = false;
+                        return;
+                    }
+                    oldest = segments.firstEntry().getValue();
+                }
+                
+                compactSegment(oldest);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Compaction failed", e);
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void compactSegment(Segment segment) throws IOException {
+        // Only the oldest segment is ever compacted. Since nothing older exists, restore markers and delete markers in it can be dropped:
+        // there's no older save record left for them to apply to. Live saves get copied forward to the active segment.
+        List<Address> liveAddresses = new ArrayList<>();
+        synchronized (this) {
+            index.forEach((address, location) -> {
+                if (location.segment == segment) {
+                    liveAddresses.add(address);
+                }
+            });
+        }
+
+        for (Address address : liveAddresses) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                Location location = index.get(address);
+                if (location == null || location.segment != segment) {
+                    continue; // superseded since the scan
+                }
+                byte[] data = read(location);
+                Location newLocation = append(location.restored ? TYPE_SAVE_RESTORED : TYPE_SAVE, address, data, location.version);
+                newLocation.restored = location.restored;
+                replace(address, newLocation);
+            }
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            Validate.validState(segment.liveSize == 0L);
+            segments.remove(segment.id);
+            segment.channel.close();
+            Files.delete(segment.path);
+            LOG.debug("Compacted segment {}", segment.path);
+        }
+    }
+
+    private static final class PendingSave {
+        private final Address address;
+        private final long version;
+        private final CompletableFuture<byte[]> data;
+        private boolean restored;
+
+        PendingSave(Address address, long version) {
+            this.address = address;
+            this.version = version;
+            this.data = new CompletableFuture<>();
+        }
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+        private long liveSize;
+
+        Segment(long id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final long position;
+        private final int length;     // full record length
+        private final int dataOffset; // offset of data from position
+        private final long version;   // identifies the save this record came from (preserved when compaction copies the record)
+        private boolean restored;
+
+        Location(Segment segment, long position, int length, int dataOffset, long version) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.dataOffset = dataOffset;
+            this.version = version;
+        }
+    }
+}
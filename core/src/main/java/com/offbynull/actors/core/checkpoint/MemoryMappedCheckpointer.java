@@ -0,0 +1,838 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.checkpoint;
+
+import com.offbynull.actors.core.context.Serializer;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.shuttle.Address;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves and restores actors using memory-mapped segment files.
+ * <p>
+ * Serialized actors are appended to the active segment, which is a fixed-size memory-mapped file. Which record holds each actor is tracked
+ * by an open-addressing hash table (keyed by a hash of the address) that lives off-heap in a direct buffer, so holding millions of dormant
+ * actors doesn't put pressure on the garbage collector. A restore looks the actor up, flips the record's state byte in place, and hands
+ * the mapped bytes straight to {@link Serializer#unserialize(java.nio.ByteBuffer) } -- no file read, no file move.
+ * <p>
+ * Every record carries a state byte (saved / restored / dead) that's updated in place. Superseded and deleted records are marked dead, so
+ * no tombstones need to be written. Segments that end up with no live records are deleted, and segments that drop below a quarter live are
+ * compacted by a background thread which copies their live records forward. On startup, segments are scanned to rebuild the index. Records
+ * are checksummed -- scanning a segment stops at the first torn or corrupt record.
+ * <p>
+ * Like {@link FileSystemCheckpointer}, restored actors are marked rather than removed so that running actors can be brought back after
+ * a crash. Writes land in the page cache and are only explicitly flushed on {@link #close() }.
+ * @author Kasra Faghihi
+ */
+public final class MemoryMappedCheckpointer implements Checkpointer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoryMappedCheckpointer.class);
+
+    /**
+     * Default size of each segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    
+    private static final String SEGMENT_SUFFIX = ".mseg";
+    private static final double COMPACTION_THRESHOLD = 0.25; // compact a sealed segment when less than this much of it is live
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    // Record layout: int bodyLength, int crc (of body), byte state, body (short addressLength, address, data). A bodyLength of 0 marks the
+    // end of a segment.
+    private static final int LENGTH_OFFSET = 0;
+    private static final int CRC_OFFSET = 4;
+    private static final int STATE_OFFSET = 8;
+    private static final int HEADER_SIZE = 9;
+    
+    private static final byte STATE_SAVED = 1;
+    private static final byte STATE_RESTORED = 2;
+    private static final byte STATE_DEAD = 3;
+
+    private final Serializer serializer;
+    private final Path directory;
+    private final int segmentSize;
+    private final ExecutorService compactor;
+
+    // All fields below are guarded by this object's monitor
+    private final CRC32 crc = new CRC32();
+    private final byte[] crcScratch = new byte[8192];
+    private final OffHeapIndex index;
+    private final Map<Integer, Segment> segments;
+    private Segment active; // created lazily on first write
+    private int nextSegmentId;
+    private boolean compacting;
+    private boolean closed;
+
+    /**
+     * Create a {@link MemoryMappedCheckpointer} object that restores running/active actors from their previous checkpoint state.
+     * Equivalent to calling {@code create(serializer, directory, true, DEFAULT_SEGMENT_SIZE)}.
+     *
+     * @param serializer serializer to use for saving/restoring actors
+     * @param directory storage directory for segment files
+     * @return new instance of {@link MemoryMappedCheckpointer}
+     * @throws IOException if problems scanning segment files
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static MemoryMappedCheckpointer create(Serializer serializer, Path directory) throws IOException {
+        return create(serializer, directory, true, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create a {@link MemoryMappedCheckpointer} object.
+     *
+     * @param serializer serializer to use for saving/restoring actors
+     * @param directory storage directory for segment files
+     * @param restoreRunning restores running/active actors from their previous checkpoint state as well as checkpointed actors if
+     * {@code true}, restores only saved actors only if {@code false}
+     * @param segmentSize size of each segment file (a record that doesn't fit gets a segment sized to fit it)
+     * @return new instance of {@link MemoryMappedCheckpointer}
+     * @throws IOException if problems scanning segment files
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code segmentSize <= 0}
+     */
+    public static MemoryMappedCheckpointer create(Serializer serializer, Path directory, boolean restoreRunning, int segmentSize)
+            throws IOException {
+        Validate.notNull(serializer);
+        Validate.notNull(directory);
+        Validate.isTrue(segmentSize > 0);
+
+        Files.createDirectories(directory);
+
+        MemoryMappedCheckpointer checkpointer = new MemoryMappedCheckpointer(serializer, directory, segmentSize);
+        try {
+            checkpointer.recover(restoreRunning);
+        } catch (IOException | RuntimeException e) {
+            checkpointer.close();
+            throw e;
+        }
+        return checkpointer;
+    }
+
+    private MemoryMappedCheckpointer(Serializer serializer, Path directory, int segmentSize) {
+        this.serializer = serializer;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.index = new OffHeapIndex(INITIAL_INDEX_CAPACITY);
+        this.segments = new HashMap<>();
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            thread.setName(getClass().getSimpleName() + "-" + directory);
+            return thread;
+        });
+    }
+
+    @Override
+    public boolean save(SourceContext ctx) {
+        Validate.notNull(ctx);
+        Validate.isTrue(ctx.isRoot());
+
+        return write(ctx.self(), serializer.serialize(ctx));
+    }
+
+    @Override
+    public boolean save(SourceContext ctx, Serializer serializer, byte[] data) {
+        Validate.notNull(ctx);
+        Validate.notNull(serializer);
+        Validate.notNull(data);
+        Validate.isTrue(ctx.isRoot());
+
+        return write(ctx.self(), serializer == this.serializer ? data : this.serializer.serialize(ctx));
+    }
+
+    private boolean write(Address address, byte[] data) {
+        byte[] key = address.toString().getBytes(StandardCharsets.US_ASCII);
+        Validate.isTrue(key.length <= 0xFFFF, "Address too long");
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            try {
+                int hash = Arrays.hashCode(key);
+                int slot = findSlot(hash, key);
+                if (slot < 0 && !index.hasRoomForInsert()) {
+                    index.grow();
+                }
+
+                Segment segment = append(STATE_SAVED, key, null, data);
+                int offset = segment.size - recordSize(key.length, data.length);
+
+                if (slot >= 0) {
+                    markDead(slot); // old record
+                    index.set(slot, hash, segment.id, offset);
+                } else {
+                    index.insert(hash, segment.id, offset);
+                }
+            } catch (IOException | IllegalStateException e) {
+                LOG.error("Unable to save {}", address, e);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public SourceContext restore(Address address) {
+        Validate.notNull(address);
+
+        byte[] key = address.toString().getBytes(StandardCharsets.US_ASCII);
+        Segment pinned;
+        ByteBuffer data;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            int slot = findSlot(Arrays.hashCode(key), key);
+            if (slot < 0) {
+                return null;
+            }
+            Segment segment = segments.get(index.segmentId(slot));
+            int offset = index.offset(slot);
+            if (segment.buffer.get(offset + STATE_OFFSET) != STATE_SAVED) {
+                return null;
+            }
+            
+            // Mark as restored (non-loadable) before letting go of the lock. The segment may get compacted away in the meantime, so pin
+            // it to keep it from being unmapped while the slice is being read.
+            segment.buffer.put(offset + STATE_OFFSET, STATE_RESTORED);
+            segment.readers++;
+            pinned = segment;
+            data = dataSlice(segment, offset);
+        }
+
+        SourceContext ctx;
+        try {
+            ctx = serializer.unserialize(data);
+        } catch (IllegalArgumentException iae) {
+            LOG.error("Unable to unserialize {}", address, iae);
+            unmarkRestored(address, key);
+            return null;
+        } finally {
+            unpin(pinned);
+        }
+
+        if (!ctx.isRoot()) {
+            LOG.error("Context is not root {}", address);
+            unmarkRestored(address, key);
+            return null;
+        }
+
+        return ctx;
+    }
+    
+    @Override
+    public boolean markRestored(Address address) {
+        Validate.notNull(address);
+
+        byte[] key = address.toString().getBytes(StandardCharsets.US_ASCII);
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            int slot = findSlot(Arrays.hashCode(key), key);
+            if (slot < 0) {
+                return false;
+            }
+            Segment segment = segments.get(index.segmentId(slot));
+            int offset = index.offset(slot);
+            if (segment.buffer.get(offset + STATE_OFFSET) != STATE_SAVED) {
+                return false;
+            }
+            segment.buffer.put(offset + STATE_OFFSET, STATE_RESTORED);
+        }
+
+        return true;
+    }
+    
+    private synchronized void unpin(Segment segment) {
+        segment.readers--;
+        if (segment.retired && segment.readers == 0) {
+            release(segment);
+        }
+    }
+    
+    private synchronized void unmarkRestored(Address address, byte[] key) {
+        if (closed) {
+            return;
+        }
+        int slot = findSlot(Arrays.hashCode(key), key);
+        if (slot >= 0) {
+            Segment segment = segments.get(index.segmentId(slot));
+            int offset = index.offset(slot);
+            if (segment.buffer.get(offset + STATE_OFFSET) == STATE_RESTORED) {
+                segment.buffer.put(offset + STATE_OFFSET, STATE_SAVED);
+            }
+        }
+    }
+
+    @Override
+    public void delete(Address address) {
+        Validate.notNull(address);
+
+        byte[] key = address.toString().getBytes(StandardCharsets.US_ASCII);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            int slot = findSlot(Arrays.hashCode(key), key);
+            if (slot < 0) {
+                return;
+            }
+            markDead(slot);
+            index.remove(slot);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        compactor.shutdownNow();
+        try {
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                retire(segment, false);
+            }
+            segments.clear();
+            index.clear();
+        }
+    }
+
+    private void recover(boolean restoreRunning) throws IOException {
+        TreeMap<Integer, Path> paths = new TreeMap<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(p -> {
+                        String name = p.getFileName().toString();
+                        try {
+                            paths.put(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), p);
+                        } catch (NumberFormatException nfe) {
+                            LOG.warn("Ignoring unrecognized file {}", p);
+                        }
+                    });
+        }
+
+        synchronized (this) {
+            for (Entry<Integer, Path> e : paths.entrySet()) {
+                Segment segment = mapSegment(e.getKey(), e.getValue(), -1);
+                segments.put(segment.id, segment);
+                scan(segment, restoreRunning);
+            }
+            nextSegmentId = paths.isEmpty() ? 0 : paths.lastKey() + 1;
+            
+            // Anything that turned out to hold no live records can go right away
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                dropIfEmpty(segment);
+            }
+        }
+    }
+
+    // must be called while holding this object's monitor
+    private void scan(Segment segment, boolean restoreRunning) {
+        ByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset <= segment.capacity - HEADER_SIZE) {
+            int bodyLength = buffer.getInt(offset + LENGTH_OFFSET);
+            if (bodyLength == 0) {
+                break;
+            }
+            if (bodyLength < 2 || bodyLength > segment.capacity - offset - HEADER_SIZE) {
+                LOG.warn("Stopping scan of segment {} at {} (corrupt record)", segment.path, offset);
+                break;
+            }
+            
+            ByteBuffer body = buffer.duplicate();
+            body.position(offset + HEADER_SIZE);
+            body.limit(offset + HEADER_SIZE + bodyLength);
+            if (crc(body) != buffer.getInt(offset + CRC_OFFSET)) {
+                LOG.warn("Stopping scan of segment {} at {} (torn or corrupt record)", segment.path, offset);
+                break;
+            }
+            
+            int recordSize = HEADER_SIZE + bodyLength;
+            byte state = buffer.get(offset + STATE_OFFSET);
+            if (state == STATE_SAVED || state == STATE_RESTORED) {
+                if (state == STATE_RESTORED && restoreRunning) {
+                    buffer.put(offset + STATE_OFFSET, STATE_SAVED);
+                }
+                
+                byte[] key = readKey(segment, offset);
+                int hash = Arrays.hashCode(key);
+                int slot = findSlot(hash, key);
+                if (slot >= 0) {
+                    // A crash between writing a new record and marking the old one dead leaves both live -- the later one wins
+                    markDead(slot);
+                    index.set(slot, hash, segment.id, offset);
+                } else {
+                    if (!index.hasRoomForInsert()) {
+                        index.grow();
+                    }
+                    index.insert(hash, segment.id, offset);
+                }
+                segment.liveSize += recordSize;
+            }
+            
+            offset += recordSize;
+        }
+        segment.size = offset;
+    }
+
+    // must be called while holding this object's monitor
+    private Segment append(byte state, byte[] key, ByteBuffer dataBuffer, byte[] dataArray) throws IOException {
+        int dataLength = dataBuffer != null ? dataBuffer.remaining() : dataArray.length;
+        int recordSize = recordSize(key.length, dataLength);
+        
+        if (active == null || active.capacity - active.size < recordSize) {
+            rollOver(recordSize);
+        }
+        
+        Segment segment = active;
+        int offset = segment.size;
+        
+        ByteBuffer out = segment.buffer.duplicate();
+        out.position(offset + HEADER_SIZE);
+        out.putShort((short) key.length);
+        out.put(key);
+        if (dataBuffer != null) {
+            out.put(dataBuffer.duplicate());
+        } else {
+            out.put(dataArray);
+        }
+
+        ByteBuffer body = segment.buffer.duplicate();
+        body.position(offset + HEADER_SIZE);
+        body.limit(offset + recordSize);
+        int checksum = crc(body);
+
+        // Length goes in last -- a length of 0 means end of segment, so a partially written record is never picked up as a whole one
+        segment.buffer.putInt(offset + CRC_OFFSET, checksum);
+        segment.buffer.put(offset + STATE_OFFSET, state);
+        segment.buffer.putInt(offset + LENGTH_OFFSET, recordSize - HEADER_SIZE);
+        
+        segment.size += recordSize;
+        segment.liveSize += recordSize;
+        return segment;
+    }
+
+    // must be called while holding this object's monitor
+    private void rollOver(int minCapacity) throws IOException {
+        int id = nextSegmentId++;
+        Path path = directory.resolve(id + SEGMENT_SUFFIX);
+        Segment old = active;
+        active = mapSegment(id, path, Math.max(segmentSize, minCapacity));
+        segments.put(id, active);
+        
+        if (old != null) {
+            old.buffer.force(); // sealed segments never change size again, flush what's been written so far
+            if (!dropIfEmpty(old) && !compacting && hasCompactionCandidates()) {
+                compacting = true;
+                compactor.execute(this::compact);
+            }
+        }
+    }
+
+    // must be called while holding this object's monitor
+    private void markDead(int slot) {
+        Segment segment = segments.get(index.segmentId(slot));
+        int offset = index.offset(slot);
+        segment.buffer.put(offset + STATE_OFFSET, STATE_DEAD);
+        segment.liveSize -= HEADER_SIZE + segment.buffer.getInt(offset + LENGTH_OFFSET);
+        dropIfEmpty(segment);
+    }
+    
+    // must be called while holding this object's monitor
+    private boolean dropIfEmpty(Segment segment) {
+        if (segment == active || segment.liveSize > 0) {
+            return false;
+        }
+        
+        segments.remove(segment.id);
+        retire(segment, true);
+        return true;
+    }
+
+    // must be called while holding this object's monitor
+    private void retire(Segment segment, boolean delete) {
+        // A segment still being read by restore() gets released once the last of those reads finishes (see unpin())
+        segment.retired = true;
+        segment.deleteOnRelease = delete;
+        if (segment.readers == 0) {
+            release(segment);
+        }
+    }
+
+    // must be called while holding this object's monitor
+    private void release(Segment segment) {
+        // Unmap before deleting -- some platforms (e.g. Windows) refuse to delete a file that's still mapped, and the mapping would
+        // otherwise hang around until the buffer happens to get garbage collected
+        unmap(segment.buffer);
+        if (segment.deleteOnRelease) {
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException ioe) {
+                LOG.warn("Unable to delete segment {}", segment.path, ioe);
+            }
+        }
+    }
+
+    // must be called while holding this object's monitor
+    private boolean hasCompactionCandidates() {
+        for (Segment segment : segments.values()) {
+            if (segment != active && segment.liveSize < segment.size * COMPACTION_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compact() {
+        try {
+            while (true) {
+                Segment target = null;
+                synchronized (this) {
+                    if (!closed) {
+                        for (Segment segment : segments.values()) {
+                            if (segment != active && segment.liveSize < segment.size * COMPACTION_THRESHOLD) {
+                                target = segment;
+                                break;
+                            }
+                        }
+                    }
+                    if (target == null) {
+                        compacting = false;
+                        return;
+                    }
+                }
+                
+                compactSegment(target);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Compaction failed", e);
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void compactSegment(Segment segment) throws IOException {
+        // Records in a sealed segment never move and their lengths never change, so they can be walked one at a time without holding the
+        // lock the entire way. Only their state bytes change, which is checked under the lock.
+        int offset = 0;
+        while (true) {
+            synchronized (this) {
+                if (closed || segments.get(segment.id) != segment || offset >= segment.size) {
+                    return; // closed, segment already dropped (everything in it is dead), or reached the end
+                }
+                
+                int recordSize = HEADER_SIZE + segment.buffer.getInt(offset + LENGTH_OFFSET);
+                byte state = segment.buffer.get(offset + STATE_OFFSET);
+                if (state == STATE_SAVED || state == STATE_RESTORED) {
+                    byte[] key = readKey(segment, offset);
+                    int hash = Arrays.hashCode(key);
+                    int slot = findSlot(hash, key);
+                    Validate.validState(slot >= 0 && index.segmentId(slot) == segment.id && index.offset(slot) == offset);
+                    
+                    ByteBuffer data = dataSlice(segment, offset);
+                    Segment newSegment = append(state, key, data, null);
+                    int newOffset = newSegment.size - recordSize;
+                    markDead(slot); // may drop the segment if this was its last live record
+                    index.set(slot, hash, newSegment.id, newOffset);
+                }
+                
+                offset += recordSize;
+            }
+        }
+    }
+
+    // must be called while holding this object's monitor
+    private int findSlot(int hash, byte[] key) {
+        int slot = index.probeStart(hash);
+        while (true) {
+            int segmentId = index.segmentId(slot);
+            if (segmentId == OffHeapIndex.EMPTY) {
+                return -1;
+            }
+            if (segmentId != OffHeapIndex.TOMBSTONE && index.hash(slot) == hash
+                    && keyEquals(segments.get(segmentId), index.offset(slot), key)) {
+                return slot;
+            }
+            slot = index.probeNext(slot);
+        }
+    }
+
+    private static boolean keyEquals(Segment segment, int offset, byte[] key) {
+        ByteBuffer buffer = segment.buffer;
+        int keyOffset = offset + HEADER_SIZE;
+        if ((buffer.getShort(keyOffset) & 0xFFFF) != key.length) {
+            return false;
+        }
+        keyOffset += 2;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(keyOffset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readKey(Segment segment, int offset) {
+        int keyLength = segment.buffer.getShort(offset + HEADER_SIZE) & 0xFFFF;
+        byte[] key = new byte[keyLength];
+        ByteBuffer in = segment.buffer.duplicate();
+        in.position(offset + HEADER_SIZE + 2);
+        in.get(key);
+        return key;
+    }
+
+    private static ByteBuffer dataSlice(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer;
+        int keyLength = buffer.getShort(offset + HEADER_SIZE) & 0xFFFF;
+        int dataStart = offset + HEADER_SIZE + 2 + keyLength;
+        int dataEnd = offset + HEADER_SIZE + buffer.getInt(offset + LENGTH_OFFSET);
+        
+        ByteBuffer data = buffer.duplicate();
+        data.position(dataStart);
+        data.limit(dataEnd);
+        return data.slice().asReadOnlyBuffer();
+    }
+
+    private static int recordSize(int keyLength, int dataLength) {
+        long size = (long) HEADER_SIZE + 2L + keyLength + dataLength;
+        Validate.isTrue(size <= Integer.MAX_VALUE, "Data too large");
+        return (int) size;
+    }
+
+    // must be called while holding this object's monitor
+    private int crc(ByteBuffer body) {
+        // CRC32.update(ByteBuffer) is Java 9+, so go through a scratch array
+        crc.reset();
+        while (body.hasRemaining()) {
+            int len = Math.min(crcScratch.length, body.remaining());
+            body.get(crcScratch, 0, len);
+            crc.update(crcScratch, 0, len);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static Segment mapSegment(int id, Path path, int capacity) throws IOException {
+        // capacity of -1 means map an existing file as-is
+        try (FileChannel channel = capacity == -1 ? FileChannel.open(path, READ, WRITE) : FileChannel.open(path, CREATE_NEW, READ, WRITE)) {
+            long size = capacity == -1 ? channel.size() : capacity;
+            Validate.isTrue(size <= Integer.MAX_VALUE, "Segment too large: %s", path);
+            MappedByteBuffer buffer = channel.map(READ_WRITE, 0L, size); // mapping stays valid after the channel is closed
+            return new Segment(id, path, buffer);
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        // There's no public API to unmap before the buffer gets garbage collected. Java 9+ exposes Unsafe.invokeCleaner(), while on Java 8
+        // the cleaner hangs off the buffer itself. If neither works, the mapping is left for the garbage collector as before.
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException nsme) {
+                invokeCleaner = null;
+            }
+            
+            if (invokeCleaner != null) {
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Unable to unmap segment buffer, leaving it to the garbage collector", e);
+        }
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int size;     // bytes written
+        private long liveSize; // bytes of records that are saved/restored
+        private int readers;   // restore() calls reading straight out of buffer -- buffer can't be unmapped until this drops to 0
+        private boolean retired; // removed from use, buffer gets unmapped once readers drops to 0
+        private boolean deleteOnRelease; // delete the file once the buffer is unmapped
+
+        Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+    }
+
+    // Open-addressing (linear probing) hash table in a direct buffer. Each slot is 3 ints: address hash, segment id, record offset. The
+    // address itself isn't stored -- keys are compared against the address stored in the record.
+    private static final class OffHeapIndex {
+        private static final int EMPTY = -1;
+        private static final int TOMBSTONE = -2;
+        
+        private static final int SLOT_SIZE = 12;
+        private static final int HASH_OFFSET = 0;
+        private static final int SEGMENT_OFFSET = 4;
+        private static final int RECORD_OFFSET = 8;
+        private static final int MAX_CAPACITY = 1 << 27; // 12 * 2^27 bytes is as large as a single direct buffer can go
+        
+        private ByteBuffer table;
+        private int capacity;
+        private int size;
+        private int tombstones;
+
+        OffHeapIndex(int capacity) {
+            init(capacity);
+        }
+
+        private void init(int capacity) {
+            this.table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+            this.capacity = capacity;
+            this.size = 0;
+            this.tombstones = 0;
+            for (int i = 0; i < capacity; i++) {
+                table.putInt(i * SLOT_SIZE + SEGMENT_OFFSET, EMPTY);
+            }
+        }
+        
+        void clear() {
+            init(INITIAL_INDEX_CAPACITY);
+        }
+
+        int probeStart(int hash) {
+            int h = hash ^ (hash >>> 16);
+            return h & (capacity - 1);
+        }
+
+        int probeNext(int slot) {
+            return (slot + 1) & (capacity - 1);
+        }
+
+        int hash(int slot) {
+            return table.getInt(slot * SLOT_SIZE + HASH_OFFSET);
+        }
+
+        int segmentId(int slot) {
+            return table.getInt(slot * SLOT_SIZE + SEGMENT_OFFSET);
+        }
+
+        int offset(int slot) {
+            return table.getInt(slot * SLOT_SIZE + RECORD_OFFSET);
+        }
+
+        void set(int slot, int hash, int segmentId, int offset) {
+            table.putInt(slot * SLOT_SIZE + HASH_OFFSET, hash);
+            table.putInt(slot * SLOT_SIZE + SEGMENT_OFFSET, segmentId);
+            table.putInt(slot * SLOT_SIZE + RECORD_OFFSET, offset);
+        }
+
+        boolean hasRoomForInsert() {
+            return (size + tombstones + 1) * 4L <= capacity * 3L; // keep load (including tombstones) at or under 75%
+        }
+
+        // caller must have already checked that the key isn't present and that there's room
+        void insert(int hash, int segmentId, int offset) {
+            int slot = probeStart(hash);
+            while (true) {
+                int existing = segmentId(slot);
+                if (existing == EMPTY || existing == TOMBSTONE) {
+                    if (existing == TOMBSTONE) {
+                        tombstones--;
+                    }
+                    set(slot, hash, segmentId, offset);
+                    size++;
+                    return;
+                }
+                slot = probeNext(slot);
+            }
+        }
+
+        void remove(int slot) {
+            table.putInt(slot * SLOT_SIZE + SEGMENT_OFFSET, TOMBSTONE);
+            size--;
+            tombstones++;
+        }
+
+        void grow() {
+            // Only double if it's actually full of live entries -- if it's mostly tombstones, rehashing at the same size clears them out
+            int newCapacity = (size + 1) * 2L > capacity ? capacity * 2 : capacity;
+            if (newCapacity > MAX_CAPACITY) {
+                throw new IllegalStateException("Index full");
+            }
+            
+            ByteBuffer oldTable = table;
+            int oldCapacity = capacity;
+            init(newCapacity);
+            for (int i = 0; i < oldCapacity; i++) {
+                int segmentId = oldTable.getInt(i * SLOT_SIZE + SEGMENT_OFFSET);
+                if (segmentId != EMPTY && segmentId != TOMBSTONE) {
+                    insert(
+                            oldTable.getInt(i * SLOT_SIZE + HASH_OFFSET),
+                            segmentId,
+                            oldTable.getInt(i * SLOT_SIZE + RECORD_OFFSET));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.context;
+
+import com.offbynull.actors.core.shuttle.Address;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A {@link Serializer} that produces a more compact payload than {@link ObjectStreamSerializer}.
+ * <p>
+ * Java serialization is still used to walk the object graph (it's what {@link CoroutineRunner} and its captured state support), but class
+ * descriptors are replaced with small integer IDs for registered classes and with the bare class name for everything else. The usual
+ * descriptor (field names, field types, serialVersionUID, superclass chain) is looked up locally when reading. That means data written by
+ * this serializer can only be read back by the same build of the classes involved -- which is the case for checkpoints, but not for
+ * long-term storage across upgrades.
+ * <p>
+ * The registration list must be identical (same classes, same order) between the instance that serializes and the instance that
+ * unserializes. A set of core classes is always registered ahead of user classes. Each payload carries a fingerprint of the registered
+ * classes (names, serialVersionUIDs, and serializable fields), and payloads whose fingerprint doesn't match are rejected instead of being
+ * misread. Unregistered classes aren't covered by the fingerprint.
+ * <p>
+ * Payloads can optionally be compressed using {@link Deflater} at {@link Deflater#BEST_SPEED}. Output buffers and (de)compressors are
+ * reused per thread.
+ * <p>
+ * This class is thread-safe.
+ * @author Kasra Faghihi
+ */
+public final class CompactSerializer implements Serializer {
+
+    // IDs are assigned by position -- only ever append to this list
+    private static final List<Class<?>> CORE_CLASSES = Collections.unmodifiableList(Arrays.asList(
+            SourceContext.class,
+            RuleSet.class,
+            RuleSet.AccessType.class,
+            BatchedOutgoingMessage.class,
+            BatchedCreateActorCommand.class,
+            Address.class,
+            CoroutineRunner.class,
+            String.class,
+            Object[].class,
+            ArrayList.class,
+            HashMap.class,
+            LinkedHashMap.class,
+            LinkedHashSet.class,
+            Boolean.class,
+            Integer.class,
+            Long.class,
+            Number.class,
+            Enum.class,
+            BatchedScheduledMessage.class));
+
+    private static final Map<String, Class<?>> PRIMITIVES;
+    static {
+        Map<String, Class<?>> primitives = new HashMap<>();
+        for (Class<?> cls : new Class<?>[] {boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class,
+                double.class, void.class}) {
+            primitives.put(cls.getName(), cls);
+        }
+        PRIMITIVES = Collections.unmodifiableMap(primitives);
+    }
+
+    private static final int FLAG_COMPRESSED = 0x01;
+    private static final int HEADER_SIZE = 5; // flag byte + fingerprint
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final int UNREGISTERED_ID = 0;
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final boolean compress;
+    private final List<Class<?>> idToClass;
+    private final Map<Class<?>, Integer> classToId;
+    private final int fingerprint;
+
+    /**
+     * Constructs a {@link CompactSerializer} instance with compression disabled and no user classes registered.
+     */
+    public CompactSerializer() {
+        this(false);
+    }
+
+    /**
+     * Constructs a {@link CompactSerializer} instance.
+     * @param compress if {@code true}, payloads are compressed
+     * @param registeredClasses classes to assign IDs to (in addition to the core classes that are always registered)
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     */
+    public CompactSerializer(boolean compress, Class<?>... registeredClasses) {
+        Validate.notNull(registeredClasses);
+        Validate.noNullElements(registeredClasses);
+
+        this.compress = compress;
+
+        List<Class<?>> classes = new ArrayList<>(CORE_CLASSES.size() + registeredClasses.length + 1);
+        classes.add(null); // id 0 is reserved for unregistered classes
+        classes.addAll(CORE_CLASSES);
+        classes.addAll(Arrays.asList(registeredClasses));
+
+        Map<Class<?>, Integer> ids = new HashMap<>();
+        for (int i = 1; i < classes.size(); i++) {
+            ids.putIfAbsent(classes.get(i), i);
+        }
+
+        this.idToClass = Collections.unmodifiableList(classes);
+        this.classToId = Collections.unmodifiableMap(ids);
+        this.fingerprint = fingerprint(classes.subList(1, classes.size()));
+    }
+
+    private static int fingerprint(List<Class<?>> classes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Class<?> cls : classes) {
+                ObjectStreamClass desc = ObjectStreamClass.lookupAny(cls);
+                ObjectStreamField[] fields = desc.getFields(); // sorted by serialization, so order is stable
+                out.writeUTF(cls.getName());
+                out.writeLong(desc.getSerialVersionUID());
+                out.writeInt(fields.length);
+                for (ObjectStreamField field : fields) {
+                    out.writeUTF(field.getName());
+                    out.writeChar(field.getTypeCode());
+                    if (!field.isPrimitive()) {
+                        out.writeUTF(field.getTypeString());
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe); // should never happen
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public byte[] serialize(SourceContext ctx) {
+        Validate.notNull(ctx);
+
+        Buffers buffers = BUFFERS.get();
+        ExposedByteArrayOutputStream raw = buffers.raw;
+        raw.reset();
+        raw.write(compress ? FLAG_COMPRESSED : 0);
+        writeFingerprint(raw);
+        try (ObjectOutputStream oos = new CompactObjectOutputStream(raw)) {
+            oos.writeObject(ctx);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException(ioe);
+        }
+
+        if (!compress) {
+            byte[] ret = raw.toByteArray();
+            releaseIfOversized(buffers);
+            return ret;
+        }
+
+        // Header and uncompressed length are stored as-is, the rest is deflated
+        int rawLength = raw.size() - HEADER_SIZE;
+        ExposedByteArrayOutputStream out = buffers.compressed;
+        out.reset();
+        out.write(FLAG_COMPRESSED);
+        writeFingerprint(out);
+        writeVarInt(out, rawLength);
+
+        Deflater deflater = buffers.deflater;
+        deflater.reset();
+        deflater.setInput(raw.buffer(), HEADER_SIZE, rawLength);
+        deflater.finish();
+        byte[] chunk = buffers.chunk;
+        while (!deflater.finished()) {
+            int len = deflater.deflate(chunk);
+            out.write(chunk, 0, len);
+        }
+
+        byte[] ret = out.toByteArray();
+        releaseIfOversized(buffers);
+        return ret;
+    }
+
+    private void writeFingerprint(ByteArrayOutputStream out) {
+        out.write(fingerprint >>> 24);
+        out.write(fingerprint >>> 16);
+        out.write(fingerprint >>> 8);
+        out.write(fingerprint);
+    }
+
+    private void checkFingerprint(int payloadFingerprint) {
+        Validate.isTrue(payloadFingerprint == fingerprint, "Payload was written with different class registrations");
+    }
+
+    private static void releaseIfOversized(Buffers buffers) {
+        // Don't let one huge actor pin a huge buffer to this thread forever
+        if (buffers.raw.buffer().length > MAX_RETAINED_BUFFER_SIZE || buffers.compressed.buffer().length > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.deflater.end();
+            buffers.inflater.end();
+            BUFFERS.remove();
+        }
+    }
+
+    @Override
+    public SourceContext unserialize(ByteBuffer data) {
+        Validate.notNull(data);
+        Validate.isTrue(data.remaining() >= HEADER_SIZE, "Truncated payload");
+
+        int flags = data.get(data.position()) & 0xFF;
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            return Serializer.super.unserialize(data); // inflater needs an array
+        }
+
+        ByteBuffer body = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        body.position(body.position() + 1);
+        checkFingerprint(body.getInt());
+        return unserialize(new ByteBufferInputStream(body));
+    }
+
+    @Override
+    public SourceContext unserialize(byte[] data) {
+        Validate.notNull(data);
+        Validate.isTrue(data.length >= HEADER_SIZE, "Truncated payload");
+        checkFingerprint(ByteBuffer.wrap(data, 1, 4).getInt());
+
+        InputStream in;
+        int flags = data[0] & 0xFF;
+        if ((flags & FLAG_COMPRESSED) == 0) {
+            in = new ByteArrayInputStream(data, HEADER_SIZE, data.length - HEADER_SIZE);
+        } else {
+            ByteArrayInputStream header = new ByteArrayInputStream(data, HEADER_SIZE, data.length - HEADER_SIZE);
+            int rawLength = readVarInt(header);
+            int offset = data.length - header.available();
+
+            byte[] raw = new byte[rawLength];
+            Inflater inflater = BUFFERS.get().inflater;
+            inflater.reset();
+            inflater.setInput(data, offset, data.length - offset);
+            try {
+                int read = 0;
+                while (read < rawLength && !inflater.finished()) {
+                    int len = inflater.inflate(raw, read, rawLength - read);
+                    // Nothing inflated and no way to make progress (out of input, or wants a preset dictionary we never set) -- bail
+                    Validate.isTrue(len > 0 || !(inflater.needsInput() || inflater.needsDictionary()), "Truncated or corrupt payload");
+                    read += len;
+                }
+                Validate.isTrue(read == rawLength, "Truncated payload");
+            } catch (DataFormatException dfe) {
+                throw new IllegalArgumentException(dfe);
+            }
+            in = new ByteArrayInputStream(raw);
+        }
+
+        return unserialize(in);
+    }
+
+    private SourceContext unserialize(InputStream in) {
+        try (ObjectInputStream ois = new CompactObjectInputStream(in)) {
+            return (SourceContext) ois.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static void writeVarInt(OutputStream out, int value) {
+        try {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe); // should never happen
+        }
+    }
+
+    private static int readVarInt(InputStream in) {
+        try {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.read();
+                Validate.isTrue(b != -1, "Truncated payload");
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe); // should never happen
+        }
+        throw new IllegalArgumentException("Malformed length");
+    }
+
+    private final class CompactObjectOutputStream extends ObjectOutputStream {
+
+        CompactObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeStreamHeader() throws IOException {
+            // no header -- the payload has its own
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            Class<?> cls = desc.forClass();
+            Integer id = cls == null ? null : classToId.get(cls);
+            if (id != null) {
+                writeVarInt(this, id);
+            } else {
+                writeVarInt(this, UNREGISTERED_ID);
+                writeUTF(desc.getName());
+            }
+        }
+    }
+
+    private final class CompactObjectInputStream extends ObjectInputStream {
+
+        CompactObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected void readStreamHeader() throws IOException {
+            // no header -- the payload has its own
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            int id;
+            try {
+                id = readVarInt(this);
+            } catch (IllegalArgumentException iae) {
+                throw new StreamCorruptedException(iae.getMessage());
+            }
+
+            Class<?> cls;
+            if (id == UNREGISTERED_ID) {
+                String name = readUTF();
+                cls = PRIMITIVES.get(name);
+                if (cls == null) {
+                    cls = Class.forName(name, false, classLoader());
+                }
+            } else {
+                if (id >= idToClass.size()) {
+                    throw new StreamCorruptedException("Unknown class id: " + id);
+                }
+                cls = idToClass.get(id);
+            }
+
+            return ObjectStreamClass.lookupAny(cls);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> cls = desc.forClass(); // descriptors come from readClassDescriptor(), so the class has already been resolved
+            return cls != null ? cls : super.resolveClass(desc);
+        }
+
+        private ClassLoader classLoader() {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            return classLoader != null ? classLoader : CompactSerializer.class.getClassLoader();
+        }
+    }
+
+    private static final class Buffers {
+        private final ExposedByteArrayOutputStream raw = new ExposedByteArrayOutputStream();
+        private final ExposedByteArrayOutputStream compressed = new ExposedByteArrayOutputStream();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final Inflater inflater = new Inflater();
+        private final byte[] chunk = new byte[8192];
+    }
+
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() {
+            super(8192);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -94,6 +94,19 @@ public interface Context {
      * @throws IllegalArgumentException if {@code destination} is empty, or if {@code source} doesn't start with {@link #self()}
      */
     void out(Address source, Address destination, Object message);
+
+    /**
+     * Queue up a message to be sent back to this actor after a delay. The message will show up as coming from {@link #self()}.
+     * <p>
+     * Unlike {@link #timer(long, java.lang.Object) }, this doesn't go through the timer gateway. The timer is kept by whatever is running
+     * this actor, so the message never leaves the thread that owns the actor. Like with the timer gateway, pending timers are only kept in
+     * memory -- they survive the actor being checkpointed/passivated, but not whatever is running the actor going down.
+     * @param delay delay in milliseconds
+     * @param message message to send back to this actor after {@code delay}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code delay} is negative
+     */
+    void schedule(long delay, Object message);
     
     /**
      * Returns an unmodifiable list of outgoing messages. This list stays in sync as more outgoing messages are added.
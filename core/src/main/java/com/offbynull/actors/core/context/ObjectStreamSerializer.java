@@ -18,8 +18,10 @@ package com.offbynull.actors.core.context;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang3.Validate;
 
@@ -48,9 +50,18 @@ public final class ObjectStreamSerializer implements Serializer {
     @Override
     public SourceContext unserialize(byte[] data) {
         Validate.notNull(data);
-        
+        return unserialize(new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public SourceContext unserialize(ByteBuffer data) {
+        Validate.notNull(data);
+        return unserialize(new ByteBufferInputStream(data));
+    }
+    
+    private static SourceContext unserialize(InputStream is) {
         SourceContext ctx;
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(data); ObjectInputStream ois = new ObjectInputStream(bais)) {
+        try (ObjectInputStream ois = new ObjectInputStream(is)) {
             ctx = (SourceContext) ois.readObject();
         } catch (IOException | ClassNotFoundException e) {
             throw new IllegalArgumentException(e);
@@ -17,6 +17,8 @@
 package com.offbynull.actors.core.context;
 
 import com.offbynull.actors.core.shuttle.Address;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
@@ -29,18 +31,31 @@ import org.apache.commons.lang3.Validate;
 
 /**
  * Access control rules. Controls what type of messages can come from which sources.
+ * <p>
+ * Rules are compiled in to a trie keyed by address element, so evaluating a source address walks the trie once instead of looking up
+ * every prefix of the address. Decisions are also cached per source address and message type. Both the trie and the cache are rebuilt
+ * from the rules on deserialization and are reset whenever the rules change.
+ * <p>
+ * This class is not thread-safe.
  * @author Kasra Faghihi
  */
 public final class RuleSet implements Serializable {
 
     private static final long serialVersionUID = 1L;
     
+    private static final int MAX_CACHED_SOURCES = 1024;
+    
     private AccessType defaultAccessType;
     private final Map<Address, AddressRule> rules;
     
+    private transient TrieNode root;
+    private transient TrieNode[] matchStack;
+    private transient Map<Address, Map<Class<?>, AccessType>> decisionCache;
+    
     RuleSet() {
         defaultAccessType = AccessType.REJECT;
         rules = new HashMap<>();
+        initCompiledState();
     }
     
     /**
@@ -49,6 +64,7 @@ public final class RuleSet implements Serializable {
     public void allowAll() {
         defaultAccessType = AccessType.ALLOW;
         rules.clear();
+        initCompiledState();
     }
 
     /**
@@ -57,6 +73,7 @@ public final class RuleSet implements Serializable {
     public void rejectAll() {
         defaultAccessType = AccessType.REJECT;
         rules.clear();
+        initCompiledState();
     }
 
     /**
@@ -70,7 +87,7 @@ public final class RuleSet implements Serializable {
         Validate.notNull(address);
         Validate.notNull(types);
         Validate.noNullElements(types);
-        rules.put(address, new AddressRule(includeChildren, AccessType.ALLOW, Arrays.asList(types)));
+        putRule(address, new AddressRule(includeChildren, AccessType.ALLOW, Arrays.asList(types)));
     }
 
     /**
@@ -84,7 +101,7 @@ public final class RuleSet implements Serializable {
         Validate.notNull(address);
         Validate.notNull(types);
         Validate.noNullElements(types);
-        rules.put(address, new AddressRule(includeChildren, AccessType.REJECT, Arrays.asList(types)));
+        putRule(address, new AddressRule(includeChildren, AccessType.REJECT, Arrays.asList(types)));
     }
     
     /**
@@ -97,31 +114,115 @@ public final class RuleSet implements Serializable {
         Validate.notNull(address);
         Validate.notNull(type);
         
-        // Find greatest prefix;
-        for (int i = 0; i < address.size(); i++) {
-            Address foundAddressPrefix = address.removeSuffix(i);
-            AddressRule rule = rules.get(foundAddressPrefix);
-            
-            // If you found a rule prefix, and you're not evaluating a child address of the rule OR you are evaluating a child address of
-            // the rule but the rule applies to child address as well, then return the rule's access type
-            if (rule != null) {
-                boolean evaluatingChildAddress = foundAddressPrefix.size() < address.size();
-                if (!evaluatingChildAddress || (evaluatingChildAddress && rule.includeChildren)) {
-                    // The address matches the address in the rule, but we still have to check the type being evaluated to see if it matches
-                    // Note that an empty type set means that any type is let through
-                    if (rule.getTypes().isEmpty() || rule.getTypes().contains(type)) {
-                        return rule.getAccessType();
+        Map<Class<?>, AccessType> cachedTypes = decisionCache.get(address);
+        if (cachedTypes != null) {
+            AccessType cached = cachedTypes.get(type);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        AccessType accessType = evaluateTrie(address, type);
+        
+        if (cachedTypes == null) {
+            if (decisionCache.size() >= MAX_CACHED_SOURCES) {
+                decisionCache.clear();
+            }
+            cachedTypes = new HashMap<>();
+            decisionCache.put(address, cachedTypes);
+        }
+        cachedTypes.put(type, accessType);
+        
+        return accessType;
+    }
+    
+    private AccessType evaluateTrie(Address address, Class<?> type) {
+        int size = address.size();
+        if (matchStack.length < size) {
+            matchStack = new TrieNode[size];
+        }
+        
+        // Walk down the trie, remembering the node for each prefix length (index i holds the node for the prefix of length i + 1)
+        int depth = 0;
+        TrieNode node = root;
+        while (depth < size) {
+            node = node.getChild(address.getElement(depth));
+            if (node == null) {
+                break;
+            }
+            matchStack[depth] = node;
+            depth++;
+        }
+        
+        try {
+            // Find greatest prefix -- go back up from the deepest node that was reached
+            for (int i = depth - 1; i >= 0; i--) {
+                AddressRule rule = matchStack[i].rule;
+
+                // If you found a rule prefix, and you're not evaluating a child address of the rule OR you are evaluating a child address
+                // of the rule but the rule applies to child address as well, then return the rule's access type
+                if (rule != null) {
+                    boolean evaluatingChildAddress = i + 1 < size;
+                    if (!evaluatingChildAddress || rule.includeChildren) {
+                        // The address matches the address in the rule, but we still have to check the type being evaluated to see if it
+                        // matches. Note that an empty type set means that any type is let through
+                        if (rule.getTypes().isEmpty() || rule.getTypes().contains(type)) {
+                            return rule.getAccessType();
+                        }
                     }
                 }
+
+                // Otherwise keep going up until you find the next rule to evaluate
             }
-            
-            // Otherwise keep going up until you find the next rule to evaluate
+        } finally {
+            Arrays.fill(matchStack, 0, depth, null);
         }
         
         // No rule found, return the default access type
         return defaultAccessType;
     }
     
+    private void putRule(Address address, AddressRule rule) {
+        rules.put(address, rule);
+        compileRule(address, rule);
+        decisionCache.clear();
+    }
+    
+    private void compileRule(Address address, AddressRule rule) {
+        TrieNode node = root;
+        for (int i = 0; i < address.size(); i++) {
+            node = node.getOrCreateChild(address.getElement(i));
+        }
+        node.rule = rule;
+    }
+    
+    private void initCompiledState() {
+        root = new TrieNode();
+        matchStack = new TrieNode[8];
+        decisionCache = new HashMap<>();
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initCompiledState();
+        rules.forEach((address, rule) -> compileRule(address, rule));
+    }
+    
+    private static final class TrieNode {
+        private Map<String, TrieNode> children;
+        private AddressRule rule;
+
+        public TrieNode getChild(String element) {
+            return children == null ? null : children.get(element);
+        }
+
+        public TrieNode getOrCreateChild(String element) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(element, k -> new TrieNode());
+        }
+    }
 
     private static final class AddressRule implements Serializable {
 
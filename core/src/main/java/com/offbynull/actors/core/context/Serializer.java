@@ -16,6 +16,9 @@
  */
 package com.offbynull.actors.core.context;
 
+import java.nio.ByteBuffer;
+import org.apache.commons.lang3.Validate;
+
 /**
  * Interface to serialize and unserialize {@link SourceContext}.
  * @author Kasra Faghihi
@@ -39,4 +42,21 @@ public interface Serializer {
      * @throws NullPointerException if any argument is {@code null}
      */
     SourceContext unserialize(byte[] data);
+
+    /**
+     * Unserialize context from the remaining bytes of a buffer. The buffer's position is left unchanged.
+     * <p>
+     * The default implementation copies the bytes out and calls {@link #unserialize(byte[]) }. Implementations may override this to read
+     * from the buffer directly (e.g. so that a memory-mapped buffer doesn't have to be copied on to the heap first).
+     * @param data serialized context
+     * @return context
+     * @throws IllegalArgumentException if cannot be serialized for some reason
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    default SourceContext unserialize(ByteBuffer data) {
+        Validate.notNull(data);
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return unserialize(copy);
+    }
 }
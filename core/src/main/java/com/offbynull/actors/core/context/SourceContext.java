@@ -20,12 +20,14 @@ import com.offbynull.coroutines.user.Coroutine;
 import com.offbynull.coroutines.user.CoroutineRunner;
 import com.offbynull.actors.core.context.RuleSet.AccessType;
 import com.offbynull.actors.core.shuttle.Address;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.lang3.Validate;
@@ -52,6 +54,7 @@ public final class SourceContext implements Context, Serializable {
     private Address destination;
     private Object in;
     private List<BatchedOutgoingMessage> outs;
+    private List<BatchedScheduledMessage> schedules;
     private List<BatchedCreateActorCommand> newRoots;
     private Map<String, SourceContext> children;
     
@@ -74,8 +77,9 @@ public final class SourceContext implements Context, Serializable {
         this.ruleSet = new RuleSet();
         this.actorRunner = actorRunner;
         this.self = self;
-        this.outs = new LinkedList<>();
-        this.newRoots = new LinkedList<>();
+        this.outs = new ArrayList<>();
+        this.schedules = new ArrayList<>();
+        this.newRoots = new ArrayList<>();
         this.children = new HashMap<>();
         
         this.shortcircuits = new HashMap<>();
@@ -199,6 +203,13 @@ public final class SourceContext implements Context, Serializable {
     public List<BatchedOutgoingMessage> viewOuts() {
         return Collections.unmodifiableList(outs);
     }
+
+    @Override
+    public void schedule(long delay, Object message) {
+        Validate.notNull(message);
+        Validate.isTrue(delay >= 0L);
+        schedules.add(new BatchedScheduledMessage(self, self, delay, message));
+    }
     
     /**
      * Get a copy of the outgoing message queue and clear the original.
@@ -211,6 +222,53 @@ public final class SourceContext implements Context, Serializable {
         return ret;
     }
     
+    /**
+     * Move the contents of the outgoing message queue in to {@code dst}. Unlike {@link #copyAndClearOutgoingMessages() }, this method
+     * doesn't allocate a new list, so callers can reuse the same buffer for each invocation.
+     * @param dst collection to add queued outgoing messages to
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void drainOutgoingMessages(Collection<? super BatchedOutgoingMessage> dst) {
+        Validate.notNull(dst);
+        if (outs.isEmpty()) {
+            return;
+        }
+        
+        for (int i = 0; i < outs.size(); i++) { // index-based to avoid the iterator/array copy that addAll() would make
+            dst.add(outs.get(i));
+        }
+        outs.clear();
+    }
+    
+    /**
+     * Get a copy of the scheduled message queue and clear the original.
+     * @return list of queued scheduled messages
+     */
+    public List<BatchedScheduledMessage> copyAndClearScheduledMessages() {
+        List<BatchedScheduledMessage> ret = new ArrayList<>(schedules);
+        schedules.clear();
+        
+        return ret;
+    }
+    
+    /**
+     * Move the contents of the scheduled message queue in to {@code dst}. Unlike {@link #copyAndClearScheduledMessages() }, this method
+     * doesn't allocate a new list, so callers can reuse the same buffer for each invocation.
+     * @param dst collection to add queued scheduled messages to
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void drainScheduledMessages(Collection<? super BatchedScheduledMessage> dst) {
+        Validate.notNull(dst);
+        if (schedules.isEmpty()) {
+            return;
+        }
+        
+        for (int i = 0; i < schedules.size(); i++) { // index-based to avoid the iterator/array copy that addAll() would make
+            dst.add(schedules.get(i));
+        }
+        schedules.clear();
+    }
+    
     /**
      * Get a copy of the new root actors queue and clear the original.
      * @return list of new root actors to create
@@ -222,6 +280,24 @@ public final class SourceContext implements Context, Serializable {
         return ret;
     }
 
+    /**
+     * Move the contents of the new root actors queue in to {@code dst}. Unlike {@link #copyAndClearNewRoots() }, this method doesn't
+     * allocate a new list, so callers can reuse the same buffer for each invocation.
+     * @param dst collection to add new root actors to create to
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void drainNewRoots(Collection<? super BatchedCreateActorCommand> dst) {
+        Validate.notNull(dst);
+        if (newRoots.isEmpty()) {
+            return;
+        }
+        
+        for (int i = 0; i < newRoots.size(); i++) { // index-based to avoid the iterator/array copy that addAll() would make
+            dst.add(newRoots.get(i));
+        }
+        newRoots.clear();
+    }
+
     @Override
     public void neighbour(String id, Coroutine actor, Object... primingMessages) {
         Validate.notNull(id);
@@ -245,6 +321,7 @@ public final class SourceContext implements Context, Serializable {
         SourceContext childCtx = new SourceContext(childActorRunner, childSelf);
         childCtx.parent = this;
         childCtx.outs = outs; // all outgoing messages go in to the same queue
+        childCtx.schedules = schedules; // same with scheduled messages
         
         for (Object primingMessage : primingMessages) {
             childCtx.out(childSelf, childSelf, primingMessage);
@@ -483,6 +560,23 @@ public final class SourceContext implements Context, Serializable {
         return children.get(id);
     }
 
+    // Contexts serialized before scheduled messages were introduced (e.g. in existing checkpoints) don't have a schedules field. Children
+    // share their parent's list, but a child's readObject() runs before its parent's finishes -- so each context missing the field gives
+    // its whole subtree a fresh list, and the topmost one (which finishes last) ends up being the one that sticks.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (schedules == null) {
+            shareSchedules(new ArrayList<>());
+        }
+    }
+
+    private void shareSchedules(List<BatchedScheduledMessage> schedules) {
+        this.schedules = schedules;
+        for (SourceContext child : children.values()) {
+            child.shareSchedules(schedules);
+        }
+    }
+
     /**
      * Wraps this context in a new {@link Context} such that the setters aren't exposed / are hidden from access. Use this when you have to
      * pass this context to an actor.
@@ -506,6 +600,11 @@ public final class SourceContext implements Context, Serializable {
             return SourceContext.this.viewOuts();
         }
 
+        @Override
+        public void schedule(long delay, Object message) {
+            SourceContext.this.schedule(delay, message);
+        }
+
         @Override
         public Address destination() {
             return SourceContext.this.destination();
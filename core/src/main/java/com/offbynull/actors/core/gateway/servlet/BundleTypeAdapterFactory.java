@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.lang3.Validate;
+
+// Hands out the streaming adapters used by the servlet gateway. A factory is needed (as opposed to registering adapter instances directly)
+// because message content gets (de)serialized through the Gson instance the adapters end up being registered with.
+final class BundleTypeAdapterFactory implements TypeAdapterFactory {
+
+    private final String prefix;
+
+    BundleTypeAdapterFactory(String prefix) {
+        Validate.notNull(prefix);
+        this.prefix = prefix;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == HttpToSystemBundle.class) {
+            return (TypeAdapter<T>) new HttpToSystemBundleTypeAdapter(prefix, new MessageTypeAdapter(prefix, gson));
+        } else if (rawType == SystemToHttpBundle.class) {
+            return (TypeAdapter<T>) new SystemToHttpBundleTypeAdapter(prefix, new MessageTypeAdapter(prefix, gson));
+        } else {
+            return null;
+        }
+    }
+}
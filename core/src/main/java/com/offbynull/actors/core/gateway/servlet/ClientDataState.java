@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.offbynull.actors.core.gateway.servlet.MessageCache.MessageBlock;
+import com.offbynull.actors.core.shuttle.Message;
+import org.apache.commons.lang3.Validate;
+
+// Per-client message buffers (both directions) along with their sequence numbers. Not thread-safe -- message caches guard access.
+final class ClientDataState {
+
+    private final MessageRing incomingMessages;
+    private final MessageRing outgoingMessages;
+
+    public ClientDataState() {
+        incomingMessages = new MessageRing();
+        outgoingMessages = new MessageRing();
+    }
+
+    public void addIncoming(int seq, Message message) {
+        Validate.isTrue(seq >= 0);
+        Validate.notNull(message);
+
+        // we only want to accept the message if it's the message after the latest one we have... if it's behind/ahead, ignore it
+        if (seq != incomingMessages.getTailSequence()) {
+            return;
+        }
+        
+        incomingMessages.add(message);
+    }
+
+    public void clearIncoming() {
+        incomingMessages.clear();
+    }
+
+    public MessageBlock getIncoming() {
+        return MessageBlock.wrap(incomingMessages.getHeadSequence(), incomingMessages.view());
+    }
+
+    public int getOutgoingSequenceOffset() {
+        return outgoingMessages.getTailSequence();
+    }
+
+    public void addOutgoing(int seq, Message message) {
+        Validate.isTrue(seq >= 0);
+        Validate.isTrue(seq == outgoingMessages.getTailSequence());
+        Validate.notNull(message);
+
+        outgoingMessages.add(message);
+    }
+
+    public void acknowledgeOutgoing(int seq) {
+        Validate.isTrue(seq >= 0);
+        Validate.isTrue(seq <= outgoingMessages.getTailSequence());
+
+        // seq itself is being acknowledged as well
+        outgoingMessages.removeUpTo(seq + 1);
+    }
+
+    public MessageBlock getOutgoing() {
+        return MessageBlock.wrap(outgoingMessages.getHeadSequence(), outgoingMessages.view());
+    }
+}
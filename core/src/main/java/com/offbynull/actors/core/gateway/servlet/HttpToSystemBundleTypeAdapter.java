@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.offbynull.actors.core.shuttle.Message;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.lang3.Validate;
+
+// Reads bundles coming in from HTTP clients. Messages are parsed one at a time as they're pulled off the request body rather than after
+// the entire body has been loaded in to a JSON tree.
+final class HttpToSystemBundleTypeAdapter extends TypeAdapter<HttpToSystemBundle> {
+
+    private static final String HTTP_ADDRESS_ID_PROPERTY = "httpAddressId";
+    private static final String HTTP_TO_SYSTEM_OFFSET_PROPERTY = "httpToSystemOffset";
+    private static final String SYSTEM_TO_HTTP_OFFSET_PROPERTY = "systemToHttpOffset";
+    private static final String MESSAGES_PROPERTY = "messages";
+
+    private final String prefix;
+    private final MessageTypeAdapter messageTypeAdapter;
+
+    HttpToSystemBundleTypeAdapter(String prefix, MessageTypeAdapter messageTypeAdapter) {
+        Validate.notNull(prefix);
+        Validate.notNull(messageTypeAdapter);
+        this.prefix = prefix;
+        this.messageTypeAdapter = messageTypeAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, HttpToSystemBundle value) throws IOException {
+        throw new UnsupportedOperationException(); // only ever read -- these bundles travel from HTTP clients to the system, never back
+    }
+
+    @Override
+    public HttpToSystemBundle read(JsonReader in) throws IOException {
+        String httpAddressId = null;
+        Integer httpToSystemOffset = null;
+        Integer systemToHttpOffset = null;
+        List<Message> messages = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            switch (name) {
+                case HTTP_ADDRESS_ID_PROPERTY:
+                    httpAddressId = in.nextString();
+                    break;
+                case HTTP_TO_SYSTEM_OFFSET_PROPERTY:
+                    httpToSystemOffset = in.nextInt();
+                    break;
+                case SYSTEM_TO_HTTP_OFFSET_PROPERTY:
+                    systemToHttpOffset = in.nextInt();
+                    break;
+                case MESSAGES_PROPERTY:
+                    messages = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        messages.add(messageTypeAdapter.read(in));
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        Validate.notNull(httpAddressId);
+        Validate.notNull(httpToSystemOffset);
+        Validate.notNull(systemToHttpOffset);
+        Validate.notNull(messages);
+
+        // Validated after the fact because the id may show up after the messages in the body
+        for (Message msg : messages) {
+            Validate.isTrue(msg.getSourceAddress().size() >= 2);
+            String srcPrefix = msg.getSourceAddress().getElement(0);
+            String srcId = msg.getSourceAddress().getElement(1);
+            Validate.isTrue(srcPrefix.equals(prefix));
+            Validate.isTrue(srcId.equals(httpAddressId));
+        }
+
+        return new HttpToSystemBundle(httpAddressId, httpToSystemOffset, systemToHttpOffset, messages);
+    }
+}
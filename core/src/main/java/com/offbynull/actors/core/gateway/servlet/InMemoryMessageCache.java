@@ -19,7 +19,6 @@ package com.offbynull.actors.core.gateway.servlet;
 import com.offbynull.actors.core.shuttle.Message;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -244,73 +243,4 @@ public final class InMemoryMessageCache implements MessageCache {
             return Long.compare(o1.lastAccessTime, o2.lastAccessTime);
         }
     }
-
-    private static final class ClientDataState {
-
-        private int incomingSequenceOffset;
-        private final LinkedList<Message> incomingMessages;
-        private int outgoingSequenceOffset;
-        private final LinkedList<Message> outgoingMessages;
-
-        public ClientDataState() {
-            outgoingSequenceOffset = 0;
-            incomingMessages = new LinkedList<>();
-            incomingSequenceOffset = 0;
-            outgoingMessages = new LinkedList<>();
-        }
-
-        public void addIncoming(int seq, Message message) {
-            Validate.isTrue(seq >= 0);
-            Validate.notNull(message);
-
-            // we only want to accept the message if it's the message after the latest one we have... if it's behind/ahead, ignore it
-            if (seq != incomingSequenceOffset) {
-                return;
-            }
-            
-            
-            incomingMessages.add(message);
-            incomingSequenceOffset = Math.incrementExact(incomingSequenceOffset);
-        }
-
-        public void clearIncoming() {
-            incomingMessages.clear();
-        }
-
-        public MessageBlock getIncoming() {
-            return new MessageBlock(
-                    incomingSequenceOffset - incomingMessages.size(),
-                    incomingMessages);
-        }
-
-        public int getOutgoingSequenceOffset() {
-            return outgoingSequenceOffset;
-        }
-
-        public void addOutgoing(int seq, Message message) {
-            Validate.isTrue(seq >= 0);
-            Validate.isTrue(seq == outgoingSequenceOffset);
-            Validate.notNull(message);
-
-            outgoingMessages.add(message);
-            outgoingSequenceOffset = Math.incrementExact(outgoingSequenceOffset);
-        }
-
-        public void acknowledgeOutgoing(int seq) {
-            Validate.isTrue(seq >= 0);
-            Validate.isTrue(seq <= outgoingSequenceOffset);
-
-            int first = Math.subtractExact(outgoingSequenceOffset, outgoingMessages.size());
-            int last = Math.min(seq, outgoingSequenceOffset);
-            for (int i = first; i <= last; i++) {
-                outgoingMessages.pop();
-            }
-        }
-
-        public MessageBlock getOutgoing() {
-            return new MessageBlock(
-                    outgoingSequenceOffset - outgoingMessages.size(),
-                    outgoingMessages);
-        }
-    }
 }
@@ -157,6 +157,20 @@ public interface MessageCache {
             this.messages = (UnmodifiableList<Message>) UnmodifiableList.unmodifiableList(new ArrayList<>(messages));
         }
 
+        private MessageBlock(int startSequenceOffset, UnmodifiableList<Message> messages) {
+            this.startSequenceOffset = startSequenceOffset;
+            this.messages = messages;
+        }
+
+        // Wraps messages rather than copying them -- caller must guarantee that messages never changes and contains no nulls
+        static MessageBlock wrap(int startSequenceOffset, List<Message> messages) {
+            Validate.isTrue(startSequenceOffset >= 0);
+            Validate.notNull(messages);
+            return new MessageBlock(
+                    startSequenceOffset,
+                    (UnmodifiableList<Message>) UnmodifiableList.unmodifiableList(messages));
+        }
+
         /**
          * Get sequence number at which messages in this block start.
          * @return sequence number
@@ -21,112 +21,238 @@ import com.google.gson.GsonBuilder;
 import com.offbynull.actors.core.gateway.servlet.MessageCache.MessageBlock;
 import com.offbynull.actors.core.shuttle.Message;
 import com.offbynull.actors.core.shuttle.Shuttle;
-import com.offbynull.actors.core.shuttles.simple.Bus;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.List;
+import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+// Long-polling servlet. If there's nothing waiting for the client when its request comes in, the request is parked (via Servlet 3.x async
+// support) until either messages for that client show up or the long-poll timeout elapses, rather than returning an empty response right
+// away and having the client poll again. The servlet must be registered with async support enabled for parking to happen -- otherwise
+// requests are always responded to immediately.
 final class MessageGatewayServlet extends HttpServlet {
     
+    private static final Logger LOG = LoggerFactory.getLogger(MessageGatewayServlet.class);
+    
+    private static final long MAX_LONG_POLL_TIMEOUT = 30000L;
+    
     private final Gson gson;
     
-    private final MessageCache messageCache;
+    private final ShardedMessageCache messageCache;
 
     private final ConcurrentHashMap<String, Shuttle> outgoingShuttles;
-    private final Bus toHttpBus;
     
-    MessageGatewayServlet(String prefix, ConcurrentHashMap<String, Shuttle> outgoingShuttles, Bus toHttpBus, long sessionTimeout) {
+    private final long longPollTimeout;
+    private final ConcurrentHashMap<String, ParkedRequest> parkedRequests; // http client id -> request waiting for messages
+    
+    MessageGatewayServlet(String prefix, ConcurrentHashMap<String, Shuttle> outgoingShuttles, ShardedMessageCache messageCache,
+            long sessionTimeout) {
         Validate.notNull(prefix);
         Validate.notNull(outgoingShuttles);
-        Validate.notNull(toHttpBus);
+        Validate.notNull(messageCache);
         Validate.isTrue(sessionTimeout > 0L);
 
         GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.registerTypeAdapter(Message.class, new MessageJsonDeserializer(prefix));
-        gsonBuilder.registerTypeAdapter(Message.class, new MessageJsonSerializer(prefix));
-        gsonBuilder.registerTypeAdapter(HttpToSystemBundle.class, new HttpToSystemBundleJsonDeserializer(prefix));
-        gsonBuilder.registerTypeAdapter(SystemToHttpBundle.class, new SystemToHttpBundleJsonSerializer(prefix));
+        gsonBuilder.registerTypeAdapterFactory(new BundleTypeAdapterFactory(prefix));
         gson = gsonBuilder.serializeNulls().create();
         
-        this.messageCache = new InMemoryMessageCache(sessionTimeout);
+        this.messageCache = messageCache;
 
         this.outgoingShuttles = outgoingShuttles;
-        this.toHttpBus = toHttpBus;
+        
+        // Park for well under the session timeout, otherwise the client's session could time out while its request is parked
+        this.longPollTimeout = Math.max(Math.min(MAX_LONG_POLL_TIMEOUT, sessionTimeout / 2L), 1L);
+        this.parkedRequests = new ConcurrentHashMap<>();
     }
     
     @Override
-    @SuppressWarnings("unchecked")
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        try {
-            // Read incoming messages
-            Reader reader = req.getReader();
-            HttpToSystemBundle httpToSystemBundle = gson.fromJson(reader, HttpToSystemBundle.class);
-            
-            String id = httpToSystemBundle.getHttpAddressId();
-            
-            
-            
-            
-            // Update last access time for ID
-            messageCache.keepAlive(id);
-            
-            
-            
-                        
-            // Remove messages that the client says it's recv'd
-            messageCache.systemToHttpAcknowledge(id, httpToSystemBundle.getSystemToHttpOffset());
-            
-            
-            
-            
+        // Read incoming messages
+        Reader reader = req.getReader();
+        HttpToSystemBundle httpToSystemBundle = gson.fromJson(reader, HttpToSystemBundle.class);
+        
+        String id = httpToSystemBundle.getHttpAddressId();
+        
+        
+        
+        
+        // Update last access time for ID
+        messageCache.keepAlive(id);
+        
+        
+        
+                    
+        // Remove messages that the client says it's recv'd
+        messageCache.systemToHttpAcknowledge(id, httpToSystemBundle.getSystemToHttpOffset());
+        
+        
+        
+        
 
-            // Processing incoming messages
-            messageCache.httpToSystemAdd(id,
-                    httpToSystemBundle.getHttpToSystemOffset(),
-                    httpToSystemBundle.getMessages());
-            
-            MessageBlock httpToSystemMessages = messageCache.httpToSystemRead(id);
+        // Processing incoming messages
+        messageCache.httpToSystemAdd(id,
+                httpToSystemBundle.getHttpToSystemOffset(),
+                httpToSystemBundle.getMessages());
+        
+        MessageBlock httpToSystemMessages = messageCache.httpToSystemRead(id);
+        
+        for (Message message : httpToSystemMessages.getMessages()) {
+            String dstPrefix = message.getDestinationAddress().getElement(0);
+            Shuttle dstShuttle = outgoingShuttles.get(dstPrefix);
             
-            for (Message message : httpToSystemMessages.getMessages()) {
-                String dstPrefix = message.getDestinationAddress().getElement(0);
-                Shuttle dstShuttle = outgoingShuttles.get(dstPrefix);
-                
-                if (dstShuttle != null) {
-                    dstShuttle.send(message);
-                }
+            if (dstShuttle != null) {
+                dstShuttle.send(message);
             }
-            
-            messageCache.httpToSystemClear(id);
+        }
+        
+        messageCache.httpToSystemClear(id);
 
-            
+        int httpToSystemOffset = httpToSystemMessages.getStartSequenceOffset();
 
-            
-            // Push out outgoing messages
-            List<Message> rawSystemToHttpMessages = (List<Message>) toHttpBus.pull(0L, TimeUnit.NANOSECONDS).stream();
-            messageCache.systemToHttpAppend(id, rawSystemToHttpMessages);
-            
-            MessageBlock systemToHttpMessages = messageCache.httpToSystemRead(id);
-            
-            int systemToHttpOffset = systemToHttpMessages.getStartSequenceOffset();
-            int httpToSystemOffset = httpToSystemMessages.getStartSequenceOffset();
-            SystemToHttpBundle systemToHttpBundle = new SystemToHttpBundle(
-                    id,
-                    systemToHttpOffset,
-                    httpToSystemOffset,
-                    systemToHttpMessages.getMessages());
-            Writer writer = resp.getWriter();
-            gson.toJson(systemToHttpBundle, writer);
+        
+
+        
+        // Push out outgoing messages right away if there are any, otherwise park the request until some arrive. The gateway thread
+        // routes outgoing messages straight in to the cache of the client they're for, so this only ever touches this client's data.
+        MessageBlock systemToHttpMessages = messageCache.systemToHttpRead(id);
+        if (!systemToHttpMessages.getMessages().isEmpty() || !req.isAsyncSupported()) {
+            writeResponse(resp, id, systemToHttpMessages, httpToSystemOffset);
+            return;
+        }
+        
+        park(req, resp, id, httpToSystemOffset);
+    }
+
+    private void park(HttpServletRequest req, HttpServletResponse resp, String id, int httpToSystemOffset) {
+        AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(longPollTimeout);
+
+        ParkedRequest parkedRequest = new ParkedRequest(asyncContext, resp, httpToSystemOffset);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                parkedRequests.remove(id, parkedRequest);
+                respond(id, parkedRequest);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+                parkedRequests.remove(id, parkedRequest);
+                parkedRequest.claim(); // connection is broken, nothing left to respond to
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+                parkedRequests.remove(id, parkedRequest);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+                // do nothing
+            }
+        });
+
+        // A client should only ever have one request parked. If it somehow has an older one (e.g. it gave up on a request and sent a new
+        // one), respond to the older one so it isn't left hanging until its timeout.
+        ParkedRequest oldParkedRequest = parkedRequests.put(id, parkedRequest);
+        if (oldParkedRequest != null) {
+            oldParkedRequest.asyncContext.start(() -> respond(id, oldParkedRequest));
+        }
+
+        // Messages may have arrived between checking and parking, in which case the wakeup for them was missed -- check again.
+        if (!messageCache.systemToHttpRead(id).getMessages().isEmpty()) {
+            wake(id);
+        }
+    }
+
+    // Invoked by the gateway thread once messages for these http client ids are available
+    void wake(Collection<String> ids) {
+        Validate.notNull(ids);
+        for (String id : ids) {
+            wake(id);
+        }
+    }
+
+    private void wake(String id) {
+        ParkedRequest parkedRequest = parkedRequests.remove(id);
+        if (parkedRequest != null) {
+            // Write the response on a container thread rather than on the thread doing the waking
+            parkedRequest.asyncContext.start(() -> respond(id, parkedRequest));
+        }
+    }
+
+    private void respond(String id, ParkedRequest parkedRequest) {
+        if (!parkedRequest.claim()) {
+            return; // already responded to
+        }
+
+        try {
+            messageCache.keepAlive(id);
+            MessageBlock systemToHttpMessages = messageCache.systemToHttpRead(id);
+            writeResponse(parkedRequest.response, id, systemToHttpMessages, parkedRequest.httpToSystemOffset);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to respond to parked request for {}", id, e);
+        } finally {
+            parkedRequest.asyncContext.complete();
+        }
+    }
+
+    private void writeResponse(HttpServletResponse resp, String id, MessageBlock systemToHttpMessages, int httpToSystemOffset)
+            throws IOException {
+        int systemToHttpOffset = systemToHttpMessages.getStartSequenceOffset();
+        SystemToHttpBundle systemToHttpBundle = new SystemToHttpBundle(
+                id,
+                systemToHttpOffset,
+                httpToSystemOffset,
+                systemToHttpMessages.getMessages());
+        Writer writer = resp.getWriter();
+        gson.toJson(systemToHttpBundle, writer);
+        writer.flush();
+    }
+
+    @Override
+    public void destroy() {
+        // Respond to anything still parked so clients aren't left waiting on a dead gateway
+        for (String id : parkedRequests.keySet()) {
+            wake(id);
+        }
+
+        try {
+            messageCache.close();
         } catch (InterruptedException ie) {
-            Thread.interrupted(); // clear interrupted status
-            throw new ServletException(ie);
+            Thread.currentThread().interrupt(); // preserve interrupted status for the caller
+        }
+        super.destroy();
+    }
+    
+    private static final class ParkedRequest {
+        private final AsyncContext asyncContext;
+        private final HttpServletResponse response;
+        private final int httpToSystemOffset;
+        private final AtomicBoolean claimed;
+
+        ParkedRequest(AsyncContext asyncContext, HttpServletResponse response, int httpToSystemOffset) {
+            this.asyncContext = asyncContext;
+            this.response = response;
+            this.httpToSystemOffset = httpToSystemOffset;
+            this.claimed = new AtomicBoolean();
+        }
+
+        // returns true for the first caller only -- only that caller may write the response
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
         }
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.offbynull.actors.core.shuttle.Message;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import org.apache.commons.lang3.Validate;
+
+// Sequence-indexed ring buffer of messages. The message with sequence number s lives at slot (s & mask), so removing everything up to
+// some sequence number is just a matter of moving the head forward.
+//
+// view() hands out a read-only list backed directly by the ring's array rather than a copy. A slot that's part of a view that's been
+// handed out is never overwritten -- if an append would land on such a slot, the live messages are moved to a new array first and the
+// old array is left to the views. Acknowledged messages are cleared out of their slots unless a view may still be reading them, and once
+// the ring is mostly empty it moves what's left to a smaller array -- so a burst of messages doesn't keep a large array (or the messages
+// in it) around for the rest of the client's lifetime.
+//
+// Not thread-safe, but views can be read from any thread once handed out.
+final class MessageRing {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Message[] slots;
+    private int mask;
+    private int headSequence;    // sequence number of first message
+    private int size;
+    private int exposedStart;    // slots for sequence numbers in [exposedStart, exposedEnd) may be referenced by a view
+    private int exposedEnd;
+
+    MessageRing() {
+        this.slots = new Message[INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+        this.headSequence = 0;
+        this.size = 0;
+        this.exposedStart = 0;
+        this.exposedEnd = 0;
+    }
+
+    int getHeadSequence() {
+        return headSequence;
+    }
+
+    int getTailSequence() {
+        return headSequence + size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    void add(Message message) {
+        Validate.notNull(message);
+
+        int seq = Math.addExact(headSequence, size);
+        int overwrittenSeq = seq - slots.length;
+        if (size == slots.length || (overwrittenSeq >= exposedStart && overwrittenSeq < exposedEnd)) {
+            // Either full, or the slot being written to is still visible through a view -- move to a fresh array. If it's at least
+            // half full, double it so it takes longer before this happens again.
+            int capacity = size >= slots.length / 2 ? slots.length * 2 : slots.length;
+            Validate.validState(capacity > 0, "Too many buffered messages");
+            reallocate(capacity);
+        }
+
+        slots[seq & mask] = message;
+        size++;
+    }
+
+    void removeUpTo(int seq) {
+        int count = Math.min(seq - headSequence, size);
+        if (count <= 0) {
+            return;
+        }
+        int oldHeadSequence = headSequence;
+        headSequence += count;
+        size -= count;
+
+        // Mostly empty -- move what's left to a smaller array (this also lets go of the acknowledged messages in the old one)
+        int capacity = slots.length;
+        while (capacity > INITIAL_CAPACITY && size <= capacity / 4) {
+            capacity /= 2;
+        }
+        if (capacity != slots.length) {
+            reallocate(capacity);
+            return;
+        }
+
+        // Otherwise drop the acknowledged messages, leaving alone any slot a view may still read
+        for (int s = oldHeadSequence; s < headSequence; s++) {
+            if (s < exposedStart || s >= exposedEnd) {
+                slots[s & mask] = null;
+            }
+        }
+    }
+
+    void clear() {
+        removeUpTo(getTailSequence());
+    }
+
+    List<Message> view() {
+        if (exposedStart == exposedEnd) {
+            exposedStart = headSequence;
+        }
+        exposedEnd = getTailSequence();
+        return new View(slots, mask, headSequence, size);
+    }
+
+    private void reallocate(int capacity) {
+        Message[] newSlots = new Message[capacity];
+        int newMask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int seq = headSequence + i;
+            newSlots[seq & newMask] = slots[seq & mask];
+        }
+        slots = newSlots;
+        mask = newMask;
+        exposedStart = headSequence; // no views reference the new array
+        exposedEnd = headSequence;
+    }
+
+    private static final class View extends AbstractList<Message> implements RandomAccess {
+        private final Message[] slots;
+        private final int mask;
+        private final int headSequence;
+        private final int size;
+
+        View(Message[] slots, int mask, int headSequence, int size) {
+            this.slots = slots;
+            this.mask = mask;
+            this.headSequence = headSequence;
+            this.size = size;
+        }
+
+        @Override
+        public Message get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return slots[(headSequence + index) & mask];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
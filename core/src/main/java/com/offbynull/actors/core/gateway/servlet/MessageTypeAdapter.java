@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.offbynull.actors.core.shuttle.Address;
+import com.offbynull.actors.core.shuttle.Message;
+import java.io.IOException;
+import org.apache.commons.lang3.Validate;
+
+// Streams a single message in/out. The content of the message is handed off to whatever adapter the owning Gson instance has for the type
+// of the content, so no intermediate JSON tree gets built unless the content shows up before its type (in which case the content has to be
+// buffered until the type is known).
+final class MessageTypeAdapter extends TypeAdapter<Message> {
+
+    private static final String SOURCE_PROPERTY = "source";
+    private static final String DESTINATION_PROPERTY = "destination";
+    private static final String TYPE_PROPERTY = "type";
+    private static final String CONTENT_PROPERTY = "content";
+
+    private final String prefix;
+    private final Gson gson;
+
+    MessageTypeAdapter(String prefix, Gson gson) {
+        Validate.notNull(prefix);
+        Validate.notNull(gson);
+        this.prefix = prefix;
+        this.gson = gson;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void write(JsonWriter out, Message src) throws IOException {
+        Validate.notNull(src);
+
+        String dstPrefix = src.getDestinationAddress().getElement(0);
+        Validate.isTrue(dstPrefix.equals(prefix));
+
+        Object obj = src.getMessage();
+        TypeAdapter<Object> contentAdapter = (TypeAdapter<Object>) gson.getAdapter(obj.getClass());
+
+        out.beginObject();
+        out.name(SOURCE_PROPERTY).value(src.getSourceAddress().toString());
+        out.name(DESTINATION_PROPERTY).value(src.getDestinationAddress().toString());
+        out.name(TYPE_PROPERTY).value(obj.getClass().getName());
+        out.name(CONTENT_PROPERTY);
+        contentAdapter.write(out, obj);
+        out.endObject();
+    }
+
+    @Override
+    public Message read(JsonReader in) throws IOException {
+        String from = null;
+        String to = null;
+        Class<?> cls = null;
+        Object content = null;
+        JsonElement bufferedContent = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            switch (name) {
+                case SOURCE_PROPERTY:
+                    from = in.nextString();
+                    break;
+                case DESTINATION_PROPERTY:
+                    to = in.nextString();
+                    break;
+                case TYPE_PROPERTY:
+                    cls = loadClass(in.nextString());
+                    break;
+                case CONTENT_PROPERTY:
+                    if (cls != null) {
+                        content = readContent(in, cls);
+                    } else {
+                        bufferedContent = gson.getAdapter(JsonElement.class).read(in);
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        Validate.notNull(from);
+        Validate.notNull(to);
+        Validate.notNull(cls);
+
+        Address fromAddress = Address.fromString(from);
+        Address toAddress = Address.fromString(to);
+
+        String srcPrefix = fromAddress.getElement(0);
+        Validate.isTrue(srcPrefix.equals(prefix));
+
+        if (bufferedContent != null) {
+            try {
+                content = gson.getAdapter(cls).fromJsonTree(bufferedContent);
+            } catch (JsonParseException | IllegalStateException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        return new Message(fromAddress, toAddress, content);
+    }
+
+    private Object readContent(JsonReader in, Class<?> cls) throws IOException {
+        try {
+            return gson.getAdapter(cls).read(in);
+        } catch (JsonParseException | IllegalStateException e) { // content doesn't match type
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private Class<?> loadClass(String type) {
+        try {
+            return Class.forName(type, false, getClass().getClassLoader());
+        } catch (ClassNotFoundException cnfe) {
+            throw new IllegalArgumentException(cnfe);
+        }
+    }
+}
@@ -19,12 +19,18 @@ package com.offbynull.actors.core.gateway.servlet;
 import com.offbynull.actors.core.gateway.Gateway;
 import com.offbynull.actors.core.shuttle.Shuttle;
 import com.offbynull.actors.core.shuttles.simple.Bus;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
 import com.offbynull.actors.core.shuttles.test.NullShuttle;
+import java.util.function.Supplier;
 import org.apache.commons.lang3.Validate;
 import static com.offbynull.actors.core.common.DefaultAddresses.DEFAULT_SERVLET;
 
 /**
  * {@link Gateway} that allows you read and write messages using via a servlet.
+ * <p>
+ * Messages for an HTTP client are only held on to once that client has connected (sent its first request), and only for as long as it
+ * keeps connecting within the session timeout. Messages for a client that hasn't connected yet or whose session has timed out are dropped
+ * with a warning rather than buffered, so actors should wait for an HTTP client to message them before messaging it.
  * @author Kasra Faghihi
  */
 public final class ServletGateway implements Gateway {
@@ -42,7 +48,7 @@ public final class ServletGateway implements Gateway {
     }
 
     /**
-     * Create a {@link ServletGateway} instance.
+     * Create a {@link ServletGateway} instance. Equivalent to calling {@code create(prefix, sessionTimeout, LockingBus::new)}.
      * @param prefix address prefix for this gateway
      * @param sessionTimeout timeout for http clients (in milliseconds)
      * @return new servlet gateway
@@ -50,7 +56,23 @@ public final class ServletGateway implements Gateway {
      * @throws IllegalArgumentException if {@code sessionTimeout <= 0L}
      */
     public static ServletGateway create(String prefix, long sessionTimeout) {
-        ServletGateway gateway = new ServletGateway(prefix, sessionTimeout);
+        return create(prefix, sessionTimeout, LockingBus::new);
+    }
+
+    /**
+     * Create a {@link ServletGateway} instance. Only the gateway's internal thread reads from the bus created by {@code busFactory}, so a
+     * single-reader implementation such as {@link com.offbynull.actors.core.shuttles.simple.LockFreeBus} is safe to use.
+     * <p>
+     * To cap how many messages can pile up for HTTP clients, supply a {@link com.offbynull.actors.core.shuttles.simple.BoundedBus}.
+     * @param prefix address prefix for this gateway
+     * @param sessionTimeout timeout for http clients (in milliseconds)
+     * @param busFactory factory that creates the bus this gateway reads its incoming messages from
+     * @return new servlet gateway
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code sessionTimeout <= 0L}
+     */
+    public static ServletGateway create(String prefix, long sessionTimeout, Supplier<Bus> busFactory) {
+        ServletGateway gateway = new ServletGateway(prefix, sessionTimeout, busFactory);
         gateway.thread.start();
         return gateway;
     }
@@ -65,11 +87,12 @@ public final class ServletGateway implements Gateway {
         return create(prefix, 60000L);
     }
     
-    private ServletGateway(String prefix, long sessionTimeout) {
+    private ServletGateway(String prefix, long sessionTimeout, Supplier<Bus> busFactory) {
         Validate.notNull(prefix);
+        Validate.notNull(busFactory);
         Validate.isTrue(sessionTimeout > 0L);
 
-        bus = new Bus();
+        bus = busFactory.get();
         inShuttle = new NullShuttle(prefix);
         thread = new Thread(new ServletRunnable(prefix, bus, sessionTimeout));
         thread.setDaemon(true);
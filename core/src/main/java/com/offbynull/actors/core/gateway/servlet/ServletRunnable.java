@@ -16,10 +16,17 @@
  */
 package com.offbynull.actors.core.gateway.servlet;
 
+import com.offbynull.actors.core.shuttle.Address;
 import com.offbynull.actors.core.shuttle.Message;
 import com.offbynull.actors.core.shuttle.Shuttle;
 import com.offbynull.actors.core.shuttles.simple.Bus;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
@@ -33,7 +40,7 @@ class ServletRunnable implements Runnable {
 
     private final MessageGatewayServlet servlet;
     private final ConcurrentHashMap<String, Shuttle> outgoingShuttles;
-    private final Bus toHttpBus;
+    private final ShardedMessageCache messageCache;
 
     public ServletRunnable(String prefix, Bus bus, long sessionTimeout) {
         Validate.notNull(prefix);
@@ -43,8 +50,24 @@ class ServletRunnable implements Runnable {
         this.inBus = bus;
 
         this.outgoingShuttles = new ConcurrentHashMap<>();
-        this.toHttpBus = new Bus();
-        this.servlet = new MessageGatewayServlet(prefix, outgoingShuttles, toHttpBus, sessionTimeout);
+        this.messageCache = new ShardedMessageCache(sessionTimeout);
+        this.servlet = new MessageGatewayServlet(prefix, outgoingShuttles, messageCache, sessionTimeout);
+    }
+
+    // Use this constructor directly for unit testing -- servlet must have been created with the same outgoingShuttles and messageCache
+    ServletRunnable(String prefix, Bus bus, ConcurrentHashMap<String, Shuttle> outgoingShuttles, ShardedMessageCache messageCache,
+            MessageGatewayServlet servlet) {
+        Validate.notNull(prefix);
+        Validate.notNull(bus);
+        Validate.notNull(outgoingShuttles);
+        Validate.notNull(messageCache);
+        Validate.notNull(servlet);
+        this.prefix = prefix;
+        this.inBus = bus;
+
+        this.outgoingShuttles = outgoingShuttles;
+        this.messageCache = messageCache;
+        this.servlet = servlet;
     }
 
     @Override
@@ -88,11 +111,19 @@ class ServletRunnable implements Runnable {
                 Validate.notNull(incomingObjects);
                 Validate.noNullElements(incomingObjects);
 
-                // Queue new messages
+                // Group new messages by the http client they're for
+                Map<String, List<Message>> messagesById = new LinkedHashMap<>();
                 for (Object incomingObj : incomingObjects) {
                     if (incomingObj instanceof Message) {
                         LOG.debug("Processing incoming message from {}", incomingObj);
-                        toHttpBus.add(incomingObj);
+
+                        Message msg = (Message) incomingObj;
+                        Address dst = msg.getDestinationAddress();
+                        if (dst.size() < 2) {
+                            LOG.warn("Message has no http client id in its destination, dropping: {}", msg);
+                            continue;
+                        }
+                        messagesById.computeIfAbsent(dst.getElement(1), k -> new ArrayList<>()).add(msg);
                     } else {
                         LOG.debug("Processing management message: {} ", incomingObj);
 
@@ -109,6 +140,23 @@ class ServletRunnable implements Runnable {
                         }
                     }
                 }
+
+                // Queue the messages directly with the clients they're for. Only the shard each client lives in gets locked, so this
+                // doesn't contend with servlet threads handling other clients.
+                Set<String> wakeIds = new HashSet<>();
+                for (Entry<String, List<Message>> entry : messagesById.entrySet()) {
+                    String id = entry.getKey();
+                    List<Message> msgs = entry.getValue();
+                    try {
+                        messageCache.systemToHttpAppend(id, msgs);
+                        wakeIds.add(id);
+                    } catch (IllegalArgumentException iae) {
+                        LOG.warn("Http client {} not tracked (never connected or timed out), dropping {} message(s)", id, msgs.size());
+                    }
+                }
+
+                // Wake up any requests parked by the clients these messages are for
+                servlet.wake(wakeIds);
             }
         } catch (InterruptedException ie) {
             LOG.debug("Servlet gateway interrupted");
@@ -116,6 +164,7 @@ class ServletRunnable implements Runnable {
         } catch (Exception e) {
             LOG.error("Internal error encountered", e);
         } finally {
+            servlet.destroy();
             outgoingShuttles.clear();
             inBus.close();
         }
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.offbynull.actors.core.shuttle.Message;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory message cache that clears buffered messages for IDs after some amount of inactivity, built to handle large numbers of
+ * concurrent HTTP clients.
+ * <p>
+ * Unlike {@link InMemoryMessageCache}, which guards every client behind a single lock, client state here is spread across a number of
+ * shards (based on the hash of the client ID), each with its own lock. Requests for clients in different shards never contend with each
+ * other.
+ * <p>
+ * Expired clients are removed by a background sweeper thread rather than on every request. A request for a client that has timed out but
+ * hasn't been swept yet still fails, just as if it had been removed. Call {@link #close() } to stop the sweeper thread once this cache
+ * is no longer needed.
+ * @author Kasra Faghihi
+ */
+public final class ShardedMessageCache implements MessageCache, AutoCloseable {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedMessageCache.class);
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final long timeout;
+    
+    private final Supplier<Long> timeSupplier;
+
+    private final Thread sweeperThread; // null if sweeping is done manually (unit tests)
+
+    /**
+     * Constructs a {@link ShardedMessageCache} object. Equivalent to calling
+     * {@code new ShardedMessageCache(timeout, Runtime.getRuntime().availableProcessors() * 4)}.
+     * @param timeout client timeout
+     * @throws IllegalArgumentException if {@code timeout <= 0L}
+     */
+    public ShardedMessageCache(long timeout) {
+        this(timeout, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Constructs a {@link ShardedMessageCache} object.
+     * @param timeout client timeout
+     * @param concurrencyLevel estimated number of threads accessing this cache at the same time (rounded up to a power of 2 to get the
+     * number of shards)
+     * @throws IllegalArgumentException if {@code timeout <= 0L}, or if {@code concurrencyLevel} is not between {@code 1} and
+     * {@code 65536}
+     */
+    public ShardedMessageCache(long timeout, int concurrencyLevel) {
+        this(timeout, concurrencyLevel, new MonotonicTimeSupplier(), true);
+    }
+
+    // Use this constructor directly for unit testing
+    ShardedMessageCache(long timeout, int concurrencyLevel, Supplier<Long> timeSupplier, boolean startSweeper) {
+        Validate.isTrue(timeout > 0L);
+        Validate.isTrue(concurrencyLevel >= 1 && concurrencyLevel <= 65536);
+        Validate.notNull(timeSupplier);
+
+        int shardCount = Integer.highestOneBit(concurrencyLevel - 1) << 1;
+        if (shardCount == 0) {
+            shardCount = 1;
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+        this.shardMask = shardCount - 1;
+        this.timeout = timeout;
+        
+        this.timeSupplier = timeSupplier;
+
+        if (startSweeper) {
+            // Sweep at least twice per timeout period, so clients are removed no later than 1.5x the timeout
+            long sweepInterval = Math.max(timeout / 2L, 1L);
+            sweeperThread = new Thread(() -> runSweeper(sweepInterval));
+            sweeperThread.setDaemon(true);
+            sweeperThread.setName(getClass().getSimpleName() + "-sweeper");
+            sweeperThread.start();
+        } else {
+            sweeperThread = null;
+        }
+    }
+
+    @Override
+    public void keepAlive(String id) {
+        Validate.notNull(id);
+
+        Shard shard = shardFor(id);
+        synchronized (shard) {
+            long time = timeSupplier.get();
+
+            ClientState clientState = shard.clients.get(id);
+            if (clientState == null || isExpired(clientState, time)) {
+                clientState = new ClientState();
+                shard.clients.put(id, clientState);
+            }
+            clientState.lastAccessTime = time;
+        }
+    }
+
+    @Override
+    public void systemToHttpAppend(String id, List<Message> messages) {
+        Validate.notNull(id);
+        Validate.notNull(messages);
+        Validate.noNullElements(messages);
+
+        Shard shard = shardFor(id);
+        synchronized (shard) {
+            ClientDataState clientDataState = getTracked(shard, id);
+
+            int seqOffset = clientDataState.getOutgoingSequenceOffset();
+            for (Message message : messages) {
+                clientDataState.addOutgoing(seqOffset, message);
+                seqOffset = Math.addExact(seqOffset, 1);
+            }
+        }
+    }
+
+    @Override
+    public void systemToHttpAcknowledge(String id, int maxSeqOffset) {
+        Validate.notNull(id);
+        Validate.isTrue(maxSeqOffset >= 0);
+        
+        Shard shard = shardFor(id);
+        synchronized (shard) {
+            ClientDataState clientDataState = getTracked(shard, id);
+            clientDataState.acknowledgeOutgoing(maxSeqOffset);
+        }
+    }
+
+    @Override
+    public MessageBlock systemToHttpRead(String id) {
+        Validate.notNull(id);
+
+        Shard shard = shardFor(id);
+        synchronized (shard) {
+            ClientDataState clientDataState = getTracked(shard, id);
+            return clientDataState.getOutgoing();
+        }
+    }
+
+    @Override
+    public void httpToSystemAdd(String id, int seqOffset, List<Message> messages) {
+        Validate.notNull(id);
+        Validate.isTrue(seqOffset >= 0);
+        Validate.notNull(messages);
+        Validate.noNullElements(messages);
+
+        Shard shard = shardFor(id);
+        synchronized (shard) {
+            ClientDataState clientDataState = getTracked(shard, id);
+
+            for (Message message : messages) {
+                clientDataState.addIncoming(seqOffset, message);
+                seqOffset = Math.addExact(seqOffset, 1);
+            }
+        }
+    }
+
+    @Override
+    public void httpToSystemClear(String id) {
+        Validate.notNull(id);
+
+        Shard shard = shardFor(id);
+        synchronized (shard) {
+            ClientDataState clientDataState = getTracked(shard, id);
+            clientDataState.clearIncoming();
+        }
+    }
+
+    @Override
+    public MessageBlock httpToSystemRead(String id) {
+        Validate.notNull(id);
+
+        Shard shard = shardFor(id);
+        synchronized (shard) {
+            ClientDataState clientDataState = getTracked(shard, id);
+            return clientDataState.getIncoming();
+        }
+    }
+
+    /**
+     * Stops the background sweeper thread. Blocks until the thread terminates.
+     * @throws InterruptedException if interrupted while waiting for the sweeper thread to terminate
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (sweeperThread != null) {
+            sweeperThread.interrupt();
+            sweeperThread.join();
+        }
+    }
+
+    // Removes timed out clients, one shard at a time so that only one shard's worth of clients are blocked at any point
+    void sweep() {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                long time = timeSupplier.get();
+                Iterator<ClientState> it = shard.clients.values().iterator();
+                while (it.hasNext()) {
+                    if (isExpired(it.next(), time)) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private void runSweeper(long sweepInterval) {
+        try {
+            while (true) {
+                Thread.sleep(sweepInterval);
+                sweep();
+            }
+        } catch (InterruptedException ie) {
+            LOG.debug("Sweeper interrupted");
+            Thread.interrupted();
+        } catch (RuntimeException re) {
+            LOG.error("Internal error encountered", re);
+        }
+    }
+
+    private Shard shardFor(String id) {
+        int h = id.hashCode();
+        h ^= h >>> 16; // spread higher bits down, same as HashMap
+        return shards[h & shardMask];
+    }
+
+    private ClientDataState getTracked(Shard shard, String id) {
+        ClientState clientState = shard.clients.get(id);
+        Validate.isTrue(clientState != null, "ID not tracked");
+
+        long time = timeSupplier.get();
+        if (isExpired(clientState, time)) {
+            shard.clients.remove(id);
+            throw new IllegalArgumentException("ID not tracked");
+        }
+
+        return clientState.data;
+    }
+
+    private boolean isExpired(ClientState clientState, long time) {
+        return time - clientState.lastAccessTime >= timeout;
+    }
+
+    private static final class Shard {
+        private final Map<String, ClientState> clients = new HashMap<>();
+    }
+
+    private static final class ClientState {
+        private final ClientDataState data = new ClientDataState();
+        private long lastAccessTime;
+    }
+
+    private static final class MonotonicTimeSupplier implements Supplier<Long> {
+        private volatile long lastTime = Long.MIN_VALUE;
+
+        @Override
+        public Long get() {
+            // On some machines, currentTimeMillis() is not monotonic (it may return a value lower than what it previously returned). As
+            // such, we don't return values that are less.
+            long time = System.currentTimeMillis();
+            if (time < lastTime) {
+                return lastTime;
+            }
+            lastTime = time;
+            return time;
+        }
+    }
+}
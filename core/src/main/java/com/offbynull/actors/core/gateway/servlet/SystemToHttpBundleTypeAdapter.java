@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.offbynull.actors.core.shuttle.Message;
+import java.io.IOException;
+import org.apache.commons.lang3.Validate;
+
+// Writes bundles going out to HTTP clients. Each message is written straight to the output as it's encountered rather than being built up
+// in to a JSON tree first.
+final class SystemToHttpBundleTypeAdapter extends TypeAdapter<SystemToHttpBundle> {
+
+    private static final String HTTP_ADDRESS_ID_PROPERTY = "httpAddressId";
+    private static final String SYSTEM_TO_HTTP_OFFSET_PROPERTY = "systemToHttpOffset";
+    private static final String HTTP_TO_SYSTEM_OFFSET_PROPERTY = "httpToSystemOffset";
+    private static final String MESSAGES_PROPERTY = "messages";
+
+    private final String prefix;
+    private final MessageTypeAdapter messageTypeAdapter;
+
+    SystemToHttpBundleTypeAdapter(String prefix, MessageTypeAdapter messageTypeAdapter) {
+        Validate.notNull(prefix);
+        Validate.notNull(messageTypeAdapter);
+        this.prefix = prefix;
+        this.messageTypeAdapter = messageTypeAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, SystemToHttpBundle src) throws IOException {
+        Validate.notNull(src);
+
+        String httpAddressId = src.getHttpAddressId();
+        for (Message msg : src.getMessages()) {
+            Validate.isTrue(msg.getDestinationAddress().size() >= 2);
+            String dstPrefix = msg.getDestinationAddress().getElement(0);
+            String dstId = msg.getDestinationAddress().getElement(1);
+            Validate.isTrue(dstPrefix.equals(prefix));
+            Validate.isTrue(dstId.equals(httpAddressId));
+        }
+
+        out.beginObject();
+        out.name(HTTP_ADDRESS_ID_PROPERTY).value(httpAddressId);
+        out.name(SYSTEM_TO_HTTP_OFFSET_PROPERTY).value(src.getSystemToHttpOffset());
+        out.name(HTTP_TO_SYSTEM_OFFSET_PROPERTY).value(src.getHttpToSystemOffset());
+        out.name(MESSAGES_PROPERTY);
+        out.beginArray();
+        for (Message msg : src.getMessages()) {
+            messageTypeAdapter.write(out, msg);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public SystemToHttpBundle read(JsonReader in) throws IOException {
+        throw new UnsupportedOperationException(); // only ever written -- these bundles travel from the system to HTTP clients, never back
+    }
+}
@@ -21,12 +21,14 @@ import com.offbynull.actors.core.shuttle.Shuttle;
 import com.offbynull.actors.core.shuttle.Address;
 import com.offbynull.actors.core.shuttle.Message;
 import com.offbynull.actors.core.shuttles.simple.Bus;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
 import com.offbynull.actors.core.shuttles.simple.SimpleShuttle;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import org.apache.commons.lang3.Validate;
 import static com.offbynull.actors.core.common.DefaultAddresses.DEFAULT_DIRECT;
 
@@ -81,21 +83,38 @@ public final class DirectGateway implements Gateway {
     }
 
     /**
-     * Create a {@link DirectGateway} instance.
+     * Create a {@link DirectGateway} instance. Equivalent to calling {@code create(prefix, LockingBus::new)}.
      * @param prefix address prefix for this gateway
      * @return new direct gateway
      * @throws NullPointerException if any argument is {@code null}
      */
     public static DirectGateway create(String prefix) {
-        DirectGateway gateway = new DirectGateway(prefix);
+        return create(prefix, LockingBus::new);
+    }
+
+    /**
+     * Create a {@link DirectGateway} instance. Only the gateway's internal thread reads from the bus created by {@code busFactory}, so a
+     * single-reader implementation such as {@link com.offbynull.actors.core.shuttles.simple.LockFreeBus} is safe to use.
+     * <p>
+     * To stop clients from writing faster than this gateway can keep up, supply a
+     * {@link com.offbynull.actors.core.shuttles.simple.BoundedBus} that uses
+     * {@link com.offbynull.actors.core.shuttles.simple.OverflowPolicy#BLOCK} -- the write methods will then block once the bus fills up.
+     * @param prefix address prefix for this gateway
+     * @param busFactory factory that creates the bus this gateway reads its incoming messages from
+     * @return new direct gateway
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static DirectGateway create(String prefix, Supplier<Bus> busFactory) {
+        DirectGateway gateway = new DirectGateway(prefix, busFactory);
         gateway.thread.start();
         return gateway;
     }
 
-    private DirectGateway(String prefix) {
+    private DirectGateway(String prefix, Supplier<Bus> busFactory) {
         Validate.notNull(prefix);
+        Validate.notNull(busFactory);
         
-        bus = new Bus();
+        bus = busFactory.get();
         shuttle = new SimpleShuttle(prefix, bus);
         readQueue = new LinkedBlockingQueue<>();
         thread = new Thread(new DirectRunnable(bus, readQueue));
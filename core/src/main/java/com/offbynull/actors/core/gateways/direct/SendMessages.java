@@ -17,12 +17,13 @@
 package com.offbynull.actors.core.gateways.direct;
 
 import com.offbynull.actors.core.shuttle.Message;
+import com.offbynull.actors.core.shuttles.simple.MessageBatch;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.apache.commons.lang3.Validate;
 
-final class SendMessages {
+final class SendMessages implements MessageBatch {
     private final List<Message> messages;
 
     public SendMessages(List<Message> messages) {
@@ -32,6 +33,7 @@ final class SendMessages {
         this.messages = Collections.unmodifiableList(new ArrayList<>(messages));
     }
 
+    @Override
     public List<Message> getMessages() {
         return messages;
     }
@@ -20,7 +20,9 @@ import static com.offbynull.actors.core.common.DefaultAddresses.DEFAULT_LOG;
 import com.offbynull.actors.core.gateway.Gateway;
 import com.offbynull.actors.core.shuttle.Shuttle;
 import com.offbynull.actors.core.shuttles.simple.Bus;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
 import com.offbynull.actors.core.shuttles.simple.SimpleShuttle;
+import java.util.function.Supplier;
 import org.apache.commons.lang3.Validate;
 
 /**
@@ -64,21 +66,34 @@ public final class LogGateway implements Gateway {
     }
 
     /**
-     * Create a {@link LogGateway} instance.
+     * Create a {@link LogGateway} instance. Equivalent to calling {@code create(prefix, LockingBus::new)}.
      * @param prefix address prefix for this gateway
      * @return new direct gateway
      * @throws NullPointerException if any argument is {@code null}
      */
     public static LogGateway create(String prefix) {
-        LogGateway gateway = new LogGateway(prefix);
+        return create(prefix, LockingBus::new);
+    }
+
+    /**
+     * Create a {@link LogGateway} instance. Only the gateway's internal thread reads from the bus created by {@code busFactory}, so a
+     * single-reader implementation such as {@link com.offbynull.actors.core.shuttles.simple.LockFreeBus} is safe to use.
+     * @param prefix address prefix for this gateway
+     * @param busFactory factory that creates the bus this gateway reads its incoming messages from
+     * @return new direct gateway
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static LogGateway create(String prefix, Supplier<Bus> busFactory) {
+        LogGateway gateway = new LogGateway(prefix, busFactory);
         gateway.thread.start();
         return gateway;
     }
 
-    private LogGateway(String prefix) {
+    private LogGateway(String prefix, Supplier<Bus> busFactory) {
         Validate.notNull(prefix);
+        Validate.notNull(busFactory);
 
-        bus = new Bus();
+        bus = busFactory.get();
         shuttle = new SimpleShuttle(prefix, bus);
         thread = new Thread(new LogRunnable(bus));
         thread.setDaemon(true);
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateways.timer;
+
+import java.io.Serializable;
+
+/**
+ * Message passed to {@link TimerGateway} to cancel pending timers.
+ * <p>
+ * Timers are identified by the address they were sent to along with the address they were sent from. Sending a {@link CancelTimer} from
+ * and to the same addresses that a message (or {@link PeriodicTimer}) was originally sent from and to removes that timer, meaning that it
+ * never gets echoed back. If no such timer is pending (e.g. it has already been echoed back), the cancellation is ignored.
+ * <p>
+ * Here's an example:
+ * <pre>
+ * ctx.out("local:tester", "timer:5000:req42", "timeout");
+ * ...
+ * ctx.out("local:tester", "timer:5000:req42", CancelTimer.create());
+ * </pre>
+ * @author Kasra Faghihi
+ */
+public final class CancelTimer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private CancelTimer() {
+        // do nothing
+    }
+
+    /**
+     * Constructs a {@link CancelTimer} instance.
+     * @return new {@link CancelTimer} instance
+     */
+    public static CancelTimer create() {
+        return new CancelTimer();
+    }
+
+    @Override
+    public String toString() {
+        return "CancelTimer{" + '}';
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateways.timer;
+
+import java.io.Serializable;
+import java.time.Duration;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Message passed to {@link TimerGateway} to have a message echoed back repeatedly, rather than just once.
+ * <p>
+ * The first echo happens after the delay in the destination address (same as with a regular message). Echoes after that happen every
+ * {@code period}, until the timer is cancelled with a {@link CancelTimer}. The message that gets echoed back is the wrapped message, not
+ * the {@link PeriodicTimer} itself. Echoes are scheduled at a fixed rate, but if the gateway falls behind, missed echoes aren't made up.
+ * <p>
+ * Here's an example:
+ * <pre>
+ * ctx.out("local:tester", "timer:0:heartbeat", PeriodicTimer.create(Duration.ofSeconds(1L), "tick"));
+ * </pre>
+ * The code above has {@code "tick"} echoed back to {@code local:tester} (from {@code timer:0:heartbeat}) right away and then once every
+ * second.
+ * @author Kasra Faghihi
+ */
+public final class PeriodicTimer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Duration period;
+    private final Object message;
+
+    private PeriodicTimer(Duration period, Object message) {
+        Validate.notNull(period);
+        Validate.notNull(message);
+        Validate.isTrue(!period.isNegative() && !period.isZero());
+        this.period = period;
+        this.message = message;
+    }
+
+    /**
+     * Constructs a {@link PeriodicTimer} instance.
+     * @param period duration between echoes
+     * @param message message to echo back
+     * @return new {@link PeriodicTimer} instance
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code period} is not positive
+     */
+    public static PeriodicTimer create(Duration period, Object message) {
+        return new PeriodicTimer(period, message);
+    }
+
+    /**
+     * Get the duration between echoes.
+     * @return period
+     */
+    public Duration getPeriod() {
+        return period;
+    }
+
+    /**
+     * Get the message to echo back.
+     * @return message
+     */
+    public Object getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "PeriodicTimer{" + "period=" + period + ", message=" + message + '}';
+    }
+
+}
@@ -20,7 +20,10 @@ import static com.offbynull.actors.core.common.DefaultAddresses.DEFAULT_TIMER;
 import com.offbynull.actors.core.gateway.Gateway;
 import com.offbynull.actors.core.shuttle.Shuttle;
 import com.offbynull.actors.core.shuttles.simple.Bus;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
 import com.offbynull.actors.core.shuttles.simple.SimpleShuttle;
+import java.time.Duration;
+import java.util.function.Supplier;
 import org.apache.commons.lang3.Validate;
 
 /**
@@ -52,10 +55,23 @@ import org.apache.commons.lang3.Validate;
  * 
  * testerRunner.addActor("tester", tester, "timer");
  * </pre>
+ * <p>
+ * To have a message echoed back repeatedly, wrap it in a {@link PeriodicTimer}. To cancel a pending message (periodic or not) so that it
+ * never gets echoed back, send a {@link CancelTimer} from and to the same addresses that the original message was sent from and to.
  * @author Kasra Faghihi
  */
 public final class TimerGateway implements Gateway {
 
+    /**
+     * Default tick resolution -- 1 millisecond.
+     */
+    public static final Duration DEFAULT_TICK_RESOLUTION = Duration.ofMillis(1L);
+
+    /**
+     * Default coalescing slack -- none.
+     */
+    public static final Duration DEFAULT_COALESCING_SLACK = Duration.ZERO;
+
     private final Thread thread;
     private final Bus bus;
     
@@ -70,23 +86,74 @@ public final class TimerGateway implements Gateway {
     }
 
     /**
-     * Create a {@link TimerGateway} instance.
+     * Create a {@link TimerGateway} instance. Equivalent to calling {@code create(prefix, LockingBus::new)}.
      * @param prefix address prefix for this gateway
      * @return new direct gateway
      * @throws NullPointerException if any argument is {@code null}
      */
     public static TimerGateway create(String prefix) {
-        TimerGateway gateway = new TimerGateway(prefix);
+        return create(prefix, LockingBus::new);
+    }
+
+    /**
+     * Create a {@link TimerGateway} instance. Only the gateway's internal thread reads from the bus created by {@code busFactory}, so a
+     * single-reader implementation such as {@link com.offbynull.actors.core.shuttles.simple.LockFreeBus} is safe to use.
+     * @param prefix address prefix for this gateway
+     * @param busFactory factory that creates the bus this gateway reads its incoming messages from
+     * @return new direct gateway
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static TimerGateway create(String prefix, Supplier<Bus> busFactory) {
+        return create(prefix, busFactory, DEFAULT_TICK_RESOLUTION);
+    }
+
+    /**
+     * Create a {@link TimerGateway} instance. Pending messages are tracked in a hierarchical timing wheel that advances in increments of
+     * {@code tickResolution}. Messages are never echoed back before their requested delay has elapsed, but may be echoed back up to one
+     * tick late. Coarser resolutions mean fewer wakeups when many messages are pending.
+     * @param prefix address prefix for this gateway
+     * @param busFactory factory that creates the bus this gateway reads its incoming messages from
+     * @param tickResolution duration of a single tick
+     * @return new direct gateway
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code tickResolution} is not positive
+     */
+    public static TimerGateway create(String prefix, Supplier<Bus> busFactory, Duration tickResolution) {
+        return create(prefix, busFactory, tickResolution, DEFAULT_COALESCING_SLACK);
+    }
+
+    /**
+     * Create a {@link TimerGateway} instance that coalesces messages that are due close together. Time is split in to buckets that are
+     * {@code coalescingSlack} (plus one tick) wide and each message's deadline is rounded up to the end of its bucket, so that messages
+     * from many different senders that are due within the same bucket get echoed back together -- in one wakeup and one batch per
+     * outgoing shuttle -- rather than each on their own. The trade-off is that a message may be echoed back up to
+     * {@code coalescingSlack} later than requested (on top of the up to one tick late that {@code tickResolution} allows for). It's never
+     * echoed back early.
+     * @param prefix address prefix for this gateway
+     * @param busFactory factory that creates the bus this gateway reads its incoming messages from
+     * @param tickResolution duration of a single tick
+     * @param coalescingSlack how late a message is allowed to be echoed back so that it can be batched with others
+     * @return new direct gateway
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code tickResolution} is not positive, or if {@code coalescingSlack} is negative
+     */
+    public static TimerGateway create(String prefix, Supplier<Bus> busFactory, Duration tickResolution, Duration coalescingSlack) {
+        TimerGateway gateway = new TimerGateway(prefix, busFactory, tickResolution, coalescingSlack);
         gateway.thread.start();
         return gateway;
     }
     
-    private TimerGateway(String prefix) {
+    private TimerGateway(String prefix, Supplier<Bus> busFactory, Duration tickResolution, Duration coalescingSlack) {
         Validate.notNull(prefix);
+        Validate.notNull(busFactory);
+        Validate.notNull(tickResolution);
+        Validate.notNull(coalescingSlack);
+        Validate.isTrue(!tickResolution.isNegative() && !tickResolution.isZero());
+        Validate.isTrue(!coalescingSlack.isNegative());
 
-        bus = new Bus();
+        bus = busFactory.get();
         shuttle = new SimpleShuttle(prefix, bus);
-        thread = new Thread(new TimerRunnable(bus));
+        thread = new Thread(new TimerRunnable(bus, tickResolution, coalescingSlack));
         thread.setDaemon(true);
         thread.setName(getClass().getSimpleName() + "-" + prefix);
     }
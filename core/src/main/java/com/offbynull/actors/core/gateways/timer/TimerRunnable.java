@@ -20,18 +20,15 @@ import com.offbynull.actors.core.shuttle.Address;
 import com.offbynull.actors.core.shuttle.Message;
 import com.offbynull.actors.core.shuttle.Shuttle;
 import com.offbynull.actors.core.shuttles.simple.Bus;
-import java.io.Serializable;
 import java.time.Duration;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.PriorityQueue;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
@@ -42,14 +39,28 @@ final class TimerRunnable implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(TimerRunnable.class);
 
     private final Map<String, Shuttle> outgoingShuttles;
-    private final PriorityQueue<PendingMessage> queue;
     private final Bus bus;
+    
+    private final long tickNanos;
+    private final long bucketTicks; // deadlines get rounded up to a multiple of this so that timers close together expire together
+    private final long startNanos;
+    private final TimingWheel<PendingMessage> wheel;
+    private final Map<TimerKey, Set<PendingMessage>> pendingByKey; // so that pending messages can be found again when cancelling
 
-    public TimerRunnable(Bus bus) {
+    public TimerRunnable(Bus bus, Duration tickResolution, Duration coalescingSlack) {
         Validate.notNull(bus);
+        Validate.notNull(tickResolution);
+        Validate.notNull(coalescingSlack);
+        Validate.isTrue(!tickResolution.isNegative() && !tickResolution.isZero());
+        Validate.isTrue(!coalescingSlack.isNegative());
         outgoingShuttles = new HashMap<>();
-        queue = new PriorityQueue<>(new PendingMessageSendTimeComparator());
         this.bus = bus;
+        
+        this.tickNanos = tickResolution.toNanos();
+        this.bucketTicks = Math.max(coalescingSlack.toNanos() / tickNanos + 1L, 1L); // slack of less than a tick means no coalescing
+        this.startNanos = System.nanoTime();
+        this.wheel = new TimingWheel<>(0L);
+        this.pendingByKey = new HashMap<>();
     }
 
     @Override
@@ -58,23 +69,20 @@ final class TimerRunnable implements Runnable {
             while (true) {
                 // Poll for new messages
                 List<Object> incomingObjects;
-                if (queue.isEmpty()) {
-                    // Nothing in queue, so wait for ever
+                if (wheel.isEmpty()) {
+                    // Nothing in wheel, so wait for ever
                     incomingObjects = bus.pull();
                 } else {
-                    // Something in queue, so wait until queue nearest item in queue needs to be sent
-                    Instant currentTime = Instant.now();
-                    Instant sendTime = queue.peek().getSendTime();
-                    Duration duration = Duration.between(currentTime, sendTime);
-                    if (duration.isNegative()) { // Sanity check. Depends on system clock if this happens.
-                        duration = Duration.ZERO;
-                    }
-                    incomingObjects = bus.pull(duration.toMillis(), TimeUnit.MILLISECONDS);
+                    // Something in wheel, so wait until the next tick that something in the wheel needs to be looked at
+                    long nextTick = wheel.nextTick();
+                    long nextNanos = nextTick > Long.MAX_VALUE / tickNanos ? Long.MAX_VALUE : nextTick * tickNanos;
+                    long waitNanos = Math.max(nextNanos - elapsedNanos(), 0L);
+                    incomingObjects = bus.pull(waitNanos, TimeUnit.NANOSECONDS);
                 }
 
                 Validate.notNull(incomingObjects);
                 Validate.noNullElements(incomingObjects);
-                Instant time = Instant.now();
+                long time = elapsedNanos();
 
                 // Queue new messages
                 for (Object incomingObj : incomingObjects) {
@@ -86,6 +94,11 @@ final class TimerRunnable implements Runnable {
 
                         LOG.debug("Processing incoming message from {} to {}: {}", src, dst, payload);
 
+                        if (payload instanceof CancelTimer) {
+                            cancel(new TimerKey(dst, src));
+                            continue;
+                        }
+
                         String delayStr = dst.getElement(1);
                         long delay;
                         try {
@@ -95,9 +108,18 @@ final class TimerRunnable implements Runnable {
                             LOG.warn("Unable to parse duration: " + delayStr, nfe);
                             continue;
                         }
-                        Instant sendTime = time.plus(delay, ChronoUnit.MILLIS);
 
-                        queue.add(new PendingMessage(sendTime, dst, src, payload));
+                        PendingMessage pm;
+                        if (payload instanceof PeriodicTimer) {
+                            PeriodicTimer periodicTimer = (PeriodicTimer) payload;
+                            long periodTicks = toTicks(periodicTimer.getPeriod());
+                            pm = new PendingMessage(dst, src, periodicTimer.getMessage(), periodTicks);
+                        } else {
+                            pm = new PendingMessage(dst, src, payload, 0L);
+                        }
+                        pm.nominalDeadlineTick = toDeadlineTick(time, delay);
+                        pm.entry = wheel.add(toBucketTick(pm.nominalDeadlineTick), pm);
+                        pendingByKey.computeIfAbsent(pm.getKey(), k -> new LinkedHashSet<>()).add(pm);
                     } else {
                         LOG.debug("Processing management message: {} ", incomingObj);
                         if (incomingObj instanceof AddShuttle) {
@@ -114,30 +136,27 @@ final class TimerRunnable implements Runnable {
                     }
                 }
 
-                // Group outgoing messages by prefix
+                // Expire everything up to the current tick, grouping outgoing messages by prefix
                 Map<String, List<Message>> outgoingMap = new HashMap<>();
-                Iterator<PendingMessage> it = queue.iterator();
-                while (it.hasNext()) {
-                    // Read from queue up until we reach a message that's > time
-                    PendingMessage pm = it.next();
-                    if (pm.getSendTime().isAfter(time)) {
-                        break;
+                long tick = time / tickNanos;
+                wheel.advance(tick, pm -> {
+                    if (pm.isPeriodic()) {
+                        // Fixed rate, but if we've fallen behind then skip ahead rather than firing a burst to catch up. The rate is based
+                        // on the nominal deadline rather than the bucket it went in to, otherwise coalescing would make periodic timers
+                        // drift.
+                        long nextDeadlineTick = saturatedAdd(pm.nominalDeadlineTick, pm.getPeriodTicks());
+                        pm.nominalDeadlineTick = Math.max(nextDeadlineTick, tick + 1L);
+                        pm.entry = wheel.add(toBucketTick(pm.nominalDeadlineTick), pm);
+                    } else {
+                        removePending(pm);
                     }
-                    it.remove();
 
-                    // Add to outgoingMap by prefix
                     Address outDst = pm.getTo();
                     String outDstPrefix = outDst.getElement(0);
 
-                    List<Message> batchedMessages = outgoingMap.get(outDstPrefix);
-                    if (batchedMessages == null) {
-                        batchedMessages = new LinkedList<>();
-                        outgoingMap.put(outDstPrefix, batchedMessages);
-                    }
-
                     Message message = new Message(pm.getFrom(), pm.getTo(), pm.getMessage());
-                    batchedMessages.add(message);
-                }
+                    outgoingMap.computeIfAbsent(outDstPrefix, k -> new ArrayList<>()).add(message);
+                });
 
                 // Send outgoing messaged by prefix
                 for (Entry<String, List<Message>> entry : outgoingMap.entrySet()) {
@@ -161,28 +180,82 @@ final class TimerRunnable implements Runnable {
         }
     }
 
+    private void cancel(TimerKey key) {
+        Set<PendingMessage> pms = pendingByKey.remove(key);
+        if (pms == null) {
+            LOG.debug("No pending timers for {}, ignoring cancellation", key);
+            return;
+        }
+
+        for (PendingMessage pm : pms) {
+            boolean removed = wheel.remove(pm.entry);
+            Validate.validState(removed);
+        }
+    }
+
+    private void removePending(PendingMessage pm) {
+        TimerKey key = pm.getKey();
+        Set<PendingMessage> pms = pendingByKey.get(key);
+        pms.remove(pm);
+        if (pms.isEmpty()) {
+            pendingByKey.remove(key);
+        }
+    }
+
+    private long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    // Rounds up to the next tick so that messages never go out early
+    private long toDeadlineTick(long time, long delay) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(delay); // saturates at Long.MAX_VALUE
+        long deadlineNanos = saturatedAdd(time, delayNanos);
+        long deadlineTick = deadlineNanos / tickNanos;
+        return deadlineNanos % tickNanos == 0L ? deadlineTick : deadlineTick + 1L;
+    }
+
+    // Rounds up to the end of the bucket the deadline falls in, so the timer fires at most bucketTicks - 1 ticks (the slack) late
+    private long toBucketTick(long deadlineTick) {
+        long remainder = deadlineTick % bucketTicks;
+        return remainder == 0L ? deadlineTick : saturatedAdd(deadlineTick, bucketTicks - remainder);
+    }
+
+    // Rounds up, and to at least 1 tick so that a periodic timer can't fire more than once per tick
+    private long toTicks(Duration duration) {
+        long nanos;
+        try {
+            nanos = duration.toNanos();
+        } catch (ArithmeticException ae) {
+            nanos = Long.MAX_VALUE;
+        }
+        long ticks = nanos / tickNanos;
+        return Math.max(nanos % tickNanos == 0L ? ticks : ticks + 1L, 1L);
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        return b > Long.MAX_VALUE - a ? Long.MAX_VALUE : a + b;
+    }
+
     private static final class PendingMessage {
 
-        private final Instant sendTime;
         private final Address from;
         private final Address to;
         private final Object message;
+        private final long periodTicks; // 0 if not periodic
+        private long nominalDeadlineTick;  // deadline before being rounded up to a bucket
+        private TimingWheel.Entry<PendingMessage> entry;
 
-        public PendingMessage(Instant sendTime, Address from, Address to, Object message) {
-            Validate.notNull(sendTime);
+        public PendingMessage(Address from, Address to, Object message, long periodTicks) {
             Validate.notNull(from);
             Validate.notNull(to);
             Validate.notNull(message);
             Validate.isTrue(!from.isEmpty());
             Validate.isTrue(!to.isEmpty());
-            this.sendTime = sendTime;
+            Validate.isTrue(periodTicks >= 0L);
             this.from = from;
             this.to = to;
             this.message = message;
-        }
-
-        public Instant getSendTime() {
-            return sendTime;
+            this.periodTicks = periodTicks;
         }
 
         public Address getFrom() {
@@ -197,15 +270,61 @@ final class TimerRunnable implements Runnable {
             return message;
         }
 
+        public long getPeriodTicks() {
+            return periodTicks;
+        }
+
+        public boolean isPeriodic() {
+            return periodTicks != 0L;
+        }
+
+        public TimerKey getKey() {
+            return new TimerKey(from, to);
+        }
+
     }
 
-    private static final class PendingMessageSendTimeComparator implements Comparator<PendingMessage>, Serializable {
+    private static final class TimerKey {
 
-        private static final long serialVersionUID = 1L;
+        private final Address timerAddress;
+        private final Address requesterAddress;
+
+        public TimerKey(Address timerAddress, Address requesterAddress) {
+            Validate.notNull(timerAddress);
+            Validate.notNull(requesterAddress);
+            this.timerAddress = timerAddress;
+            this.requesterAddress = requesterAddress;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 29 * hash + Objects.hashCode(this.timerAddress);
+            hash = 29 * hash + Objects.hashCode(this.requesterAddress);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final TimerKey other = (TimerKey) obj;
+            if (!Objects.equals(this.timerAddress, other.timerAddress)) {
+                return false;
+            }
+            return Objects.equals(this.requesterAddress, other.requesterAddress);
+        }
 
         @Override
-        public int compare(PendingMessage o1, PendingMessage o2) {
-            return o1.getSendTime().compareTo(o2.getSendTime());
+        public String toString() {
+            return "TimerKey{" + "timerAddress=" + timerAddress + ", requesterAddress=" + requesterAddress + '}';
         }
 
     }
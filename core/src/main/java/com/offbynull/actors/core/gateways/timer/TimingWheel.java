@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.gateways.timer;
+
+import java.util.function.Consumer;
+import org.apache.commons.lang3.Validate;
+
+// Hierarchical timing wheel keyed on ticks. Each level has 64 slots, and each slot at level N spans 64^N ticks. An entry goes in to the
+// level of the highest 6-bit digit where its deadline differs from the current tick, so it only ever gets cascaded down a level when the
+// current tick catches up to that digit. Inserting/removing is O(1). Advancing is O(levels + entries touched) no matter how many ticks have
+// elapsed, because each level keeps a bitmap of which of its slots are occupied.
+final class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOT_COUNT = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+    private static final int LEVEL_COUNT = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+
+    private static final int OVERDUE_LIST = LEVEL_COUNT * SLOT_COUNT; // entries added with a deadline that's already passed
+    private static final int PENDING_LIST = OVERDUE_LIST + 1;         // entries pulled out by advance() but not yet expired/cascaded
+    private static final int NO_LIST = -1;                            // entries that have been expired or removed
+
+    private final Entry<T>[] lists;  // head of each list -- slots are indexed by level * SLOT_COUNT + slot
+    private final long[] occupied;   // bitmap of non-empty slots per level
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long startTick) {
+        Validate.isTrue(startTick >= 0L);
+        this.lists = (Entry<T>[]) new Entry<?>[PENDING_LIST + 1];
+        this.occupied = new long[LEVEL_COUNT];
+        this.currentTick = startTick;
+    }
+
+    Entry<T> add(long deadlineTick, T value) {
+        Validate.isTrue(deadlineTick >= 0L);
+        Validate.notNull(value);
+        Entry<T> entry = new Entry<>(deadlineTick, value);
+        place(entry);
+        size++;
+        return entry;
+    }
+
+    // Returns false if the entry has already been expired or removed
+    boolean remove(Entry<T> entry) {
+        Validate.notNull(entry);
+        if (entry.list == NO_LIST) {
+            return false;
+        }
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    // Expires everything with a deadline <= tick, in no particular order
+    void advance(long tick, Consumer<? super T> expired) {
+        Validate.isTrue(tick >= currentTick);
+        Validate.notNull(expired);
+
+        moveAll(OVERDUE_LIST, PENDING_LIST);
+
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            int shift = level * SLOT_BITS;
+            long oldPos = currentTick >>> shift;
+            long newPos = tick >>> shift;
+            if (oldPos == newPos) {
+                break; // nothing changed at this level, so nothing will have changed at any of the levels above it either
+            }
+
+            // Every slot the current tick moved in to or past at this level needs to be either expired or cascaded down
+            long elapsed = newPos - oldPos;
+            long passed;
+            if (elapsed >= SLOT_COUNT) {
+                passed = -1L;
+            } else {
+                int start = (int) ((oldPos + 1L) & SLOT_MASK);
+                passed = Long.rotateLeft((1L << elapsed) - 1L, start);
+            }
+            passed &= occupied[level];
+            occupied[level] &= ~passed;
+
+            while (passed != 0L) {
+                int slot = Long.numberOfTrailingZeros(passed);
+                passed &= passed - 1L;
+                moveAll(level * SLOT_COUNT + slot, PENDING_LIST);
+            }
+        }
+
+        currentTick = tick;
+
+        // The callback is free to add/remove entries. Anything it adds goes in to a slot or the overdue list, never the pending list.
+        Entry<T> entry;
+        while ((entry = lists[PENDING_LIST]) != null) {
+            unlink(entry);
+            if (entry.deadlineTick <= tick) {
+                size--;
+                expired.accept(entry.value);
+            } else {
+                place(entry);
+            }
+        }
+    }
+
+    // The tick that advance() should next be called at. This is exact for entries on the lowest level, but for entries higher up it's the
+    // tick at which they need to be cascaded (which is always at or before their deadline).
+    long nextTick() {
+        if (lists[OVERDUE_LIST] != null) {
+            return currentTick;
+        }
+
+        long next = Long.MAX_VALUE;
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            if (occupied[level] == 0L) {
+                continue;
+            }
+            int shift = level * SLOT_BITS;
+            long pos = currentTick >>> shift;
+            int slot = Long.numberOfTrailingZeros(occupied[level]); // slots are always ahead of the current position on their level
+            long tick = (pos - (pos & SLOT_MASK) + slot) << shift;
+            next = Math.min(next, tick);
+        }
+        return next;
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void place(Entry<T> entry) {
+        long deadlineTick = entry.deadlineTick;
+        if (deadlineTick <= currentTick) {
+            link(entry, OVERDUE_LIST);
+            return;
+        }
+
+        int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(deadlineTick ^ currentTick)) / SLOT_BITS;
+        int slot = (int) ((deadlineTick >>> (level * SLOT_BITS)) & SLOT_MASK);
+        link(entry, level * SLOT_COUNT + slot);
+        occupied[level] |= 1L << slot;
+    }
+
+    private void link(Entry<T> entry, int list) {
+        Entry<T> head = lists[list];
+        entry.list = list;
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        lists[list] = entry;
+    }
+
+    private void unlink(Entry<T> entry) {
+        int list = entry.list;
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            lists[list] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.list = NO_LIST;
+
+        if (list < OVERDUE_LIST && lists[list] == null) {
+            occupied[list / SLOT_COUNT] &= ~(1L << (list & SLOT_MASK));
+        }
+    }
+
+    private void moveAll(int fromList, int toList) {
+        Entry<T> entry = lists[fromList];
+        lists[fromList] = null;
+        while (entry != null) {
+            Entry<T> next = entry.next;
+            link(entry, toList);
+            entry = next;
+        }
+    }
+
+    static final class Entry<T> {
+        private final long deadlineTick;
+        private final T value;
+        private Entry<T> prev;
+        private Entry<T> next;
+        private int list;
+
+        private Entry(long deadlineTick, T value) {
+            this.deadlineTick = deadlineTick;
+            this.value = value;
+            this.list = NO_LIST;
+        }
+
+        long getDeadlineTick() {
+            return deadlineTick;
+        }
+
+        T getValue() {
+            return value;
+        }
+    }
+}
@@ -17,15 +17,17 @@
 package com.offbynull.actors.core.shuttle;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
-import java.io.StringReader;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
-import java.util.StringJoiner;
-import org.apache.commons.collections4.list.UnmodifiableList;
+import java.util.Map;
+import java.util.WeakHashMap;
 import org.apache.commons.lang3.Validate;
 
 /**
@@ -33,6 +35,10 @@ import org.apache.commons.lang3.Validate;
  * <p>
  * An address contains one or more address elements. Address elements are strings limited to printable ASCII characters.
  * <p>
+ * Internally, an address is a window ({@code offset} / {@code length}) in to an array of elements. Operations that take a prefix or
+ * remove a suffix/prefix share the array of the address they were derived from rather than copying it. The hash code is computed once
+ * and cached.
+ * <p>
  * This class is immutable.
  * @author Kasra Faghihi
  */
@@ -40,15 +46,24 @@ public final class Address implements Serializable {
 
     private static final long serialVersionUID = 1L;
     
+    private static final String[] NO_ELEMENTS = new String[0];
+    
     /**
      * An empty address.
      */
-    public static final Address EMPTY = new Address(Collections.emptyList());
+    public static final Address EMPTY = new Address(NO_ELEMENTS, 0, 0);
     
     private static final char DELIM = ':';
     private static final char ESCAPE = '\\';
 
-    private final UnmodifiableList<String> addressElements;
+    // WeakHashMap holds its keys weakly, values point back at the key through a WeakReference so that they don't keep the key alive
+    private static final Map<Address, WeakReference<Address>> INTERN_POOL = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final String[] elements; // may be shared with other addresses -- never modify
+    private final int offset;
+    private final int length;
+    private transient int hash; // 0 = not computed yet (same idiom as String.hashCode())
+    private transient List<?> legacyElements; // only ever set on instances being deserialized from the old form, see readObject()
 
     /**
      * Converts an escaped address string back in to an {@link Address}. Pass the result of {@link #toString() } in to this method to
@@ -72,20 +87,45 @@ public final class Address implements Serializable {
     public static Address fromString(String textAddress) {
         Validate.notNull(textAddress);
         
-        List<String> elements = new ArrayList<>();
-        try (StringReader reader = new StringReader(textAddress)) {
-            while (true) {
-                String element = readAndUnescapeNextElement(reader);
-                if (element == null) {
-                    break;
-                }
-                elements.add(element);
+        int len = textAddress.length();
+        if (len == 0) {
+            return EMPTY;
+        }
+
+        // Single pass to validate, count delimiters, and detect if any escape sequences are present
+        int delimCount = 0;
+        boolean escaped = false;
+        for (int i = 0; i < len; i++) {
+            char ch = textAddress.charAt(i);
+            Validate.isTrue(ch >= 0x20 && ch < 0x7F, "Not printable ASCII"); // this should cause surrogate pairs to fail as well, which is
+            // what we want!
+            if (ch == DELIM) {
+                delimCount++;
+            } else if (ch == ESCAPE) {
+                escaped = true;
+                break;
+            }
+        }
+        
+        if (escaped) {
+            List<String> elements = readAndUnescapeElements(textAddress);
+            return new Address(elements.toArray(new String[elements.size()]), 0, elements.size());
+        }
+        
+        // Fast path -- no escapes, so elements are substrings between delimiters. A trailing delimiter doesn't produce a trailing empty
+        // element (matches the behaviour of the escaped path).
+        int count = textAddress.charAt(len - 1) == DELIM ? delimCount : delimCount + 1;
+        String[] elements = new String[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = textAddress.indexOf(DELIM, start);
+            if (end == -1) {
+                end = len;
             }
-        } catch (IOException ioe) {
-            // this should never happen
-            throw new IllegalStateException(ioe);
+            elements[i] = textAddress.substring(start, end);
+            start = end + 1;
         }
-        return new Address(elements);
+        return new Address(elements, 0, count);
     }
 
     /**
@@ -98,19 +138,14 @@ public final class Address implements Serializable {
      */
     public static Address of(List<String> elements) {
         Validate.notNull(elements);
-        Validate.noNullElements(elements);
         
         if (elements.isEmpty()) {
             return EMPTY;
         }
         
-        elements.stream().forEach(// is US-ASCII
-                x -> x.chars().forEach(
-                        // this should cause surrogate pairs to fail as well, which is what we want!
-                        ch -> Validate.isTrue(ch >= 0x20 && ch < 0x7F, "Not printable ASCII") 
-                )
-        );
-        return new Address(new ArrayList<>(elements));
+        String[] copy = elements.toArray(new String[elements.size()]);
+        validateElements(copy);
+        return new Address(copy, 0, copy.length);
     }
 
     /**
@@ -124,19 +159,35 @@ public final class Address implements Serializable {
      */
     public static Address of(String ... elements) {
         Validate.notNull(elements);
-        Validate.noNullElements(elements);
 
-        return of(Arrays.asList(elements));
+        if (elements.length == 0) {
+            return EMPTY;
+        }
+
+        String[] copy = elements.clone();
+        validateElements(copy);
+        return new Address(copy, 0, copy.length);
     }
 
-    private static String escapeElement(String element) { // only escapes the delimiter -- ':'
-        Validate.notNull(element);
+    private static void validateElements(String[] elements) {
+        Validate.noNullElements(elements);
+        for (String element : elements) {
+            int len = element.length();
+            for (int i = 0; i < len; i++) {
+                char ch = element.charAt(i);
+                // this should cause surrogate pairs to fail as well, which is what we want!
+                Validate.isTrue(ch >= 0x20 && ch < 0x7F, "Not printable ASCII");
+            }
+        }
+    }
 
-        StringBuilder stringBuilder = new StringBuilder();
+    private static void escapeElement(String element, StringBuilder stringBuilder) { // only escapes the delimiter -- ':'
+        Validate.notNull(element);
 
         // http://stackoverflow.com/a/3585791   printable ASCII check
-        char[] elementChars = element.toCharArray();
-        for (char ch : elementChars) {
+        int len = element.length();
+        for (int i = 0; i < len; i++) {
+            char ch = element.charAt(i);
             Validate.isTrue(ch >= 0x20 && ch < 0x7F, "Not printable ASCII"); // this should cause surrogate pairs to fail as well, which is
             // what we want!
             if (ch == DELIM) {
@@ -147,23 +198,23 @@ public final class Address implements Serializable {
                 stringBuilder.append(ch);
             }
         }
-
-        return stringBuilder.toString();
     }
 
-    private static String readAndUnescapeNextElement(StringReader reader) throws IOException { // "\:" -> ":" and "\\" -> "\"
-        Validate.notNull(reader);
+    private static List<String> readAndUnescapeElements(String textAddress) { // "\:" -> ":" and "\\" -> "\"
+        Validate.notNull(textAddress);
 
+        List<String> elements = new ArrayList<>();
         StringBuilder stringBuilder = new StringBuilder();
 
         // http://stackoverflow.com/a/3585791   printable ASCII check
-        int readCount = 0;
+        int len = textAddress.length();
         boolean escapeMode = false;
-        int ch;
-        while ((ch = reader.read()) != -1) {
-            readCount++;
+        boolean elementOpen = false;
+        for (int i = 0; i < len; i++) {
+            char ch = textAddress.charAt(i);
             Validate.isTrue(ch >= 0x20 && ch < 0x7F, "Not printable ASCII"); // this should cause surrogate pairs to fail as well, which is
             // what we want!
+            elementOpen = true;
 
             if (escapeMode) {
                 if (ch == DELIM) {
@@ -171,7 +222,7 @@ public final class Address implements Serializable {
                 } else if (ch == ESCAPE) {
                     stringBuilder.append(ESCAPE);
                 } else {
-                    throw new IllegalArgumentException("Unrecognized escape sequence: " + (char) ch);
+                    throw new IllegalArgumentException("Unrecognized escape sequence: " + ch);
                 }
                 
                 escapeMode = false;
@@ -179,21 +230,30 @@ public final class Address implements Serializable {
                 if (ch == ESCAPE) {
                     // This is the start of an escape sequence. Character after this one will determine what will be dumped.
                     escapeMode = true;
-                    continue;
                 } else if (ch == DELIM) {
                     // We're unescaping an address element. Encounter a non-escaped separator (colon) is the end of the address element.
-                    break;
+                    elements.add(stringBuilder.toString());
+                    stringBuilder.setLength(0);
+                    elementOpen = false;
+                } else {
+                    stringBuilder.append(ch);
                 }
-
-                stringBuilder.append((char) ch);
             }
         }
+        
+        // A trailing delimiter doesn't produce a trailing empty element, but anything else after the last delimiter (including a dangling
+        // escape character) does.
+        if (elementOpen) {
+            elements.add(stringBuilder.toString());
+        }
 
-        return readCount == 0 ? null : stringBuilder.toString();
+        return elements;
     }
 
-    private Address(List<String> addressElements) {
-        this.addressElements = (UnmodifiableList<String>) UnmodifiableList.unmodifiableList(addressElements);
+    private Address(String[] elements, int offset, int length) {
+        this.elements = elements;
+        this.offset = offset;
+        this.length = length;
     }
 
     /**
@@ -201,7 +261,7 @@ public final class Address implements Serializable {
      * @return number of elements that make up this address
      */
     public int size() {
-        return addressElements.size();
+        return length;
     }
 
     /**
@@ -209,7 +269,7 @@ public final class Address implements Serializable {
      * @return {@code true} if empty, otherwise {@code false}
      */
     public boolean isEmpty() {
-        return addressElements.isEmpty();
+        return length == 0;
     }
     
     /**
@@ -217,7 +277,7 @@ public final class Address implements Serializable {
      * @return elements that make up this address
      */
     public List<String> getElements() {
-        return new ArrayList<>(addressElements);
+        return new ArrayList<>(Arrays.asList(elements).subList(offset, offset + length));
     }
 
     /**
@@ -227,8 +287,8 @@ public final class Address implements Serializable {
      * @throws IllegalArgumentException if {@code idx} is negative or greater than the number of elements that make up this address 
      */
     public String getElement(int idx) {
-        Validate.isTrue(idx >= 0 && idx < addressElements.size());
-        return addressElements.get(idx);
+        Validate.isTrue(idx >= 0 && idx < length);
+        return elements[offset + idx];
     }
     
     /**
@@ -252,10 +312,18 @@ public final class Address implements Serializable {
     public Address appendSuffix(Address child) {
         Validate.notNull(child);
         
-        List<String> newElements = new ArrayList<>(addressElements);
-        newElements.addAll(child.addressElements);
+        if (child.length == 0) {
+            return this;
+        }
+        if (length == 0) {
+            return child;
+        }
+        
+        String[] newElements = new String[length + child.length];
+        System.arraycopy(elements, offset, newElements, 0, length);
+        System.arraycopy(child.elements, child.offset, newElements, length, child.length);
         
-        return new Address(newElements);
+        return new Address(newElements, 0, newElements.length);
     }
 
     /**
@@ -277,11 +345,11 @@ public final class Address implements Serializable {
     public boolean isPrefixOf(Address other) {
         Validate.notNull(other);
         
-        if (other.addressElements.size() < addressElements.size()) {
+        if (other.length < length) {
             return false;
         }
         
-        return other.addressElements.subList(0, addressElements.size()).equals(addressElements);
+        return rangeEquals(other, length);
     }
     
     /**
@@ -302,9 +370,7 @@ public final class Address implements Serializable {
         Validate.notNull(prefix);
         Validate.isTrue(prefix.isPrefixOf(this));
         
-        // Need to create a new ArrayList instead of passing in subList directly because subList generates a non-serializable list
-        List<String> subList = new ArrayList<>(addressElements.subList(prefix.addressElements.size(), addressElements.size()));
-        return new Address(subList);
+        return subAddress(prefix.length, length);
     }
 
     /**
@@ -316,20 +382,82 @@ public final class Address implements Serializable {
      * @throws IllegalArgumentException if the number of address elements in this address is less than {@code removeCount}
      */
     public Address removeSuffix(int count) {
-        Validate.isTrue(count >= 0 && count <= addressElements.size());
-        List<String> subList = new ArrayList<>(addressElements.subList(0, addressElements.size() - count));
-        return new Address(subList);
+        Validate.isTrue(count >= 0 && count <= length);
+        return subAddress(0, length - count);
+    }
+
+    /**
+     * Returns the canonical instance of this address. Two addresses that are equal will return the same instance from this method, so
+     * long as the canonical instance is still reachable.
+     * <p>
+     * Interning is optional. It's meant for addresses that are repeatedly re-created (e.g. parsed from strings) and then used as map
+     * keys, where it cuts down on duplicate instances and lets {@link #equals(java.lang.Object) } short-circuit on identity. The pool
+     * only holds addresses weakly.
+     * @return canonical instance of this address
+     */
+    public Address intern() {
+        if (length == 0) {
+            return EMPTY;
+        }
+
+        synchronized (INTERN_POOL) {
+            WeakReference<Address> ref = INTERN_POOL.get(this);
+            Address existing = ref == null ? null : ref.get();
+            if (existing != null) {
+                return existing;
+            }
+
+            // Trim so that the pool doesn't pin a larger shared array than what this address needs
+            Address trimmed = offset == 0 && length == elements.length ? this : new Address(toArray(), 0, length);
+            INTERN_POOL.put(trimmed, new WeakReference<>(trimmed));
+            return trimmed;
+        }
+    }
+
+    private Address subAddress(int start, int end) {
+        if (start == 0 && end == length) {
+            return this;
+        }
+        if (start == end) {
+            return EMPTY;
+        }
+        return new Address(elements, offset + start, end - start);
+    }
+
+    private String[] toArray() {
+        return Arrays.copyOfRange(elements, offset, offset + length);
+    }
+
+    private boolean rangeEquals(Address other, int count) {
+        if (elements == other.elements && offset == other.offset) {
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!elements[offset + i].equals(other.elements[other.offset + i])) {
+                return false;
+            }
+        }
+        return true;
     }
     
     @Override
     public int hashCode() {
-        int hash = 3;
-        hash = 79 * hash + Objects.hashCode(this.addressElements);
-        return hash;
+        int h = hash;
+        if (h == 0) {
+            h = 1;
+            for (int i = offset; i < offset + length; i++) {
+                h = 31 * h + elements[i].hashCode();
+            }
+            hash = h;
+        }
+        return h;
     }
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (obj == null) {
             return false;
         }
@@ -337,20 +465,70 @@ public final class Address implements Serializable {
             return false;
         }
         final Address other = (Address) obj;
-        if (!Objects.equals(this.addressElements, other.addressElements)) {
+        if (length != other.length) {
             return false;
         }
-        return true;
+        if (hash != 0 && other.hash != 0 && hash != other.hash) {
+            return false;
+        }
+        return rangeEquals(other, length);
     }
 
     @Override
     public String toString() {
-        if (addressElements.isEmpty()) {
+        if (length == 0) {
             return "";
         }
         
-        StringJoiner joiner = new StringJoiner(String.valueOf(DELIM));
-        addressElements.stream().forEach((element) -> joiner.add(escapeElement(element)));
-        return joiner.toString();
+        StringBuilder sb = new StringBuilder();
+        for (int i = offset; i < offset + length; i++) {
+            if (i != offset) {
+                sb.append(DELIM);
+            }
+            escapeElement(elements[i], sb);
+        }
+        return sb.toString();
+    }
+
+    // Serialization goes through a proxy so that an address sharing a larger array only writes out the elements it covers.
+    private Object writeReplace() {
+        return new SerializedForm(toArray());
+    }
+
+    // Addresses serialized before the proxy was introduced (e.g. in existing checkpoints) were written as an Address with a single
+    // addressElements field holding an UnmodifiableList. Those streams still come through here -- stash the elements so that
+    // readResolve() can swap in a proper instance.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Object legacyElements = fields.get("addressElements", null);
+        if (!(legacyElements instanceof List)) {
+            throw new InvalidObjectException("Proxy required");
+        }
+        this.legacyElements = (List<?>) legacyElements;
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        if (legacyElements == null) {
+            throw new InvalidObjectException("Proxy required");
+        }
+        try {
+            return Address.of(legacyElements.toArray(new String[legacyElements.size()]));
+        } catch (RuntimeException e) { // bad elements (e.g. null or not printable ASCII)
+            throw (InvalidObjectException) new InvalidObjectException("Bad legacy address").initCause(e);
+        }
+    }
+
+    private static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] elements;
+
+        SerializedForm(String[] elements) {
+            this.elements = elements;
+        }
+
+        private Object readResolve() {
+            return Address.of(elements);
+        }
     }
 }
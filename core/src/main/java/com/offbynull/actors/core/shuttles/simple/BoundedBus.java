@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.shuttles.simple;
+
+import com.offbynull.actors.core.shuttle.Message;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Bus} implementation that holds at most a fixed number of messages. What happens to messages that don't fit is controlled by
+ * an {@link OverflowPolicy}.
+ * <p>
+ * Only {@link Message}s count against the capacity, and a {@link MessageBatch} counts as however many messages it carries. Anything else
+ * that gets added (e.g. the commands gateways use to add and remove outgoing shuttles) is a control object -- control objects are always
+ * accepted, never discarded, and never make a writer block.
+ * <p>
+ * A {@link BoundedBusListener} can be supplied to find out when messages get discarded and when the number of messages on the bus
+ * crosses the high and low watermarks. Gateways can use these signals to push back on whatever is feeding them rather than buffering
+ * indefinitely. Alternatively, use {@link OverflowPolicy#BLOCK} to have writers wait until there's room -- but see the warning on
+ * {@link OverflowPolicy#BLOCK} about writers that also read from a bus.
+ * @author Kasra Faghihi
+ */
+public final class BoundedBus implements Bus {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoundedBus.class);
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmptyCondition = lock.newCondition();
+    private final Condition notFullCondition = lock.newCondition();
+
+    private final int capacity;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final OverflowPolicy policy;
+    private final BoundedBusListener listener;
+
+    private final ArrayDeque<Object> queue;
+    private int size; // number of messages in queue, control objects excluded
+    private boolean aboveHighWatermark;
+    private boolean closed;
+
+    /**
+     * Constructs a {@link BoundedBus} object. Equivalent to calling
+     * {@code new BoundedBus(capacity, capacity, capacity / 2, policy, new BoundedBusListener() { })}.
+     * @param capacity maximum number of messages that can be on this bus
+     * @param policy what to do with messages that don't fit
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code capacity < 1}
+     */
+    public BoundedBus(int capacity, OverflowPolicy policy) {
+        this(capacity, capacity, capacity / 2, policy, new BoundedBusListener() { });
+    }
+
+    /**
+     * Constructs a {@link BoundedBus} object.
+     * @param capacity maximum number of messages that can be on this bus
+     * @param highWatermark number of messages on this bus at which {@link BoundedBusListener#highWatermarkReached(int) } is signalled
+     * @param lowWatermark number of messages on this bus at which {@link BoundedBusListener#lowWatermarkReached(int) } is signalled
+     * @param policy what to do with messages that don't fit
+     * @param listener listener to signal
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code capacity < 1}, or if {@code highWatermark} isn't between {@code 1} and
+     * {@code capacity}, or if {@code lowWatermark} isn't between {@code 0} and {@code highWatermark - 1}
+     */
+    public BoundedBus(int capacity, int highWatermark, int lowWatermark, OverflowPolicy policy, BoundedBusListener listener) {
+        Validate.notNull(policy);
+        Validate.notNull(listener);
+        Validate.isTrue(capacity > 0);
+        Validate.isTrue(highWatermark > 0 && highWatermark <= capacity);
+        Validate.isTrue(lowWatermark >= 0 && lowWatermark < highWatermark);
+
+        this.capacity = capacity;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.policy = policy;
+        this.listener = listener;
+        this.queue = new ArrayDeque<>();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFullCondition.signalAll(); // wake up blocked writers so they can bail out
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void add(Collection<?> messages) {
+        Validate.notNull(messages);
+        Validate.noNullElements(messages);
+
+        List<Object> discarded = new LinkedList<>();
+        boolean highSignal;
+        int currentSize;
+
+        lock.lock();
+        try {
+            if (closed) {
+                LOG.debug("Messages incoming to closed bus: {}", messages);
+                return;
+            }
+
+            switch (policy) {
+                case BLOCK:
+                    addBlocking(messages, discarded);
+                    break;
+                case DROP_NEWEST:
+                    for (Object message : messages) {
+                        int weight = weigh(message);
+                        if (size + weight <= capacity) {
+                            enqueue(message, weight);
+                        } else {
+                            discarded.add(message);
+                        }
+                    }
+                    break;
+                case DROP_OLDEST:
+                    for (Object message : messages) {
+                        int weight = weigh(message);
+                        if (weight > capacity) {
+                            discarded.add(message); // would never fit, even with everything else gone
+                            continue;
+                        }
+                        if (size + weight > capacity) {
+                            discardOldest(size + weight - capacity, discarded);
+                        }
+                        enqueue(message, weight);
+                    }
+                    break;
+                case REJECT: {
+                    int weight = 0;
+                    for (Object message : messages) {
+                        weight += weigh(message);
+                    }
+                    boolean fits = size + weight <= capacity;
+                    for (Object message : messages) {
+                        int messageWeight = weigh(message);
+                        if (fits || messageWeight == 0) {
+                            enqueue(message, messageWeight);
+                        } else {
+                            discarded.add(message);
+                        }
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException(); // should never happen
+            }
+
+            if (!queue.isEmpty()) {
+                notEmptyCondition.signal();
+            }
+
+            currentSize = size;
+            highSignal = !aboveHighWatermark && currentSize >= highWatermark;
+            if (highSignal) {
+                aboveHighWatermark = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (!discarded.isEmpty()) {
+            LOG.debug("Bus full, discarded {} items", discarded.size());
+            listener.discarded(discarded);
+        }
+        if (highSignal) {
+            listener.highWatermarkReached(currentSize);
+        }
+    }
+
+    private void addBlocking(Collection<?> messages, List<Object> discarded) {
+        Iterator<?> it = messages.iterator();
+        Object message = null;
+        try {
+            while (it.hasNext()) {
+                message = it.next();
+                int weight = weigh(message);
+
+                // A batch bigger than the capacity is let in once the bus is empty, otherwise it would never get in
+                while (weight > 0 && size > 0 && size + weight > capacity && !closed) {
+                    // let the reader know there's stuff to read before waiting for it to make room
+                    notEmptyCondition.signal();
+                    notFullCondition.await();
+                }
+
+                if (closed) {
+                    LOG.debug("Bus closed while waiting for room");
+                    break;
+                }
+
+                enqueue(message, weight);
+                message = null;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt(); // add() can't throw InterruptedException, so preserve the interrupt for the caller
+            LOG.debug("Interrupted while waiting for room");
+            discarded.add(message);
+            it.forEachRemaining(discarded::add);
+        }
+    }
+
+    private void enqueue(Object message, int weight) {
+        queue.add(message);
+        size += weight;
+    }
+
+    private void discardOldest(int required, List<Object> discarded) {
+        // Control objects are skipped over -- they stay on the bus in their original order
+        int freed = 0;
+        Iterator<Object> it = queue.iterator();
+        while (freed < required && it.hasNext()) {
+            Object message = it.next();
+            int weight = weigh(message);
+            if (weight > 0) {
+                it.remove();
+                discarded.add(message);
+                freed += weight;
+            }
+        }
+        size -= freed;
+    }
+
+    private static int weigh(Object message) {
+        if (message instanceof Message) {
+            return 1;
+        } else if (message instanceof MessageBatch) {
+            return ((MessageBatch) message).getMessages().size();
+        } else {
+            return 0; // control object
+        }
+    }
+
+    @Override
+    public List<Object> pull(long timeout, TimeUnit unit) throws InterruptedException {
+        Validate.isTrue(timeout >= 0L);
+        Validate.notNull(unit);
+
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (remaining <= 0L) {
+                    // timeout elapsed, return without doing anything
+                    return new LinkedList<>();
+                }
+                remaining = notEmptyCondition.awaitNanos(remaining);
+            }
+
+            return drain();
+        } finally {
+            lock.unlock();
+            signalLowWatermarkIfNeeded();
+        }
+    }
+
+    @Override
+    public List<Object> pull() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                notEmptyCondition.await();
+            }
+
+            return drain();
+        } finally {
+            lock.unlock();
+            signalLowWatermarkIfNeeded();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the number of messages on this bus reached the high watermark and hasn't yet dropped back down to the low
+     * watermark.
+     * @return {@code true} if this bus is backed up, {@code false} otherwise
+     */
+    public boolean isAboveHighWatermark() {
+        lock.lock();
+        try {
+            return aboveHighWatermark;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the overflow policy of this bus.
+     * @return overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    private List<Object> drain() {
+        List<Object> messages = new ArrayList<>(queue);
+        queue.clear();
+        size = 0;
+        notFullCondition.signalAll();
+
+        LOG.debug("Pulled {} messages", messages.size());
+        return messages;
+    }
+
+    private void signalLowWatermarkIfNeeded() {
+        boolean lowSignal;
+        int currentSize;
+
+        lock.lock();
+        try {
+            currentSize = size;
+            lowSignal = aboveHighWatermark && currentSize <= lowWatermark;
+            if (lowSignal) {
+                aboveHighWatermark = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (lowSignal) {
+            listener.lowWatermarkReached(currentSize);
+        }
+    }
+}
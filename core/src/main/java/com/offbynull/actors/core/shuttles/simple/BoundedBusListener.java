@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.shuttles.simple;
+
+import java.util.List;
+
+/**
+ * Receives signals from a {@link BoundedBus}. Methods are invoked on whichever thread triggered the signal, outside of the bus's lock.
+ * Implementations should return quickly.
+ * @author Kasra Faghihi
+ */
+public interface BoundedBusListener {
+
+    /**
+     * Called when messages are discarded because the bus was full.
+     * @param messages messages that were discarded
+     */
+    default void discarded(List<Object> messages) {
+        // do nothing
+    }
+
+    /**
+     * Called when the number of messages on the bus reaches the high watermark. Not called again until the low watermark is reached.
+     * @param size number of messages on the bus
+     */
+    default void highWatermarkReached(int size) {
+        // do nothing
+    }
+
+    /**
+     * Called when the number of messages on the bus drops to the low watermark after having reached the high watermark.
+     * @param size number of messages on the bus
+     */
+    default void lowWatermarkReached(int size) {
+        // do nothing
+    }
+}
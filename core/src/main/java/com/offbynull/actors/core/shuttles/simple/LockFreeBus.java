@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.shuttles.simple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Bus} implementation that lets any number of threads write without locking, but only allows a single thread to read.
+ * <p>
+ * Writers push their messages on to a linked stack using a single compare-and-swap per {@link #add(java.util.Collection) } call. The
+ * reader detaches the entire stack in one step, then reverses it so that messages come out in the order they were added. If the reader
+ * is waiting for messages, writers wake it up via {@link LockSupport#unpark(java.lang.Thread) }.
+ * <p>
+ * Only one thread may call {@link #pull() } / {@link #pull(long, java.util.concurrent.TimeUnit) } at any given time. The behaviour of
+ * concurrent reads is undefined.
+ * @author Kasra Faghihi
+ */
+public final class LockFreeBus implements Bus {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LockFreeBus.class);
+
+    // Once closed, a closed marker node always sits at the top of the stack. Writers seeing it drop their messages. Anything that was
+    // pushed before the bus was closed hangs off the marker and can still be read. CLOSED is what's left once those have been read.
+    private static final Node CLOSED = new Node(null);
+
+    private final AtomicReference<Node> head = new AtomicReference<>();
+    private final AtomicReference<Thread> waiter = new AtomicReference<>();
+
+    @Override
+    public void close() {
+        while (true) {
+            Node top = head.get();
+            if (top != null && top.closedMarker) {
+                return;
+            }
+            if (head.compareAndSet(top, new Node(top))) {
+                wakeReader();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void add(Object message) {
+        Validate.notNull(message);
+
+        Node node = new Node(message, null);
+        push(node, node, message);
+    }
+
+    @Override
+    public void add(Collection<?> messages) {
+        Validate.notNull(messages);
+        Validate.noNullElements(messages);
+
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        // Link up the nodes in reverse order so that the last message ends up at the top of the stack
+        Node bottom = null;
+        Node top = null;
+        for (Object message : messages) {
+            top = new Node(message, top);
+            if (bottom == null) {
+                bottom = top;
+            }
+        }
+        push(top, bottom, messages);
+    }
+
+    private void push(Node top, Node bottom, Object logObj) { // logObj is whatever was passed in to add(), only used for logging
+        while (true) {
+            Node existing = head.get();
+            if (existing != null && existing.closedMarker) {
+                LOG.debug("Messages incoming to closed bus: {}", logObj);
+                return;
+            }
+            bottom.next = existing;
+            if (head.compareAndSet(existing, top)) {
+                break;
+            }
+        }
+
+        wakeReader();
+    }
+
+    private void wakeReader() {
+        // Only the writer that takes the waiter out of the slot unparks it. Unparking is expensive relative to a push, and without this
+        // every writer would unpark a reader that's already been woken up but hasn't been scheduled yet.
+        Thread thread = waiter.get();
+        if (thread != null && waiter.compareAndSet(thread, null)) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public List<Object> pull(long timeout, TimeUnit unit) throws InterruptedException {
+        Validate.isTrue(timeout >= 0L);
+        Validate.notNull(unit);
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            List<Object> messages = drain();
+            if (messages != null) {
+                return messages;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                // timeout elapsed, return without doing anything
+                return new ArrayList<>(0);
+            }
+            park(remaining);
+        }
+    }
+
+    @Override
+    public List<Object> pull() throws InterruptedException {
+        while (true) {
+            List<Object> messages = drain();
+            if (messages != null) {
+                return messages;
+            }
+            park(-1L);
+        }
+    }
+
+    private void park(long nanos) throws InterruptedException {
+        waiter.set(Thread.currentThread());
+        try {
+            // Check again after publishing ourselves as the waiter -- a writer may have pushed before it could see us
+            if (!hasMessages()) {
+                if (nanos < 0L) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, nanos);
+                }
+            }
+        } finally {
+            waiter.lazySet(null);
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private boolean hasMessages() {
+        Node top = head.get();
+        if (top == null) {
+            return false;
+        }
+        return !top.closedMarker || top.next != null;
+    }
+
+    private List<Object> drain() {
+        Node chain;
+        while (true) {
+            Node top = head.get();
+            if (top == null) {
+                return null;
+            }
+
+            Node replacement;
+            if (top.closedMarker) {
+                chain = top.next;
+                replacement = CLOSED;
+            } else {
+                chain = top;
+                replacement = null;
+            }
+
+            if (chain == null) {
+                return null;
+            }
+
+            if (head.compareAndSet(top, replacement)) {
+                break;
+            }
+        }
+
+        // Stack is newest-first, so reverse the detached chain in place (nothing else can reach it anymore) to get messages out in the
+        // order they were added
+        Node oldest = null;
+        int count = 0;
+        while (chain != null) {
+            Node next = chain.next;
+            chain.next = oldest;
+            oldest = chain;
+            chain = next;
+            count++;
+        }
+
+        List<Object> items = new ArrayList<>(count);
+        for (Node node = oldest; node != null; node = node.next) {
+            items.add(node.item);
+        }
+
+        LOG.debug("Pulled {} messages", count);
+        return items;
+    }
+
+    private static final class Node {
+        private final Object item;
+        private final boolean closedMarker;
+        private Node next;
+
+        Node(Object item, Node next) {
+            this.item = item;
+            this.closedMarker = false;
+            this.next = next;
+        }
+
+        Node(Node next) {
+            this.item = null;
+            this.closedMarker = true;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.shuttles.simple;
+
+import com.offbynull.actors.core.shuttle.Message;
+import java.util.List;
+
+/**
+ * A bus item that carries a batch of {@link Message}s. {@link BoundedBus} counts each message in the batch against its capacity, rather
+ * than counting the batch as a single item.
+ * @author Kasra Faghihi
+ */
+public interface MessageBatch {
+
+    /**
+     * Get the messages in this batch.
+     * @return messages in this batch
+     */
+    List<Message> getMessages();
+}
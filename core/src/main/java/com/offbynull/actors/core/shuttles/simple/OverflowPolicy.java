@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.actors.core.shuttles.simple;
+
+/**
+ * What a {@link BoundedBus} does with messages that would take it past its capacity.
+ * @author Kasra Faghihi
+ */
+public enum OverflowPolicy {
+    /**
+     * Block the thread adding messages until enough messages have been pulled off the bus to make room.
+     * <p>
+     * Only safe when the thread reading the bus can never end up waiting on one of its writers. For example, a
+     * {@link com.offbynull.actors.core.gateways.direct.DirectGateway} reading a blocking bus is fine, because it sends everything on to
+     * buses that don't block. If the readers of two blocking buses write to each other (e.g. two actor runners), both buses can fill up
+     * at the same time, and then each reader waits on the other forever. {@link com.offbynull.actors.core.actor.ActorRunner} refuses
+     * buses that use this policy for that reason.
+     */
+    BLOCK,
+    /**
+     * Discard the incoming messages that don't fit.
+     */
+    DROP_NEWEST,
+    /**
+     * Discard the oldest messages on the bus to make room for the incoming messages.
+     */
+    DROP_OLDEST,
+    /**
+     * Discard the entire incoming batch if any part of it doesn't fit. Control objects in the batch are still added.
+     */
+    REJECT
+}
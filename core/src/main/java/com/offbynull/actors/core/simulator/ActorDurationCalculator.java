@@ -37,4 +37,17 @@ public interface ActorDurationCalculator {
      * @throws IllegalArgumentException if {@code realDuration} is negative, or {@code source} is empty, or {@code destination} is empty
      */
     Duration calculateDuration(Address source, Address destination, Object message, Duration realDuration);
+
+    /**
+     * Lower bound for the durations returned by {@link #calculateDuration(com.offbynull.actors.core.shuttle.Address,
+     * com.offbynull.actors.core.shuttle.Address, java.lang.Object, java.time.Duration) }. A {@link Simulator} running on multiple threads
+     * uses this to determine which messages can safely be processed in parallel -- the higher it is, the more parallelism is available.
+     * <p>
+     * Returning a duration higher than what {@link #calculateDuration(com.offbynull.actors.core.shuttle.Address,
+     * com.offbynull.actors.core.shuttle.Address, java.lang.Object, java.time.Duration) } returns will cause the simulation to fail.
+     * @return minimum duration (must not be negative)
+     */
+    default Duration minimumDuration() {
+        return Duration.ZERO;
+    }
 }
@@ -22,18 +22,25 @@ import com.offbynull.actors.core.actor.ActorRunner;
 import com.offbynull.actors.core.context.BatchedCreateActorCommand;
 import com.offbynull.actors.core.context.SourceContext;
 import com.offbynull.actors.core.context.BatchedOutgoingMessage;
+import com.offbynull.actors.core.context.BatchedScheduledMessage;
 import com.offbynull.actors.core.gateway.Gateway;
 import com.offbynull.actors.core.gateways.timer.TimerGateway;
 import com.offbynull.actors.core.shuttle.Address;
 import com.offbynull.actors.core.shuttle.Shuttle;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Consumer;
 import org.apache.commons.collections4.list.UnmodifiableList;
 import org.apache.commons.collections4.map.UnmodifiableMap;
@@ -97,7 +104,7 @@ import org.slf4j.LoggerFactory;
  * </ol>
  * @author Kasra Faghihi
  */
-public final class Simulator {
+public final class Simulator implements AutoCloseable {
     
     // NOTE that this is a simulator, not an emulator. There was a (partially implemented) idea at one point to bring this closer to being
     // an emulator. Here are the things that were implementer or were going to be implemented:
@@ -129,6 +136,8 @@ public final class Simulator {
     private final PriorityQueue<Event> events;
     private final Map<Address, Holder> holders;
     private final ActorDurationCalculator actorDurationCalculator;
+    private final Duration lookahead; // minimum time an actor takes to process a message -- anything it sends arrives at least this late
+    private final ForkJoinPool pool; // null if running sequentially
     private Instant currentTime;
     private long nextSequenceNumber; // Each time an event created and added to the events collection, this sequence number is incremented
                                      // and used for the events sequence number. The sequence number is used to properly order order events
@@ -161,8 +170,39 @@ public final class Simulator {
      * @throws NullPointerException if any argument is {@code null}
      */
     public Simulator(Instant startTime, ActorDurationCalculator actorDurationCalculator) {
+        this(startTime, actorDurationCalculator, 1);
+    }
+
+    /**
+     * Constructs a {@link Simulator} object which has customized delaying behaviour, is set to run it's simulation as if from some
+     * specific point in time, and runs actors on multiple threads.
+     * <p>
+     * If {@code threadCount > 1}, each call to {@link #process() } takes a batch of messages from the front of the event queue and has the
+     * actors process them in parallel. A batch never contains more than one message for the same actor and never spans past the first
+     * event that isn't a message to an actor (e.g. a timer or an actor being added/removed). It also never spans past the time of the first
+     * message plus {@link ActorDurationCalculator#minimumDuration() } -- nothing an actor sends can arrive before then, so nothing
+     * processed as part of the batch can end up needing to go before anything else in the batch. Everything other than running the actors
+     * (calculating durations, queueing what the actors sent out, etc..) happens on the thread calling {@link #process() } in the same
+     * order as it would sequentially, so the results are exactly the same as with a single thread.
+     * <p>
+     * Actors in the simulation must not share state with each other when running with multiple threads. The higher
+     * {@link ActorDurationCalculator#minimumDuration() } is, the more messages can end up being processed in parallel. Messages that
+     * arrive at the exact same time can always be processed in parallel.
+     * <p>
+     * Call {@link #close() } once done to release the threads.
+     * @param startTime start time of simulation
+     * @param actorDurationCalculator determines the delay caused by an actor processing a message
+     * @param threadCount number of threads to run actors on ({@code 1} runs everything on the thread calling {@link #process() })
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code threadCount < 1}, or if {@code actorDurationCalculator}'s minimum duration is negative
+     */
+    public Simulator(Instant startTime, ActorDurationCalculator actorDurationCalculator, int threadCount) {
         Validate.notNull(startTime);
         Validate.notNull(actorDurationCalculator);
+        Validate.isTrue(threadCount >= 1);
+        Duration lookahead = actorDurationCalculator.minimumDuration();
+        Validate.notNull(lookahead);
+        Validate.isTrue(!lookahead.isNegative());
 
         this.events = new PriorityQueue<>();
         this.holders = new HashMap<>();
@@ -180,6 +220,8 @@ public final class Simulator {
         this.eventHandlers =
                 (UnmodifiableMap<Class<? extends Event>, Consumer<Event>>) UnmodifiableMap.unmodifiableMap(eventHandlers);
         this.actorDurationCalculator = actorDurationCalculator;
+        this.lookahead = lookahead;
+        this.pool = threadCount == 1 ? null : new ForkJoinPool(threadCount);
     }
 
     /**
@@ -297,13 +339,20 @@ public final class Simulator {
     /**
      * Process the next event. If this simulation has no more events left to process, this method throws an exception. Use
      * {@link #hasMore() } to determine if this method should be called.
+     * <p>
+     * If this simulator runs actors on multiple threads, this method may process a batch of events rather than just the next event (see
+     * {@link #Simulator(java.time.Instant, com.offbynull.actors.core.simulator.ActorDurationCalculator, int) }).
      * @return the current time in the simulation
      * @throws IllegalStateException if no more events are left to process
      */
     public Instant process() {
-        Event event = events.poll();
-        Validate.validState(event != null, "No events left to process");
+        Validate.validState(!events.isEmpty(), "No events left to process");
+
+        if (pool != null && processBatch()) {
+            return currentTime;
+        }
 
+        Event event = events.poll();
         currentTime = event.getTriggerTime();
         
         Consumer<Event> eventHandler = eventHandlers.get(event.getClass());
@@ -313,6 +362,84 @@ public final class Simulator {
         
         return currentTime;
     }
+
+    /**
+     * Releases the threads used to run actors in parallel. Does nothing if this simulator runs sequentially.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private boolean processBatch() {
+        // Pull messages to actors off the front of the queue for as long as they're guaranteed to be unaffected by the messages ahead of
+        // them in the batch. Processing a message at time t can only queue up new events at t + lookahead or later (and even if an event
+        // ends up at the same time as one in the batch, it'll have a higher sequence number so it'll go after).
+        Instant horizon = events.peek().getTriggerTime().plus(lookahead);
+        List<MessageEvent> batch = new ArrayList<>();
+        List<ActorHolder> batchHolders = new ArrayList<>();
+        Set<ActorHolder> batchHoldersSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        Event event;
+        while ((event = events.peek()) != null && !event.getTriggerTime().isAfter(horizon)) {
+            if (!(event instanceof MessageEvent)) {
+                break;
+            }
+            MessageEvent messageEvent = (MessageEvent) event;
+            Holder holder = findHolder(messageEvent.getDestinationAddress());
+            if (!(holder instanceof ActorHolder) || !batchHoldersSet.add((ActorHolder) holder)) {
+                break; // not going to an actor, or going to an actor that already has a message in the batch
+            }
+            events.poll();
+            batch.add(messageEvent);
+            batchHolders.add((ActorHolder) holder);
+        }
+        
+        if (batch.isEmpty()) {
+            return false;
+        }
+
+        // Run the actors. The first is run on this thread while the rest are run on the pool.
+        List<ForkJoinTask<FireResult>> tasks = new ArrayList<>(batch.size());
+        for (int i = 1; i < batch.size(); i++) {
+            MessageEvent messageEvent = batch.get(i);
+            ActorHolder holder = batchHolders.get(i);
+            tasks.add(pool.submit(() -> fireActor(
+                    holder,
+                    messageEvent.getDestinationAddress(),
+                    messageEvent.getSourceAddress(),
+                    messageEvent.getMessage(),
+                    messageEvent.getTriggerTime())));
+        }
+        
+        List<FireResult> fireResults = new ArrayList<>(batch.size());
+        MessageEvent firstEvent = batch.get(0);
+        LOG.debug("Processing event batch starting with {} ({} events)", firstEvent, batch.size());
+        fireResults.add(fireActor(
+                batchHolders.get(0),
+                firstEvent.getDestinationAddress(),
+                firstEvent.getSourceAddress(),
+                firstEvent.getMessage(),
+                firstEvent.getTriggerTime()));
+        for (ForkJoinTask<FireResult> task : tasks) {
+            fireResults.add(task.join());
+        }
+
+        // Apply the results in event order, exactly as if the events were processed one at a time
+        for (int i = 0; i < batch.size(); i++) {
+            MessageEvent messageEvent = batch.get(i);
+            currentTime = messageEvent.getTriggerTime();
+            applyFireResult(
+                    batchHolders.get(i),
+                    messageEvent.getDestinationAddress(),
+                    messageEvent.getSourceAddress(),
+                    messageEvent.getMessage(),
+                    fireResults.get(i));
+        }
+        
+        return true;
+    }
     
     private void handleCustomEvent(Event event) {
         CustomEvent customEvent = (CustomEvent) event;
@@ -435,10 +562,8 @@ public final class Simulator {
         Validate.notNull(address);
         Validate.isTrue(!address.isEmpty());
 
-        List<String> splitAddress = address.getElements();
-        
         for (int i = address.size(); i >= 1; i--) {
-            Address testAddress = Address.of(splitAddress.subList(0, i));
+            Address testAddress = address.removeSuffix(address.size() - i);
             Holder actorHolder = holders.get(testAddress);
             if (actorHolder != null) {
                 return actorHolder;
@@ -648,24 +773,27 @@ public final class Simulator {
     }
 
     private void processMessageToActor(ActorHolder destHolder, Address destination, Address source, Object message) {
+        FireResult fireResult = fireActor(destHolder, destination, source, message, currentTime);
+        applyFireResult(destHolder, destination, source, message, fireResult);
+    }
+
+    // Runs the actor itself. This only touches state belonging to destHolder, so calls for different actors can run at the same time.
+    private FireResult fireActor(ActorHolder destHolder, Address destination, Address source, Object message, Instant time) {
         // Earliest possible step time is the minimum point in time which the destination actor can have its onStep called again. That is,
         // the message being processed must be >= to the earliest possible step time. Otherwise, something has gone wrong. This is a sanity
         // check.
         Instant minTime = destHolder.getEarliestPossibleOnStepTime();
-        Validate.isTrue(!currentTime.isBefore(minTime));
+        Validate.isTrue(!time.isBefore(minTime));
 
 
         // Set up values for calling onStep, and then call onStep. If onStep throws an exception, then log and remove the actor from the
         // test harness. In the real world, if an actor throws an exception, it'll get removed from the list of actors assigned to that
         // ActorRunner/ActorRunnable and no more execution is done on it.
-        CoroutineRunner actorRunner = destHolder.getActorRunner();
-        Address address = destHolder.getAddress();
         SourceContext context = destHolder.getContext();
-        Instant localActorTime = currentTime.plus(destHolder.getTimeOffset()); // This is the time as it appears to the actor. Clocks
-                                                                               // between different machines are never going to be entirely
-                                                                               // in sync. So, one actor may technically have a different
-                                                                               // local time than another (because they may be running on
-                                                                               // different machines).
+        Instant localActorTime = time.plus(destHolder.getTimeOffset()); // This is the time as it appears to the actor. Clocks between
+                                                                        // different machines are never going to be entirely in sync. So,
+                                                                        // one actor may technically have a different local time than
+                                                                        // another (because they may be running on different machines).
 
         Duration realExecDuration;
         boolean stopped;
@@ -679,6 +807,17 @@ public final class Simulator {
         Instant execEndTime = Instant.now();
         realExecDuration = Duration.between(execStartTime, execEndTime);
 
+        return new FireResult(stopped, realExecDuration);
+    }
+
+    // Everything that happens once the actor has run. This touches the event queue and the sequence number, so it always runs on the
+    // thread calling process(), in event order.
+    private void applyFireResult(ActorHolder destHolder, Address destination, Address source, Object message, FireResult fireResult) {
+        Address address = destHolder.getAddress();
+        SourceContext context = destHolder.getContext();
+        Duration realExecDuration = fireResult.realExecDuration;
+        boolean stopped = fireResult.stopped;
+
         // We've finished calling onStep(). Next, add the amount of time it took to do the processing of the message by onStep. This is a
         // calculated value. We have the real execution time, and we pass that in as a hint to the interface that does the calculations, but
         // ultimately the interface can specify whatever duration it wants (provided that it isn't negative).
@@ -690,6 +829,7 @@ public final class Simulator {
         }
         Duration execDuration = actorDurationCalculator.calculateDuration(source, destination, message, realExecDuration);
         Validate.isTrue(!execDuration.isNegative()); // sanity check here, make sure calculated duration it isn't negative
+        Validate.isTrue(execDuration.compareTo(lookahead) >= 0); // parallel processing relies on the calculator's minimum being correct
 
         Instant earliestPossibleOnStepTime = currentTime.plus(execDuration);
         destHolder.setEarliestPossibleOnStepTime(earliestPossibleOnStepTime);
@@ -714,12 +854,25 @@ public final class Simulator {
                     batchedOutMsg.getMessage(),
                     execDuration);
         }
+        
+        // Timers set through Context.schedule() are kept by the actor's runner rather than going through a timer gateway, so they're sent
+        // back to the actor directly once onStep() completes + the requested delay.
+        List<BatchedScheduledMessage> batchedScheduledMsgs = context.copyAndClearScheduledMessages();
+        for (BatchedScheduledMessage batchedScheduledMsg : batchedScheduledMsgs) {
+            queueMessageFromActorOrGateway(
+                    batchedScheduledMsg.getSource(),
+                    batchedScheduledMsg.getDestination(),
+                    batchedScheduledMsg.getMessage(),
+                    execDuration.plusMillis(batchedScheduledMsg.getDelay()));
+        }
 
         // Go through any messages queued to arrive at this actor before earliest possible onstep time. Reschedule each of those messages
         // such that they arrive at earliest possible on step time. Like the comment above says, it wouldn't make sense to call onStep()
         // before this time. We'd be going back in time if we did.
+        //
+        // If execDuration is 0, there's nothing to reschedule -- no event in the queue triggers before the current time.
         List<MessageEvent> messageEventsToReschedule = new LinkedList<>();
-        Iterator<Event> it = events.iterator();
+        Iterator<Event> it = execDuration.isZero() ? Collections.emptyIterator() : events.iterator();
         while (it.hasNext()) {
             Event event = it.next();
             
@@ -745,24 +898,22 @@ public final class Simulator {
             if (event instanceof MessageEvent) {
                 MessageEvent pendingMessageEvent = (MessageEvent) event;
                 if (pendingMessageEvent.getDestinationAddress().equals(address)) {
-                    MessageEvent updatedMessageEvent = new MessageEvent(
-                            pendingMessageEvent.getSourceAddress(),
-                            pendingMessageEvent.getDestinationAddress(),
-                            pendingMessageEvent.getMessage(),
-                            earliestPossibleOnStepTime,
-                            nextSequenceNumber++);
-                    messageEventsToReschedule.add(updatedMessageEvent);
+                    messageEventsToReschedule.add(pendingMessageEvent);
                     it.remove();
                 }
             }
         }
 
+        // The iterator above walks the queue in whatever order the heap happens to be laid out in, which depends on the exact history of
+        // adds/removes. Put the messages back in the order they were originally going to arrive in so that the result doesn't depend on
+        // that (e.g. when the queue has been touched in a different order because actors were run in parallel).
+        Collections.sort(messageEventsToReschedule);
         for (MessageEvent pendingMessageEvent : messageEventsToReschedule) {
             MessageEvent rescheduledMessageEvent = new MessageEvent(
                     pendingMessageEvent.getSourceAddress(),
                     pendingMessageEvent.getDestinationAddress(),
                     pendingMessageEvent.getMessage(),
-                    pendingMessageEvent.getTriggerTime(),
+                    earliestPossibleOnStepTime,
                     nextSequenceNumber++);
             events.add(rescheduledMessageEvent);
         }
@@ -775,4 +926,14 @@ public final class Simulator {
             holders.remove(address);
         }
     }
+    
+    private static final class FireResult {
+        private final boolean stopped;
+        private final Duration realExecDuration;
+
+        FireResult(boolean stopped, Duration realExecDuration) {
+            this.stopped = stopped;
+            this.realExecDuration = realExecDuration;
+        }
+    }
 }
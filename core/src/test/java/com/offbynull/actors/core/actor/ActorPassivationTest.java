@@ -0,0 +1,182 @@
+package com.offbynull.actors.core.actor;
+
+import com.offbynull.actors.core.checkpoint.Checkpointer;
+import com.offbynull.actors.core.checkpoint.FileSystemCheckpointer;
+import com.offbynull.actors.core.context.Context;
+import com.offbynull.actors.core.context.ObjectStreamSerializer;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.gateways.direct.DirectGateway;
+import com.offbynull.actors.core.shuttle.Address;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
+import com.offbynull.coroutines.user.Coroutine;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActorPassivationTest {
+
+    public Path tempPath;
+
+    @Before
+    public void before() throws Exception {
+        tempPath = Files.createTempDirectory(ActorPassivationTest.class.getSimpleName());
+    }
+
+    @After
+    public void after() throws Exception {
+        FileUtils.deleteDirectory(tempPath.toFile());
+    }
+
+    @Test(timeout = 4000L)
+    public void mustPassivateIdleActorAndRestoreStateOnNextMessage() throws Exception {
+        try (CountingCheckpointer checkpointer = new CountingCheckpointer(
+                        FileSystemCheckpointer.create(new ObjectStreamSerializer(), tempPath));
+                ActorRunner runner = ActorRunner.create("runner", 1, checkpointer, LockingBus::new, 64,
+                        PassivationPolicy.idle(Duration.ofMillis(100L)));
+                DirectGateway direct = DirectGateway.create("direct");) {
+
+            runner.addOutgoingShuttle(direct.getIncomingShuttle());
+            direct.addOutgoingShuttle(runner.getIncomingShuttle());
+
+            runner.addActor("actor0", createCounterActor(), new Object());
+            assertEquals("ready", direct.readMessagePayloadOnly());
+
+            direct.writeMessage("runner:actor0", "hi");
+            assertEquals("echo 0:hi", direct.readMessagePayloadOnly());
+
+            // Wait for the actor to go idle and get passivated
+            while (checkpointer.saveCount.get() == 0) {
+                Thread.sleep(10L);
+            }
+
+            direct.writeMessage("runner:actor0", "hello");
+            assertEquals("echo 1:hello", direct.readMessagePayloadOnly());
+
+            assertTrue(checkpointer.restoreCount.get() >= 1);
+        }
+    }
+
+    @Test(timeout = 4000L)
+    public void mustPassivateLeastRecentlyUsedActorsWhenOverBudget() throws Exception {
+        try (CountingCheckpointer checkpointer = new CountingCheckpointer(
+                        FileSystemCheckpointer.create(new ObjectStreamSerializer(), tempPath));
+                ActorRunner runner = ActorRunner.create("runner", 1, checkpointer, LockingBus::new, 64,
+                        PassivationPolicy.budget(1));
+                DirectGateway direct = DirectGateway.create("direct");) {
+
+            runner.addOutgoingShuttle(direct.getIncomingShuttle());
+            direct.addOutgoingShuttle(runner.getIncomingShuttle());
+
+            runner.addActor("actor0", createCounterActor(), new Object());
+            assertEquals("ready", direct.readMessagePayloadOnly());
+            runner.addActor("actor1", createCounterActor(), new Object());
+            assertEquals("ready", direct.readMessagePayloadOnly());
+
+            // Only one actor fits in memory at a time, so every message here forces the other actor out and this one back in
+            for (int i = 0; i < 3; i++) {
+                direct.writeMessage("runner:actor0", "a");
+                assertEquals("echo " + i + ":a", direct.readMessagePayloadOnly());
+                direct.writeMessage("runner:actor1", "b");
+                assertEquals("echo " + i + ":b", direct.readMessagePayloadOnly());
+            }
+
+            assertTrue(checkpointer.saveCount.get() >= 6);
+            assertTrue(checkpointer.restoreCount.get() >= 6);
+        }
+    }
+
+    @Test(timeout = 4000L)
+    public void mustRestorePassivatedActorInWorkStealingRunner() throws Exception {
+        try (CountingCheckpointer checkpointer = new CountingCheckpointer(
+                FileSystemCheckpointer.create(new ObjectStreamSerializer(), tempPath));) {
+            try (ActorRunner runner = ActorRunner.create("runner", 1, checkpointer, LockingBus::new, 64,
+                            PassivationPolicy.idle(Duration.ofMillis(100L)));
+                    DirectGateway direct = DirectGateway.create("direct");) {
+
+                runner.addOutgoingShuttle(direct.getIncomingShuttle());
+                direct.addOutgoingShuttle(runner.getIncomingShuttle());
+
+                runner.addActor("actor0", createCounterActor(), new Object());
+                assertEquals("ready", direct.readMessagePayloadOnly());
+
+                // Wait for the actor to go idle and get passivated -- passivated checkpoints have no restore logic
+                while (checkpointer.saveCount.get() == 0) {
+                    Thread.sleep(10L);
+                }
+            }
+
+            try (ActorRunner runner = ActorRunner.createWorkStealing("runner", 1, checkpointer);
+                    DirectGateway direct = DirectGateway.create("direct");) {
+
+                runner.addOutgoingShuttle(direct.getIncomingShuttle());
+                direct.addOutgoingShuttle(runner.getIncomingShuttle());
+
+                direct.writeMessage("runner:actor0", "hello");
+                assertEquals("echo 0:hello", direct.readMessagePayloadOnly());
+            }
+        }
+    }
+
+    private static Coroutine createCounterActor() {
+        return (Serializable & Coroutine) cnt -> {
+            Context ctx = (Context) cnt.getContext();
+            ctx.allow();
+            ctx.out("direct", "ready");
+
+            int counter = 0;
+            while (true) {
+                cnt.suspend();
+
+                String msg = ctx.in();
+                ctx.out("direct", "echo " + counter + ":" + msg);
+                counter++;
+            }
+        };
+    }
+
+    private static final class CountingCheckpointer implements Checkpointer {
+        private final Checkpointer delegate;
+        private final AtomicInteger saveCount = new AtomicInteger();
+        private final AtomicInteger restoreCount = new AtomicInteger();
+
+        CountingCheckpointer(Checkpointer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean save(SourceContext ctx) {
+            boolean saved = delegate.save(ctx);
+            if (saved) {
+                saveCount.incrementAndGet();
+            }
+            return saved;
+        }
+
+        @Override
+        public SourceContext restore(Address address) {
+            SourceContext ctx = delegate.restore(address);
+            if (ctx != null) {
+                restoreCount.incrementAndGet();
+            }
+            return ctx;
+        }
+
+        @Override
+        public void delete(Address address) {
+            delegate.delete(address);
+        }
+
+        @Override
+        public void close() throws Exception {
+            delegate.close();
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.offbynull.actors.core.actor;
 
+import com.offbynull.actors.core.checkpoint.NullCheckpointer;
 import com.offbynull.actors.core.context.Context;
+import com.offbynull.actors.core.shuttles.simple.BoundedBus;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
+import com.offbynull.actors.core.shuttles.simple.OverflowPolicy;
 import com.offbynull.coroutines.user.Continuation;
 import com.offbynull.actors.core.shuttles.test.CaptureShuttle;
 import com.offbynull.actors.core.shuttles.test.NullShuttle;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -203,4 +208,126 @@ public class ActorRunnerTest {
         
         assertEquals("1", captureShuttle.drainMessages().get(0).getMessage());
     }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustRefuseBlockingBus() throws Exception {
+        ActorRunner.create("blocking", 1, new NullCheckpointer(), () -> new BoundedBus(16, OverflowPolicy.BLOCK), 1);
+    }
+
+    @Test(timeout = 2000L)
+    public void mustGiveOtherActorsATurnWhileOneActorIsFlooded() throws Exception {
+        try (ActorRunner runner = ActorRunner.create("fair", 1, new NullCheckpointer(), LockingBus::new, 1)) {
+            AtomicInteger hotCount = new AtomicInteger();
+            AtomicInteger hotCountWhenQuietRan = new AtomicInteger(-1);
+            CountDownLatch readyLatch = new CountDownLatch(2);
+            CountDownLatch doneLatch = new CountDownLatch(1);
+            
+            runner.addActor(
+                    "hot",
+                    (Continuation cnt) -> {
+                        Context ctx = (Context) cnt.getContext();
+                        ctx.allow();
+                        readyLatch.countDown();
+                        while (true) {
+                            cnt.suspend();
+                            hotCount.incrementAndGet();
+                        }
+                    },
+                    new Object());
+            runner.addActor(
+                    "quiet",
+                    (Continuation cnt) -> {
+                        Context ctx = (Context) cnt.getContext();
+                        ctx.allow();
+                        readyLatch.countDown();
+                        
+                        cnt.suspend();
+                        hotCountWhenQuietRan.set(hotCount.get());
+                        doneLatch.countDown();
+                    },
+                    new Object());
+            readyLatch.await();
+            
+            // All of these go out in a single batch, so they land in the runner's thread at the same time
+            runner.addActor(
+                    "sender",
+                    (Continuation cnt) -> {
+                        Context ctx = (Context) cnt.getContext();
+                        for (int i = 0; i < 100; i++) {
+                            ctx.out("fair:hot", i);
+                        }
+                        ctx.out("fair:quiet", "hi");
+                    },
+                    new Object());
+            doneLatch.await();
+            
+            assertTrue(hotCountWhenQuietRan.get() < 100);
+        }
+    }
+
+    @Test(timeout = 2000L)
+    public void mustReportQueueDepthOfBlockedActor() throws Exception {
+        CountDownLatch blockedLatch = new CountDownLatch(1);
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(1);
+        
+        fixture.addActor(
+                "slow",
+                (Continuation cnt) -> {
+                    Context ctx = (Context) cnt.getContext();
+                    ctx.allow();
+                    ctx.out("local:slow", 0);
+                    ctx.out("local:slow", 1);
+                    ctx.out("local:slow", 2);
+                    
+                    cnt.suspend();
+                    blockedLatch.countDown();
+                    releaseLatch.await();
+                    doneLatch.countDown();
+                },
+                new Object());
+        
+        blockedLatch.await();
+        assertEquals(2, (int) fixture.getQueueDepths().get("slow"));
+        releaseLatch.countDown();
+        
+        // Wait for the actor to stop blocking before tearing down -- teardown interrupts the thread
+        doneLatch.await();
+    }
+
+    @Test(timeout = 2000L)
+    public void mustPassMessagesAroundActorsSpreadAcrossThreadsOfSameRunner() throws Exception {
+        int actorCount = 16;
+        int laps = 10;
+        
+        try (ActorRunner runner = ActorRunner.create("ring", 4)) {
+            CountDownLatch readyLatch = new CountDownLatch(actorCount);
+            CountDownLatch doneLatch = new CountDownLatch(1);
+            for (int i = 0; i < actorCount; i++) {
+                String next = "ring:actor" + ((i + 1) % actorCount);
+                runner.addActor(
+                        "actor" + i,
+                        (Continuation cnt) -> {
+                            Context ctx = (Context) cnt.getContext();
+                            ctx.allow();
+                            readyLatch.countDown();
+                            
+                            while (true) {
+                                cnt.suspend();
+                                int hops = (Integer) ctx.in();
+                                if (hops == actorCount * laps) {
+                                    doneLatch.countDown();
+                                } else {
+                                    ctx.out(next, hops + 1);
+                                }
+                            }
+                        },
+                        new Object());
+            }
+            readyLatch.await();
+            
+            runner.addActor("starter", (Continuation cnt) -> ((Context) cnt.getContext()).out("ring:actor0", 0), new Object());
+            doneLatch.await();
+        }
+    }
 }
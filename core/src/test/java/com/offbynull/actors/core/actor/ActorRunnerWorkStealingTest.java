@@ -0,0 +1,119 @@
+package com.offbynull.actors.core.actor;
+
+import com.offbynull.actors.core.context.Context;
+import com.offbynull.coroutines.user.Continuation;
+import com.offbynull.actors.core.shuttles.test.NullShuttle;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActorRunnerWorkStealingTest {
+
+    private ActorRunner fixture;
+
+    @Before
+    public void setUp() {
+        fixture = ActorRunner.createWorkStealing("local", 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Test(timeout = 2000L)
+    public void mustCommunicateBetweenActors() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        fixture.addActor(
+                "echoer",
+                (Continuation cnt) -> {
+                    Context ctx = (Context) cnt.getContext();
+                    ctx.allow();
+                    
+                    cnt.suspend();
+                    
+                    ctx.out("local:sender", ctx.in());
+                },
+                new Object());
+        fixture.addActor(
+                "sender",
+                (Continuation cnt) -> {
+                    Context ctx = (Context) cnt.getContext();
+                    ctx.allow();
+                    ctx.out("local:echoer", "hi");
+                    
+                    cnt.suspend();
+                    
+                    assertEquals(ctx.in(), "hi");
+                    latch.countDown();
+                },
+                new Object());
+        
+        latch.await();
+    }
+
+    @Test(timeout = 5000L)
+    public void mustKeepPerActorOrderingWhenOneActorIsFlooded() throws Exception {
+        int floodCount = 10000;
+        int quietCount = 16;
+        
+        CountDownLatch readyLatch = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1 + quietCount);
+        fixture.addActor(
+                "hot",
+                (Continuation cnt) -> {
+                    Context ctx = (Context) cnt.getContext();
+                    ctx.allow();
+                    readyLatch.countDown();
+                    
+                    for (int i = 0; i < floodCount; i++) {
+                        cnt.suspend();
+                        assertEquals(i, (int) (Integer) ctx.in());
+                    }
+                    latch.countDown();
+                },
+                new Object());
+        readyLatch.await();
+        
+        fixture.addActor(
+                "flooder",
+                (Continuation cnt) -> {
+                    Context ctx = (Context) cnt.getContext();
+                    for (int i = 0; i < floodCount; i++) {
+                        ctx.out("local:hot", i);
+                    }
+                },
+                new Object());
+        for (int i = 0; i < quietCount; i++) {
+            fixture.addActor(
+                    "quiet" + i,
+                    (Continuation cnt) -> {
+                        latch.countDown();
+                    },
+                    new Object());
+        }
+        
+        latch.await();
+    }
+
+    @Test(timeout = 2000L)
+    public void mustFailWhenAddingActorWithSameName() throws Exception {
+        fixture.addActor("actor", cnt -> { /* do nothing */ });
+        fixture.addActor("actor", cnt -> { /* do nothing */ });
+        fixture.join();
+    }
+    
+    @Test(timeout = 2000L)
+    public void mustFailWhenRemoveActorThatDoesntExist() throws Exception {
+        fixture.removeActor("actor");
+        fixture.join();
+    }
+
+    @Test(timeout = 2000L)
+    public void mustFailWhenAddingOutgoingShuttleWithSameName() throws Exception {
+        fixture.addOutgoingShuttle(new NullShuttle("local"));
+        fixture.join();
+    }
+}
@@ -0,0 +1,145 @@
+package com.offbynull.actors.core.actor;
+
+import com.offbynull.actors.core.checkpoint.FileSystemCheckpointer;
+import com.offbynull.actors.core.context.Context;
+import com.offbynull.actors.core.context.ObjectStreamSerializer;
+import com.offbynull.actors.core.gateways.direct.DirectGateway;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
+import com.offbynull.coroutines.user.Coroutine;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActorScheduleTest {
+
+    public Path tempPath;
+
+    @Before
+    public void before() throws Exception {
+        tempPath = Files.createTempDirectory(ActorScheduleTest.class.getSimpleName());
+    }
+
+    @After
+    public void after() throws Exception {
+        FileUtils.deleteDirectory(tempPath.toFile());
+    }
+
+    @Test(timeout = 4000L)
+    public void mustSendScheduledMessagesBackInDeadlineOrder() throws Exception {
+        try (ActorRunner runner = ActorRunner.create("runner", 1);
+                DirectGateway direct = DirectGateway.create("direct");) {
+
+            runner.addOutgoingShuttle(direct.getIncomingShuttle());
+            direct.addOutgoingShuttle(runner.getIncomingShuttle());
+
+            runner.addActor("actor0", createScheduleActor(), new Object());
+
+            assertEquals("fast", direct.readMessagePayloadOnly());
+            assertEquals("slow", direct.readMessagePayloadOnly());
+        }
+    }
+
+    @Test(timeout = 4000L)
+    public void mustRestorePassivatedActorWhenScheduledMessageComesDue() throws Exception {
+        try (ActorRunner runner = ActorRunner.create("runner", 1, FileSystemCheckpointer.create(new ObjectStreamSerializer(), tempPath),
+                        LockingBus::new, 64, PassivationPolicy.idle(Duration.ofMillis(50L)));
+                DirectGateway direct = DirectGateway.create("direct");) {
+
+            runner.addOutgoingShuttle(direct.getIncomingShuttle());
+            direct.addOutgoingShuttle(runner.getIncomingShuttle());
+
+            // The actor goes idle and gets passivated well before its timers come due
+            runner.addActor("actor0", createScheduleActor(), new Object());
+
+            assertEquals("fast", direct.readMessagePayloadOnly());
+            assertEquals("slow", direct.readMessagePayloadOnly());
+        }
+    }
+
+    @Test(timeout = 4000L)
+    public void mustNotDeliverTimersOfRemovedActorToActorReAddedWithSameId() throws Exception {
+        try (ActorRunner runner = ActorRunner.create("runner", 1)) {
+            runner.addActor("actor0", createScheduleActor(), new Object());
+            runner.removeActor("actor0");
+            assertOnlyReAddedActorTimersDelivered(runner);
+        }
+    }
+
+    @Test(timeout = 4000L)
+    public void mustNotDeliverTimersOfShutDownActorToActorReAddedWithSameId() throws Exception {
+        try (ActorRunner runner = ActorRunner.create("runner", 1)) {
+            runner.addActor("actor0", createScheduleAndShutdownActor(), new Object());
+            assertOnlyReAddedActorTimersDelivered(runner);
+        }
+    }
+
+    @Test(timeout = 4000L)
+    public void mustNotDeliverTimersOfRemovedActorToActorReAddedWithSameIdInWorkStealingRunner() throws Exception {
+        try (ActorRunner runner = ActorRunner.createWorkStealing("runner", 1)) {
+            runner.addActor("actor0", createScheduleActor(), new Object());
+            runner.removeActor("actor0");
+            assertOnlyReAddedActorTimersDelivered(runner);
+        }
+    }
+
+    @Test(timeout = 4000L)
+    public void mustNotDeliverTimersOfShutDownActorToActorReAddedWithSameIdInWorkStealingRunner() throws Exception {
+        try (ActorRunner runner = ActorRunner.createWorkStealing("runner", 1)) {
+            runner.addActor("actor0", createScheduleAndShutdownActor(), new Object());
+            assertOnlyReAddedActorTimersDelivered(runner);
+        }
+    }
+
+    private static void assertOnlyReAddedActorTimersDelivered(ActorRunner runner) throws Exception {
+        try (DirectGateway direct = DirectGateway.create("direct")) {
+            runner.addOutgoingShuttle(direct.getIncomingShuttle());
+            direct.addOutgoingShuttle(runner.getIncomingShuttle());
+
+            // The old actor's timers come due well before the new actor's -- they'd come out first if they were delivered
+            runner.addActor("actor0", (Serializable & Coroutine) cnt -> {
+                Context ctx = (Context) cnt.getContext();
+                ctx.allow();
+
+                ctx.schedule(750L, "fresh");
+
+                while (true) {
+                    cnt.suspend();
+                    ctx.out("direct", ctx.in());
+                }
+            }, new Object());
+
+            assertEquals("fresh", direct.readMessagePayloadOnly());
+        }
+    }
+
+    private static Coroutine createScheduleAndShutdownActor() {
+        return (Serializable & Coroutine) cnt -> {
+            Context ctx = (Context) cnt.getContext();
+            ctx.allow();
+
+            ctx.schedule(500L, "slow");
+            ctx.schedule(250L, "fast");
+        };
+    }
+
+    private static Coroutine createScheduleActor() {
+        return (Serializable & Coroutine) cnt -> {
+            Context ctx = (Context) cnt.getContext();
+            ctx.allow();
+
+            ctx.schedule(500L, "slow");
+            ctx.schedule(250L, "fast");
+
+            while (true) {
+                cnt.suspend();
+                ctx.out("direct", ctx.in());
+            }
+        };
+    }
+}
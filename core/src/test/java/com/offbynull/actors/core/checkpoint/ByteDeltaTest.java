@@ -0,0 +1,77 @@
+package com.offbynull.actors.core.checkpoint;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ByteDeltaTest {
+
+    @Test
+    public void mustReconstructRandomEdits() {
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            byte[] base = new byte[random.nextInt(2000)];
+            random.nextBytes(base);
+
+            byte[] data = base;
+            for (int j = random.nextInt(4); j > 0; j--) {
+                data = edit(random, data);
+            }
+
+            byte[] diff = ByteDelta.diff(base, data);
+            assertArrayEquals(data, ByteDelta.apply(base, diff, 0, data.length));
+        }
+    }
+
+    @Test
+    public void mustProduceSmallDiffForScatteredChanges() {
+        Random random = new Random(0);
+        byte[] base = new byte[100000];
+        random.nextBytes(base);
+        byte[] data = base.clone();
+        data[500]++;
+        data[50000]++;
+        data[99000]++;
+
+        byte[] diff = ByteDelta.diff(base, data);
+        assertTrue(diff.length < 64);
+        assertArrayEquals(data, ByteDelta.apply(base, diff, 0, data.length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailOnWrongLength() {
+        byte[] base = new byte[100];
+        byte[] diff = ByteDelta.diff(base, base);
+        ByteDelta.apply(base, diff, 0, 99);
+    }
+
+    private static byte[] edit(Random random, byte[] data) {
+        int pos = random.nextInt(data.length + 1);
+        int len = random.nextInt(50);
+        switch (random.nextInt(3)) {
+            case 0: { // overwrite
+                byte[] ret = data.clone();
+                for (int i = pos; i < Math.min(pos + len, ret.length); i++) {
+                    ret[i] = (byte) random.nextInt();
+                }
+                return ret;
+            }
+            case 1: { // insert
+                byte[] inserted = new byte[len];
+                random.nextBytes(inserted);
+                byte[] ret = new byte[data.length + len];
+                System.arraycopy(data, 0, ret, 0, pos);
+                System.arraycopy(inserted, 0, ret, pos, len);
+                System.arraycopy(data, pos, ret, pos + len, data.length - pos);
+                return ret;
+            }
+            default: { // remove
+                int end = Math.min(pos + len, data.length);
+                byte[] ret = new byte[data.length - (end - pos)];
+                System.arraycopy(data, 0, ret, 0, pos);
+                System.arraycopy(data, end, ret, pos, data.length - end);
+                return ret;
+            }
+        }
+    }
+}
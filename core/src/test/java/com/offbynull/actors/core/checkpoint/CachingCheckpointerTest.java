@@ -0,0 +1,141 @@
+package com.offbynull.actors.core.checkpoint;
+
+import com.offbynull.actors.core.context.ObjectStreamSerializer;
+import com.offbynull.actors.core.context.Serializer;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.shuttle.Address;
+import com.offbynull.coroutines.user.Coroutine;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.Before;
+
+
+public class CachingCheckpointerTest {
+    
+    public CachingCheckpointer fixture;
+    public Path path;
+    
+    @Before
+    public void before() throws Exception {
+        path = Files.createTempDirectory("cc_test");
+        fixture = CachingCheckpointer.create(
+                LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path),
+                new ObjectStreamSerializer(),
+                1024L * 1024L);
+    }
+    
+    @After
+    public void after() throws Exception {
+        fixture.close();
+        FileUtils.deleteDirectory(path.toFile());
+    }
+
+    @Test
+    public void mustRestoreFromCache() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        assertTrue(fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self)));
+        
+        assertEquals(self, fixture.restore(self).self());
+        assertEquals(1L, fixture.getHitCount());
+        assertEquals(0L, fixture.getMissCount());
+        
+        // Writer drops the entry once the wrapped checkpointer has it marked as restored -- wait for that so the next restore is a miss
+        long start = System.currentTimeMillis();
+        while (fixture.getCachedBytes() > 0L) {
+            assertTrue(System.currentTimeMillis() - start < 10000L);
+            Thread.sleep(10L);
+        }
+        
+        assertNull(fixture.restore(self));
+        assertEquals(1L, fixture.getHitCount());
+        assertEquals(1L, fixture.getMissCount());
+    }
+
+    @Test
+    public void mustNotSerializeTwiceOrLoadFromWrappedCheckpointerWhenWritingBehind() throws Exception {
+        fixture.close();
+        CountingSerializer serializer = new CountingSerializer();
+        fixture = CachingCheckpointer.create(FileSystemCheckpointer.create(serializer, path), serializer, 1024L * 1024L);
+        
+        Address self = Address.fromString("test1:test2");
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self));
+        assertEquals(self, fixture.restore(self).self());
+        fixture.close(); // flushes writes
+        
+        assertEquals(1, serializer.serializeCount.get());   // serialized bytes handed to wrapped checkpointer as-is
+        assertEquals(1, serializer.unserializeCount.get()); // restore marked in wrapped checkpointer without loading it back
+        
+        fixture = CachingCheckpointer.create(FileSystemCheckpointer.create(serializer, path, false), serializer, 1024L * 1024L);
+        assertNull(fixture.restore(self));
+    }
+
+    @Test
+    public void mustWriteBehindToWrappedCheckpointer() throws Exception {
+        Address saved = Address.fromString("test1:saved");
+        Address running = Address.fromString("test1:running");
+        Address deleted = Address.fromString("test1:deleted");
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), saved));
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), running));
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), deleted));
+        assertNotNull(fixture.restore(running));
+        fixture.delete(deleted);
+        fixture.close();
+        
+        fixture = CachingCheckpointer.create(
+                LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path, false, LogStructuredCheckpointer.DEFAULT_SEGMENT_SIZE),
+                new ObjectStreamSerializer(),
+                1024L * 1024L);
+        assertEquals(saved, fixture.restore(saved).self());
+        assertNull(fixture.restore(running));
+        assertNull(fixture.restore(deleted));
+        assertEquals(3L, fixture.getMissCount());
+    }
+
+    @Test
+    public void mustEvictToStayWithinBudget() throws Exception {
+        fixture.close();
+        fixture = CachingCheckpointer.create(
+                LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path),
+                new ObjectStreamSerializer(),
+                0L);
+        
+        Address self = Address.fromString("test1:test2");
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self));
+        
+        // Entry only becomes evictable once it's been written behind -- wait for that
+        long start = System.currentTimeMillis();
+        while (fixture.getCachedBytes() > 0L) {
+            assertTrue(System.currentTimeMillis() - start < 10000L);
+            Thread.sleep(10L);
+        }
+        
+        assertTrue(fixture.getEvictionCount() > 0L);
+        assertEquals(self, fixture.restore(self).self());
+        assertEquals(1L, fixture.getMissCount());
+    }
+
+    private static final class CountingSerializer implements Serializer {
+        private final ObjectStreamSerializer backing = new ObjectStreamSerializer();
+        private final AtomicInteger serializeCount = new AtomicInteger();
+        private final AtomicInteger unserializeCount = new AtomicInteger();
+
+        @Override
+        public byte[] serialize(SourceContext ctx) {
+            serializeCount.incrementAndGet();
+            return backing.serialize(ctx);
+        }
+
+        @Override
+        public SourceContext unserialize(byte[] data) {
+            unserializeCount.incrementAndGet();
+            return backing.unserialize(data);
+        }
+    }
+}
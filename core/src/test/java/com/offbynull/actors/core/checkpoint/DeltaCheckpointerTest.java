@@ -0,0 +1,155 @@
+package com.offbynull.actors.core.checkpoint;
+
+import com.offbynull.actors.core.context.ObjectStreamSerializer;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.shuttle.Address;
+import com.offbynull.coroutines.user.Coroutine;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.Before;
+
+
+public class DeltaCheckpointerTest {
+    
+    public DeltaCheckpointer fixture;
+    public Path path;
+    
+    @Before
+    public void before() throws Exception {
+        path = Files.createTempDirectory("dc_test");
+        fixture = DeltaCheckpointer.create(new ObjectStreamSerializer(), path);
+    }
+    
+    @After
+    public void after() throws Exception {
+        fixture.close();
+        FileUtils.deleteDirectory(path.toFile());
+    }
+
+    @Test
+    public void mustSaveAndRestoreContext() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        SourceContext ctxIn = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        boolean checkpointed = fixture.save(ctxIn);
+        assertTrue(checkpointed);
+        
+        SourceContext ctxOut = fixture.restore(self);
+        assertEquals(ctxIn.self(), ctxOut.self());
+        assertNull(fixture.restore(self));
+    }
+
+    @Test
+    public void mustNotRestoreDeletedContext() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self));
+        fixture.delete(self);
+        
+        assertNull(fixture.restore(self));
+    }
+
+    @Test
+    public void mustWriteSmallDiffsForSmallChanges() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        int[] state = new int[10000];
+        for (int i = 0; i < 20; i++) {
+            state[i * 100] = i;
+            SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+            ctx.out(self, Address.fromString("dst"), state.clone());
+            ctx.out(self, Address.fromString("dst"), i);
+            assertTrue(fixture.save(ctx));
+            
+            if (i > 0) {
+                assertTrue(Files.size(path.resolve("saved").resolve("test1%3Atest2")) < 1000L);
+            }
+
+            if (i % 2 == 0) {
+                SourceContext restored = fixture.restore(self);
+                assertEquals(i, restored.viewOuts().get(1).getMessage());
+                assertArrayEquals(state, (int[]) restored.viewOuts().get(0).getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void mustRebaseOnceDiffGetsTooLarge() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        Random random = new Random(0);
+        byte[] state = new byte[10000];
+        random.nextBytes(state);
+
+        SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        ctx.out(self, Address.fromString("dst"), state.clone());
+        assertTrue(fixture.save(ctx));
+        byte[] originalBase = Files.readAllBytes(path.resolve("base").resolve("test1%3Atest2"));
+
+        random.nextBytes(state);
+        ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        ctx.out(self, Address.fromString("dst"), state.clone());
+        assertTrue(fixture.save(ctx));
+        byte[] newBase = Files.readAllBytes(path.resolve("base").resolve("test1%3Atest2"));
+        
+        assertFalse(Arrays.equals(originalBase, newBase));
+        assertArrayEquals(state, (byte[]) fixture.restore(self).viewOuts().get(0).getMessage());
+    }
+
+    @Test
+    public void mustRecoverAfterReopen() throws Exception {
+        Address saved = Address.fromString("test1:saved");
+        Address running = Address.fromString("test1:running");
+        for (int i = 0; i < 2; i++) {
+            SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), saved);
+            ctx.out(saved, Address.fromString("dst"), i);
+            fixture.save(ctx);
+        }
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), running));
+        assertNotNull(fixture.restore(running));
+        fixture.close();
+        
+        fixture = DeltaCheckpointer.create(new ObjectStreamSerializer(), path, false);
+        assertNull(fixture.restore(running));
+        fixture.close();
+
+        fixture = DeltaCheckpointer.create(new ObjectStreamSerializer(), path, true);
+        assertEquals(1, fixture.restore(saved).viewOuts().get(0).getMessage());
+        assertEquals(running, fixture.restore(running).self());
+    }
+
+    @Test
+    public void mustFailRestoreWhenBaseIsMissing() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        for (int i = 0; i < 2; i++) {
+            SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+            ctx.out(self, Address.fromString("dst"), i);
+            fixture.save(ctx);
+        }
+        Files.delete(path.resolve("base").resolve("test1%3Atest2"));
+        
+        assertNull(fixture.restore(self));
+    }
+
+    @Test
+    public void mustSaveSerializedContextAndMarkRestoredWithoutLoading() throws Exception {
+        fixture.close();
+        ObjectStreamSerializer serializer = new ObjectStreamSerializer();
+        fixture = DeltaCheckpointer.create(serializer, path);
+
+        Address self = Address.fromString("test1:test2");
+        SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+
+        assertTrue(fixture.markRestored(self));
+        assertFalse(fixture.markRestored(self));
+        assertNull(fixture.restore(self));
+
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+        assertEquals(self, fixture.restore(self).self());
+    }
+}
@@ -43,4 +43,22 @@ public class FileSystemCheckpointerTest {
         assertEquals(ctxIn.self(), ctxOut.self());
     }
     
+
+    @Test
+    public void mustSaveSerializedContextAndMarkRestoredWithoutLoading() throws Exception {
+        fixture.close();
+        ObjectStreamSerializer serializer = new ObjectStreamSerializer();
+        fixture = FileSystemCheckpointer.create(serializer, path);
+
+        Address self = Address.fromString("test1:test2");
+        SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+
+        assertTrue(fixture.markRestored(self));
+        assertFalse(fixture.markRestored(self));
+        assertNull(fixture.restore(self));
+
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+        assertEquals(self, fixture.restore(self).self());
+    }
 }
@@ -0,0 +1,218 @@
+package com.offbynull.actors.core.checkpoint;
+
+import com.offbynull.actors.core.context.ObjectStreamSerializer;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.shuttle.Address;
+import com.offbynull.coroutines.user.Coroutine;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.Before;
+
+
+public class LogStructuredCheckpointerTest {
+    
+    public LogStructuredCheckpointer fixture;
+    public Path path;
+    
+    @Before
+    public void before() throws Exception {
+        path = Files.createTempDirectory("lsc_test");
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path);
+    }
+    
+    @After
+    public void after() throws Exception {
+        fixture.close();
+        FileUtils.deleteDirectory(path.toFile());
+    }
+
+    @Test
+    public void mustSaveAndRestoreContext() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        SourceContext ctxIn = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        boolean checkpointed = fixture.save(ctxIn);
+        assertTrue(checkpointed);
+        
+        SourceContext ctxOut = fixture.restore(self);
+        assertEquals(ctxIn.self(), ctxOut.self());
+        assertNull(fixture.restore(self));
+    }
+
+    @Test
+    public void mustNotRestoreDeletedContext() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self));
+        fixture.delete(self);
+        
+        assertNull(fixture.restore(self));
+    }
+
+    @Test
+    public void mustRecoverAfterReopen() throws Exception {
+        Address saved = Address.fromString("test1:saved");
+        Address running = Address.fromString("test1:running");
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), saved));
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), running));
+        assertNotNull(fixture.restore(running));
+        fixture.close();
+        
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path, false, LogStructuredCheckpointer.DEFAULT_SEGMENT_SIZE);
+        assertNull(fixture.restore(running));
+        fixture.close();
+
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path, true, LogStructuredCheckpointer.DEFAULT_SEGMENT_SIZE);
+        assertEquals(saved, fixture.restore(saved).self());
+        assertEquals(running, fixture.restore(running).self());
+    }
+
+    @Test
+    public void mustTruncateTornRecordOnReopen() throws Exception {
+        Address first = Address.fromString("test1:first");
+        Address second = Address.fromString("test1:second");
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), first));
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), second));
+        fixture.close();
+
+        Path segment = path.resolve("0.seg");
+        byte[] data = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(data, data.length - 3));
+
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path);
+        assertEquals(first, fixture.restore(first).self());
+        assertNull(fixture.restore(second));
+        
+        assertTrue(fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), second)));
+        assertEquals(second, fixture.restore(second).self());
+    }
+
+    @Test
+    public void mustKeepLatestStateAcrossCompaction() throws Exception {
+        fixture.close();
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path, true, 4096L);
+
+        Address self = Address.fromString("test1:test2");
+        for (int i = 0; i < 500; i++) {
+            SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+            ctx.out(self, Address.fromString("dst"), i);
+            assertTrue(fixture.save(ctx));
+        }
+        
+        assertEquals(499, fixture.restore(self).viewOuts().get(0).getMessage());
+    }
+
+    @Test
+    public void mustRestorePendingAsyncSave() throws Exception {
+        fixture.close();
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path, true, LogStructuredCheckpointer.DEFAULT_SEGMENT_SIZE,
+                2);
+
+        Address self = Address.fromString("test1:test2");
+        for (int i = 0; i < 100; i++) {
+            SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+            ctx.out(self, Address.fromString("dst"), i);
+            assertTrue(fixture.save(ctx));
+            
+            SourceContext restored = fixture.restore(self);
+            assertEquals(i, restored.viewOuts().get(0).getMessage());
+            assertNull(fixture.restore(self));
+        }
+    }
+
+    @Test
+    public void mustWriteOutAsyncSavesOnClose() throws Exception {
+        fixture.close();
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path, true, LogStructuredCheckpointer.DEFAULT_SEGMENT_SIZE,
+                2);
+
+        for (int i = 0; i < 100; i++) {
+            Address self = Address.fromString("test1:" + i);
+            assertTrue(fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self)));
+        }
+        fixture.delete(Address.fromString("test1:0"));
+        fixture.close();
+        
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path);
+        assertNull(fixture.restore(Address.fromString("test1:0")));
+        for (int i = 1; i < 100; i++) {
+            Address self = Address.fromString("test1:" + i);
+            assertEquals(self, fixture.restore(self).self());
+        }
+    }
+
+    @Test
+    public void mustFailSaveThatDoesntFitInRecord() throws Exception {
+        Address self = Address.of(StringUtils.repeat('a', 70000)); // longer than a record can hold
+        assertFalse(fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self)));
+        assertNull(fixture.restore(self));
+
+        Address other = Address.fromString("test1:test2");
+        assertTrue(fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), other)));
+        assertEquals(other, fixture.restore(other).self());
+    }
+
+    @Test
+    public void mustKeepWritingAsyncSavesAfterOneDoesntFitInRecord() throws Exception {
+        fixture.close();
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path, true, LogStructuredCheckpointer.DEFAULT_SEGMENT_SIZE,
+                2);
+
+        Address self = Address.of(StringUtils.repeat('a', 70000)); // longer than a record can hold
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self));
+        for (int i = 0; i < 10; i++) {
+            Address other = Address.fromString("test1:" + i);
+            assertTrue(fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), other)));
+        }
+        fixture.close();
+
+        fixture = LogStructuredCheckpointer.create(new ObjectStreamSerializer(), path);
+        assertNull(fixture.restore(self));
+        for (int i = 0; i < 10; i++) {
+            Address other = Address.fromString("test1:" + i);
+            assertEquals(other, fixture.restore(other).self());
+        }
+    }
+
+    @Test
+    public void mustSaveSerializedContextAndMarkRestoredWithoutLoading() throws Exception {
+        fixture.close();
+        ObjectStreamSerializer serializer = new ObjectStreamSerializer();
+        fixture = LogStructuredCheckpointer.create(serializer, path);
+
+        Address self = Address.fromString("test1:test2");
+        SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+
+        assertTrue(fixture.markRestored(self));
+        assertFalse(fixture.markRestored(self));
+        assertNull(fixture.restore(self));
+
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+        assertEquals(self, fixture.restore(self).self());
+    }
+
+    @Test
+    public void mustSaveSerializedContextAndMarkRestoredWithoutLoadingWhenAsync() throws Exception {
+        fixture.close();
+        ObjectStreamSerializer serializer = new ObjectStreamSerializer();
+        fixture = LogStructuredCheckpointer.create(serializer, path, true, LogStructuredCheckpointer.DEFAULT_SEGMENT_SIZE, 2);
+
+        Address self = Address.fromString("test1:test2");
+        SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+
+        assertTrue(fixture.markRestored(self));
+        assertFalse(fixture.markRestored(self));
+        assertNull(fixture.restore(self));
+
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+        assertEquals(self, fixture.restore(self).self());
+    }
+}
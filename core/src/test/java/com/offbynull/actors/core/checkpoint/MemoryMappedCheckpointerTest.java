@@ -0,0 +1,172 @@
+package com.offbynull.actors.core.checkpoint;
+
+import com.offbynull.actors.core.context.ObjectStreamSerializer;
+import com.offbynull.actors.core.context.SourceContext;
+import com.offbynull.actors.core.shuttle.Address;
+import com.offbynull.coroutines.user.Coroutine;
+import com.offbynull.coroutines.user.CoroutineRunner;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.Before;
+
+
+public class MemoryMappedCheckpointerTest {
+    
+    public MemoryMappedCheckpointer fixture;
+    public Path path;
+    
+    @Before
+    public void before() throws Exception {
+        path = Files.createTempDirectory("mmc_test");
+        fixture = MemoryMappedCheckpointer.create(new ObjectStreamSerializer(), path);
+    }
+    
+    @After
+    public void after() throws Exception {
+        fixture.close();
+        FileUtils.deleteDirectory(path.toFile());
+    }
+
+    @Test
+    public void mustSaveAndRestoreContext() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        SourceContext ctxIn = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        boolean checkpointed = fixture.save(ctxIn);
+        assertTrue(checkpointed);
+        
+        SourceContext ctxOut = fixture.restore(self);
+        assertEquals(ctxIn.self(), ctxOut.self());
+        assertNull(fixture.restore(self));
+    }
+
+    @Test
+    public void mustNotRestoreDeletedContext() throws Exception {
+        Address self = Address.fromString("test1:test2");
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self));
+        fixture.delete(self);
+        
+        assertNull(fixture.restore(self));
+    }
+
+    @Test
+    public void mustRecoverAfterReopen() throws Exception {
+        Address saved = Address.fromString("test1:saved");
+        Address running = Address.fromString("test1:running");
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), saved));
+        fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), running));
+        assertNotNull(fixture.restore(running));
+        fixture.close();
+        
+        fixture = MemoryMappedCheckpointer.create(new ObjectStreamSerializer(), path, false,
+                MemoryMappedCheckpointer.DEFAULT_SEGMENT_SIZE);
+        assertNull(fixture.restore(running));
+        fixture.close();
+
+        fixture = MemoryMappedCheckpointer.create(new ObjectStreamSerializer(), path, true,
+                MemoryMappedCheckpointer.DEFAULT_SEGMENT_SIZE);
+        assertEquals(saved, fixture.restore(saved).self());
+        assertEquals(running, fixture.restore(running).self());
+    }
+
+    @Test
+    public void mustKeepLatestStateAcrossCompaction() throws Exception {
+        fixture.close();
+        fixture = MemoryMappedCheckpointer.create(new ObjectStreamSerializer(), path, true, 4096);
+
+        Address self = Address.fromString("test1:test2");
+        for (int i = 0; i < 500; i++) {
+            SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+            ctx.out(self, Address.fromString("dst"), i);
+            assertTrue(fixture.save(ctx));
+        }
+        
+        assertEquals(499, fixture.restore(self).viewOuts().get(0).getMessage());
+    }
+
+    @Test
+    public void mustKeepManyActorsAcrossReopen() throws Exception {
+        for (int i = 0; i < 5000; i++) {
+            Address self = Address.fromString("test1:" + i);
+            assertTrue(fixture.save(new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self)));
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            fixture.delete(Address.fromString("test1:" + i));
+        }
+        fixture.close();
+
+        fixture = MemoryMappedCheckpointer.create(new ObjectStreamSerializer(), path);
+        for (int i = 0; i < 5000; i++) {
+            Address self = Address.fromString("test1:" + i);
+            SourceContext ctx = fixture.restore(self);
+            if (i % 2 == 0) {
+                assertNull(ctx);
+            } else {
+                assertEquals(self, ctx.self());
+            }
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void mustDeleteEmptySegmentsWhileRestoresAreInFlight() throws Exception {
+        fixture.close();
+        fixture = MemoryMappedCheckpointer.create(new ObjectStreamSerializer(), path, true, 4096);
+
+        // Every save kills the previous record for that actor, so segments keep emptying out and getting unmapped/deleted while the other
+        // thread may be in the middle of reading out of them
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            Address self = Address.fromString("test1:" + t);
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 500; i++) {
+                        SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+                        ctx.out(self, Address.fromString("dst"), i);
+                        assertTrue(fixture.save(ctx));
+                        assertEquals(i, fixture.restore(self).viewOuts().get(0).getMessage());
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(error.get());
+
+        // Only the segments holding the last record of each actor (plus the active segment) should be left on disk
+        try (Stream<Path> files = Files.list(path)) {
+            assertTrue(files.count() <= 3L);
+        }
+    }
+
+    @Test
+    public void mustSaveSerializedContextAndMarkRestoredWithoutLoading() throws Exception {
+        fixture.close();
+        ObjectStreamSerializer serializer = new ObjectStreamSerializer();
+        fixture = MemoryMappedCheckpointer.create(serializer, path);
+
+        Address self = Address.fromString("test1:test2");
+        SourceContext ctx = new SourceContext(new CoroutineRunner((Coroutine & Serializable) cnt -> {}), self);
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+
+        assertTrue(fixture.markRestored(self));
+        assertFalse(fixture.markRestored(self));
+        assertNull(fixture.restore(self));
+
+        assertTrue(fixture.save(ctx, serializer, serializer.serialize(ctx)));
+        assertEquals(self, fixture.restore(self).self());
+    }
+}
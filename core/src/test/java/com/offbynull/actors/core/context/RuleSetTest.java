@@ -2,6 +2,10 @@ package com.offbynull.actors.core.context;
 
 import com.offbynull.actors.core.context.RuleSet.AccessType;
 import com.offbynull.actors.core.shuttle.Address;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -419,4 +423,53 @@ public class RuleSetTest {
                 fixture.evaluate(Address.fromString("addr1:addr2"), String.class)
         );        
     }
+    
+    @Test
+    public void mustReevaluateAfterRulesChange() {
+        fixture.rejectAll();
+        fixture.allow(Address.fromString("addr1"), true);
+        assertEquals(
+                AccessType.ALLOW,
+                fixture.evaluate(Address.fromString("addr1:addr2"), Object.class)
+        );
+        fixture.reject(Address.fromString("addr1:addr2"), false);
+        assertEquals(
+                AccessType.REJECT,
+                fixture.evaluate(Address.fromString("addr1:addr2"), Object.class)
+        );
+        fixture.allowAll();
+        assertEquals(
+                AccessType.ALLOW,
+                fixture.evaluate(Address.fromString("addr1:addr2"), Object.class)
+        );
+    }
+    
+    @Test
+    public void mustEvaluateSameAfterSerialization() throws Exception {
+        fixture.rejectAll();
+        fixture.allow(Address.fromString("addr1"), true);
+        fixture.reject(Address.fromString("addr1:addr2"), false, String.class);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(fixture);
+        }
+        RuleSet copy;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            copy = (RuleSet) ois.readObject();
+        }
+        
+        assertEquals(
+                AccessType.ALLOW,
+                copy.evaluate(Address.fromString("addr1:addr2"), Object.class)
+        );
+        assertEquals(
+                AccessType.REJECT,
+                copy.evaluate(Address.fromString("addr1:addr2"), String.class)
+        );
+        assertEquals(
+                AccessType.REJECT,
+                copy.evaluate(Address.fromString("addr2"), Object.class)
+        );
+    }
 }
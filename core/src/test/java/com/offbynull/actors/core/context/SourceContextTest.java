@@ -1,7 +1,14 @@
 package com.offbynull.actors.core.context;
 
+import com.offbynull.coroutines.user.Continuation;
+import com.offbynull.coroutines.user.Coroutine;
 import com.offbynull.coroutines.user.CoroutineRunner;
 import com.offbynull.actors.core.shuttle.Address;
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -67,5 +74,119 @@ public class SourceContextTest {
         assertEquals(Address.fromString("test3"), outgoingMsgs.get(2).getDestination());
         assertEquals("3", outgoingMsgs.get(2).getMessage());
     }
+
+    @Test
+    public void mustDrainOutgoingMessagesInToExistingBuffer() {
+        List<BatchedOutgoingMessage> buffer = new ArrayList<>();
+        
+        fixture.out("test1", "1");
+        fixture.out("test2", "2");
+        fixture.drainOutgoingMessages(buffer);
+        
+        assertTrue(fixture.viewOuts().isEmpty());
+        assertEquals(2, buffer.size());
+        assertEquals("1", buffer.get(0).getMessage());
+        assertEquals("2", buffer.get(1).getMessage());
+        
+        buffer.clear();
+        fixture.out("test3", "3");
+        fixture.drainOutgoingMessages(buffer);
+        
+        assertTrue(fixture.viewOuts().isEmpty());
+        assertEquals(1, buffer.size());
+        assertEquals("3", buffer.get(0).getMessage());
+    }
+
+    @Test
+    public void mustQueueUpScheduledMessagesFromSelfAndChildren() {
+        fixture.schedule(100L, "1");
+        fixture.child("child", x -> { });
+        fixture.getChildContext("child").schedule(0L, "2");
+        
+        List<BatchedScheduledMessage> buffer = new ArrayList<>();
+        fixture.drainScheduledMessages(buffer);
+        
+        assertTrue(fixture.copyAndClearScheduledMessages().isEmpty());
+        assertEquals(2, buffer.size());
+        
+        assertEquals(Address.fromString("self"), buffer.get(0).getSource());
+        assertEquals(Address.fromString("self"), buffer.get(0).getDestination());
+        assertEquals(100L, buffer.get(0).getDelay());
+        assertEquals("1", buffer.get(0).getMessage());
+
+        assertEquals(Address.fromString("self:child"), buffer.get(1).getSource());
+        assertEquals(Address.fromString("self:child"), buffer.get(1).getDestination());
+        assertEquals(0L, buffer.get(1).getDelay());
+        assertEquals("2", buffer.get(1).getMessage());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailToScheduleMessageWithNegativeDelay() {
+        fixture.schedule(-1L, "1");
+    }
+
+    @Test
+    public void mustRestoreScheduledMessageQueueWhenDeserializingContextWrittenBeforeSchedulingExisted() throws Exception {
+        // Context with a single child ("child") serialized by the version of this class that had no schedules field
+        byte[] data = Base64.getDecoder().decode(
+                "rO0ABXNyAC9jb20ub2ZmYnludWxsLmFjdG9ycy5jb3JlLmNvbnRleHQuU291cmNlQ29udGV4dAAAAAAAAAABAgAPWgAJaW50ZXJj" +
+                "ZXB0TAALYWN0b3JSdW5uZXJ0AC9MY29tL29mZmJ5bnVsbC9jb3JvdXRpbmVzL3VzZXIvQ29yb3V0aW5lUnVubmVyO0wAFmNoZWNr" +
+                "cG9pbnRSZXN0b3JlTG9naWN0AEJMY29tL29mZmJ5bnVsbC9hY3RvcnMvY29yZS9jb250ZXh0L0NvbnRleHQkQ2hlY2twb2ludFJl" +
+                "c3RvcmVMb2dpYztMAAhjaGlsZHJlbnQAD0xqYXZhL3V0aWwvTWFwO0wAC2Rlc3RpbmF0aW9udAArTGNvbS9vZmZieW51bGwvYWN0" +
+                "b3JzL2NvcmUvc2h1dHRsZS9BZGRyZXNzO0wABGZsYWd0ADdMY29tL29mZmJ5bnVsbC9hY3RvcnMvY29yZS9jb250ZXh0L0NvbnRl" +
+                "eHQkU3VzcGVuZEZsYWc7TAACaW50ABJMamF2YS9sYW5nL09iamVjdDtMAAhuZXdSb290c3QAEExqYXZhL3V0aWwvTGlzdDtMAARv" +
+                "dXRzcQB+AAdMAAZwYXJlbnR0ADFMY29tL29mZmJ5bnVsbC9hY3RvcnMvY29yZS9jb250ZXh0L1NvdXJjZUNvbnRleHQ7TAAHcnVs" +
+                "ZVNldHQAK0xjb20vb2ZmYnludWxsL2FjdG9ycy9jb3JlL2NvbnRleHQvUnVsZVNldDtMAARzZWxmcQB+AARMAA1zaG9ydGNpcmN1" +
+                "aXRzcQB+AANMAAZzb3VyY2VxAH4ABEwABHRpbWV0ABNMamF2YS90aW1lL0luc3RhbnQ7eHAAc3IALWNvbS5vZmZieW51bGwuY29y" +
+                "b3V0aW5lcy51c2VyLkNvcm91dGluZVJ1bm5lcgAAAAAAAAADAgACTAAMY29udGludWF0aW9udAAsTGNvbS9vZmZieW51bGwvY29y" +
+                "b3V0aW5lcy91c2VyL0NvbnRpbnVhdGlvbjtMAAljb3JvdXRpbmV0AClMY29tL29mZmJ5bnVsbC9jb3JvdXRpbmVzL3VzZXIvQ29y" +
+                "b3V0aW5lO3hwc3IAKmNvbS5vZmZieW51bGwuY29yb3V0aW5lcy51c2VyLkNvbnRpbnVhdGlvbgAAAAAAAAADAgAGSQAEbW9kZUwA" +
+                "B2NvbnRleHRxAH4ABkwAFGZpcnN0Q3V0cG9pbnRQb2ludGVydAArTGNvbS9vZmZieW51bGwvY29yb3V0aW5lcy91c2VyL01ldGhv" +
+                "ZFN0YXRlO0wADGZpcnN0UG9pbnRlcnEAfgARTAAPbmV4dExvYWRQb2ludGVycQB+ABFMABFuZXh0VW5sb2FkUG9pbnRlcnEAfgAR" +
+                "eHAAAAAAcHBwcHBzcgA9Y29tLm9mZmJ5bnVsbC5hY3RvcnMuY29yZS5jb250ZXh0LlNvdXJjZUNvbnRleHRUZXN0JE5vb3BBY3Rv" +
+                "cgAAAAAAAAABAgAAeHBwc3IAEWphdmEudXRpbC5IYXNoTWFwBQfawcMWYNEDAAJGAApsb2FkRmFjdG9ySQAJdGhyZXNob2xkeHA/" +
+                "QAAAAAAADHcIAAAAEAAAAAF0AAVjaGlsZHNxAH4AAABzcQB+AAxzcQB+ABAAAAAAcQB+ABhwcHBwc3EAfgATcHNxAH4AFT9AAAAA" +
+                "AAAAdwgAAAAQAAAAAHhwfnIANWNvbS5vZmZieW51bGwuYWN0b3JzLmNvcmUuY29udGV4dC5Db250ZXh0JFN1c3BlbmRGbGFnAAAA" +
+                "AAAAAAASAAB4cgAOamF2YS5sYW5nLkVudW0AAAAAAAAAABIAAHhwdAAHUkVMRUFTRXBzcgATamF2YS51dGlsLkFycmF5TGlzdHiB" +
+                "0h2Zx2GdAwABSQAEc2l6ZXhwAAAAAHcEAAAAAHhzcQB+ACEAAAAAdwQAAAAAeHEAfgALc3IAKWNvbS5vZmZieW51bGwuYWN0b3Jz" +
+                "LmNvcmUuY29udGV4dC5SdWxlU2V0AAAAAAAAAAECAAJMABFkZWZhdWx0QWNjZXNzVHlwZXQANkxjb20vb2ZmYnludWxsL2FjdG9y" +
+                "cy9jb3JlL2NvbnRleHQvUnVsZVNldCRBY2Nlc3NUeXBlO0wABXJ1bGVzcQB+AAN4cH5yADRjb20ub2ZmYnludWxsLmFjdG9ycy5j" +
+                "b3JlLmNvbnRleHQuUnVsZVNldCRBY2Nlc3NUeXBlAAAAAAAAAAASAAB4cQB+AB50AAZSRUpFQ1RzcQB+ABU/QAAAAAAADHcIAAAA" +
+                "EAAAAAFzcgA4Y29tLm9mZmJ5bnVsbC5hY3RvcnMuY29yZS5zaHV0dGxlLkFkZHJlc3MkU2VyaWFsaXplZEZvcm0AAAAAAAAAAQIA" +
+                "AVsACGVsZW1lbnRzdAATW0xqYXZhL2xhbmcvU3RyaW5nO3hwdXIAE1tMamF2YS5sYW5nLlN0cmluZzut0lbn6R17RwIAAHhwAAAA" +
+                "AnQABHNlbGZxAH4AF3NyADVjb20ub2ZmYnludWxsLmFjdG9ycy5jb3JlLmNvbnRleHQuUnVsZVNldCRBZGRyZXNzUnVsZQAAAAAA" +
+                "AAABAgADWgAPaW5jbHVkZUNoaWxkcmVuTAAKYWNjZXNzVHlwZXEAfgAlTAAFdHlwZXN0AA9MamF2YS91dGlsL1NldDt4cAB+cQB+" +
+                "ACd0AAVBTExPV3NyACVqYXZhLnV0aWwuQ29sbGVjdGlvbnMkVW5tb2RpZmlhYmxlU2V0gB2S0Y+bgFUCAAB4cgAsamF2YS51dGls" +
+                "LkNvbGxlY3Rpb25zJFVubW9kaWZpYWJsZUNvbGxlY3Rpb24ZQgCAy173HgIAAUwAAWN0ABZMamF2YS91dGlsL0NvbGxlY3Rpb247" +
+                "eHBzcgAXamF2YS51dGlsLkxpbmtlZEhhc2hTZXTYbNdald0qHgIAAHhyABFqYXZhLnV0aWwuSGFzaFNldLpEhZWWuLc0AwAAeHB3" +
+                "DAAAABA/QAAAAAAAAHh4cQB+AC1zcQB+ABU/QAAAAAAAAHcIAAAAEAAAAAB4cHB4cHEAfgAfcHNxAH4AIQAAAAB3BAAAAAB4cQB+" +
+                "ACNwc3EAfgAkcQB+AChzcQB+ABU/QAAAAAAADHcIAAAAEAAAAAFzcQB+ACt1cQB+AC4AAAABcQB+ADBzcQB+ADEAcQB+ADRzcQB+" +
+                "ADZzcQB+ADp3DAAAABA/QAAAAAAAAHh4cQB+AEFzcQB+ABU/QAAAAAAAAHcIAAAAEAAAAAB4cHA=");
+
+        SourceContext ctx;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            ctx = (SourceContext) ois.readObject();
+        }
+
+        ctx.schedule(100L, "1");
+        ctx.getChildContext("child").schedule(0L, "2");
+
+        List<BatchedScheduledMessage> buffer = new ArrayList<>();
+        ctx.drainScheduledMessages(buffer);
+
+        assertTrue(ctx.copyAndClearScheduledMessages().isEmpty());
+        assertEquals(2, buffer.size());
+        assertEquals("1", buffer.get(0).getMessage());
+        assertEquals("2", buffer.get(1).getMessage());
+    }
+
+    // Stand-in actor for the serialized context above -- must keep the same name and serialVersionUID
+    private static final class NoopActor implements Coroutine, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void run(Continuation cnt) throws Exception {
+        }
+    }
     
 }
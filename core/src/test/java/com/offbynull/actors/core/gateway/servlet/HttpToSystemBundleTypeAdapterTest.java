@@ -2,21 +2,19 @@ package com.offbynull.actors.core.gateway.servlet;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.offbynull.actors.core.shuttle.Message;
 import static org.junit.Assert.assertEquals;
 import org.junit.Before;
 import org.junit.Test;
 import static com.offbynull.actors.core.common.DefaultAddresses.DEFAULT_SERVLET;
 
-public class HttpToSystemBundleJsonDeserializerTest {
+public class HttpToSystemBundleTypeAdapterTest {
     
     private Gson fixture;
 
     @Before
     public void before() {
         GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.registerTypeAdapter(Message.class, new MessageJsonDeserializer(DEFAULT_SERVLET));
-        gsonBuilder.registerTypeAdapter(HttpToSystemBundle.class, new HttpToSystemBundleJsonDeserializer(DEFAULT_SERVLET));
+        gsonBuilder.registerTypeAdapterFactory(new BundleTypeAdapterFactory(DEFAULT_SERVLET));
         fixture = gsonBuilder.serializeNulls().create();
     }
     
@@ -59,6 +57,36 @@ public class HttpToSystemBundleJsonDeserializerTest {
         assertEquals(new TestObject(3), actual.getMessages().get(1).getMessage());
     }
     
+    @Test
+    public void mustDeserializeWhenPropertiesAreOutOfOrder() {
+        String json = ""
+                + "{\n"
+                + "    messages: [\n"
+                + "        {\n"
+                + "            content: { myInt: 3 },\n"
+                + "            unknown: [1, 2, 3],\n"
+                + "            type: \"" + TestObject.class.getName() + "\",\n"
+                + "            destination: \"actors:my_actor\",\n"
+                + "            source: \"servlet:custom_id:sub_id\"\n"
+                + "        }\n"
+                + "    ],\n"
+                + "    systemToHttpOffset: 2,\n"
+                + "    httpToSystemOffset: 1,\n"
+                + "    httpAddressId: \"custom_id\"\n"
+                + "}";
+        HttpToSystemBundle actual = fixture.fromJson(json, HttpToSystemBundle.class);
+        
+        assertEquals("custom_id", actual.getHttpAddressId());
+        assertEquals(1L, actual.getHttpToSystemOffset());
+        assertEquals(2L, actual.getSystemToHttpOffset());
+        
+        assertEquals(1, actual.getMessages().size());
+        
+        assertEquals("servlet:custom_id:sub_id", actual.getMessages().get(0).getSourceAddress().toString());
+        assertEquals("actors:my_actor", actual.getMessages().get(0).getDestinationAddress().toString());
+        assertEquals(new TestObject(3), actual.getMessages().get(0).getMessage());
+    }
+    
     @Test
     public void mustDeserializeEmptyMessages() {
         String json = ""
@@ -0,0 +1,219 @@
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.offbynull.actors.core.shuttle.Message;
+import com.offbynull.actors.core.shuttle.Shuttle;
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MessageGatewayServletTest {
+
+    private static final String REQUEST = "{httpAddressId: \"client\", httpToSystemOffset: 0, systemToHttpOffset: 0, messages: []}";
+    private static final String EMPTY_MESSAGES = "\"messages\":[]";
+    private static final String HELLO_CONTENT = "\"content\":\"hello\"";
+
+    private ShardedMessageCache messageCache;
+    private MessageGatewayServlet fixture;
+
+    @Before
+    public void before() {
+        messageCache = new ShardedMessageCache(10000L, 1, () -> 0L, false);
+        fixture = new MessageGatewayServlet("servlet", new ConcurrentHashMap<String, Shuttle>(), messageCache, 10000L);
+    }
+
+    @After
+    public void after() throws Exception {
+        messageCache.close();
+    }
+
+    @Test
+    public void mustParkRequestWhenNothingWaiting() throws Exception {
+        MockRequest request = new MockRequest();
+        fixture.doPost(request.request, request.response);
+
+        verify(request.asyncContext).setTimeout(anyLong());
+        assertEquals(1, request.listeners.size());
+        assertEquals("", request.output.toString());
+        verify(request.asyncContext, never()).complete();
+    }
+
+    @Test
+    public void mustRespondRightAwayWhenMessagesWaiting() throws Exception {
+        messageCache.keepAlive("client");
+        messageCache.systemToHttpAppend("client",
+                new Message("direct", "servlet:client", "acked"), // seq 0, acknowledged by the request
+                new Message("direct", "servlet:client", "hello"));
+
+        MockRequest request = new MockRequest();
+        fixture.doPost(request.request, request.response);
+
+        verify(request.request, never()).startAsync();
+        assertTrue(request.output.toString().contains(HELLO_CONTENT));
+    }
+
+    @Test
+    public void mustRespondToParkedRequestWhenWoken() throws Exception {
+        MockRequest request = new MockRequest();
+        fixture.doPost(request.request, request.response);
+
+        messageCache.systemToHttpAppend("client", new Message("direct", "servlet:client", "hello"));
+        fixture.wake(Collections.singleton("client"));
+        assertEquals("", request.output.toString()); // written on a container thread, not the waking thread
+        request.runStarted();
+
+        assertTrue(request.output.toString().contains(HELLO_CONTENT));
+        verify(request.asyncContext, times(1)).complete();
+    }
+
+    @Test
+    public void mustRespondWithNothingWhenParkedRequestTimesOut() throws Exception {
+        MockRequest request = new MockRequest();
+        fixture.doPost(request.request, request.response);
+
+        request.listeners.get(0).onTimeout(null);
+
+        assertTrue(request.output.toString().contains(EMPTY_MESSAGES));
+        verify(request.asyncContext, times(1)).complete();
+
+        // No longer parked, so waking does nothing
+        messageCache.systemToHttpAppend("client", new Message("direct", "servlet:client", "hello"));
+        fixture.wake(Collections.singleton("client"));
+        assertTrue(request.started.isEmpty());
+    }
+
+    @Test
+    public void mustRespondToOlderParkedRequestWhenNewerOneParks() throws Exception {
+        MockRequest oldRequest = new MockRequest();
+        fixture.doPost(oldRequest.request, oldRequest.response);
+        MockRequest newRequest = new MockRequest();
+        fixture.doPost(newRequest.request, newRequest.response);
+
+        oldRequest.runStarted();
+        assertTrue(oldRequest.output.toString().contains(EMPTY_MESSAGES));
+        verify(oldRequest.asyncContext, times(1)).complete();
+        verify(newRequest.asyncContext, never()).complete();
+
+        // Newer request is the one that's parked now
+        messageCache.systemToHttpAppend("client", new Message("direct", "servlet:client", "hello"));
+        fixture.wake(Collections.singleton("client"));
+        newRequest.runStarted();
+        assertTrue(newRequest.output.toString().contains(HELLO_CONTENT));
+        assertFalse(oldRequest.output.toString().contains(HELLO_CONTENT));
+        verify(newRequest.asyncContext, times(1)).complete();
+    }
+
+    @Test
+    public void mustRespondToParkedRequestWhenMessagesArriveWhileParking() throws Exception {
+        MockRequest request = new MockRequest();
+
+        // Messages show up after the servlet checked for them but before the request was registered as parked -- the gateway's wakeup
+        // finds nothing parked, so it's up to the servlet to notice
+        when(request.request.startAsync()).then(inv -> {
+            messageCache.systemToHttpAppend("client", new Message("direct", "servlet:client", "hello"));
+            fixture.wake(Collections.singleton("client"));
+            return request.asyncContext;
+        });
+        fixture.doPost(request.request, request.response);
+        request.runStarted();
+
+        assertTrue(request.output.toString().contains(HELLO_CONTENT));
+        verify(request.asyncContext, times(1)).complete();
+    }
+
+    @Test
+    public void mustRespondExactlyOnceWhenWakeAndTimeoutRace() throws Exception {
+        MockRequest request = new MockRequest();
+        fixture.doPost(request.request, request.response);
+
+        messageCache.systemToHttpAppend("client", new Message("direct", "servlet:client", "hello"));
+        fixture.wake(Collections.singleton("client")); // queues up a response...
+        request.listeners.get(0).onTimeout(null);      // ...but the timeout gets there first
+        request.runStarted();
+
+        String output = request.output.toString();
+        assertEquals(output.indexOf("httpAddressId"), output.lastIndexOf("httpAddressId")); // only 1 response written
+        verify(request.asyncContext, times(1)).complete();
+    }
+
+    @Test
+    public void mustNotRespondToParkedRequestAfterError() throws Exception {
+        MockRequest request = new MockRequest();
+        fixture.doPost(request.request, request.response);
+
+        request.listeners.get(0).onError(null);
+        messageCache.systemToHttpAppend("client", new Message("direct", "servlet:client", "hello"));
+        fixture.wake(Collections.singleton("client"));
+        request.runStarted();
+
+        assertEquals("", request.output.toString());
+        verify(request.asyncContext, never()).complete();
+    }
+
+    @Test
+    public void mustRespondToParkedRequestsWhenDestroyed() throws Exception {
+        MockRequest request = new MockRequest();
+        fixture.doPost(request.request, request.response);
+
+        fixture.destroy();
+        request.runStarted();
+
+        assertTrue(request.output.toString().contains(EMPTY_MESSAGES));
+        verify(request.asyncContext, times(1)).complete();
+    }
+
+    // Mocked request/response pair. Anything passed to AsyncContext.start() is held on to until runStarted() is called, so tests control
+    // when container threads run.
+    private static final class MockRequest {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final AsyncContext asyncContext;
+        private final StringWriter output;
+        private final List<AsyncListener> listeners;
+        private final List<Runnable> started;
+
+        MockRequest() throws Exception {
+            request = mock(HttpServletRequest.class);
+            response = mock(HttpServletResponse.class);
+            asyncContext = mock(AsyncContext.class);
+            output = new StringWriter();
+            listeners = new ArrayList<>();
+            started = new ArrayList<>();
+
+            when(request.getReader()).thenReturn(new BufferedReader(new StringReader(REQUEST)));
+            when(request.isAsyncSupported()).thenReturn(true);
+            when(request.startAsync()).thenReturn(asyncContext);
+            when(response.getWriter()).thenReturn(new PrintWriter(output));
+            doAnswer(inv -> listeners.add((AsyncListener) inv.getArguments()[0])).when(asyncContext).addListener(any(AsyncListener.class));
+            doAnswer(inv -> started.add((Runnable) inv.getArguments()[0])).when(asyncContext).start(any(Runnable.class));
+        }
+
+        void runStarted() {
+            List<Runnable> runnables = new ArrayList<>(started);
+            started.clear();
+            runnables.forEach(Runnable::run);
+        }
+    }
+}
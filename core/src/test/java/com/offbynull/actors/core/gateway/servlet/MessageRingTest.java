@@ -0,0 +1,137 @@
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.offbynull.actors.core.shuttle.Message;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class MessageRingTest {
+
+    @Test
+    public void mustAddAndRemoveBySequence() {
+        MessageRing fixture = new MessageRing();
+        for (int i = 0; i < 100; i++) {
+            fixture.add(new Message("src", "dst", i));
+        }
+        assertEquals(0, fixture.getHeadSequence());
+        assertEquals(100, fixture.getTailSequence());
+
+        fixture.removeUpTo(40);
+        assertEquals(40, fixture.getHeadSequence());
+        assertEquals(60, fixture.size());
+        assertEquals(40, fixture.view().get(0).getMessage());
+
+        fixture.removeUpTo(10); // already removed, must be ignored
+        assertEquals(40, fixture.getHeadSequence());
+
+        fixture.clear();
+        assertEquals(100, fixture.getHeadSequence());
+        assertEquals(0, fixture.view().size());
+    }
+
+    @Test
+    public void mustKeepViewsUnchangedAfterRingIsModified() {
+        MessageRing fixture = new MessageRing();
+        for (int i = 0; i < 10; i++) {
+            fixture.add(new Message("src", "dst", i));
+        }
+        List<Message> view = fixture.view();
+
+        // Wrap around the ring several times over the slots the view is looking at
+        for (int i = 10; i < 200; i++) {
+            fixture.add(new Message("src", "dst", i));
+            fixture.removeUpTo(i - 2);
+        }
+
+        assertEquals(10, view.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, view.get(i).getMessage());
+        }
+    }
+
+    @Test
+    public void mustShrinkOnceMostlyEmpty() {
+        MessageRing fixture = new MessageRing();
+        for (int i = 0; i < 1000; i++) {
+            fixture.add(new Message("src", "dst", i));
+        }
+        assertTrue(fixture.capacity() >= 1000);
+
+        fixture.removeUpTo(990);
+        assertEquals(10, fixture.size());
+        assertTrue(fixture.capacity() < 1000);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(990 + i, fixture.view().get(i).getMessage());
+        }
+
+        fixture.clear();
+        assertEquals(16, fixture.capacity());
+    }
+
+    @Test
+    public void mustKeepViewsUnchangedAfterRingShrinks() {
+        MessageRing fixture = new MessageRing();
+        for (int i = 0; i < 1000; i++) {
+            fixture.add(new Message("src", "dst", i));
+        }
+        List<Message> view = fixture.view();
+
+        fixture.removeUpTo(500);
+        fixture.clear();
+
+        assertEquals(1000, view.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, view.get(i).getMessage());
+        }
+    }
+
+    @Test
+    public void mustMatchQueueBehaviourUnderRandomOperations() {
+        Random random = new Random(0);
+        MessageRing fixture = new MessageRing();
+        ArrayDeque<Message> expected = new ArrayDeque<>();
+        int head = 0;
+        List<List<Message>> views = new ArrayList<>();
+        List<List<Message>> viewCopies = new ArrayList<>();
+        
+        for (int i = 0; i < 100000; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1: {
+                    Message message = new Message("src", "dst", i);
+                    fixture.add(message);
+                    expected.add(message);
+                    break;
+                }
+                case 2: {
+                    int seq = head + random.nextInt(expected.size() + 1);
+                    fixture.removeUpTo(seq);
+                    while (head < seq) {
+                        expected.poll();
+                        head++;
+                    }
+                    break;
+                }
+                default: {
+                    List<Message> view = fixture.view();
+                    assertEquals(new ArrayList<>(expected), new ArrayList<>(view));
+                    if (views.size() < 50) {
+                        views.add(view);
+                        viewCopies.add(new ArrayList<>(view));
+                    }
+                    break;
+                }
+            }
+            assertEquals(head, fixture.getHeadSequence());
+            assertEquals(expected.size(), fixture.size());
+        }
+
+        for (int i = 0; i < views.size(); i++) {
+            assertEquals(viewCopies.get(i), new ArrayList<>(views.get(i)));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.offbynull.actors.core.shuttle.Message;
+import com.offbynull.actors.core.shuttle.Shuttle;
+import com.offbynull.actors.core.shuttles.simple.Bus;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ServletRunnableTest {
+
+    private ShardedMessageCache messageCache;
+    private MessageGatewayServlet servlet;
+    private Bus bus;
+    private Thread thread;
+
+    @Before
+    public void before() {
+        ConcurrentHashMap<String, Shuttle> outgoingShuttles = new ConcurrentHashMap<>();
+        messageCache = new ShardedMessageCache(10000L, 4, () -> 0L, false);
+        servlet = new MessageGatewayServlet("servlet", outgoingShuttles, messageCache, 10000L);
+        bus = new LockingBus();
+        thread = new Thread(new ServletRunnable("servlet", bus, outgoingShuttles, messageCache, servlet));
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void after() throws Exception {
+        thread.interrupt();
+        thread.join();
+    }
+
+    @Test(timeout = 5000L)
+    public void mustRouteMessagesToTheClientTheyreFor() throws Exception {
+        messageCache.keepAlive("a");
+        messageCache.keepAlive("b");
+
+        bus.add(Arrays.asList(
+                new Message("direct", "servlet:a", "a1"),
+                new Message("direct", "servlet:b:sub", "b1"),
+                new Message("direct", "servlet:a", "a2")));
+
+        waitUntil(() -> payloads("a").size() == 2 && payloads("b").size() == 1);
+        assertEquals(Arrays.asList("a1", "a2"), payloads("a"));
+        assertEquals(Arrays.asList("b1"), payloads("b"));
+    }
+
+    @Test(timeout = 5000L)
+    public void mustDropMessagesForUntrackedClientsAndKeepGoing() throws Exception {
+        messageCache.keepAlive("a");
+
+        bus.add(Arrays.asList(
+                new Message("direct", "servlet:untracked", "lost"),
+                new Message("direct", "servlet", "lost"), // no client id
+                new Message("direct", "servlet:a", "a1")));
+        bus.add(new Message("direct", "servlet:a", "a2"));
+
+        // Everything before a2 has been processed once a2 shows up
+        waitUntil(() -> payloads("a").size() == 2);
+        assertEquals(Arrays.asList("a1", "a2"), payloads("a"));
+        try {
+            messageCache.systemToHttpRead("untracked");
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected -- messages for clients that haven't connected aren't buffered, and don't start tracking the client either
+        }
+    }
+
+    @Test(timeout = 5000L)
+    public void mustWakeParkedRequestOfClientMessagesAreFor() throws Exception {
+        StringWriter output = new StringWriter();
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader(
+                "{httpAddressId: \"a\", httpToSystemOffset: 0, systemToHttpOffset: 0, messages: []}")));
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync()).thenReturn(asyncContext);
+        when(response.getWriter()).thenReturn(new PrintWriter(output));
+        doAnswer(inv -> {
+            ((Runnable) inv.getArguments()[0]).run();
+            return null;
+        }).when(asyncContext).start(any(Runnable.class));
+
+        servlet.doPost(request, response);
+        assertEquals("", output.toString()); // parked
+
+        bus.add(new Message("direct", "servlet:a", "hello"));
+
+        waitUntil(() -> output.toString().contains("\"content\":\"hello\""));
+    }
+
+    private List<Object> payloads(String id) {
+        return messageCache.systemToHttpRead(id).getMessages().stream().map(Message::getMessage).collect(Collectors.toList());
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            Thread.sleep(10L);
+        }
+    }
+}
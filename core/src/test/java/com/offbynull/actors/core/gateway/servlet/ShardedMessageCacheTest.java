@@ -0,0 +1,169 @@
+package com.offbynull.actors.core.gateway.servlet;
+
+import com.offbynull.actors.core.gateway.servlet.MessageCache.MessageBlock;
+import com.offbynull.actors.core.shuttle.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.apache.commons.lang3.mutable.MutableLong;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class ShardedMessageCacheTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+    
+    @Test
+    public void mustAddReadAndAcknowledgeSystemToHttpMessages() {
+        MessageCache fixture = new ShardedMessageCache(60000L, 4, System::currentTimeMillis, false);
+        
+        fixture.keepAlive("client_id");
+        
+        fixture.systemToHttpAppend("client_id",
+                new Message("src1", "dst1", "msg1"),
+                new Message("src2", "dst2", "msg2"),
+                new Message("src3", "dst3", "msg3"));
+        MessageBlock mb1 = fixture.systemToHttpRead("client_id");
+        assertEquals(0, mb1.getStartSequenceOffset());
+        assertEquals(3, mb1.getMessages().size());
+        
+        fixture.systemToHttpAcknowledge("client_id", 1);
+        MessageBlock mb2 = fixture.systemToHttpRead("client_id");
+        assertEquals(2, mb2.getStartSequenceOffset());
+        assertEquals(1, mb2.getMessages().size());
+        assertEquals("msg3", mb2.getMessages().get(0).getMessage());
+    }
+
+    @Test
+    public void mustAddReadAndClearHttpToSystemMessages() {
+        MessageCache fixture = new ShardedMessageCache(60000L, 4, System::currentTimeMillis, false);
+        
+        fixture.keepAlive("client_id");
+        
+        fixture.httpToSystemAdd("client_id", 0,
+                new Message("src1", "dst1", "msg1"),
+                new Message("src2", "dst2", "msg2"));
+        fixture.httpToSystemAdd("client_id", 1,
+                new Message("src2", "dst2", "msg2"),  // should be ignored
+                new Message("src3", "dst3", "msg3"));
+        MessageBlock mb1 = fixture.httpToSystemRead("client_id");
+        assertEquals(0, mb1.getStartSequenceOffset());
+        assertEquals(3, mb1.getMessages().size());
+        assertEquals("msg3", mb1.getMessages().get(2).getMessage());
+        
+        fixture.httpToSystemClear("client_id");
+        MessageBlock mb2 = fixture.httpToSystemRead("client_id");
+        assertEquals(3, mb2.getStartSequenceOffset());
+        assertEquals(0, mb2.getMessages().size());
+    }
+
+    @Test
+    public void mustKeepClientsSeparate() {
+        MessageCache fixture = new ShardedMessageCache(60000L, 4, System::currentTimeMillis, false);
+        
+        for (int i = 0; i < 100; i++) {
+            fixture.keepAlive("client" + i);
+            fixture.systemToHttpAppend("client" + i, new Message("src", "dst", i));
+        }
+        
+        for (int i = 0; i < 100; i++) {
+            MessageBlock mb = fixture.systemToHttpRead("client" + i);
+            assertEquals(1, mb.getMessages().size());
+            assertEquals(i, mb.getMessages().get(0).getMessage());
+        }
+    }
+
+    @Test
+    public void mustFailToReadIfIdNotTracked() {
+        MessageCache fixture = new ShardedMessageCache(60000L, 4, System::currentTimeMillis, false);
+        
+        expectedException.expect(IllegalArgumentException.class);
+        fixture.systemToHttpRead("client_id");
+    }
+
+    @Test
+    public void mustFailToReadIfIdNotTrackedViaTimeoutBeforeSweep() {
+        MutableLong fakeTime = new MutableLong(0L);
+        MessageCache fixture = new ShardedMessageCache(2L, 4, () -> {
+            fakeTime.increment();
+            return fakeTime.longValue();
+        }, false);
+        
+        fixture.keepAlive("client_id");
+        
+        fixture.systemToHttpAppend("client_id", new Message("src1", "dst1", "msg1"));
+        expectedException.expect(IllegalArgumentException.class);
+        fixture.systemToHttpRead("client_id");
+    }
+
+    @Test
+    public void mustFailToReadIfIdNotTrackedViaTimeoutAfterSweep() {
+        MutableLong fakeTime = new MutableLong(0L);
+        ShardedMessageCache fixture = new ShardedMessageCache(10L, 4, () -> fakeTime.longValue(), false);
+        
+        fixture.keepAlive("client_id");
+        fakeTime.setValue(10L);
+        fixture.sweep();
+        fakeTime.setValue(0L); // even if time goes backwards, the sweep removed the client
+        
+        expectedException.expect(IllegalArgumentException.class);
+        fixture.httpToSystemRead("client_id");
+    }
+
+    @Test
+    public void mustNotSweepClientsThatAreKeptAlive() {
+        MutableLong fakeTime = new MutableLong(0L);
+        ShardedMessageCache fixture = new ShardedMessageCache(10L, 4, () -> fakeTime.longValue(), false);
+        
+        fixture.keepAlive("client_id");
+        fakeTime.setValue(9L);
+        fixture.keepAlive("client_id");
+        fakeTime.setValue(18L);
+        fixture.sweep();
+        
+        assertEquals(0, fixture.httpToSystemRead("client_id").getMessages().size());
+    }
+
+    @Test(timeout = 10000L)
+    public void mustHandleConcurrentClients() throws Exception {
+        try (ShardedMessageCache fixture = new ShardedMessageCache(60000L, 16)) {
+            int threadCount = 8;
+            int clientsPerThread = 100;
+            CountDownLatch startLatch = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                int base = t * clientsPerThread;
+                Thread thread = new Thread(() -> {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException ie) {
+                        throw new IllegalStateException(ie);
+                    }
+                    for (int i = base; i < base + clientsPerThread; i++) {
+                        String id = "client" + i;
+                        fixture.keepAlive(id);
+                        for (int j = 0; j < 10; j++) {
+                            fixture.systemToHttpAppend(id, new Message("src", "dst", j));
+                        }
+                        fixture.systemToHttpAcknowledge(id, 4);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            startLatch.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            for (int i = 0; i < threadCount * clientsPerThread; i++) {
+                MessageBlock mb = fixture.systemToHttpRead("client" + i);
+                assertEquals(5, mb.getStartSequenceOffset());
+                assertEquals(5, mb.getMessages().size());
+            }
+        }
+    }
+}
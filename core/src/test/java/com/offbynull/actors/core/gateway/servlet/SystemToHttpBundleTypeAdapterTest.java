@@ -9,15 +9,14 @@ import org.junit.Before;
 import org.junit.Test;
 import static com.offbynull.actors.core.common.DefaultAddresses.DEFAULT_SERVLET;
 
-public class SystemToHttpBundleJsonSerializerTest {
+public class SystemToHttpBundleTypeAdapterTest {
     
     private Gson fixture;
 
     @Before
     public void before() {
         GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.registerTypeAdapter(Message.class, new MessageJsonSerializer(DEFAULT_SERVLET));
-        gsonBuilder.registerTypeAdapter(SystemToHttpBundle.class, new SystemToHttpBundleJsonSerializer(DEFAULT_SERVLET));
+        gsonBuilder.registerTypeAdapterFactory(new BundleTypeAdapterFactory(DEFAULT_SERVLET));
         fixture = gsonBuilder.serializeNulls().setPrettyPrinting().create();
     }
 
@@ -49,7 +48,7 @@ public class SystemToHttpBundleJsonSerializerTest {
                 + "    {\n"
                 + "      \"source\": \"actors:my_actor\",\n"
                 + "      \"destination\": \"servlet:custom_id:sub_id\",\n"
-                + "      \"type\": \"com.offbynull.actors.core.gateway.servlet.SystemToHttpBundleJsonSerializerTest$TestObject\",\n"
+                + "      \"type\": \"com.offbynull.actors.core.gateway.servlet.SystemToHttpBundleTypeAdapterTest$TestObject\",\n"
                 + "      \"content\": {\n"
                 + "        \"myInt\": 1\n"
                 + "      }\n"
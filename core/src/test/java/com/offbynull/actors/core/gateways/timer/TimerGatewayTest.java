@@ -3,9 +3,18 @@ package com.offbynull.actors.core.gateways.timer;
 import com.offbynull.coroutines.user.Coroutine;
 import com.offbynull.actors.core.actor.ActorRunner;
 import com.offbynull.actors.core.context.Context;
+import com.offbynull.actors.core.gateways.direct.DirectGateway;
+import com.offbynull.actors.core.shuttle.Message;
 import com.offbynull.actors.core.shuttle.Shuttle;
+import com.offbynull.actors.core.shuttles.simple.LockingBus;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 public class TimerGatewayTest {
@@ -45,5 +54,81 @@ public class TimerGatewayTest {
         testerRunner.close();
         testerRunner.join();
     }
-    
+
+    @Test(timeout = 5000L)
+    public void mustNotEchoBackCancelledMessage() throws Exception {
+        try (TimerGateway timerGateway = TimerGateway.create("timer");
+                DirectGateway directGateway = DirectGateway.create("direct")) {
+            timerGateway.addOutgoingShuttle(directGateway.getIncomingShuttle());
+            directGateway.addOutgoingShuttle(timerGateway.getIncomingShuttle());
+
+            directGateway.writeMessage("direct:tester", "timer:300:a", "cancelled");
+            directGateway.writeMessage("direct:tester", "timer:100:b", "kept");
+            directGateway.writeMessage("direct:tester", "timer:300:a", CancelTimer.create());
+
+            Message msg = directGateway.readMessage();
+            assertEquals("timer:100:b", msg.getSourceAddress().toString());
+            assertEquals("kept", msg.getMessage());
+
+            assertNull(directGateway.readMessage(500L, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test(timeout = 5000L)
+    public void mustEchoBackPeriodicMessageUntilCancelled() throws Exception {
+        try (TimerGateway timerGateway = TimerGateway.create("timer");
+                DirectGateway directGateway = DirectGateway.create("direct")) {
+            timerGateway.addOutgoingShuttle(directGateway.getIncomingShuttle());
+            directGateway.addOutgoingShuttle(timerGateway.getIncomingShuttle());
+
+            directGateway.writeMessage("direct:tester", "timer:0:hb", PeriodicTimer.create(Duration.ofMillis(50L), "tick"));
+            for (int i = 0; i < 3; i++) {
+                Message msg = directGateway.readMessage();
+                assertEquals("timer:0:hb", msg.getSourceAddress().toString());
+                assertEquals("direct:tester", msg.getDestinationAddress().toString());
+                assertEquals("tick", msg.getMessage());
+            }
+
+            // Anything echoed back after the marker would have been scheduled after the cancellation was processed
+            directGateway.writeMessage("direct:tester", "timer:0:hb", CancelTimer.create());
+            directGateway.writeMessage("direct:tester", "timer:100:marker", "marker");
+            while (!"marker".equals(directGateway.readMessagePayloadOnly())) {
+                // drain ticks that were already in flight
+            }
+
+            assertNull(directGateway.readMessage(300L, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test(timeout = 5000L)
+    public void mustCoalesceMessagesDueWithinSlack() throws Exception {
+        try (TimerGateway timerGateway = TimerGateway.create("timer", LockingBus::new, Duration.ofMillis(1L), Duration.ofMillis(1000L));
+                DirectGateway directGateway = DirectGateway.create("direct")) {
+            timerGateway.addOutgoingShuttle(directGateway.getIncomingShuttle());
+            directGateway.addOutgoingShuttle(timerGateway.getIncomingShuttle());
+
+            long start = System.nanoTime();
+            directGateway.writeMessage("direct:a", "timer:10", "a");
+            directGateway.writeMessage("direct:b", "timer:30", "b");
+            directGateway.writeMessage("direct:c", "timer:60", "c");
+
+            // All 3 fall in to the same bucket, so none of them should come back before the last one is due. They may still be handed
+            // over in more than one read, so keep reading until all 3 are in.
+            List<Message> msgs = new ArrayList<>();
+            long firstArrival = -1L;
+            long deadline = start + TimeUnit.SECONDS.toNanos(3L);
+            while (msgs.size() < 3) {
+                long remaining = deadline - System.nanoTime();
+                assertTrue(remaining > 0L);
+                List<Message> read = directGateway.readMessages(remaining, TimeUnit.NANOSECONDS);
+                if (!read.isEmpty() && firstArrival == -1L) {
+                    firstArrival = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+                msgs.addAll(read);
+            }
+            assertEquals(3, msgs.size());
+            assertTrue(firstArrival >= 60L);
+        }
+    }
+
 }
@@ -0,0 +1,154 @@
+package com.offbynull.actors.core.gateways.timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    @Test
+    public void mustExpireOnlyOnceDeadlineReached() {
+        TimingWheel<String> fixture = new TimingWheel<>(0L);
+        fixture.add(5L, "a");
+        fixture.add(70L, "b");
+        fixture.add(5000L, "c");
+
+        List<String> expired = new ArrayList<>();
+        fixture.advance(4L, expired::add);
+        assertEquals(Collections.emptyList(), expired);
+
+        fixture.advance(5L, expired::add);
+        assertEquals(Arrays.asList("a"), expired);
+
+        fixture.advance(69L, expired::add);
+        assertEquals(Arrays.asList("a"), expired);
+
+        fixture.advance(70L, expired::add);
+        assertEquals(Arrays.asList("a", "b"), expired);
+
+        fixture.advance(4999L, expired::add);
+        assertEquals(Arrays.asList("a", "b"), expired);
+
+        fixture.advance(5000L, expired::add);
+        assertEquals(Arrays.asList("a", "b", "c"), expired);
+        assertTrue(fixture.isEmpty());
+    }
+
+    @Test
+    public void mustExpireEverythingWhenJumpingFarAhead() {
+        TimingWheel<Long> fixture = new TimingWheel<>(0L);
+        fixture.add(1L, 1L);
+        fixture.add(100000L, 100000L);
+        fixture.add(1L << 40, 1L << 40);
+
+        List<Long> expired = new ArrayList<>();
+        fixture.advance(Long.MAX_VALUE, expired::add);
+
+        Collections.sort(expired);
+        assertEquals(Arrays.asList(1L, 100000L, 1L << 40), expired);
+        assertTrue(fixture.isEmpty());
+    }
+
+    @Test
+    public void mustExpireOverdueOnNextAdvance() {
+        TimingWheel<String> fixture = new TimingWheel<>(100L);
+        fixture.add(50L, "late");
+        assertEquals(100L, fixture.nextTick());
+
+        List<String> expired = new ArrayList<>();
+        fixture.advance(100L, expired::add);
+        assertEquals(Arrays.asList("late"), expired);
+    }
+
+    @Test
+    public void mustMatchSortedOrderForRandomDeadlines() {
+        Random random = new Random(1L);
+        TimingWheel<Long> fixture = new TimingWheel<>(0L);
+
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            long deadline = random.nextInt(4) == 0 ? random.nextInt(1 << 24) : random.nextInt(5000);
+            deadlines.add(deadline);
+            fixture.add(deadline, deadline);
+        }
+        Collections.sort(deadlines);
+
+        // Hop from wakeup to wakeup like the timer gateway does, checking nothing fires early and nothing fires late
+        List<Long> expired = new ArrayList<>();
+        while (!fixture.isEmpty()) {
+            long next = fixture.nextTick();
+            assertTrue(next <= deadlines.get(expired.size()));
+
+            int before = expired.size();
+            fixture.advance(next, expired::add);
+            for (int i = before; i < expired.size(); i++) {
+                assertEquals(next, (long) expired.get(i));
+            }
+        }
+        assertEquals(deadlines, expired);
+    }
+
+    @Test
+    public void mustAllowAddingFromExpiryCallback() {
+        TimingWheel<Integer> fixture = new TimingWheel<>(0L);
+        fixture.add(10L, 0);
+
+        List<Integer> expired = new ArrayList<>();
+        for (long tick = 0L; tick <= 40L; tick++) {
+            long now = tick;
+            fixture.advance(now, v -> {
+                expired.add(v);
+                if (v < 3) {
+                    fixture.add(now + 10L, v + 1);
+                }
+            });
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3), expired);
+    }
+
+    @Test
+    public void mustNotExpireRemovedEntries() {
+        TimingWheel<String> fixture = new TimingWheel<>(0L);
+        TimingWheel.Entry<String> a = fixture.add(10L, "a");
+        TimingWheel.Entry<String> b = fixture.add(10L, "b");
+        TimingWheel.Entry<String> c = fixture.add(100000L, "c");
+        TimingWheel.Entry<String> d = fixture.add(0L, "d"); // overdue
+
+        assertTrue(fixture.remove(a));
+        assertTrue(fixture.remove(c));
+        assertTrue(fixture.remove(d));
+        assertFalse(fixture.remove(a));
+        assertEquals(1, fixture.size());
+        assertEquals(10L, fixture.nextTick());
+
+        List<String> expired = new ArrayList<>();
+        fixture.advance(Long.MAX_VALUE, expired::add);
+        assertEquals(Arrays.asList("b"), expired);
+        assertFalse(fixture.remove(b));
+        assertTrue(fixture.isEmpty());
+        assertEquals(Long.MAX_VALUE, fixture.nextTick());
+    }
+
+    @Test
+    public void mustAllowRemovingFromExpiryCallback() {
+        TimingWheel<String> fixture = new TimingWheel<>(0L);
+        List<TimingWheel.Entry<String>> entries = new ArrayList<>();
+        entries.add(fixture.add(5L, "x"));
+        entries.add(fixture.add(5L, "y"));
+
+        // Whichever expires first removes the other, so only one of them should ever come out
+        List<String> expired = new ArrayList<>();
+        fixture.advance(5L, v -> {
+            expired.add(v);
+            entries.forEach(fixture::remove);
+        });
+        assertEquals(1, expired.size());
+        assertTrue(fixture.isEmpty());
+    }
+}
@@ -1,8 +1,14 @@
 package com.offbynull.actors.core.shuttle;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
+import java.util.Base64;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Rule;
 import org.junit.Test;
@@ -144,6 +150,82 @@ public class AddressTest {
     public void mustConstructAnAddressWith0Elements() {
         Address.of(); // no crash means success
     }
+
+    @Test
+    public void mustConstructAddressFromStringWithTrailingDelimiter() {
+        Address fixture = Address.fromString("hi:to:");
+        assertEquals(Arrays.asList("hi", "to"), fixture.getElements());
+    }
+
+    @Test
+    public void mustConstructAddressFromStringWithEscapedTrailingDelimiter() {
+        Address fixture = Address.fromString("hi:to\\:");
+        assertEquals(Arrays.asList("hi", "to:"), fixture.getElements());
+    }
+
+    @Test
+    public void mustEqualAndHashSameWhenDerivedFromLargerAddress() {
+        Address fixture = Address.of("one", "two", "three", "four");
+        Address expected = Address.of("two", "three");
+        Address actual = fixture.removePrefix(Address.of("one")).removeSuffix(1);
+        assertEquals(expected, actual);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(Arrays.asList("two", "three"), actual.getElements());
+        assertEquals("three", actual.getElement(1));
+        assertEquals("two:three", actual.toString());
+    }
+
+    @Test
+    public void mustNotExposeInternalsThroughGetElements() {
+        Address fixture = Address.of("one", "two");
+        fixture.getElements().set(0, "xxx");
+        assertEquals(Address.of("one", "two"), fixture);
+    }
+
+    @Test
+    public void mustInternToSameInstance() {
+        Address first = Address.fromString("one:two").intern();
+        Address second = Address.of("zero", "one", "two").removePrefix(Address.of("zero")).intern();
+        assertSame(first, second);
+    }
+
+    @Test
+    public void mustSerializeOnlyCoveredElements() throws Exception {
+        Address fixture = Address.of("one", "two", "three").removeSuffix(1);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(fixture);
+        }
+        Address actual;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            actual = (Address) ois.readObject();
+        }
+
+        assertEquals(fixture, actual);
+        assertEquals(2, actual.size());
+    }
+
+    @Test
+    public void mustDeserializeAddressWrittenBeforeSerializationProxy() throws Exception {
+        // Address.of("runner", "actor:0", "child") serialized by the version of this class that wrapped an UnmodifiableList
+        byte[] data = Base64.getDecoder().decode(
+                "rO0ABXNyACljb20ub2ZmYnludWxsLmFjdG9ycy5jb3JlLnNodXR0bGUuQWRkcmVzcwAAAAAAAAABAgABTAAPYWRkcmVzc0VsZW1l" +
+                "bnRzdAA3TG9yZy9hcGFjaGUvY29tbW9ucy9jb2xsZWN0aW9uczQvbGlzdC9Vbm1vZGlmaWFibGVMaXN0O3hwc3IANW9yZy5hcGFj" +
+                "aGUuY29tbW9ucy5jb2xsZWN0aW9uczQubGlzdC5Vbm1vZGlmaWFibGVMaXN0W4bL1Po8fYQCAAB4cgBGb3JnLmFwYWNoZS5jb21t" +
+                "b25zLmNvbGxlY3Rpb25zNC5saXN0LkFic3RyYWN0U2VyaWFsaXphYmxlTGlzdERlY29yYXRvciVC5Cn2jXtrAwAAeHIAOm9yZy5h" +
+                "cGFjaGUuY29tbW9ucy5jb2xsZWN0aW9uczQubGlzdC5BYnN0cmFjdExpc3REZWNvcmF0b3I+ddbex/Jq5wIAAHhyAEZvcmcuYXBh" +
+                "Y2hlLmNvbW1vbnMuY29sbGVjdGlvbnM0LmNvbGxlY3Rpb24uQWJzdHJhY3RDb2xsZWN0aW9uRGVjb3JhdG9yVrwQE7umoTQCAAFM" +
+                "AApjb2xsZWN0aW9udAAWTGphdmEvdXRpbC9Db2xsZWN0aW9uO3hwc3IAE2phdmEudXRpbC5BcnJheUxpc3R4gdIdmcdhnQMAAUkA" +
+                "BHNpemV4cAAAAAN3BAAAAAN0AAZydW5uZXJ0AAdhY3RvcjowdAAFY2hpbGR4cQB+AAp4");
+
+        Address actual;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            actual = (Address) ois.readObject();
+        }
+
+        assertEquals(Address.of("runner", "actor:0", "child"), actual);
+    }
     
     
 }
@@ -0,0 +1,211 @@
+package com.offbynull.actors.core.shuttles.simple;
+
+import com.offbynull.actors.core.shuttle.Message;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class BoundedBusTest {
+
+    @Test(timeout = 2000L)
+    public void mustDropNewestWhenFull() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        BoundedBus fixture = new BoundedBus(3, 3, 1, OverflowPolicy.DROP_NEWEST, listener);
+        
+        fixture.add(msgs("a", "b", "c", "d", "e"));
+        
+        assertEquals(Arrays.asList("a", "b", "c"), payloads(fixture.pull()));
+        assertEquals(Arrays.asList("d", "e"), payloads(listener.discarded));
+    }
+
+    @Test(timeout = 2000L)
+    public void mustDropOldestWhenFull() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        BoundedBus fixture = new BoundedBus(3, 3, 1, OverflowPolicy.DROP_OLDEST, listener);
+        
+        fixture.add(msgs("a", "b", "c", "d", "e"));
+        
+        assertEquals(Arrays.asList("c", "d", "e"), payloads(fixture.pull()));
+        assertEquals(Arrays.asList("a", "b"), payloads(listener.discarded));
+    }
+
+    @Test(timeout = 2000L)
+    public void mustRejectEntireBatchIfItDoesntFit() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        BoundedBus fixture = new BoundedBus(3, 3, 1, OverflowPolicy.REJECT, listener);
+        
+        fixture.add(msgs("a", "b"));
+        fixture.add(msgs("c", "d"));
+        
+        assertEquals(Arrays.asList("a", "b"), payloads(fixture.pull()));
+        assertEquals(Arrays.asList("c", "d"), payloads(listener.discarded));
+    }
+
+    @Test(timeout = 2000L)
+    public void mustNeverCountOrDiscardControlObjects() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        BoundedBus fixture = new BoundedBus(2, 2, 1, OverflowPolicy.DROP_OLDEST, listener);
+        
+        Object control1 = new Object();
+        Object control2 = new Object();
+        fixture.add(Arrays.asList(control1, msg("a"), msg("b"), control2, msg("c")));
+        
+        List<Object> read = fixture.pull();
+        assertEquals(4, read.size());
+        assertSame(control1, read.get(0));
+        assertEquals("b", ((Message) read.get(1)).getMessage());
+        assertSame(control2, read.get(2));
+        assertEquals("c", ((Message) read.get(3)).getMessage());
+        assertEquals(Arrays.asList("a"), payloads(listener.discarded));
+    }
+
+    @Test(timeout = 2000L)
+    public void mustNotBlockOnControlObjectsWhenFull() throws InterruptedException {
+        BoundedBus fixture = new BoundedBus(1, OverflowPolicy.BLOCK);
+        
+        Object control = new Object();
+        fixture.add(msg("a"));
+        fixture.add(control); // would block forever if control objects counted against the capacity
+        
+        List<Object> read = fixture.pull();
+        assertEquals(2, read.size());
+        assertSame(control, read.get(1));
+    }
+
+    @Test(timeout = 2000L)
+    public void mustCountEachMessageInBatch() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        BoundedBus fixture = new BoundedBus(3, 3, 1, OverflowPolicy.DROP_NEWEST, listener);
+        
+        TestBatch batch1 = new TestBatch(msgs("a", "b"));
+        TestBatch batch2 = new TestBatch(msgs("c", "d"));
+        fixture.add(Arrays.asList(batch1, batch2, msg("e")));
+        
+        assertTrue(fixture.isAboveHighWatermark());
+        List<Object> read = fixture.pull();
+        assertEquals(2, read.size());
+        assertSame(batch1, read.get(0));
+        assertEquals("e", ((Message) read.get(1)).getMessage());
+        assertEquals(Arrays.asList(batch2), listener.discarded);
+    }
+
+    @Test(timeout = 2000L)
+    public void mustBlockWriterUntilRoomIsAvailable() throws Exception {
+        BoundedBus fixture = new BoundedBus(2, OverflowPolicy.BLOCK);
+        
+        CountDownLatch writtenLatch = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            fixture.add(msgs("a", "b", "c", "d", "e"));
+            writtenLatch.countDown();
+        });
+        writer.start();
+        
+        List<Object> read = new ArrayList<>();
+        while (read.size() < 5) {
+            List<Object> pulled = fixture.pull();
+            assertTrue(pulled.size() <= 2);
+            read.addAll(pulled);
+        }
+        writtenLatch.await();
+        writer.join();
+        
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), payloads(read));
+    }
+
+    @Test(timeout = 2000L)
+    public void mustUnblockWriterWhenClosed() throws Exception {
+        BoundedBus fixture = new BoundedBus(1, OverflowPolicy.BLOCK);
+        fixture.add(msg("a"));
+        
+        Thread writer = new Thread(() -> fixture.add(msg("b")));
+        writer.start();
+        Thread.sleep(100L);
+        fixture.close();
+        writer.join();
+        
+        assertEquals(Arrays.asList("a"), payloads(fixture.pull()));
+        assertTrue(fixture.pull(10L, TimeUnit.MILLISECONDS).isEmpty());
+    }
+
+    @Test(timeout = 2000L)
+    public void mustSignalHighAndLowWatermarks() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        BoundedBus fixture = new BoundedBus(10, 3, 0, OverflowPolicy.DROP_NEWEST, listener);
+        
+        fixture.add(msgs("a", "b"));
+        assertFalse(fixture.isAboveHighWatermark());
+        assertEquals(0, listener.highCount);
+        
+        fixture.add(msg("c"));
+        fixture.add(msg("d"));
+        assertTrue(fixture.isAboveHighWatermark());
+        assertEquals(1, listener.highCount);
+        assertEquals(0, listener.lowCount);
+        
+        fixture.pull();
+        assertFalse(fixture.isAboveHighWatermark());
+        assertEquals(1, listener.highCount);
+        assertEquals(1, listener.lowCount);
+    }
+    
+    private static Message msg(String payload) {
+        return new Message("src", "dst", payload);
+    }
+    
+    private static List<Message> msgs(String... payloads) {
+        List<Message> ret = new ArrayList<>();
+        for (String payload : payloads) {
+            ret.add(msg(payload));
+        }
+        return ret;
+    }
+    
+    private static List<Object> payloads(List<Object> messages) {
+        List<Object> ret = new ArrayList<>();
+        for (Object message : messages) {
+            ret.add(((Message) message).getMessage());
+        }
+        return ret;
+    }
+    
+    private static final class TestBatch implements MessageBatch {
+        private final List<Message> messages;
+
+        TestBatch(List<Message> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public List<Message> getMessages() {
+            return messages;
+        }
+    }
+    
+    private static final class RecordingListener implements BoundedBusListener {
+        private final List<Object> discarded = new ArrayList<>();
+        private int highCount;
+        private int lowCount;
+
+        @Override
+        public void discarded(List<Object> messages) {
+            discarded.addAll(messages);
+        }
+
+        @Override
+        public void highWatermarkReached(int size) {
+            highCount++;
+        }
+
+        @Override
+        public void lowWatermarkReached(int size) {
+            lowCount++;
+        }
+    }
+}
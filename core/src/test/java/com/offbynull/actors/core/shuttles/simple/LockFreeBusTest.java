@@ -0,0 +1,124 @@
+package com.offbynull.actors.core.shuttles.simple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LockFreeBusTest {
+    
+    private LockFreeBus fixture;
+    
+    @Before
+    public void setUp() {
+        fixture = new LockFreeBus();
+    }
+    
+    @After
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Test(timeout = 2000L)
+    public void mustPullMessagesInOrderTheyWereAdded() throws InterruptedException {
+        fixture.add("a");
+        fixture.add(Arrays.asList("b", "c", "d"));
+        fixture.add("e");
+        
+        List<Object> read = fixture.pull();
+        
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), read);
+    }
+
+    @Test(timeout = 2000L)
+    public void mustReturnModifiableList() throws InterruptedException {
+        fixture.add(Arrays.asList("a", "b"));
+        
+        List<Object> read = fixture.pull();
+        read.add("c");
+        read.remove("a");
+        
+        assertEquals(Arrays.asList("b", "c"), read);
+    }
+
+    @Test(timeout = 2000L)
+    public void mustReturnEmptyListWhenTimeoutElapses() throws InterruptedException {
+        List<Object> read = fixture.pull(10L, TimeUnit.MILLISECONDS);
+        
+        assertTrue(read.isEmpty());
+    }
+
+    @Test(timeout = 2000L)
+    public void mustWakeReaderWhenMessageAdded() throws Exception {
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(100L);
+            } catch (InterruptedException ie) {
+                throw new IllegalStateException(ie);
+            }
+            fixture.add("hi");
+        });
+        writer.start();
+        
+        List<Object> read = fixture.pull();
+        writer.join();
+        
+        assertEquals(Arrays.asList("hi"), read);
+    }
+
+    @Test(timeout = 2000L)
+    public void mustIgnoreMessagesAddedAfterCloseButKeepMessagesAddedBefore() throws InterruptedException {
+        fixture.add("before");
+        fixture.close();
+        fixture.add("after");
+        
+        assertEquals(Arrays.asList("before"), fixture.pull());
+        assertTrue(fixture.pull(10L, TimeUnit.MILLISECONDS).isEmpty());
+    }
+
+    @Test(timeout = 5000L)
+    public void mustNotLoseOrReorderMessagesFromConcurrentWriters() throws Exception {
+        int writerCount = 8;
+        int messagesPerWriter = 10000;
+        
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < writerCount; i++) {
+            int writerId = i;
+            Thread writer = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException ie) {
+                    throw new IllegalStateException(ie);
+                }
+                for (int j = 0; j < messagesPerWriter; j++) {
+                    fixture.add(new int[] { writerId, j });
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        startLatch.countDown();
+        
+        int[] nextExpected = new int[writerCount];
+        int remaining = writerCount * messagesPerWriter;
+        while (remaining > 0) {
+            for (Object obj : fixture.pull()) {
+                int[] msg = (int[]) obj;
+                assertEquals(nextExpected[msg[0]], msg[1]);
+                nextExpected[msg[0]]++;
+                remaining--;
+            }
+        }
+        
+        for (Thread writer : writers) {
+            writer.join();
+        }
+    }
+}
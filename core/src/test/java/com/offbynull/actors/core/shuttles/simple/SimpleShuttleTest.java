@@ -16,7 +16,7 @@ public class SimpleShuttleTest {
     
     @Before
     public void setUp() {
-        bus = new Bus();
+        bus = new LockingBus();
         fixture = new SimpleShuttle("test", bus);
     }
     
@@ -508,4 +508,92 @@ public class SimulatorTest {
             fixture.process();
         }
     }
+
+    @Test
+    public void mustProduceSameResultsWhenRunningActorsInParallel() {
+        for (long minimumMillis : new long[] {0L, 1L, 5L}) {
+            List<List<String>> sequentialResult = runHopSimulation(1, minimumMillis);
+            List<List<String>> parallelResult = runHopSimulation(4, minimumMillis);
+            assertEquals(sequentialResult, parallelResult);
+        }
+    }
+
+    @Test
+    public void mustFailIfActorTakesLessThanMinimumDuration() {
+        Coroutine actor = (cnt) -> {};
+
+        ActorDurationCalculator calculator = new ActorDurationCalculator() {
+            @Override
+            public Duration calculateDuration(Address source, Address destination, Object message, Duration realDuration) {
+                return Duration.ZERO;
+            }
+
+            @Override
+            public Duration minimumDuration() {
+                return Duration.ofMillis(1L);
+            }
+        };
+        
+        try (Simulator fixture = new Simulator(Instant.EPOCH, calculator, 2)) {
+            fixture.addActor("actor", actor, Duration.ZERO, Instant.EPOCH, new Object());
+
+            exception.expect(IllegalArgumentException.class);
+            while (fixture.hasMore()) {
+                fixture.process();
+            }
+        }
+    }
+
+    private static List<List<String>> runHopSimulation(int threadCount, long minimumMillis) {
+        int actorCount = 50;
+        int maxHops = 20;
+        
+        // Each actor passes a hop counter on to some other actor and occasionally sets a timer for itself. Every actor logs what it gets
+        // and when it gets it.
+        List<List<String>> result = new ArrayList<>();
+        ActorDurationCalculator calculator = new ActorDurationCalculator() {
+            @Override
+            public Duration calculateDuration(Address source, Address destination, Object message, Duration realDuration) {
+                return Duration.ofMillis(minimumMillis + Math.floorMod(destination.hashCode() + message.hashCode(), 3));
+            }
+
+            @Override
+            public Duration minimumDuration() {
+                return Duration.ofMillis(minimumMillis);
+            }
+        };
+        
+        try (Simulator fixture = new Simulator(Instant.EPOCH, calculator, threadCount)) {
+            for (int i = 0; i < actorCount; i++) {
+                int id = i;
+                List<String> log = new ArrayList<>();
+                result.add(log);
+                
+                Coroutine actor = (cnt) -> {
+                    Context ctx = (Context) cnt.getContext();
+                    ctx.allow();
+
+                    while (true) {
+                        cnt.suspend();
+                        
+                        int hop = ctx.in();
+                        log.add(ctx.time() + " " + ctx.source() + " " + hop);
+                        if (hop < maxHops) {
+                            ctx.out("actor" + Math.floorMod(id * 7919 + hop * 104729, actorCount), hop + 1);
+                        }
+                        if (hop < maxHops && hop % 5 == 0) {
+                            ctx.schedule(hop % 3, maxHops);
+                        }
+                    }
+                };
+                fixture.addActor("actor" + i, actor, Duration.ofMillis(i % 4), Instant.EPOCH.plusMillis(i % 3), "start", 0);
+            }
+
+            while (fixture.hasMore()) {
+                fixture.process();
+            }
+        }
+        
+        return result;
+    }
 }